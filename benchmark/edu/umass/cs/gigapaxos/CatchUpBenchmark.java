@@ -0,0 +1,133 @@
+package edu.umass.cs.gigapaxos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umass.cs.gigapaxos.paxospackets.PValuePacket;
+import edu.umass.cs.gigapaxos.paxospackets.ProposalPacket;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.gigapaxos.paxosutil.Ballot;
+import edu.umass.cs.gigapaxos.paxosutil.LogMessagingTask;
+import edu.umass.cs.gigapaxos.paxosutil.SlotBallotState;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Log-side cost of catching up a replica that is numBehind decisions behind
+ * a group whose last checkpoint is TAIL decisions before its last decision,
+ * either by replaying every decision from the log in sync rounds of
+ * {@link PaxosConfig.PC#MAX_SYNC_DECISIONS_BATCH} decisions each or by
+ * reading the checkpoint followed by the decisions after it, as
+ * {@link PaxosInstanceStateMachine} does when the replica is behind the last
+ * checkpoint by more than {@link PaxosManager#getMaxSyncDecisionsGap()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CatchUpBenchmark {
+
+	private static final String PAXOS_ID = "benchmark";
+	private static final int TAIL = 1000;
+	private static final int LOG_BATCH_SIZE = 1000;
+
+	@Param({ "1000000" })
+	int numBehind;
+
+	@Param({ "100" })
+	int valueSize;
+
+	private File logDir;
+	private SQLPaxosLogger logger;
+	private int batchSize;
+
+	@Setup
+	public void setup() throws IOException {
+		this.logDir = Files.createTempDirectory("catchup_benchmark").toFile();
+		this.logger = new SQLPaxosLogger(0, "benchmark",
+				this.logDir.getPath(), null);
+		this.batchSize = Config
+				.getGlobalInt(PaxosConfig.PC.MAX_SYNC_DECISIONS_BATCH);
+
+		Ballot ballot = new Ballot(1, 0);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.valueSize; i++)
+			sb.append((char) ('a' + i % 26));
+		String value = sb.toString();
+		for (int slot = 0; slot < this.numBehind;) {
+			LogMessagingTask[] batch = new LogMessagingTask[Math.min(
+					LOG_BATCH_SIZE, this.numBehind - slot)];
+			for (int i = 0; i < batch.length; i++, slot++) {
+				PValuePacket decision = new PValuePacket(ballot,
+						new ProposalPacket(slot, new RequestPacket(slot,
+								value, false))).makeDecision(slot - 1);
+				decision.putPaxosID(PAXOS_ID, 0);
+				batch[i] = new LogMessagingTask(decision);
+			}
+			if (!this.logger.logBatch(batch))
+				throw new IllegalStateException("Unable to log decisions");
+		}
+
+		// checkpoint without garbage collecting decisions (gcSlot inclusive)
+		Set<String> group = new HashSet<String>();
+		for (int member = 0; member < 3; member++)
+			group.add(Integer.toString(member));
+		this.logger.putCheckpointState(PAXOS_ID, 0, group, this.numBehind
+				- TAIL - 1, ballot, "state at " + (this.numBehind - TAIL - 1),
+				-1);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.logger.close();
+		Files.walk(this.logDir.toPath()).sorted(Comparator.reverseOrder())
+				.map(Path::toFile).forEach(File::delete);
+	}
+
+	@Benchmark
+	public int decisions() {
+		int count = 0;
+		for (int slot = 0; slot < this.numBehind; slot += this.batchSize) {
+			int maxSlot = Math.min(slot + this.batchSize, this.numBehind);
+			for (PValuePacket decision : this.logger.getLoggedDecisions(
+					PAXOS_ID, 0, slot, maxSlot))
+				if (decision.slot < maxSlot)
+					count++;
+		}
+		if (count != this.numBehind)
+			throw new IllegalStateException("Replayed " + count + " of "
+					+ this.numBehind + " decisions");
+		return count;
+	}
+
+	@Benchmark
+	public int checkpoint() {
+		SlotBallotState sbs = this.logger.getSlotBallotState(PAXOS_ID);
+		int count = this.logger.getLoggedDecisions(PAXOS_ID, 0, sbs.slot + 1,
+				this.numBehind).size();
+		if (count != TAIL)
+			throw new IllegalStateException("Replayed " + count + " of "
+					+ TAIL + " decisions after the checkpoint");
+		return sbs.state.length() + count;
+	}
+}
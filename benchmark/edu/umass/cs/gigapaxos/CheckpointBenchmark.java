@@ -0,0 +1,118 @@
+package edu.umass.cs.gigapaxos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umass.cs.gigapaxos.paxosutil.Ballot;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Checkpoints per second of NUM_GROUPS paxos groups in a
+ * {@link SQLPaxosLogger} in a temporary directory, checkpointed round-robin
+ * one at a time or in batches of BATCH_SIZE groups as done by the batched
+ * checkpointer, with and without the prepared statement cache of
+ * {@link PaxosConfig.PC#STATEMENT_CACHE_SIZE}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckpointBenchmark {
+
+	private static final int NUM_GROUPS = 10000;
+	private static final int BATCH_SIZE = 1000;
+
+	@Param({ "64", "0" })
+	int statementCacheSize;
+
+	private File logDir;
+	private SQLPaxosLogger logger;
+	private String[] names;
+	private final Set<String> group = new HashSet<String>();
+	private final Ballot ballot = new Ballot(0, 0);
+	private int slot = 0;
+	private int next = 0;
+
+	@Setup
+	public void setup() throws IOException {
+		Config.register(new String[] { PaxosConfig.PC.STATEMENT_CACHE_SIZE
+				+ "=" + this.statementCacheSize });
+		this.logDir = Files.createTempDirectory("checkpoint_benchmark")
+				.toFile();
+		this.logger = new SQLPaxosLogger(0, "benchmark",
+				this.logDir.getPath(), null);
+
+		int[] members = { 0, 1, 2 };
+		for (int member : members)
+			this.group.add(Integer.toString(member));
+		this.names = new String[NUM_GROUPS];
+		Map<String, String> states = new HashMap<String, String>();
+		for (int i = 0; i < NUM_GROUPS; i++) {
+			states.put(this.names[i] = "service" + i, "initial state");
+			if (states.size() == BATCH_SIZE || i == NUM_GROUPS - 1) {
+				if (!this.logger.insertInitialCheckpoints(states, this.group,
+						members))
+					throw new IllegalStateException(
+							"Unable to create initial checkpoints");
+				states.clear();
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.logger.close();
+		Files.walk(this.logDir.toPath()).sorted(Comparator.reverseOrder())
+				.map(Path::toFile).forEach(File::delete);
+	}
+
+	private String nextName() {
+		if (this.next == NUM_GROUPS) {
+			this.next = 0;
+			this.slot += 100;
+		}
+		return this.names[this.next++];
+	}
+
+	@Benchmark
+	public void checkpoint() {
+		this.logger.putCheckpointState(this.nextName(), 0, this.group,
+				this.slot + 100, this.ballot, "state at " + this.slot,
+				this.slot);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void checkpointBatch() {
+		AbstractPaxosLogger.CheckpointTask[] tasks = new AbstractPaxosLogger.CheckpointTask[BATCH_SIZE];
+		for (int i = 0; i < BATCH_SIZE; i++)
+			tasks[i] = this.logger.new CheckpointTask(this.logger,
+					this.nextName(), 0, this.group, this.slot + 100,
+					this.ballot, "state at " + this.slot, this.slot);
+		this.logger.putCheckpointState(tasks);
+	}
+}
@@ -0,0 +1,89 @@
+package edu.umass.cs.gigapaxos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umass.cs.gigapaxos.paxospackets.AcceptPacket;
+import edu.umass.cs.gigapaxos.paxospackets.PValuePacket;
+import edu.umass.cs.gigapaxos.paxospackets.ProposalPacket;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.gigapaxos.paxosutil.Ballot;
+import edu.umass.cs.gigapaxos.paxosutil.LogMessagingTask;
+
+/**
+ * Appends batches of accepts to the journal of a {@link SQLPaxosLogger} in a
+ * temporary directory, as {@link AbstractPaxosLogger#logBatch} does for every
+ * accept before it is acknowledged. Whether each append is flushed or synced
+ * to disk depends on {@link PaxosConfig.PC#FLUSH} and
+ * {@link PaxosConfig.PC#SYNC}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+	@Param({ "1", "16" })
+	int batchSize;
+
+	@Param({ "1024" })
+	int valueSize;
+
+	private File logDir;
+	private SQLPaxosLogger logger;
+	private Ballot ballot;
+	private String value;
+	private int slot = 0;
+
+	@Setup
+	public void setup() throws IOException {
+		this.logDir = Files.createTempDirectory("journal_benchmark").toFile();
+		this.logger = new SQLPaxosLogger(0, "benchmark",
+				this.logDir.getPath(), null);
+		this.ballot = new Ballot(1, 0);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.valueSize; i++)
+			sb.append((char) ('a' + i % 26));
+		this.value = sb.toString();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.logger.close();
+		Files.walk(this.logDir.toPath()).sorted(Comparator.reverseOrder())
+				.map(Path::toFile).forEach(File::delete);
+	}
+
+	@Benchmark
+	public boolean append() {
+		LogMessagingTask[] batch = new LogMessagingTask[this.batchSize];
+		for (int i = 0; i < batch.length; i++) {
+			RequestPacket request = new RequestPacket(this.slot, this.value,
+					false);
+			AcceptPacket accept = new AcceptPacket(0, new PValuePacket(
+					this.ballot, new ProposalPacket(this.slot++, request)), -1);
+			accept.putPaxosID("benchmark", 0);
+			batch[i] = new LogMessagingTask(accept);
+		}
+		return this.logger.logBatch(batch);
+	}
+}
@@ -0,0 +1,118 @@
+package edu.umass.cs.gigapaxos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umass.cs.gigapaxos.paxosutil.HotRestoreInfo;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Unpauses of random paxos groups out of numGroups paused groups in a
+ * {@link SQLPaxosLogger} in a temporary directory, with paused state in the
+ * memory-mapped pause store or, with {@link PaxosConfig.PC#PAUSE_STORE}
+ * disabled, in the checkpoint table. Every unpaused group is paused again
+ * before the next invocation, so the number of paused groups stays the same.
+ * Setup pauses all groups, which in the database takes several minutes at a
+ * million groups as it first has to create their checkpoints.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PauseBenchmark {
+
+	private static final int BATCH_SIZE = 10000;
+
+	@Param({ "true", "false" })
+	boolean pauseStore;
+
+	@Param({ "1000000" })
+	int numGroups;
+
+	private File logDir;
+	private SQLPaxosLogger logger;
+	private HotRestoreInfo[] hris;
+	private HotRestoreInfo unpaused = null;
+	private long next = 0;
+
+	@Setup
+	public void setup() throws IOException {
+		Config.register(new String[] { PaxosConfig.PC.PAUSE_STORE + "="
+				+ this.pauseStore });
+		this.logDir = Files.createTempDirectory("pause_benchmark").toFile();
+		this.logger = new SQLPaxosLogger(0, "benchmark",
+				this.logDir.getPath(), null);
+
+		int[] members = { 0, 1, 2 };
+		Set<String> group = new HashSet<String>();
+		for (int member : members)
+			group.add(Integer.toString(member));
+		this.hris = new HotRestoreInfo[this.numGroups];
+		Map<String, String> states = new HashMap<String, String>();
+		Map<String, HotRestoreInfo> hriMap = new HashMap<String, HotRestoreInfo>();
+		for (int i = 0; i < this.numGroups; i++) {
+			String name = "service" + i;
+			states.put(name, "initial state");
+			hriMap.put(name, this.hris[i] = HotRestoreInfo.createHRI(name,
+					members, members[i % members.length]));
+			if (states.size() == BATCH_SIZE || i == this.numGroups - 1) {
+				// paused state in the database goes into the checkpoint rows
+				if (!this.pauseStore)
+					this.logger.insertInitialCheckpoints(states, group, members);
+				if (this.logger.pause(hriMap).size() != hriMap.size())
+					throw new IllegalStateException("Unable to pause groups");
+				states.clear();
+				hriMap.clear();
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.logger.close();
+		Files.walk(this.logDir.toPath()).sorted(Comparator.reverseOrder())
+				.map(Path::toFile).forEach(File::delete);
+	}
+
+	@Setup(Level.Invocation)
+	public void repause() {
+		if (this.unpaused != null)
+			this.logger.pause(this.unpaused.paxosID, this.unpaused.toString());
+		this.unpaused = null;
+	}
+
+	// a linear congruential sequence spreads unpauses over all groups
+	private String nextName() {
+		this.next = (this.next * 6364136223846793005L + 1442695040888963407L);
+		return this.hris[(int) ((this.next >>> 33) % this.numGroups)].paxosID;
+	}
+
+	@Benchmark
+	public HotRestoreInfo unpause() {
+		return this.unpaused = this.logger.unpause(this.nextName());
+	}
+}
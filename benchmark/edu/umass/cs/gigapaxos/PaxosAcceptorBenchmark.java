@@ -0,0 +1,73 @@
+package edu.umass.cs.gigapaxos;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umass.cs.gigapaxos.paxospackets.AcceptPacket;
+import edu.umass.cs.gigapaxos.paxospackets.PValuePacket;
+import edu.umass.cs.gigapaxos.paxospackets.PreparePacket;
+import edu.umass.cs.gigapaxos.paxospackets.PrepareReplyPacket;
+import edu.umass.cs.gigapaxos.paxospackets.ProposalPacket;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.gigapaxos.paxosutil.Ballot;
+
+/**
+ * Accept and commit handling at a {@link PaxosAcceptor} in steady state, i.e.,
+ * with a stable coordinator and accepts arriving in slot order. Each accept is
+ * followed by its decision so that accepted proposals keep being garbage
+ * collected as they would be in a running instance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaxosAcceptorBenchmark {
+
+	private static final int MY_ID = 1;
+	private static final int COORDINATOR = 2;
+
+	private PaxosAcceptor acceptor;
+	private Ballot ballot;
+	private int slot;
+	private RequestPacket request;
+
+	@Setup
+	public void setup() {
+		this.ballot = new Ballot(1, COORDINATOR);
+		this.acceptor = new PaxosAcceptor(this.ballot.ballotNumber,
+				this.ballot.coordinatorID, 0, null);
+		this.slot = 0;
+		this.request = new RequestPacket(0, "benchmark_request_value", false);
+		this.request.putPaxosID("benchmark", 0);
+	}
+
+	@Benchmark
+	public PValuePacket acceptAndCommit() {
+		AcceptPacket accept = new AcceptPacket(COORDINATOR, new PValuePacket(
+				this.ballot, new ProposalPacket(this.slot, this.request)),
+				this.slot - 1);
+		this.acceptor.acceptAndUpdateBallot(accept, MY_ID);
+		PValuePacket decision = new PValuePacket(accept)
+				.makeDecision(this.slot - 1);
+		this.slot++;
+		return this.acceptor.putAndRemoveNextExecutable(decision);
+	}
+
+	@Benchmark
+	public PrepareReplyPacket prepare() {
+		return this.acceptor.handlePrepare(new PreparePacket(this.ballot),
+				MY_ID);
+	}
+}
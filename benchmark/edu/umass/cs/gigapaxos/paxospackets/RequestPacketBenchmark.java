@@ -0,0 +1,78 @@
+package edu.umass.cs.gigapaxos.paxospackets;
+
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of {@link RequestPacket}s, which are byteified on the
+ * critical path of every request. {@link RequestPacket#toBytes()} caches its
+ * result, so each invocation serializes a new packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestPacketBenchmark {
+
+	@Param({ "64", "1024" })
+	int valueSize;
+
+	@Param({ "0", "16" })
+	int batchSize;
+
+	private String value;
+	private InetSocketAddress clientAddress;
+	private byte[] bytes;
+	private long requestID = 0;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.valueSize; i++)
+			sb.append((char) ('a' + i % 26));
+		this.value = sb.toString();
+		this.clientAddress = new InetSocketAddress("127.0.0.1", 2000);
+		this.bytes = this.createPacket().toBytes();
+	}
+
+	private RequestPacket createPacket() {
+		RequestPacket packet = new RequestPacket(this.requestID++, this.value,
+				false, this.clientAddress);
+		packet.putPaxosID("benchmark", 0);
+		if (this.batchSize > 0) {
+			RequestPacket[] batched = new RequestPacket[this.batchSize];
+			for (int i = 0; i < batched.length; i++)
+				batched[i] = new RequestPacket(this.requestID++, this.value,
+						false, this.clientAddress);
+			packet.latchToBatch(batched);
+		}
+		return packet;
+	}
+
+	@Benchmark
+	public byte[] toBytes() {
+		return this.createPacket().toBytes();
+	}
+
+	@Benchmark
+	public RequestPacket parse() throws UnsupportedEncodingException,
+			UnknownHostException {
+		return new RequestPacket(this.bytes);
+	}
+}
@@ -0,0 +1,57 @@
+package edu.umass.cs.primarybackup.packets;
+
+import edu.umass.cs.primarybackup.PrimaryEpoch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of {@link ApplyStateDiffPacket}, which carries every
+ * statediff proposed by a primary, with a Base64-encoded statediff as
+ * produced by the statediff recorders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplyStateDiffPacketBenchmark {
+
+    @Param({"1024", "65536"})
+    int stateDiffSize;
+
+    private ApplyStateDiffPacket packet;
+    private String serialized;
+
+    @Setup
+    public void setup() {
+        byte[] stateDiff = new byte[stateDiffSize];
+        new Random(0).nextBytes(stateDiff);
+        packet = new ApplyStateDiffPacket("bookcatalog", new PrimaryEpoch<>("AR0:1"),
+                Base64.getEncoder().encodeToString(stateDiff));
+        serialized = packet.toString();
+    }
+
+    @Benchmark
+    public String serialize() {
+        return packet.toString();
+    }
+
+    @Benchmark
+    public ApplyStateDiffPacket deserialize() {
+        return ApplyStateDiffPacket.createFromString(serialized);
+    }
+}
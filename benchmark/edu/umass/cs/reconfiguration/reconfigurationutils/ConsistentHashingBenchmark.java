@@ -0,0 +1,71 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Lookups of the reconfigurators of names in {@link ConsistentHashing}, with
+ * and without the lookup cache, over fewer and more names than the cache
+ * holds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsistentHashingBenchmark {
+
+	@Param({ "10", "100" })
+	int numServers;
+
+	@Param({ "0", "10000" })
+	int cacheSize;
+
+	@Param({ "1000", "100000" })
+	int numNames;
+
+	private ConsistentHashing<String> ch;
+	private String[] names;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		Set<String> servers = new HashSet<String>();
+		for (int i = 0; i < this.numServers; i++)
+			servers.add("RC" + i);
+		this.ch = new ConsistentHashing<String>(servers, false,
+				Config.getGlobalInt(RC.CONSISTENT_HASHING_VIRTUAL_NODES), null,
+				this.cacheSize);
+		this.names = new String[this.numNames];
+		for (int i = 0; i < this.numNames; i++)
+			this.names[i] = "service" + i;
+	}
+
+	private String nextName() {
+		if (++this.next == this.numNames)
+			this.next = 0;
+		return this.names[this.next];
+	}
+
+	@Benchmark
+	public Set<String> getReplicatedServers() {
+		return this.ch.getReplicatedServers(this.nextName());
+	}
+}
@@ -0,0 +1,106 @@
+package edu.umass.cs.utils;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups by name in a table of numInstances paxos instances, as done by
+ * PaxosManager for every incoming packet, in {@link OffHeapHashMap} and in
+ * {@link MultiArrayMap} that it replaced. Lookups are of random names and use
+ * copies of the names, like names parsed from packets. Setup prints the heap
+ * used by the table, excluding the names and instances themselves, and the
+ * off-heap memory used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "-XX:MaxDirectMemorySize=1g" })
+public class InstanceTableBenchmark {
+
+	private static class Instance implements Keyable<String> {
+		final String name;
+
+		Instance(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getKey() {
+			return this.name;
+		}
+	}
+
+	@Param({ "OffHeapHashMap", "MultiArrayMap" })
+	String table;
+
+	@Param({ "1000000", "5000000" })
+	int numInstances;
+
+	private ConcurrentMap<String, Instance> map;
+	private String[] lookups;
+	private int next = 0;
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+				.getUsed();
+	}
+
+	private static long usedDirect() {
+		for (BufferPoolMXBean pool : ManagementFactory
+				.getPlatformMXBeans(BufferPoolMXBean.class))
+			if (pool.getName().equals("direct"))
+				return pool.getMemoryUsed();
+		return 0;
+	}
+
+	@Setup
+	public void setup() {
+		Instance[] instances = new Instance[this.numInstances];
+		for (int i = 0; i < this.numInstances; i++)
+			instances[i] = new Instance("service" + i);
+		long heap = usedHeap(), direct = usedDirect();
+		// as with PaxosConfig.PC.PINSTANCES_CAPACITY set to numInstances
+		this.map = this.table.equals("MultiArrayMap") ? new MultiArrayMap<String, Instance>(
+				this.numInstances) : new OffHeapHashMap<String, Instance>(
+				this.numInstances);
+		for (Instance instance : instances)
+			this.map.put(instance.getKey(), instance);
+		System.out.println("\n" + this.table + " with " + this.numInstances
+				+ " instances: heap " + (usedHeap() - heap) / (1024 * 1024)
+				+ "MB, off-heap " + (usedDirect() - direct) / (1024 * 1024)
+				+ "MB");
+
+		// a random permutation so that lookups miss the CPU caches
+		this.lookups = new String[this.numInstances];
+		Random random = new Random(0);
+		for (int i = 0; i < this.numInstances; i++)
+			this.lookups[i] = new String("service"
+					+ random.nextInt(this.numInstances));
+	}
+
+	@Benchmark
+	public Instance get() {
+		if (++this.next == this.numInstances)
+			this.next = 0;
+		return this.map.get(this.lookups[this.next]);
+	}
+}
@@ -0,0 +1,122 @@
+package edu.umass.cs.utils;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Gets and puts of {@link MultiArrayMap}, which holds the paxos instances of a
+ * node, and of {@link DiskMap}, which holds their message log indexes. The
+ * {@link DiskMap} is backed by an in-memory map and pages out the least
+ * recently used entries once it holds more than {@code capacity} entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+
+	private static class Value implements Keyable<String> {
+		final String key;
+
+		Value(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String getKey() {
+			return this.key;
+		}
+	}
+
+	@Param({ "100000" })
+	int numKeys;
+
+	@Param({ "1000000" })
+	int capacity;
+
+	private String[] keys;
+	private Value[] values;
+	private MultiArrayMap<String, Value> multiArrayMap;
+	private DiskMap<String, Value> diskMap;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		this.keys = new String[this.numKeys];
+		this.values = new Value[this.numKeys];
+		for (int i = 0; i < this.numKeys; i++)
+			this.values[i] = new Value(this.keys[i] = "service" + i);
+
+		this.multiArrayMap = new MultiArrayMap<String, Value>(this.capacity);
+		ConcurrentHashMap<String, Value> disk = new ConcurrentHashMap<String, Value>();
+		this.diskMap = new DiskMap<String, Value>(this.capacity) {
+			@Override
+			public Set<String> commit(Map<String, Value> toCommit)
+					throws IOException {
+				disk.putAll(toCommit);
+				return new HashSet<String>(toCommit.keySet());
+			}
+
+			@Override
+			public Value restore(String key) throws IOException {
+				return disk.get(key);
+			}
+		};
+		for (Value value : this.values) {
+			this.multiArrayMap.put(value.getKey(), value);
+			this.diskMap.put(value.getKey(), value);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.diskMap.close();
+	}
+
+	private int nextIndex() {
+		if (++this.next == this.numKeys)
+			this.next = 0;
+		return this.next;
+	}
+
+	@Benchmark
+	public Value multiArrayMapGet() {
+		return this.multiArrayMap.get(this.keys[this.nextIndex()]);
+	}
+
+	@Benchmark
+	public Value multiArrayMapPut() {
+		int i = this.nextIndex();
+		return this.multiArrayMap.put(this.keys[i], this.values[i]);
+	}
+
+	@Benchmark
+	public Value diskMapGet() {
+		return this.diskMap.get(this.keys[this.nextIndex()]);
+	}
+
+	@Benchmark
+	public Value diskMapPut() {
+		int i = this.nextIndex();
+		return this.diskMap.put(this.keys[i], this.values[i]);
+	}
+}
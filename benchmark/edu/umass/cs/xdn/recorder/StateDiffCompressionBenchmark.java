@@ -0,0 +1,75 @@
+package edu.umass.cs.xdn.recorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Compression and Base64 encoding of a statediff as done by
+ * {@link ZipStateDiffRecorder} and {@link RsyncStateDiffRecorder} when the
+ * statediff is captured, and the reverse when it is applied. The statediff is
+ * a mix of random bytes and repeated text, like modified database pages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateDiffCompressionBenchmark {
+
+    @Param({"12000", "1048576"})
+    int stateDiffSize;
+
+    private byte[] stateDiff;
+    private String encodedStateDiff;
+
+    @Setup
+    public void setup() throws IOException {
+        stateDiff = new byte[stateDiffSize];
+        Random random = new Random(0);
+        byte[] text = "INSERT INTO books (title, author) VALUES ".getBytes();
+        for (int i = 0; i < stateDiffSize; i++) {
+            stateDiff[i] = (i / 1024) % 4 == 0 ? (byte) random.nextInt() : text[i % text.length];
+        }
+        encodedStateDiff = compress();
+    }
+
+    @Benchmark
+    public String compress() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DeflaterOutputStream dos = new DeflaterOutputStream(os);
+        dos.write(stateDiff);
+        dos.flush();
+        dos.close();
+        return Base64.getEncoder().encodeToString(os.toByteArray());
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException {
+        byte[] compressedStateDiff = Base64.getDecoder().decode(encodedStateDiff);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        OutputStream ios = new InflaterOutputStream(os);
+        ios.write(compressedStateDiff);
+        ios.flush();
+        ios.close();
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,70 @@
+package edu.umass.cs.xdn.request;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of {@link XDNHttpRequest}, which is stringified into every
+ * RequestPacket proposed for an XDN service and parsed back before execution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XDNHttpRequestBenchmark {
+
+    @Param({"128", "16384"})
+    int contentSize;
+
+    private XDNHttpRequest request;
+    private String serialized;
+
+    @Setup
+    public void setup() {
+        byte[] content = new byte[contentSize];
+        Arrays.fill(content, (byte) 'x');
+        request = new XDNHttpRequest(
+                "bookcatalog",
+                new DefaultHttpRequest(
+                        HttpVersion.HTTP_1_1,
+                        HttpMethod.POST,
+                        "/api/books?limit=10",
+                        new DefaultHttpHeaders()
+                                .add("Host", "bookcatalog.xdnapp.com")
+                                .add("Content-Type", "application/json")
+                                .add("Content-Length", contentSize)
+                                .add("User-Agent", "benchmark")),
+                new DefaultHttpContent(Unpooled.wrappedBuffer(content)));
+        serialized = request.toString();
+    }
+
+    @Benchmark
+    public String serialize() {
+        return request.toString();
+    }
+
+    @Benchmark
+    public XDNHttpRequest deserialize() {
+        return XDNHttpRequest.createFromString(serialized);
+    }
+}
@@ -16,6 +16,7 @@
 
 package edu.umass.cs.chainreplication;
 
+import edu.umass.cs.chainreplication.chainpackets.ChainBatchPacket;
 import edu.umass.cs.chainreplication.chainpackets.ChainPacket;
 import edu.umass.cs.chainreplication.chainpackets.ChainRequestPacket;
 import edu.umass.cs.chainreplication.chainutil.ReplicatedChainException;
@@ -37,11 +38,13 @@ import edu.umass.cs.nio.nioutils.NIOHeader;
 import edu.umass.cs.reconfiguration.AbstractReplicaCoordinator;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.ReplicableClientRequest;
 import edu.umass.cs.reconfiguration.reconfigurationutils.AbstractDemandProfile;
 import edu.umass.cs.reconfiguration.reconfigurationutils.DefaultNodeConfig;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.Util;
+import edu.umass.cs.xdn.interfaces.behavior.BehavioralRequest;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -49,7 +52,10 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -66,6 +72,10 @@ import java.util.logging.Logger;
  *
  *     ChainManager does not support hot swap as described in GigaPaxos paper.
  *
+ *     Writes are executed and forwarded down the chain in pipelined batches,
+ *     see {@link ReplicatedChainStateMachine}, while reads are sent directly
+ *     to the tail.
+ *
  * </p>
  */
 public class ChainManager<NodeIDType> {
@@ -75,12 +85,15 @@ public class ChainManager<NodeIDType> {
     private final int myID;
     private final Replicable myApp; // default app for all chainIDs
 
-    private final HashMap<String, ReplicatedChainStateMachine> replicatedChains;
+    private final ConcurrentHashMap<String, ReplicatedChainStateMachine> replicatedChains;
     // a map of NodeIDType objects to integers
     private final IntegerMap<NodeIDType> integerMap = new IntegerMap<NodeIDType>();
 
     private final ChainOutstading outstanding;
 
+    private final int maxBatchSize;
+    private final int pipelineWindow;
+
     // private final FailureDetection<NodeIDType> FD; // failure detection
 
     private static final Level level = Level.INFO;
@@ -116,7 +129,11 @@ public class ChainManager<NodeIDType> {
         // TODO: Failure detector
         // this.FD = new FailureDetection<NodeIDType>(id, niot, logFolder);
 
-        this.replicatedChains = new HashMap<>();
+        this.replicatedChains = new ConcurrentHashMap<>();
+        this.maxBatchSize = Math.max(1,
+                Config.getGlobalInt(ReconfigurationConfig.RC.CHAIN_MAX_BATCH_SIZE));
+        this.pipelineWindow = Math.max(1,
+                Config.getGlobalInt(ReconfigurationConfig.RC.CHAIN_PIPELINE_WINDOW));
 
         // though the class is called PaxosMessenger, as stated in its document
         // it is just a JSONMessenger which has nothing paxos-specific
@@ -172,12 +189,13 @@ public class ChainManager<NodeIDType> {
                 : ChainPacket.ChainPacketType.NO_TYPE;
 
         // forward to the next node in the chain
-        log.log(level, "ChainManager.handleChainPacket: members: {0}, + myID(NodeIDType):{1}, myID:{2}, request:{3}",
-                new Object[]{this.integerMap.getIntArrayAsNodeSet(rcsm.getMembers()),
-                        this.myID,
-                        this.integerMap.get(this.myID),
-                        (ChainRequestPacket) cp
-        });
+        if (log.isLoggable(level))
+            log.log(level, "ChainManager.handleChainPacket: members: {0}, + myID(NodeIDType):{1}, myID:{2}, request:{3}",
+                    new Object[]{this.integerMap.getIntArrayAsNodeSet(rcsm.getMembers()),
+                            this.myID,
+                            this.integerMap.get(this.myID),
+                            cp
+            });
 
         switch(packetType) {
             case REQUEST:
@@ -202,6 +220,10 @@ public class ChainManager<NodeIDType> {
                 // node -> tail (primary)
                 handleRead(cp, rcsm);
                 break;
+
+            case BATCH:
+                handleBatch((ChainBatchPacket) cp, rcsm);
+                break;
             default:
                 break;
         }
@@ -223,7 +245,8 @@ public class ChainManager<NodeIDType> {
 
         if (rcsm.getChainHead() == this.myID) {
             ((ChainRequestPacket) cp).setPacketType(ChainPacket.ChainPacketType.FORWARD);
-            this.handleForwardRequest(cp, rcsm);
+            rcsm.addPendingWrite((ChainRequestPacket) cp);
+            this.forwardPendingWrites(rcsm);
         } else {
             // otherwise, forward the request to head
             this.sendRequest(cp, rcsm.getChainHead());
@@ -263,6 +286,98 @@ public class ChainManager<NodeIDType> {
 
     }
 
+    /**
+     * Executes and forwards the pending writes at the head in batches, as long
+     * as the pipeline window allows. Batches are executed while holding the
+     * lock on rcsm, so the head executes them in slot order.
+     */
+    private void forwardPendingWrites(ReplicatedChainStateMachine rcsm) {
+        while (true) {
+            ChainBatchPacket batch;
+            synchronized (rcsm) {
+                batch = rcsm.pollPendingWrites(this.pipelineWindow, this.maxBatchSize);
+                if (batch == null)
+                    return;
+                this.executeBatch(batch);
+            }
+
+            if (rcsm.getChainTail() == this.myID) {
+                // a single-node chain, the batch is already acknowledged
+                rcsm.onBatchAcknowledged();
+                this.respondToEntryReplicas(batch, rcsm);
+            } else {
+                this.sendRequest(batch, rcsm.getNext());
+            }
+        }
+    }
+
+    private void executeBatch(ChainBatchPacket batch) {
+        for (ChainRequestPacket crp : batch.getRequests()) {
+            Request request = getInterfaceRequest(this.myApp, crp.requestValue);
+            this.myApp.execute(request, false);
+        }
+    }
+
+    private void handleBatch(ChainBatchPacket batch, ReplicatedChainStateMachine rcsm) {
+        log.log(level, "ChainManager.handleBatch handles {0} for state machine {1}",
+                new Object[]{batch, rcsm});
+
+        switch (batch.getBatchType()) {
+            case FORWARD:
+                // head -> next, executed in the slot order assigned by the head
+                List<ChainBatchPacket> ready;
+                synchronized (rcsm) {
+                    ready = rcsm.deliverInOrder(batch);
+                    for (ChainBatchPacket b : ready)
+                        this.executeBatch(b);
+                }
+                for (ChainBatchPacket b : ready) {
+                    if (rcsm.getChainTail() == this.myID)
+                        this.sendRequest(new ChainBatchPacket(ChainPacket.ChainPacketType.ACK,
+                                b.getChainID(), b.getVersion(), b.getSlot(), b.getRequests()),
+                                rcsm.getChainHead());
+                    else
+                        this.sendRequest(b, rcsm.getNext());
+                }
+                break;
+            case ACK:
+                // tail -> head, which can now forward the next batch
+                rcsm.onBatchAcknowledged();
+                this.respondToEntryReplicas(batch, rcsm);
+                this.forwardPendingWrites(rcsm);
+                break;
+            case RESPONSE:
+                // head -> entry
+                for (ChainRequestPacket crp : batch.getRequests())
+                    this.handleResponse(crp, rcsm);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Responds to the requests of an acknowledged batch received at this
+     * node, and sends one RESPONSE batch to every other entry replica.
+     */
+    private void respondToEntryReplicas(ChainBatchPacket batch,
+                                        ReplicatedChainStateMachine rcsm) {
+        Map<Integer, List<ChainRequestPacket>> byEntryReplica = new HashMap<>();
+        for (ChainRequestPacket crp : batch.getRequests()) {
+            if (crp.getEntryReplica() == this.myID) {
+                this.handleResponse(crp, rcsm);
+                continue;
+            }
+            crp.setPacketType(ChainPacket.ChainPacketType.RESPONSE);
+            byEntryReplica.computeIfAbsent(crp.getEntryReplica(), k -> new ArrayList<>())
+                    .add(crp);
+        }
+        for (Map.Entry<Integer, List<ChainRequestPacket>> entry : byEntryReplica.entrySet())
+            this.sendRequest(new ChainBatchPacket(ChainPacket.ChainPacketType.RESPONSE,
+                    batch.getChainID(), batch.getVersion(), batch.getSlot(),
+                    entry.getValue()), entry.getKey());
+    }
+
     private void handleAckRequest(ChainPacket cp,
                                   ReplicatedChainStateMachine rcsm) {
 
@@ -434,6 +549,13 @@ public class ChainManager<NodeIDType> {
 
         ChainRequestPacket chainRequestPacket = this.getChainRequestPacket(request, false);
 
+        // reads are served by the tail, without traversing the chain
+        Request appRequest = request instanceof ReplicableClientRequest ?
+                ((ReplicableClientRequest) request).getRequest() : request;
+        if (appRequest instanceof BehavioralRequest &&
+                ((BehavioralRequest) appRequest).isReadOnlyRequest())
+            chainRequestPacket.setPacketType(ChainPacket.ChainPacketType.READ);
+
         log.log(level, "ChainManager.propsoe request " +
                 "{0} for service name {1}",
                 new Object[]{chainRequestPacket, chainID});
@@ -477,6 +599,16 @@ public class ChainManager<NodeIDType> {
         return matched ? rcsm.getChainIDVersion() : null;
     }
 
+    /**
+     * Stops this manager and its messenger.
+     */
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+        this.messenger.stop();
+    }
+
     public boolean createReplicatedChainForcibly(String chainID, int version,
                                                  Set<NodeIDType> nodes, Replicable app,
                                                  String state){
@@ -644,6 +776,12 @@ public class ChainManager<NodeIDType> {
             super(numThreads);
             this.register(ChainPacket.ChainPacketType.CHAIN_PACKET);
             this.manager = manager;
+            this.setKeyAffine(Config.getGlobalBoolean(PaxosConfig.PC.KEY_AFFINE_DEMULTIPLEXER));
+        }
+
+        @Override
+        protected Object getAffinityKey(Object message) {
+            return message instanceof ChainPacket ? ((ChainPacket) message).getChainID() : null;
         }
 
         public ChainDemultiplexer(ChainManager manager){
@@ -711,9 +849,10 @@ public class ChainManager<NodeIDType> {
 
             if(message instanceof byte[]){
                 ByteBuffer bbuf = ByteBuffer.wrap((byte[]) message);
-                ChainRequestPacket packet = null;
+                ChainPacket packet = null;
                 try {
-                    packet = new ChainRequestPacket(bbuf);
+                    packet = ChainBatchPacket.isBatch((byte[]) message) ?
+                            new ChainBatchPacket(bbuf) : new ChainRequestPacket(bbuf);
                     this.manager.handleChainPacket(packet,
                             this.manager.getInstance(packet.getChainID()));
                     return true;
@@ -723,8 +862,8 @@ public class ChainManager<NodeIDType> {
             }
 
             try {
-                // convert to ChainRequestPacket
-                ChainRequestPacket packet = (ChainRequestPacket) message;
+                // convert to ChainPacket
+                ChainPacket packet = (ChainPacket) message;
 
                 this.manager.handleChainPacket(packet,
                         this.manager.getInstance(packet.getChainID()));
@@ -1,10 +1,17 @@
 package edu.umass.cs.chainreplication;
 
+import edu.umass.cs.chainreplication.chainpackets.ChainBatchPacket;
+import edu.umass.cs.chainreplication.chainpackets.ChainPacket;
+import edu.umass.cs.chainreplication.chainpackets.ChainRequestPacket;
 import edu.umass.cs.gigapaxos.interfaces.Replicable;
 import edu.umass.cs.utils.Util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * This class keeps the state of a replicated chain used by
@@ -20,6 +27,11 @@ import java.util.Set;
  * which then passes the update along the chain to the tail (primary).
  * All read requests are sent to the tail (primary).
  *
+ * Writes are pipelined: the head executes and forwards writes in batches,
+ * each numbered by a slot, and keeps up to a window of batches in flight
+ * without waiting for the tail to acknowledge the earlier ones. The other
+ * nodes execute batches in slot order, buffering those received early.
+ *
  *
  * TODO: reconfiguration, fault-tolerance
  *
@@ -36,6 +48,15 @@ public class ReplicatedChainStateMachine {
     private final int head;
     private final int tail;
 
+    // pipelining state at the head, guarded by this
+    private final List<ChainRequestPacket> pendingWrites = new ArrayList<>();
+    private int batchesInFlight = 0;
+    private int nextSlotToAssign = 0;
+
+    // ordering state at the other nodes, guarded by this
+    private int nextSlotToExecute = 0;
+    private final TreeMap<Integer, ChainBatchPacket> earlyBatches = new TreeMap<>();
+
     public ReplicatedChainStateMachine(String chainID, int version, int id,
                                        Set<Integer> chainMembers, Replicable app, String initialState,
                                        ChainManager<?> cm){
@@ -107,6 +128,51 @@ public class ReplicatedChainStateMachine {
         return this.next;
     }
 
+    protected synchronized void addPendingWrite(ChainRequestPacket request) {
+        this.pendingWrites.add(request);
+    }
+
+    /**
+     * Takes up to maxBatchSize pending writes as the next FORWARD batch, unless
+     * window batches are already in flight.
+     *
+     * @param window
+     * @param maxBatchSize
+     * @return The next batch to execute and forward, or null if none.
+     */
+    protected synchronized ChainBatchPacket pollPendingWrites(int window, int maxBatchSize) {
+        if (this.pendingWrites.isEmpty() || this.batchesInFlight >= window)
+            return null;
+        int size = Math.min(maxBatchSize, this.pendingWrites.size());
+        List<ChainRequestPacket> batch = new ArrayList<>(this.pendingWrites.subList(0, size));
+        this.pendingWrites.subList(0, size).clear();
+        this.batchesInFlight++;
+        return new ChainBatchPacket(ChainPacket.ChainPacketType.FORWARD, this.getChainID(),
+                this.version, this.nextSlotToAssign++, batch);
+    }
+
+    protected synchronized void onBatchAcknowledged() {
+        this.batchesInFlight = Math.max(0, this.batchesInFlight - 1);
+    }
+
+    /**
+     * @param batch
+     * @return The batches, starting from {@code batch}, that are now next in
+     *         slot order, possibly none if earlier batches are still missing.
+     */
+    protected synchronized List<ChainBatchPacket> deliverInOrder(ChainBatchPacket batch) {
+        if (batch.getSlot() < this.nextSlotToExecute)
+            return Collections.emptyList(); // duplicate
+        this.earlyBatches.put(batch.getSlot(), batch);
+        List<ChainBatchPacket> ready = new ArrayList<>();
+        ChainBatchPacket next;
+        while ((next = this.earlyBatches.remove(this.nextSlotToExecute)) != null) {
+            ready.add(next);
+            this.nextSlotToExecute++;
+        }
+        return ready;
+    }
+
     // for fault-tolerance when a node in the middle of the chain fails
 //    protected int getNextNext() {
 //        // TODO
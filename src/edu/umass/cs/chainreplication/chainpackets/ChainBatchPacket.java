@@ -0,0 +1,130 @@
+package edu.umass.cs.chainreplication.chainpackets;
+
+import edu.umass.cs.nio.interfaces.Byteable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ChainBatchPacket carries multiple {@link ChainRequestPacket}s of the same
+ * chain in one message, all of them of the same {@link #getBatchType()}:
+ * FORWARD (head to tail), ACK (tail to head), or RESPONSE (head to entry
+ * replica).
+ * <p>
+ * The slot of a FORWARD batch is its sequence number assigned by the head, so
+ * that the other nodes in the chain execute batches in the same order even if
+ * they are received out of order.
+ */
+public class ChainBatchPacket extends ChainPacket implements Byteable {
+
+    private final ChainPacketType batchType;
+    private final List<ChainRequestPacket> requests;
+
+    public ChainBatchPacket(ChainPacketType batchType, String chainID, int version,
+                            int slot, List<ChainRequestPacket> requests) {
+        super(ChainPacketType.BATCH, chainID, version, slot);
+        assert batchType == ChainPacketType.FORWARD || batchType == ChainPacketType.ACK
+                || batchType == ChainPacketType.RESPONSE : batchType;
+        assert requests != null && !requests.isEmpty();
+        this.batchType = batchType;
+        this.requests = requests;
+    }
+
+    public ChainBatchPacket(ByteBuffer bbuf)
+            throws UnsupportedEncodingException, UnknownHostException {
+        super(bbuf);
+        this.batchType = ChainPacketType.getChainPacketType(bbuf.getInt());
+        int numRequests = bbuf.getInt();
+        this.requests = new ArrayList<>(numRequests);
+        for (int i = 0; i < numRequests; i++) {
+            int length = bbuf.getInt();
+            // ChainRequestPacket reads exactly its own bytes from the slice
+            ByteBuffer slice = bbuf.slice();
+            slice.limit(length);
+            this.requests.add(new ChainRequestPacket(slice));
+            bbuf.position(bbuf.position() + length);
+        }
+    }
+
+    /**
+     * @param bytes
+     * @return True if {@code bytes} is the serialization of a ChainBatchPacket.
+     */
+    public static boolean isBatch(byte[] bytes) {
+        return bytes.length >= 2 * Integer.BYTES && ByteBuffer.wrap(bytes, Integer.BYTES,
+                Integer.BYTES).getInt() == ChainPacketType.BATCH.getInt();
+    }
+
+    @Override
+    public byte[] toBytes() {
+        List<byte[]> encoded = new ArrayList<>(this.requests.size());
+        int length = 0;
+        for (ChainRequestPacket request : this.requests) {
+            byte[] bytes = request.toBytes();
+            encoded.add(bytes);
+            length += Integer.BYTES + bytes.length;
+        }
+        try {
+            byte[] chainIDBytes = this.chainID != null ?
+                    this.chainID.getBytes(CHARSET) : new byte[0];
+            ByteBuffer bbuf = ByteBuffer.allocate(SIZEOF_CHAINPACKET_FIXED +
+                    chainIDBytes.length + 2 * Integer.BYTES + length);
+            super.toBytes(bbuf);
+            bbuf.putInt(this.batchType.getInt());
+            bbuf.putInt(encoded.size());
+            for (byte[] bytes : encoded) {
+                bbuf.putInt(bytes.length);
+                bbuf.put(bytes);
+            }
+            assert !bbuf.hasRemaining();
+            return bbuf.array();
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    public ChainPacketType getBatchType() {
+        return this.batchType;
+    }
+
+    public int getSlot() {
+        return this.slot;
+    }
+
+    public List<ChainRequestPacket> getRequests() {
+        return this.requests;
+    }
+
+    public int size() {
+        return this.requests.size();
+    }
+
+    @Override
+    protected JSONObject toJSONObjectImpl() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put(ChainPacket.Keys.ID.toString(), this.chainID);
+        json.put(ChainPacket.Keys.PT.toString(), this.packetType.getInt());
+        json.put(ChainPacket.Keys.V.toString(), this.version);
+        json.put(ChainPacket.Keys.S.toString(), this.slot);
+        JSONArray requestIDs = new JSONArray();
+        for (ChainRequestPacket request : this.requests) {
+            requestIDs.put(request.getRequestID());
+        }
+        json.put(this.batchType.getLabel(), requestIDs);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return this.getChainID() + ":" + this.getVersion() + ":" + this.batchType + ":"
+                + this.slot + "[" + this.requests.size() + "]";
+    }
+
+}
@@ -0,0 +1,48 @@
+package edu.umass.cs.chainreplication.chainpackets;
+
+import edu.umass.cs.chainreplication.chainpackets.ChainPacket.ChainPacketType;
+import edu.umass.cs.utils.DefaultTest;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the byte serialization of {@link ChainBatchPacket}.
+ */
+public class ChainBatchPacketTest extends DefaultTest {
+    @Test
+    public void TestChainBatchPacketSerializationDeserialization() throws Exception {
+        List<ChainRequestPacket> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ChainRequestPacket request = new ChainRequestPacket(100 + i,
+                    "request-value-" + i, false,
+                    new InetSocketAddress("127.0.0.1", 2000 + i));
+            request.putChainIDAndVersion("chain-0", 2);
+            request.setEntryReplica(i);
+            requests.add(request);
+        }
+        ChainBatchPacket p1 = new ChainBatchPacket(ChainPacketType.FORWARD,
+                "chain-0", 2, 7, requests);
+        byte[] bytes = p1.toBytes();
+        assert ChainBatchPacket.isBatch(bytes);
+        assert !ChainBatchPacket.isBatch(requests.get(0).toBytes());
+
+        ChainBatchPacket p2 = new ChainBatchPacket(ByteBuffer.wrap(bytes));
+        assert p2.getBatchType() == ChainPacketType.FORWARD;
+        assert p2.getChainID().equals("chain-0");
+        assert p2.getVersion() == 2;
+        assert p2.getSlot() == 7;
+        assert p2.size() == 3;
+        for (int i = 0; i < 3; i++) {
+            ChainRequestPacket request = p2.getRequests().get(i);
+            assert request.getRequestID() == 100 + i;
+            assert request.requestValue.equals("request-value-" + i);
+            assert request.getEntryReplica() == i;
+            assert request.getChainID().equals("chain-0");
+            assert request.getClientAddress().getPort() == 2000 + i;
+        }
+    }
+}
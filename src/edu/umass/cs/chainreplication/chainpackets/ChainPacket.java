@@ -138,6 +138,10 @@ public abstract class ChainPacket extends JSONPacket {
          *
          */
         READ("CHAIN_READ", 1005),
+        /**
+         * Multiple FORWARD, ACK, or RESPONSE packets of a chain sent as one.
+         */
+        BATCH("CHAIN_BATCH", 1006),
         /**
          *
          */
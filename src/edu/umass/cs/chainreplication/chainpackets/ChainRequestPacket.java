@@ -365,7 +365,8 @@ public class ChainRequestPacket extends ChainPacket
         json.put(Keys.RV.toString(), this.requestValue);
         json.put(Keys.FWDR.toString(), this.entryReplica);
         json.put(Keys.STOP.toString(), this.stop);
-        json.put(Keys.CA.toString(), this.clientSocketAddress.toString());
+        if (this.clientSocketAddress != null)
+            json.put(Keys.CA.toString(), this.clientSocketAddress.toString());
 
         return json;
     }
@@ -0,0 +1,184 @@
+package edu.umass.cs.chainreplication.testing;
+
+import edu.umass.cs.chainreplication.ChainManager;
+import edu.umass.cs.gigapaxos.PaxosConfig;
+import edu.umass.cs.gigapaxos.PaxosManager;
+import edu.umass.cs.gigapaxos.interfaces.ExecutedCallback;
+import edu.umass.cs.gigapaxos.interfaces.Replicable;
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.nio.JSONMessenger;
+import edu.umass.cs.nio.MessageNIOTransport;
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.nio.nioutils.PacketDemultiplexerDefault;
+import edu.umass.cs.nio.nioutils.SampleNodeConfig;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig;
+import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Loopback throughput benchmark of three-node {@link ChainManager} chains
+ * against three-node {@link PaxosManager} groups, both running in this JVM
+ * with a no-op app. The client keeps a fixed number of writes outstanding, all
+ * sent to the head of the chain or to the paxos coordinator respectively.
+ * <p>
+ * Usage: {@code TESTChainVsPaxos [durationSeconds] [numOutstanding]}
+ */
+public class TESTChainVsPaxos {
+
+    private static final String GROUP = "bench0";
+    private static final int NUM_NODES = 3;
+    // gigapaxos does not allow 0 as a node ID
+    private static final int FIRST_NODE_ID = 1;
+    // requests need a resolved client address to be serialized by gigapaxos
+    private static final InetSocketAddress CLIENT =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 1);
+
+    private interface Proposer {
+        // returns null if the request was not accepted, e.g., due to congestion
+        String propose(Request request, ExecutedCallback callback);
+    }
+
+    /**
+     * Executes nothing, but parses {@link RequestPacket}s so that chain nodes
+     * can execute the requests they receive.
+     */
+    private static class NoopBenchmarkApp implements Replicable {
+        @Override
+        public boolean execute(Request request, boolean doNotReplyToClient) {
+            return this.execute(request);
+        }
+
+        @Override
+        public boolean execute(Request request) {
+            if (request instanceof RequestPacket)
+                ((RequestPacket) request).setResponse("ok");
+            return true;
+        }
+
+        @Override
+        public String checkpoint(String name) {
+            return "";
+        }
+
+        @Override
+        public boolean restore(String name, String state) {
+            return true;
+        }
+
+        @Override
+        public Request getRequest(String stringified) throws RequestParseException {
+            try {
+                return new RequestPacket(new JSONObject(stringified));
+            } catch (JSONException e) {
+                throw new RequestParseException(e);
+            }
+        }
+
+        @Override
+        public Set<IntegerPacketType> getRequestTypes() {
+            return null;
+        }
+    }
+
+    private static double run(String label, Proposer proposer, int durationSeconds,
+                              int numOutstanding) throws InterruptedException {
+        Semaphore window = new Semaphore(numOutstanding);
+        AtomicLong numExecuted = new AtomicLong();
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long startCount = -1;
+        long i = 0;
+        while (System.nanoTime() < end) {
+            if (!window.tryAcquire(10, TimeUnit.SECONDS))
+                throw new RuntimeException(label + " stopped executing requests after "
+                        + numExecuted.get());
+            if (startCount < 0 && System.nanoTime() >= warmupEnd)
+                startCount = numExecuted.get();
+            RequestPacket request = new RequestPacket("w" + i++, false, CLIENT);
+            request.putPaxosID(GROUP, 0);
+            if (proposer.propose(request, (executed, handled) -> {
+                numExecuted.incrementAndGet();
+                window.release();
+            }) == null)
+                window.release();
+        }
+        double throughput = (numExecuted.get() - Math.max(0, startCount)) /
+                (double) durationSeconds;
+        System.out.printf("%s: %.0f requests/s with %d outstanding%n", label, throughput,
+                numOutstanding);
+        return throughput;
+    }
+
+    private static List<JSONMessenger<Integer>> startMessengers(
+            SampleNodeConfig<Integer> nc) throws IOException {
+        List<JSONMessenger<Integer>> messengers = new ArrayList<>();
+        for (int id = FIRST_NODE_ID; id < FIRST_NODE_ID + NUM_NODES; id++)
+            messengers.add(new JSONMessenger<>(new MessageNIOTransport<Integer, JSONObject>(
+                    id, nc, new PacketDemultiplexerDefault(), true)));
+        return messengers;
+    }
+
+    /**
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int durationSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int numOutstanding = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        PaxosConfig.load();
+        // per-request logging would dominate the measured throughput
+        ReconfigurationConfig.getLogger().setLevel(Level.WARNING);
+        PaxosConfig.getLogger().setLevel(Level.WARNING);
+        Set<Integer> group = Set.of(FIRST_NODE_ID, FIRST_NODE_ID + 1, FIRST_NODE_ID + 2);
+
+        SampleNodeConfig<Integer> chainNodes = new SampleNodeConfig<>(
+                SampleNodeConfig.DEFAULT_START_PORT + 100, FIRST_NODE_ID, NUM_NODES);
+        List<JSONMessenger<Integer>> chainMessengers = startMessengers(chainNodes);
+        List<ChainManager<Integer>> chains = new ArrayList<>();
+        for (int i = 0; i < NUM_NODES; i++) {
+            chains.add(new ChainManager<>(FIRST_NODE_ID + i, chainNodes,
+                    chainMessengers.get(i), new NoopBenchmarkApp(), null, true));
+            chains.get(i).createReplicatedChainForcibly(GROUP, 0, group, null, "");
+        }
+        double chain = run("ChainManager", (request, callback) ->
+                chains.get(0).propose(GROUP, request, callback),
+                durationSeconds, numOutstanding);
+        chains.forEach(ChainManager::close);
+
+        SampleNodeConfig<Integer> paxosNodes = new SampleNodeConfig<>(
+                SampleNodeConfig.DEFAULT_START_PORT + 200, FIRST_NODE_ID, NUM_NODES);
+        List<JSONMessenger<Integer>> paxosMessengers = startMessengers(paxosNodes);
+        String logFolder = Files.createTempDirectory("chainvspaxos").toString();
+        List<PaxosManager<Integer>> paxos = new ArrayList<>();
+        for (int i = 0; i < NUM_NODES; i++) {
+            paxos.add(new PaxosManager<>(FIRST_NODE_ID + i, paxosNodes,
+                    paxosMessengers.get(i), new NoopBenchmarkApp(), logFolder, true));
+            paxos.get(i).createPaxosInstance(GROUP, 0, group, null, "");
+        }
+        Thread.sleep(2000);
+        PaxosManager<Integer> coordinator = paxos.get(
+                paxos.get(0).getPaxosCoordinator(GROUP) - FIRST_NODE_ID);
+        double paxosThroughput = run("PaxosManager", (request, callback) ->
+                coordinator.propose(GROUP, request, callback),
+                durationSeconds, numOutstanding);
+        paxos.forEach(PaxosManager::close);
+
+        System.out.printf("ChainManager/PaxosManager throughput ratio: %.2f%n",
+                chain / paxosThroughput);
+        System.exit(0);
+    }
+}
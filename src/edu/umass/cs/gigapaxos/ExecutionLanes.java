@@ -0,0 +1,188 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Initial developer(s): V. Arun */
+package edu.umass.cs.gigapaxos;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+/**
+ * ExecutionLanes runs the app-facing work of paxos instances, i.e., executing
+ * committed decisions and checkpointing, off the threads that handle paxos
+ * messages. Each paxos instance, keyed by paxosID:version, gets its own
+ * serial lane, so tasks of the same instance run one at a time in submission
+ * order, while tasks of different instances run in parallel on a shared pool
+ * of threads. A lane exists only while it has
+ * pending tasks, so idle groups cost nothing.
+ * <p>
+ * Ordering across a group is preserved only if every task for that group is
+ * submitted while holding the lock of the corresponding paxos instance, which
+ * is what {@link PaxosInstanceStateMachine} does.
+ * <p>
+ * Backpressure: {@link #awaitBacklog(String)} blocks the caller while the
+ * group's lane has more than maxBacklog pending tasks. Callers must not hold
+ * the paxos instance or paxos manager locks while waiting, as lane tasks may
+ * need the latter in order to checkpoint.
+ */
+class ExecutionLanes {
+
+	private static class Lane {
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+		private boolean running = false;
+		private boolean cancelled = false;
+	}
+
+	private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+	private final ExecutorService executor;
+	private final int maxBacklog;
+
+	ExecutionLanes(int numThreads, int maxBacklog, final String name) {
+		assert (numThreads > 0 && maxBacklog > 0);
+		this.maxBacklog = maxBacklog;
+		this.executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = Executors.defaultThreadFactory()
+								.newThread(r);
+						thread.setName(name + ":"
+								+ ExecutionLanes.class.getSimpleName()
+								+ thread.threadId());
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Appends task to the lane of key and starts draining the lane if it
+	 * is not already being drained.
+	 *
+	 * @param key
+	 * @param task
+	 */
+	void submit(String key, Runnable task) {
+		while (true) {
+			Lane lane = this.lanes.computeIfAbsent(key, k -> new Lane());
+			synchronized (lane) {
+				// lost a race with removal of an emptied or cancelled lane
+				if (this.lanes.get(key) != lane)
+					continue;
+				lane.tasks.add(task);
+				if (lane.running)
+					return;
+				lane.running = true;
+			}
+			this.executor.execute(() -> this.drain(key, lane));
+			return;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return True if key has no pending or running tasks.
+	 */
+	boolean isIdle(String key) {
+		return !this.lanes.containsKey(key);
+	}
+
+	/**
+	 * Blocks while the lane of key has more than maxBacklog pending tasks.
+	 *
+	 * @param key
+	 */
+	void awaitBacklog(String key) {
+		this.await(key, this.maxBacklog);
+	}
+
+	/**
+	 * Blocks until all tasks submitted for key so far have finished. Must
+	 * not be invoked from a lane thread.
+	 *
+	 * @param key
+	 */
+	void awaitIdle(String key) {
+		this.await(key, 0);
+	}
+
+	/**
+	 * Drops the pending tasks of key. A task that is already running is
+	 * allowed to finish.
+	 *
+	 * @param key
+	 */
+	void cancel(String key) {
+		Lane lane = this.lanes.remove(key);
+		if (lane != null)
+			synchronized (lane) {
+				lane.cancelled = true;
+				lane.tasks.clear();
+				lane.notifyAll();
+			}
+	}
+
+	void close() {
+		this.executor.shutdownNow();
+	}
+
+	private void await(String key, int backlog) {
+		Lane lane = this.lanes.get(key);
+		if (lane == null)
+			return;
+		synchronized (lane) {
+			// a running lane counts as a backlog of one
+			while (!lane.cancelled
+					&& lane.tasks.size() + (lane.running ? 1 : 0) > backlog
+					&& !this.executor.isShutdown())
+				try {
+					lane.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+		}
+	}
+
+	private void drain(String key, Lane lane) {
+		while (true) {
+			Runnable task;
+			synchronized (lane) {
+				task = lane.tasks.poll();
+				if (task == null) {
+					lane.running = false;
+					if (!lane.cancelled)
+						this.lanes.remove(key, lane);
+					lane.notifyAll();
+					return;
+				}
+				// wake up backpressured submitters
+				if (lane.tasks.size() < this.maxBacklog)
+					lane.notifyAll();
+			}
+			try {
+				task.run();
+			} catch (Exception | Error e) {
+				// must not kill the lane
+				PaxosConfig.log.log(Level.SEVERE,
+						"{0} encountered exception in execution lane of {1}: {2}",
+						new Object[] { this, key, e });
+				e.printStackTrace();
+			}
+		}
+	}
+}
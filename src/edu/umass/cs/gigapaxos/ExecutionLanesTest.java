@@ -0,0 +1,136 @@
+package edu.umass.cs.gigapaxos;
+
+import edu.umass.cs.utils.DefaultTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class ExecutionLanesTest extends DefaultTest {
+
+	/**
+	 * Tasks of the same lane run in submission order and never concurrently.
+	 */
+	@Test
+	public void test_PerLaneOrder() {
+		ExecutionLanes lanes = new ExecutionLanes(4, 1000, "test");
+		int numLanes = 8, numTasks = 500;
+		List<List<Integer>> executed = new ArrayList<List<Integer>>();
+		List<AtomicInteger> running = new ArrayList<AtomicInteger>();
+		AtomicInteger violations = new AtomicInteger(0);
+		for (int i = 0; i < numLanes; i++) {
+			executed.add(Collections.synchronizedList(new ArrayList<Integer>()));
+			running.add(new AtomicInteger(0));
+		}
+		for (int j = 0; j < numTasks; j++)
+			for (int i = 0; i < numLanes; i++) {
+				final int lane = i, task = j;
+				lanes.submit("lane" + lane, () -> {
+					if (running.get(lane).incrementAndGet() > 1)
+						violations.incrementAndGet();
+					executed.get(lane).add(task);
+					running.get(lane).decrementAndGet();
+				});
+			}
+		for (int i = 0; i < numLanes; i++) {
+			lanes.awaitIdle("lane" + i);
+			Assert.assertTrue(lanes.isIdle("lane" + i));
+			Assert.assertEquals(numTasks, executed.get(i).size());
+			for (int j = 0; j < numTasks; j++)
+				Assert.assertEquals(j, executed.get(i).get(j).intValue());
+		}
+		Assert.assertEquals(0, violations.get());
+		lanes.close();
+	}
+
+	/**
+	 * A blocked lane does not hold up other lanes.
+	 */
+	@Test
+	public void test_LanesIndependent() throws InterruptedException {
+		ExecutionLanes lanes = new ExecutionLanes(2, 1000, "test");
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch other = new CountDownLatch(1);
+		lanes.submit("slow", () -> {
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		lanes.submit("fast", other::countDown);
+		Assert.assertTrue(other.await(5, TimeUnit.SECONDS));
+		Assert.assertFalse(lanes.isIdle("slow"));
+		blocker.countDown();
+		lanes.awaitIdle("slow");
+		Assert.assertTrue(lanes.isIdle("slow"));
+		lanes.close();
+	}
+
+	/**
+	 * awaitBacklog blocks only while the backlog exceeds the bound.
+	 */
+	@Test
+	public void test_Backpressure() throws InterruptedException {
+		int maxBacklog = 4;
+		ExecutionLanes lanes = new ExecutionLanes(1, maxBacklog, "test");
+		CountDownLatch blocker = new CountDownLatch(1);
+		lanes.submit("lane", () -> {
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		for (int i = 0; i < maxBacklog; i++)
+			lanes.submit("lane", () -> {
+			});
+		CountDownLatch released = new CountDownLatch(1);
+		Thread waiter = new Thread(() -> {
+			lanes.awaitBacklog("lane");
+			released.countDown();
+		});
+		waiter.start();
+		Assert.assertFalse(released.await(200, TimeUnit.MILLISECONDS));
+		blocker.countDown();
+		Assert.assertTrue(released.await(5, TimeUnit.SECONDS));
+		lanes.close();
+	}
+
+	/**
+	 * Cancel drops pending tasks and releases waiters.
+	 */
+	@Test
+	public void test_Cancel() throws InterruptedException {
+		ExecutionLanes lanes = new ExecutionLanes(1, 1000, "test");
+		CountDownLatch blocker = new CountDownLatch(1);
+		AtomicInteger count = new AtomicInteger(0);
+		lanes.submit("lane", () -> {
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		for (int i = 0; i < 10; i++)
+			lanes.submit("lane", count::incrementAndGet);
+		lanes.cancel("lane");
+		Assert.assertTrue(lanes.isIdle("lane"));
+		lanes.awaitIdle("lane");
+		blocker.countDown();
+		// a new lane for the same key starts afresh
+		CountDownLatch done = new CountDownLatch(1);
+		lanes.submit("lane", done::countDown);
+		Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, count.get());
+		lanes.close();
+	}
+}
@@ -20,7 +20,7 @@ package edu.umass.cs.gigapaxos;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -38,6 +38,7 @@ import edu.umass.cs.gigapaxos.paxospackets.PreparePacket;
 import edu.umass.cs.gigapaxos.paxospackets.PrepareReplyPacket;
 import edu.umass.cs.gigapaxos.paxospackets.ProposalPacket;
 import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.gigapaxos.paxospackets.SyncDecisionsPacket;
 import edu.umass.cs.gigapaxos.paxosutil.Ballot;
 import edu.umass.cs.gigapaxos.paxosutil.HotRestoreInfo;
 import edu.umass.cs.utils.Util;
@@ -216,14 +217,6 @@ protected static enum STATES {
 		return this.committedRequests.get(slot);
 	}
 	
-	protected Set<PValuePacket> getCommitted(Collection<Integer> slots) {
-		Set<PValuePacket> decisions = new HashSet<PValuePacket>();
-		for (Integer slot : slots)
-			if (this.committedRequests.containsKey(slot))
-				decisions.add(this.committedRequests.get(slot));
-		return decisions;
-	}
-
 	// there must be no putSlot and putBallot methods
 
 	/*
@@ -402,26 +395,54 @@ protected static enum STATES {
 	 * they are synchronized.
 	 */
 
-	protected synchronized ArrayList<Integer> getMissingCommittedSlots(
-			int sizeLimit) {
+	/* Returns the missing commits between the expected slot and the maximum
+	 * committed slot as the first and last slots of at most maxRanges ranges.
+	 * This takes time proportional to the number of out-of-order commits in
+	 * memory, not to the size of the gap. */
+	protected synchronized ArrayList<Integer> getMissingCommittedRanges(
+			int maxRanges) {
 		if (this.isStopped())
 			return null;
 
-		// if(this.committedRequests.isEmpty()) return null;
 		ArrayList<Integer> missing = new ArrayList<Integer>();
-		int maxCommittedSlot = getMaxCommittedSlot();
-		int limitSlot = this.getSlot() + sizeLimit;
-		// comparator should be wraparound-aware
-		for (int i = this.getSlot(); (i - maxCommittedSlot < 0)
-				&& (i - limitSlot < 0); i++)
-			// no commit or meta-commit without accept
-			if (!this.committedRequests.containsKey(i)
-					|| (!this.committedRequests.get(i).hasRequestValue() && !this.acceptedProposals
-							.containsKey(i)))
-				missing.add(i);
+		int slot = this.getSlot();
+		int gap = getMaxCommittedSlot() - slot;
+		// wraparound-aware offsets from slot of commits that are not missing
+		int[] present = new int[this.committedRequests.size()];
+		int n = 0;
+		for (Map.Entry<Integer, PValuePacket> entry : this.committedRequests
+				.entrySet()) {
+			int offset = entry.getKey() - slot;
+			// no commit or meta-commit without accept is missing
+			if (offset >= 0
+					&& offset < gap
+					&& (entry.getValue().hasRequestValue() || this.acceptedProposals
+							.containsKey(entry.getKey())))
+				present[n++] = offset;
+		}
+		Arrays.sort(present, 0, n);
+		int next = 0; // first offset not known to be present
+		for (int i = 0; i <= n && missing.size() < 2 * maxRanges; i++) {
+			int end = i < n ? present[i] : gap; // exclusive
+			if (end > next) {
+				missing.add(slot + next);
+				missing.add(slot + end - 1);
+			}
+			next = end + 1;
+		}
 		return missing; // in sorted order
 	}
 
+	/* Returns the commits in memory that the sender of sync is missing. */
+	protected synchronized Set<PValuePacket> getCommitted(
+			SyncDecisionsPacket sync) {
+		Set<PValuePacket> decisions = new HashSet<PValuePacket>();
+		for (PValuePacket decision : this.committedRequests.values())
+			if (sync.isMissing(decision.slot))
+				decisions.add(decision);
+		return decisions;
+	}
+
 	protected synchronized int getMaxCommittedSlot() {
 		if (this.isStopped() || this.committedRequests.isEmpty())
 			return this.getSlot() - 1;
@@ -44,7 +44,7 @@ import edu.umass.cs.reconfiguration.interfaces.ReconfigurableNodeConfig;
 import edu.umass.cs.reconfiguration.interfaces.ReplicableRequest;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DiskMap;
-import edu.umass.cs.utils.MultiArrayMap;
+import edu.umass.cs.utils.OffHeapHashMap;
 import edu.umass.cs.utils.Util;
 
 /**
@@ -257,8 +257,14 @@ public class PaxosConfig {
 		COMPRESSION_THRESHOLD(4 * 1024 * 1024),
 
 		/**
-		 * The default size of the {@link MultiArrayMap} used to store paxos
-		 * instances.
+		 * The expected maximum number of active paxos instances in the
+		 * {@link OffHeapHashMap} used to store them. Idle instances are paused
+		 * more aggressively once the map holds more than half as many.
+		 * <p>
+		 * The map keeps its table off-heap to spare the garbage collector, at
+		 * the cost of more memory in total than the on-heap map it replaced:
+		 * about 4MB of heap plus 16MB off-heap per million instances versus
+		 * 13MB of heap, so -XX:MaxDirectMemorySize must allow for it.
 		 */
 		PINSTANCES_CAPACITY(2000000), // 2M
 		/**
@@ -396,6 +402,15 @@ public class PaxosConfig {
 		 */
 		DISABLE_SYNC_DECISIONS(false),
 
+		/**
+		 * Maximum number of decisions sent in response to a single sync
+		 * decisions request. A lagging replica requests the rest after it has
+		 * caught up with these unless they are from before the last checkpoint
+		 * and too many in number, in which case it gets the checkpoint
+		 * instead.
+		 */
+		MAX_SYNC_DECISIONS_BATCH(4000),
+
 		/**
 		 * Maximum number of batched requests. Setting it to infinity means that
 		 * the log message size will still limit it.
@@ -421,6 +436,16 @@ public class PaxosConfig {
 		 */
 		PACKET_DEMULTIPLEXER_THREADS(4),
 
+		/**
+		 * If true, packet demultiplexers hash each message's group key
+		 * (paxosID, chainID, or service name) to one of
+		 * {@link #PACKET_DEMULTIPLEXER_THREADS} fixed threads, so that
+		 * messages of the same group are handled in FIFO order by the same
+		 * thread instead of contending for the paxos instance across all
+		 * threads. Messages without a group key still use the shared pool.
+		 */
+		KEY_AFFINE_DEMULTIPLEXER(false),
+
 		/**
 		 * Whether request order is preserved for requests sent by the same
 		 * replica and committed by the same coordinator.
@@ -446,6 +471,28 @@ public class PaxosConfig {
 		 */
 		EXECUTE_UPON_ACCEPT(false),
 
+		/**
+		 * If true, committed decisions are executed (and checkpoints taken)
+		 * asynchronously in a per-paxosID ordered lane instead of inline on
+		 * the thread that delivered the commit while holding the paxos
+		 * instance lock. A slow app execute then only holds up its own group
+		 * instead of every group sharing the demultiplexer thread.
+		 */
+		ENABLE_EXECUTION_LANES(false),
+
+		/**
+		 * Number of threads shared by all execution lanes if
+		 * {@link #ENABLE_EXECUTION_LANES} is true.
+		 */
+		EXECUTION_LANE_THREADS(16),
+
+		/**
+		 * Maximum number of decisions that may be pending in a single
+		 * execution lane. Message processing for a paxos group blocks when its
+		 * lane's backlog exceeds this bound until the backlog drains.
+		 */
+		MAX_EXECUTION_LANE_BACKLOG(256),
+
 		/**
 		 * Also used for testing. Lazily propagates requests to other replicas
 		 * when emulating unreplicated execution mode.
@@ -714,6 +761,31 @@ public class PaxosConfig {
 		 */
 		PAUSE_BATCH_SIZE(1000),
 
+		/**
+		 * If true, paused instances are stored in a memory-mapped
+		 * {@link edu.umass.cs.gigapaxos.paxosutil.PauseStore} file in the log
+		 * directory, so that pausing and unpausing an instance is a hash table
+		 * lookup instead of a database update and query. Instances that do not
+		 * fit in the store are paused in the database as before. Only used
+		 * with {@link #USE_DISK_MAP}, which pages out log indexes on its own.
+		 */
+		PAUSE_STORE(true),
+
+		/**
+		 * Number of slots in the {@link #PAUSE_STORE} file, of which at most
+		 * 3/4 are used. The file is sparse, so disk space is only used for the
+		 * pages that hold paused instances.
+		 */
+		PAUSE_STORE_CAPACITY(4000000),
+
+		/**
+		 * Size in bytes of a slot in the {@link #PAUSE_STORE} file. Instances
+		 * whose binary encoded paused state does not fit in a slot, e.g.,
+		 * because of very long names or large groups, are paused in the
+		 * database instead.
+		 */
+		PAUSE_STORE_RECORD_SIZE(256),
+
 		/**
 		 * 
 		 */
@@ -760,6 +832,15 @@ public class PaxosConfig {
 		 */
 		MAX_DB_BATCH_SIZE(10000),
 
+		/**
+		 * Number of prepared statements cached by the connection pool for
+		 * each database connection so that the database does not parse and
+		 * compile frequently used statements, e.g., those for checkpoints,
+		 * garbage collection, and unpausing, every time they are executed. 0
+		 * disables the cache.
+		 */
+		STATEMENT_CACHE_SIZE(64),
+
 		/**
 		 * Number of milliseconds after which
 		 * {@link edu.umass.cs.gigapaxos.interfaces.Replicable#execute(edu.umass.cs.gigapaxos.interfaces.Request)}
@@ -778,17 +859,21 @@ public class PaxosConfig {
 		/**
 		 * Broadcast requests at entry replica and use digests in accepts. This
 		 * makes a noticeable difference only when the number of groups is small
-		 * (like 1 or 2). For more groups, the reordering effects seem to hurt
-		 * more than help.
+		 * (like 1 or 2) or when requests are large. For more groups and small
+		 * requests, the reordering effects seem to hurt more than help.
+		 * 
+		 * An acceptor that receives a digested accept before the broadcast
+		 * request fetches the request from the coordinator after
+		 * {@link #DIGEST_FETCH_TIMEOUT}. An acceptor accepts only after it has
+		 * the request, so the request survives as long as any accept does.
 		 * 
-		 * Disabled by default. May have liveness problems if no alive server
-		 * has a copy of the original request unless requests broadcast by
-		 * entry replica are logged.
+		 * Disabled by default.
 		 */
 		DIGEST_REQUESTS(false),
 
 		/**
-		 * Number of active groups up to which digesting is done. Digests seem
+		 * Number of active groups up to which digesting is done for requests
+		 * smaller than {@link #DIGEST_THRESHOLD_SIZE}. Digests seem
 		 * to hurt with many groups probably because the cost more than offsets
 		 * the benefit. With many groups, the coordinator load balancing benefit
 		 * of digests is negligible. The main benefit is that they save one
@@ -836,17 +921,23 @@ public class PaxosConfig {
 		/**
 		 * 
 		 */
-		NUM_MESSAGE_DIGESTS(5),
+		DEBUG_MONITOR(0),
 
 		/**
-		 * 
+		 * Time in milliseconds after which a digested accept whose request
+		 * body has not arrived is discarded. Also refer to
+		 * {@link #DIGEST_FETCH_TIMEOUT}.
 		 */
-		DEBUG_MONITOR(0),
+		ACCEPT_TIMEOUT(Config.getGlobalInt(FAILURE_DETECTION_TIMEOUT)),
 
 		/**
-		 * 
+		 * Time in milliseconds that a digested accept waits for the request
+		 * body broadcast by the entry replica before the body is fetched from
+		 * the accept's coordinator. The broadcast body is usually already in
+		 * flight when the digested accept arrives, so fetching it right away
+		 * would often send it twice.
 		 */
-		ACCEPT_TIMEOUT(Config.getGlobalInt(FAILURE_DETECTION_TIMEOUT)),
+		DIGEST_FETCH_TIMEOUT(20),
 
 		/**
 		 * 
@@ -859,13 +950,72 @@ public class PaxosConfig {
 		 */
 		MIN_PP_BATCH_SIZE(3),
 
+		/**
+		 * Maximum time in milliseconds for which
+		 * {@link PaxosPacketBatcher} holds paxos packets headed to a
+		 * destination in order to send them in fewer messages. The hold time
+		 * for a destination is the smaller of this value and
+		 * {@link #PP_BATCH_RTT_FRACTION} of the RTT to the destination, and
+		 * packets are not held at all if more are not expected to arrive
+		 * within the hold time. 0 means packets are sent as soon as the
+		 * batcher is free.
+		 */
+		PP_BATCH_MAX_DELAY(1.0),
+
+		/**
+		 * Fraction of the RTT to a destination for which
+		 * {@link PaxosPacketBatcher} may hold paxos packets. Also refer to
+		 * {@link #PP_BATCH_MAX_DELAY}.
+		 */
+		PP_BATCH_RTT_FRACTION(0.1),
+
+		/**
+		 * If true, the coordinator sends each accept only to itself and the
+		 * members with the lowest RTTs as estimated by
+		 * {@link edu.umass.cs.nio.nioutils.RTTEstimator} that together form a
+		 * phase-2 quorum, and sends it to the remaining members only if the
+		 * accept is not committed within {@link #THRIFTY_TIMEOUT}. The
+		 * remaining members get the full decision instead. Every 64th accept
+		 * as well as any accept for which some chosen member's RTT is not yet
+		 * known still goes to all members, so RTT estimates and checkpointed
+		 * slots of all members keep getting refreshed. This saves WAN
+		 * bandwidth in geo-distributed groups.
+		 *
+		 * Disabled by default.
+		 */
+		THRIFTY_ACCEPTS(false),
+
+		/**
+		 * Minimum time in milliseconds for which a thrifty accept waits to be
+		 * committed before it is sent to all members. The actual wait is the
+		 * larger of this value and twice the RTT to the slowest member the
+		 * accept was sent to. Also refer to {@link #THRIFTY_ACCEPTS}.
+		 */
+		THRIFTY_TIMEOUT(20),
+
+		/**
+		 * Number of accept replies, including the coordinator's own, needed to
+		 * commit a proposal, i.e., the phase-2 quorum size. The phase-1
+		 * (prepare) quorum is then the larger of a majority and the smallest
+		 * size that intersects every phase-2 quorum as in Flexible Paxos, so a
+		 * phase-2 quorum smaller than a majority makes commits faster at the
+		 * cost of coordinator changes needing more prepare replies and
+		 * tolerating fewer failures. 0 or a value larger than the group size
+		 * means a majority (or all members respectively).
+		 */
+		PHASE2_QUORUM_SIZE(0),
+
 		/**
 		 * 
 		 */
 		LOG_DISKMAP_CAPACITY(Config.getGlobalInt(PINSTANCES_CAPACITY)),
 
 		/**
-		 * 
+		 * Minimum request size in characters beyond which requests are
+		 * digested with {@link #DIGEST_REQUESTS} enabled irrespective of
+		 * {@link #DIGEST_THRESHOLD}. For such requests, the savings of not
+		 * sending the request body in each accept far outweigh the cost of the
+		 * extra message.
 		 */
 		DIGEST_THRESHOLD_SIZE(512),
 
@@ -874,6 +1024,49 @@ public class PaxosConfig {
 		 */
 		BLOCKING_CHECKPOINT(false),
 
+		/**
+		 * Size in bytes of the ranges in which
+		 * {@link edu.umass.cs.gigapaxos.paxosutil.LargeCheckpointer} fetches
+		 * remote checkpoint files. Each range is checksummed and fetched in a
+		 * separate connection, and ranges already fetched are not fetched
+		 * again if a failed fetch is retried.
+		 */
+		LARGE_CHECKPOINT_CHUNK_SIZE(64 * 1024 * 1024),
+
+		/**
+		 * Number of ranges of a remote checkpoint file that
+		 * {@link edu.umass.cs.gigapaxos.paxosutil.LargeCheckpointer} fetches
+		 * in parallel.
+		 */
+		LARGE_CHECKPOINT_FETCH_THREADS(4),
+
+		/**
+		 * Time in milliseconds after which a large checkpoint connection
+		 * attempt or a read that makes no progress is given up.
+		 */
+		LARGE_CHECKPOINT_TIMEOUT(30000),
+
+		/**
+		 * Number of times a range of a large checkpoint file is retried after
+		 * a failed or corrupted fetch.
+		 */
+		LARGE_CHECKPOINT_RETRIES(3),
+
+		/**
+		 * Fraction of requests whose stages, from HTTP ingress to the reply,
+		 * are timestamped by
+		 * {@link edu.umass.cs.gigapaxos.paxosutil.RequestTracer}. Requests are
+		 * sampled by their request ID, so every node traces the same requests.
+		 * Zero disables tracing.
+		 */
+		TRACE_SAMPLING_RATE(0.0),
+
+		/**
+		 * Number of most recently finished traces kept by
+		 * {@link edu.umass.cs.gigapaxos.paxosutil.RequestTracer}.
+		 */
+		TRACE_BUFFER_SIZE(1024),
+
 		/**
 		 * True means we garbage collect accepts up to the slot that a majority
 		 * have executed; otherwise up to the slot that a majority have
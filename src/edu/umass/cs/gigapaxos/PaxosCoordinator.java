@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
 import edu.umass.cs.gigapaxos.paxospackets.AcceptPacket;
 import edu.umass.cs.gigapaxos.paxospackets.AcceptReplyPacket;
 import edu.umass.cs.gigapaxos.paxospackets.PValuePacket;
@@ -29,6 +30,7 @@ import edu.umass.cs.gigapaxos.paxospackets.ProposalPacket;
 import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
 import edu.umass.cs.gigapaxos.paxosutil.Ballot;
 import edu.umass.cs.gigapaxos.paxosutil.HotRestoreInfo;
+import edu.umass.cs.utils.Config;
 
 /**
  * @author V. Arun
@@ -347,6 +349,58 @@ protected abstract void setNodeSlots(int[] nodeSlots);
 		return c != null ? c.reissueAcceptIfWaitingTooLong(slot) : null;
 	}
 
+	private static final int PHASE2_QUORUM_SIZE = Config
+			.getGlobalInt(PC.PHASE2_QUORUM_SIZE);
+
+	/*
+	 * Number of accept replies needed to commit a proposal in a group of size
+	 * n, a majority unless configured otherwise.
+	 */
+	protected static int getPhase2QuorumSize(int n) {
+		return PHASE2_QUORUM_SIZE > 0 ? Math.min(PHASE2_QUORUM_SIZE, n)
+				: n / 2 + 1;
+	}
+
+	/*
+	 * Number of prepare replies needed to become active in a group of size n.
+	 * It must intersect every phase-2 quorum for safety and is never smaller
+	 * than a majority as garbage collection of accepts relies on majorities.
+	 */
+	protected static int getPhase1QuorumSize(int n) {
+		return Math.max(n / 2 + 1, n - getPhase2QuorumSize(n) + 1);
+	}
+
+	protected abstract void setSkipped(int slot, int[] skipped);
+
+	protected abstract int[] getSkipped(int slot);
+
+	protected abstract int[] expandAccept(int slot);
+
+	protected abstract long getAcceptWaitTime(int slot);
+
+	protected static void setSkipped(PaxosCoordinator c, int slot,
+			int[] skipped) {
+		if (c != null)
+			c.setSkipped(slot, skipped);
+	}
+
+	protected static int[] getSkipped(PaxosCoordinator c, int slot) {
+		return c != null ? c.getSkipped(slot) : null;
+	}
+
+	/*
+	 * Returns the members that the accept was not sent to if the accept is
+	 * still waiting to be committed in the same ballot, else null.
+	 */
+	protected static int[] expandAccept(PaxosCoordinator c, AcceptPacket accept) {
+		return c != null && c.getBallot().equals(accept.ballot) ? c
+				.expandAccept(accept.slot) : null;
+	}
+
+	protected static long getAcceptWaitTime(PaxosCoordinator c, int slot) {
+		return c != null ? c.getAcceptWaitTime(slot) : -1;
+	}
+
 	protected abstract boolean ranRecently();
 	
 	
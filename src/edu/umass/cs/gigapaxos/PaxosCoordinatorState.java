@@ -149,6 +149,8 @@ public class PaxosCoordinatorState extends PaxosCoordinator {
 	private class ProposalStateAtCoordinator {
 		final PValuePacket pValuePacket;
 		final WaitforUtility waitfor;
+		// members not sent the accept yet with thrifty accepts
+		int[] skipped = null;
 
 		ProposalStateAtCoordinator(int[] members, PValuePacket pvalue) {
 			this.pValuePacket = new PValuePacket(new Ballot(myBallotNum,
@@ -366,7 +368,7 @@ public class PaxosCoordinatorState extends PaxosCoordinator {
 		waitforMyBallot.updateHeardFrom(prepareReply.acceptor);
 		log.log(Level.FINEST, "{0} waitfor = {1}", new Object[] {
 				this, waitforMyBallot });
-		if (this.waitforMyBallot.heardFromMajority()) {
+		if (this.waitforMyBallot.heardFromQuorum(getPhase1QuorumSize(members.length))) {
 			acceptedByMajority = true;
 			log.log(Level.FINE,
 					"{0}:{1} coordinator {2} acquired PREPARE majority {3} " +
@@ -624,7 +626,8 @@ private boolean isDuplicate(ProposalStateAtCoordinator psac,
 							waitfor,
 							pstate.pValuePacket.getSummary(log
 									.isLoggable(Level.FINEST)) });
-			if (waitfor.heardFromMajority()) {
+			if (waitfor.heardFromQuorum(getPhase2QuorumSize(waitfor
+					.getMembers().length))) {
 				// phase2b success
 				acceptedByMajority = true;
 				decision = (pstate.pValuePacket
@@ -744,11 +747,41 @@ private boolean isDuplicate(ProposalStateAtCoordinator psac,
 	}
 
 	protected synchronized AcceptPacket reInitCommander(int slot) {
+		// the reissued accept goes to all members
+		this.myProposals.get(slot).skipped = null;
 		return // this.testAndSetWaitingTooLong(slot) ?
 		this.initCommander(this.myProposals.get(slot));
 		// : null;
 	}
 
+	protected synchronized void setSkipped(int slot, int[] skipped) {
+		ProposalStateAtCoordinator psac = this.myProposals.get(slot);
+		if (psac != null)
+			psac.skipped = skipped;
+	}
+
+	protected synchronized int[] getSkipped(int slot) {
+		ProposalStateAtCoordinator psac = this.myProposals.get(slot);
+		return psac != null ? psac.skipped : null;
+	}
+
+	// returns and clears the skipped members if still commandering slot
+	protected synchronized int[] expandAccept(int slot) {
+		ProposalStateAtCoordinator psac = this.myProposals.get(slot);
+		int[] skipped = null;
+		if (this.isActive() && psac != null) {
+			skipped = psac.skipped;
+			psac.skipped = null;
+		}
+		return skipped;
+	}
+
+	// time in ms since the accept for slot was last issued, or -1
+	protected synchronized long getAcceptWaitTime(int slot) {
+		ProposalStateAtCoordinator psac = this.myProposals.get(slot);
+		return psac != null ? psac.waitfor.waitTime() : -1;
+	}
+
 	protected boolean ranRecently() {
 		WaitforUtility waitfor = this.waitforMyBallot;
 		return waitfor != null
@@ -53,6 +53,7 @@ import edu.umass.cs.gigapaxos.paxosutil.MessagingTask;
 import edu.umass.cs.gigapaxos.paxosutil.PaxosInstanceCreationException;
 import edu.umass.cs.gigapaxos.paxosutil.PrepareReplyAssembler;
 import edu.umass.cs.gigapaxos.paxosutil.RequestInstrumenter;
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
 import edu.umass.cs.gigapaxos.paxosutil.SlotBallotState;
 import edu.umass.cs.gigapaxos.testing.TESTPaxosApp;
 import edu.umass.cs.gigapaxos.testing.TESTPaxosConfig.TC;
@@ -336,6 +337,9 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
     protected boolean kill(boolean clean) {
         // paxosState must be typically already stopped here
         this.forceStop();
+        // drop decisions pending execution, if any
+        if (this.paxosManager.getExecutionLanes() != null)
+            this.paxosManager.getExecutionLanes().cancel(this.getPaxosIDVersion());
         if (clean // clean kill implies reset app state
                 && this.nullifyAppState(this.getPaxosID(), null)
                 // and remove database state
@@ -791,13 +795,11 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
         }
 
         // multicast to others if digests enabled
-        MessagingTask mtask = (this.paxosManager.shouldDigest()
+        MessagingTask mtask = (this.paxosManager.shouldDigest(request)
                 && request.getEntryReplica() == this.getMyID() && request
                 .shouldBroadcast()) ? new MessagingTask(
                 this.otherGroupMembers(), request
-                .setDigest(
-                        request.getDigest(this.paxosManager
-                                .getMessageDigest())).setBroadcasted())
+                .setDigest(request.getDigest()).setBroadcasted())
                 : null;
 
         return MessagingTask.combine(mtask, handleProposal(request));
@@ -845,7 +847,8 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
                 if (proposal.isBroadcasted())
                     multicastAccept = this.paxosManager.digest(multicastAccept);
                 mtasks[0] = multicastAccept != null ? new MessagingTask(
-                        this.groupMembers, multicastAccept) : null; // multicast
+                        this.getAcceptRecipients(multicastAccept),
+                        multicastAccept) : null; // multicast
                 RequestInstrumenter.sent(multicastAccept, this.getMyID(), -1);
                 log.log(Level.FINER,
                         "{0} issuing accept {1} ",
@@ -1063,7 +1066,9 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
             } else
                 log.log(Level.FINER, "{0} received matching accept for {1}",
                         new Object[]{this, accept.getSummary()});
-        }
+        } else if (DIGEST_REQUESTS)
+            // undigested accept fetched or sent without digesting
+            this.paxosManager.unpend(accept);
 
         // DelayProfiler.updateCount("C_ACCEPTS_RCVD", accept.batchSize()+1);
         assert (accept.hasRequestValue());
@@ -1198,6 +1203,76 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
     private void garbageCollectAccepted(int gcSlot) {
     }
 
+    private static final boolean THRIFTY_ACCEPTS = Config
+            .getGlobalBoolean(PC.THRIFTY_ACCEPTS);
+    private static final long THRIFTY_TIMEOUT = Config
+            .getGlobalLong(PC.THRIFTY_TIMEOUT);
+    // accepts for slots that are multiples of this go to all members
+    private static final int THRIFTY_REFRESH_INTERVAL = 64;
+
+    /* Returns the members that the accept should be sent to. With thrifty
+     * accepts, these are this coordinator and the lowest-RTT members that
+     * together form a phase-2 quorum. The accept is sent to the remaining
+     * members if it is not committed within the thrifty timeout, and they are
+     * sent the full decision otherwise. */
+    private int[] getAcceptRecipients(AcceptPacket accept) {
+        int quorumSize = PaxosCoordinator
+                .getPhase2QuorumSize(this.groupMembers.length);
+        if (!THRIFTY_ACCEPTS || quorumSize >= this.groupMembers.length
+                || accept.slot % THRIFTY_REFRESH_INTERVAL == 0)
+            return this.groupMembers;
+
+        Integer[] others = new Integer[this.groupMembers.length - 1];
+        long[] rtts = new long[this.groupMembers.length];
+        for (int i = 0, j = 0; i < this.groupMembers.length; i++)
+            if (this.groupMembers[i] != this.getMyID()) {
+                others[j++] = i;
+                rtts[i] = this.paxosManager.getRTT(this.groupMembers[i]);
+            }
+        // unknown RTTs sort last
+        Arrays.sort(others, (i, j) -> Long.compare(
+                rtts[i] < 0 ? Long.MAX_VALUE : rtts[i],
+                rtts[j] < 0 ? Long.MAX_VALUE : rtts[j]));
+        long maxRTT = quorumSize > 1 ? rtts[others[quorumSize - 2]] : 0;
+        if (maxRTT < 0)
+            // all RTTs get known by sending some accepts to everyone
+            return this.groupMembers;
+
+        int[] recipients = new int[quorumSize];
+        int[] skipped = new int[this.groupMembers.length - quorumSize];
+        recipients[0] = this.getMyID();
+        for (int j = 0; j < others.length; j++)
+            if (j < quorumSize - 1)
+                recipients[j + 1] = this.groupMembers[others[j]];
+            else
+                skipped[j - quorumSize + 1] = this.groupMembers[others[j]];
+        PaxosCoordinator.setSkipped(this.coordinator, accept.slot, skipped);
+        this.paxosManager.schedule(() -> this.expandAccept(accept),
+                Math.max(THRIFTY_TIMEOUT, 2 * maxRTT));
+        return recipients;
+    }
+
+    // members other than the skipped ones
+    private int[] getAcceptRecipients(int[] skipped) {
+        int[] recipients = new int[this.groupMembers.length - skipped.length];
+        int i = 0;
+        for (int member : this.groupMembers)
+            if (!Util.contains(member, skipped))
+                recipients[i++] = member;
+        return recipients;
+    }
+
+    // sends a thrifty accept to the remaining members if not yet committed
+    private void expandAccept(AcceptPacket accept) {
+        int[] skipped = PaxosCoordinator.expandAccept(this.coordinator, accept);
+        if (skipped == null)
+            return;
+        log.log(Level.FINE, "{0} expanding thrifty accept {1} to {2}",
+                new Object[]{this, accept.getSummary(log.isLoggable(Level.FINE)),
+                        Arrays.toString(skipped)});
+        this.sendMessagingTask(new MessagingTask(skipped, accept));
+    }
+
     /* Phase2b Event: Received a reply to an accept request, i.e. to a request
      * to accept a proposal from the coordinator.
      *
@@ -1231,6 +1306,16 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
                     accept) : null;
         }
 
+        int[] skipped = null;
+        if (THRIFTY_ACCEPTS) {
+            long rtt = acceptReply.acceptor != this.getMyID() ? PaxosCoordinator
+                    .getAcceptWaitTime(this.coordinator, acceptReply.slotNumber) : -1;
+            if (rtt > 0)
+                this.paxosManager.recordRTT(acceptReply.acceptor, rtt);
+            skipped = PaxosCoordinator.getSkipped(this.coordinator,
+                    acceptReply.slotNumber);
+        }
+
         PValuePacket committedPValue = PaxosCoordinator.handleAcceptReply(
                 this.coordinator, this.groupMembers, acceptReply);
 
@@ -1245,9 +1330,15 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
         // could also call handleCommittedRequest below
         if (committedPValue.getType() == PaxosPacket.PaxosPacketType.DECISION) {
             committedPValue.addDebugInfo("d");
+            RequestTracer.record(committedPValue, RequestTracer.Stage.ACCEPT_QUORUM);
             // this.handleCommittedRequest(committedPValue);
-            multicastDecision = new MessagingTask(this.groupMembers,
+            multicastDecision = new MessagingTask(skipped == null ? this.groupMembers
+                    : this.getAcceptRecipients(skipped),
                     committedPValue); // inform everyone of the decision
+            if (skipped != null)
+                // members without the accept can not use a batched commit
+                this.sendMessagingTask(new MessagingTask(skipped,
+                        new PValuePacket(committedPValue).setNoCoalesce()));
             log.log(Level.FINE,
                     "{0} announcing decision {1}",
                     new Object[]{
@@ -1337,6 +1428,7 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 		ArrayList<MessagingTask> preempts = new ArrayList<MessagingTask>();
 		ArrayList<MessagingTask> decisions = new ArrayList<MessagingTask>();
 		ArrayList<MessagingTask> undigestedAccepts = new ArrayList<MessagingTask>();
+		ArrayList<MessagingTask> thriftyDecisions = new ArrayList<MessagingTask>();
 
 		Integer[] acceptedSlots = batchedAR.getAcceptedSlots();
 		// DelayProfiler.updateCount("BATCHED_ACCEPT_REPLIES", 1);
@@ -1359,7 +1451,9 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 			// good case
 				else if (((PaxosPacket) mtask.msgs[0]).getType().equals(
 						PaxosPacket.PaxosPacketType.DECISION))
-					decisions.add(mtask);
+					// thrifty decisions go to fewer members
+					(mtask.recipients == this.groupMembers ? decisions
+							: thriftyDecisions).add(mtask);
 			// undigested accept
 				else if (((PaxosPacket) mtask.msgs[0]).getType().equals(
 						PaxosPacket.PaxosPacketType.ACCEPT))
@@ -1376,10 +1470,11 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 		MessagingTask decisionsMTask = new MessagingTask(this.groupMembers,
 				decisionMsgs);
 
-		return MessagingTask.combine(
+		return MessagingTask.combine(MessagingTask.combine(
 				MessagingTask.combine(decisionsMTask,
 						preempts.toArray(new MessagingTask[0])),
-				undigestedAccepts.toArray(new MessagingTask[0]));
+				undigestedAccepts.toArray(new MessagingTask[0])),
+				thriftyDecisions.toArray(new MessagingTask[0]));
 	}
 
 	private static final boolean BATCHED_COMMITS = Config
@@ -1396,13 +1491,17 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 	private MessagingTask handleCommittedRequest(PValuePacket committed) {
 		assert (committed.getPaxosID() != null);
 		//RequestInstrumenter.received(committed, committed.ballot.coordinatorID,this.getMyID());
+		if (!committed.isRecovery())
+			RequestTracer.record(committed, RequestTracer.Stage.COMMIT);
 		if (instrument(!BATCHED_COMMITS)
 				&& committed.ballot.coordinatorID != this.getMyID())
 			DelayProfiler.updateCount("COMMITS", 1);
 
 		if (!committed.isCoalescable() && !committed.isRecovery()
 				&& committed.ballot.coordinatorID != getMyID())
-			log.log(Level.INFO, "{0} received syncd decision {1}",
+			// also the usual case for members skipped by thrifty accepts
+			log.log(THRIFTY_ACCEPTS ? Level.FINE : Level.INFO,
+					"{0} received syncd decision {1}",
 					new Object[] { this, committed.getSummary() });
 
 		PValuePacket correspondingAccept = null, metaDecision=null;
@@ -1585,6 +1684,8 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 		long methodEntryTime = System.currentTimeMillis();
 		int execCount = 0;
 		PValuePacket inorderDecision = null;
+		ExecutionLanes lanes = this.paxosManager.getExecutionLanes();
+		boolean submitted = false;
 		synchronized (this) {
 			if (this.paxosState.isStopped())
 				return null;
@@ -1603,6 +1704,20 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 							inorderDecision.getEntryTime());
 				updateRequestBatcher(inorderDecision, loggedDecision == null);
 
+				/* Hand off execution and checkpointing to this instance's
+				 * execution lane unless we are rolling forward an instance
+				 * with nothing pending in its lane, in which case executing
+				 * inline is equivalent and keeps recovery synchronous. */
+				if (lanes != null
+						&& !EXECUTE_UPON_ACCEPT
+						&& !(inorderDecision.isRecovery() && lanes
+								.isIdle(this.getPaxosIDVersion()))) {
+					this.submitToExecutionLane(lanes, inorderDecision);
+					submitted = true;
+					execCount++;
+					continue;
+				}
+
 				long t = System.currentTimeMillis();
 				/* Execute it until successful, we are *by design* stuck
 				 * otherwise. Execution must be atomic with extraction and
@@ -1658,12 +1773,94 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 				&& this.isStopped())
 			this.paxosManager.kill(this, true);
 
+		/* Backpressure if the lane is falling behind. We must not wait while
+		 * holding the paxos manager lock as lane tasks need it to checkpoint. */
+		if (submitted && !Thread.holdsLock(this.paxosManager))
+			lanes.awaitBacklog(this.getPaxosIDVersion());
+
 		if (loggedDecision != null && !loggedDecision.isRecovery())
 			instrumentDelay(toLog.EEC, methodEntryTime, execCount);
 		return loggedDecision != null && !loggedDecision.isRecovery() ? this
 				.syncLongDecisionGaps(loggedDecision) : null;
 	}
 
+	/* Same as the body of the extraction loop in EEC after extraction, but
+	 * run asynchronously in this instance's execution lane. Everything that
+	 * depends on the acceptor is read here while the caller holds the
+	 * instance lock, so the lane only touches the app and the logger. */
+	private void submitToExecutionLane(final ExecutionLanes lanes,
+			final PValuePacket decision) {
+		final String pid = this.getPaxosID();
+		final boolean checkpoint = shouldCheckpoint(decision)
+				&& !decision.isRecovery();
+		final Ballot ballot = this.paxosState.getBallot();
+		final int gcSlot = this.paxosState.getGCSlot();
+		final Set<String> members = checkpoint ? this.paxosManager
+				.getStringNodesFromIntArray(this.groupMembers) : null;
+		final PaxosInstanceStateMachine pism = this;
+		lanes.submit(this.getPaxosIDVersion(), new Runnable() {
+			@Override
+			public void run() {
+				long t = System.currentTimeMillis();
+				if (!execute(pism, pism.paxosManager, pism.getApp(), decision,
+						decision.isRecovery(), false)) {
+					// unclean kill
+					pism.forceStop();
+					lanes.cancel(pism.getPaxosIDVersion());
+					return;
+				}
+
+				if (instrument(EXECUTION_LATENCY_SAMPLING))
+					DelayProfiler.updateDelay(AbstractPaxosLogger.appName
+							+ ".execute", t, decision.batchSize() + 1);
+
+				if (checkpoint)
+					consistentCheckpoint(pism, decision.isStopRequest(), pid,
+							pism.getVersion(), members, decision.slot, ballot,
+							null, gcSlot);
+
+				if (decision.isStopRequest()
+						&& pism.paxosManager.getPaxosLogger()
+								.copyEpochFinalCheckpointState(pid,
+										pism.getVersion())
+						&& pism.logStop(decision.getEntryTime()))
+					pism.paxosManager.kill(pism, true);
+			}
+		});
+	}
+
+	/* Queues a checkpoint at slot behind the pending executions in the lane.
+	 * If state is non-null, the app is first restored to state as in
+	 * handleCheckpoint, else the checkpoint is of the app's current state. */
+	private void submitCheckpointToExecutionLane(final ExecutionLanes lanes,
+			final boolean isStop, final int slot, final Ballot ballot,
+			final String state) {
+		final String pid = this.getPaxosID();
+		final Set<String> members = this.paxosManager
+				.getStringNodesFromIntArray(this.groupMembers);
+		final int gcSlot = this.paxosState.getGCSlot();
+		final PaxosInstanceStateMachine pism = this;
+		lanes.submit(this.getPaxosIDVersion(), new Runnable() {
+			@Override
+			public void run() {
+				if (state != null) {
+					int retries = 0;
+					while (!pism.restore(state))
+						if (++retries > RETRY_LIMIT || !waitRetry(RETRY_TIMEOUT)) {
+							log.severe(pism + " unable to restore state at slot "
+									+ slot);
+							// unclean kill
+							pism.forceStop();
+							lanes.cancel(pism.getPaxosIDVersion());
+							return;
+						}
+				}
+				consistentCheckpoint(pism, isStop, pid, pism.getVersion(),
+						members, slot, ballot, state, gcSlot);
+			}
+		});
+	}
+
 	/* This method synchronizes over paxosManager because otherwise we have no
 	 * way of ensuring that a stopped paxos instance does not go ahead and
 	 * overwrite a higher version checkpoint. An alternative to implement this
@@ -1719,6 +1916,16 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 	protected static final boolean execute(PaxosInstanceStateMachine pism,
 			PaxosManager<?> paxosManager, Replicable app,
 			RequestPacket decision, boolean recoveryMode) {
+		return execute(pism, paxosManager, app, decision, recoveryMode, true);
+	}
+
+	/* The acceptor is already stopped by the time an execution lane gets to
+	 * execute decisions extracted just before a stop, so lanes don't bail out
+	 * upon isStopped() and rely on ExecutionLanes.cancel upon kill instead. */
+	private static final boolean execute(PaxosInstanceStateMachine pism,
+			PaxosManager<?> paxosManager, Replicable app,
+			RequestPacket decision, boolean recoveryMode,
+			boolean returnIfStopped) {
 
 		boolean shouldLog = instrument(5 * getCPI(
 				paxosManager.getInterCheckpointInterval(),
@@ -1776,7 +1983,7 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 					assert (requestPacket.getEntryReplica() > 0) : requestPacket;
 
 					// don't try any more if stopped
-					if (pism != null && pism.isStopped())
+					if (returnIfStopped && pism != null && pism.isStopped())
 						return true;
 				} catch (Exception | Error e) {
 					// must swallow any and all exceptions
@@ -1814,7 +2021,23 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 
 	// Like EEC but invoked upon checkpoint transfer
 	private synchronized MessagingTask handleCheckpoint(StatePacket statePacket) {
-		if (statePacket.slotNumber >= this.paxosState.getSlot()) {
+		ExecutionLanes lanes = this.paxosManager.getExecutionLanes();
+		if (statePacket.slotNumber >= this.paxosState.getSlot()
+				&& lanes != null
+				&& !lanes.isIdle(this.getPaxosIDVersion())) {
+			/* The restore must not overtake decisions still pending in the
+			 * lane, so it is queued behind them. Unlike the inline case, we
+			 * have to jump the slot before knowing whether the restore will
+			 * succeed, so a failed restore is treated like a failed execute. */
+			this.paxosState.jumpSlot(statePacket.slotNumber + 1);
+			this.submitCheckpointToExecutionLane(lanes,
+					statePacket.slotNumber == 0, statePacket.slotNumber,
+					statePacket.ballot, statePacket.state);
+			log.log(Level.INFO,
+					"{0} queued checkpoint received through handleCheckpoint; next slot = {1}",
+					new Object[] { this, this.paxosState.getSlotLog() });
+		}
+		else if (statePacket.slotNumber >= this.paxosState.getSlot()) {
 			// put checkpoint in app (like execute)
 			if (!this.restore(statePacket.state))
 				return null;
@@ -1849,6 +2072,8 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 	 * called by an executor task anyway, so blocking should be harmless. */
 	protected synchronized boolean tryForcedCheckpointAndStop() {
 		boolean checkpointed = false;
+		if (!this.executionLaneIdle())
+			return checkpointed;
 		// Ugly nesting, not sure how else to do this correctly
 		synchronized (this.paxosState) {
 			synchronized (this.coordinator != null ? this.coordinator
@@ -1892,6 +2117,16 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 	protected synchronized boolean forceCheckpoint() {
 		String pid = this.getPaxosID();
 		int cpSlot = this.paxosState.getSlot() - 1;
+		ExecutionLanes lanes = this.paxosManager.getExecutionLanes();
+		if (lanes != null && !lanes.isIdle(this.getPaxosIDVersion())) {
+			// app state reflects cpSlot only after the lane catches up
+			this.submitCheckpointToExecutionLane(lanes, true, cpSlot,
+					this.paxosState.getBallot(), null);
+			log.log(Level.INFO,
+					"{0} forcing checkpoint at slot {1} after pending executions",
+					new Object[] { this, cpSlot });
+			return true;
+		}
 		String state = 
 		consistentCheckpoint(
 				this,
@@ -1968,6 +2203,9 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 	protected HotRestoreInfo tryPause() {
 		// boolean paused = false;
 		HotRestoreInfo hri = null;
+		// not caught up if decisions are still pending execution
+		if (!this.executionLaneIdle())
+			return hri;
 		synchronized (this.paxosState) {
 			// Ugly nesting, not sure how else to do this correctly
 			synchronized (this.coordinator != null ? this.coordinator
@@ -1998,6 +2236,11 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 		return hri;
 	}
 
+	private boolean executionLaneIdle() {
+		ExecutionLanes lanes = this.paxosManager.getExecutionLanes();
+		return lanes == null || lanes.isIdle(this.getPaxosIDVersion());
+	}
+
 	private boolean shouldCheckpoint(PValuePacket decision) {
 		return (decision.slot
 				% getCPI(this.paxosManager.getInterCheckpointInterval(),
@@ -2235,21 +2478,22 @@ private String getBallots() {
 	}
 
 	/* Event: Received or locally generated a sync request. Action: Send a sync
-	 * reply containing missing committed requests to the requester. If the
-	 * requester is myself, multicast to all. */
+	 * reply containing ranges of missing committed requests to the requester.
+	 * If the requester is myself, multicast to all. */
 	private MessagingTask requestMissingDecisions(int coordinatorID, SyncMode syncMode) {
-		ArrayList<Integer> missingSlotNumbers = this.paxosState
-				.getMissingCommittedSlots(this.paxosManager
+		ArrayList<Integer> missingRanges = this.paxosState
+				.getMissingCommittedRanges(this.paxosManager
 						.getMaxSyncDecisionsGap());
 		// initially we might want to send an empty sync request
-		if (missingSlotNumbers == null)
+		if (missingRanges == null)
 			return null; // if stopped
-		else if (missingSlotNumbers.isEmpty())
-			missingSlotNumbers.add(this.paxosState.getSlot());
+		else if (missingRanges.isEmpty())
+			missingRanges = SyncDecisionsPacket.singleRange(this.paxosState
+					.getSlot());
 
 		int maxDecision = this.paxosState.getMaxCommittedSlot();
 		SyncDecisionsPacket srp = new SyncDecisionsPacket(this.getMyID(),
-				maxDecision, missingSlotNumbers, this.isMissingTooMuch());
+				maxDecision, missingRanges, this.isMissingTooMuch());
 
 		int requestee = COORD_DONT_LOG_DECISIONS ? randomNonCoordOther(coordinatorID)
 				: randomOther();
@@ -2319,11 +2563,8 @@ private String getBallots() {
 
 	// point here is really to request initial state
 	protected MessagingTask requestZerothMissingDecision() {
-		ArrayList<Integer> missingSlotNumbers = new ArrayList<Integer>();
-		missingSlotNumbers.add(0);
-
 		SyncDecisionsPacket srp = new SyncDecisionsPacket(this.getMyID(), 1,
-				missingSlotNumbers, true);
+				SyncDecisionsPacket.singleRange(0), true);
 
 		log.log(Level.INFO, "{0} requesting missing zeroth checkpoint",
 				new Object[] { this, });
@@ -2364,16 +2605,25 @@ private String getBallots() {
 		return retval;
 	}
 
-	/* Event: Received a sync reply packet with a list of missing committed
+	private static final int MAX_SYNC_DECISIONS_BATCH = Config
+			.getGlobalInt(PC.MAX_SYNC_DECISIONS_BATCH);
+
+	/* Event: Received a sync reply packet with ranges of missing committed
 	 * requests Action: Send back all missing committed requests from the log to
-	 * the sender (replier).
+	 * the sender (replier), reading each range in one pass over the log.
 	 * 
 	 * We could try to send some from acceptor memory instead of the log, but in
 	 * general, it is not worth the effort. Furthermore, if the sync gap is too
-	 * much, do a checkpoint transfer. */
+	 * much, do a checkpoint transfer. The gap is too much if the sender is
+	 * missing more than getMaxSyncDecisionsGap() decisions from before the
+	 * last checkpoint, if it asks for the checkpoint, or if the log no longer
+	 * has its first missing decision. The checkpoint is followed by the missing
+	 * decisions after it. At most MAX_SYNC_DECISIONS_BATCH decisions are sent
+	 * at a time, and the sender requests the rest after it has caught up with
+	 * those. */
 	private MessagingTask handleSyncDecisionsPacket(
 			SyncDecisionsPacket syncReply) throws JSONException {
-		int minMissingSlot = syncReply.missingSlotNumbers.get(0);
+		int minMissingSlot = syncReply.getMinMissingSlot();
 		log.log(Level.FINE,
 				"{0} handling sync decisions request {1} when maxCommittedSlot = {2}",
 				new Object[] { this, syncReply.getSummary(),
@@ -2384,71 +2634,30 @@ private String getBallots() {
 					.FORCE_SYNC) : null;
 		// I am worse than you
 
-		// get checkpoint if minMissingSlot > last checkpointed slot
-		MessagingTask checkpoint = null;
-		if (minMissingSlot
+		// get checkpoint if too many missing slots are before it
+		boolean behindCheckpoint = minMissingSlot
 				- lastCheckpointSlot(this.paxosState.getSlot(),
-						syncReply.getPaxosID()) <= 0) {
+						syncReply.getPaxosID()) <= 0;
+		MessagingTask checkpoint = null;
+		if (behindCheckpoint
+				&& (syncReply.checkpointIfBehind || lastCheckpointSlot(
+						this.paxosState.getSlot(), syncReply.getPaxosID())
+						- minMissingSlot >= this.paxosManager
+						.getMaxSyncDecisionsGap()))
 			checkpoint = handleCheckpointRequest(syncReply);
-			if (checkpoint != null)
-				// only get decisions beyond checkpoint
-				minMissingSlot = ((StatePacket) (checkpoint.msgs[0])).slotNumber + 1;
-		}
 
-		// try to get decisions from memory first
-		HashMap<Integer, PValuePacket> missingDecisionsMap = new HashMap<Integer, PValuePacket>();
-		for (PValuePacket pvalue : this.paxosState
-				.getCommitted(syncReply.missingSlotNumbers))
-			missingDecisionsMap.put(pvalue.slot, pvalue.setNoCoalesce());
-
-		// get decisions from database as unlikely to have all of them in memory
-		ArrayList<PValuePacket> missingDecisions = this.paxosManager
-				.getPaxosLogger()
-				.getLoggedDecisions(
-						this.getPaxosID(),
-						this.getVersion(),
-						minMissingSlot,
-						/* If maxDecision <= minMissingSlot, sender is probably
-						 * doing a creation sync. But we need min < max for the
-						 * database query to return nonzero results, so we
-						 * adjust up the max if needed. Note that
-						 * getMaxCommittedSlot() at this node may not be greater
-						 * than minMissingDecision either. For example, the
-						 * sender may be all caught up at slot 0 and request a
-						 * creation sync for 1 and this node may have committed
-						 * up to 1; if so, it should return decision 1. */
-						syncReply.maxDecisionSlot > minMissingSlot ? syncReply.maxDecisionSlot
-								: Math.max(
-										minMissingSlot + 1,
-										this.paxosState.getMaxCommittedSlot() + 1));
-
-		// filter non-missing from database decisions
-		if (syncReply.maxDecisionSlot > minMissingSlot)
-			for (Iterator<PValuePacket> pvalueIterator = missingDecisions
-					.iterator(); pvalueIterator.hasNext();) {
-				PValuePacket pvalue = pvalueIterator.next();
-				if (!syncReply.missingSlotNumbers.contains(pvalue.slot))
-					pvalueIterator.remove(); // filter non-missing
-				else
-					pvalue.setNoCoalesce(); // send as-is, no compacting
-				// isRecovery() true only in rollForward
-				assert (!pvalue.isRecovery());
-			}
+		HashMap<Integer, PValuePacket> missingDecisionsMap = this
+				.getMissingDecisions(syncReply, checkpoint);
 
-		// copy over database decisions not in memory
-		for (PValuePacket pvalue : missingDecisions)
-			if (!missingDecisionsMap.containsKey(pvalue.slot))
-				missingDecisionsMap.put(pvalue.slot, pvalue);
-
-		// replace meta decisions with actual decisions
-		getActualDecisions(missingDecisionsMap);
+		/* If the log no longer has the first missing decision, e.g., because
+		 * it has been garbage collected after the checkpoint, the sender can
+		 * only catch up with the checkpoint. */
+		if (checkpoint == null && behindCheckpoint
+				&& !missingDecisionsMap.containsKey(minMissingSlot)
+				&& (checkpoint = handleCheckpointRequest(syncReply)) != null)
+			missingDecisionsMap = this.getMissingDecisions(syncReply,
+					checkpoint);
 
-		assert (missingDecisionsMap.isEmpty() || missingDecisionsMap.values()
-				.toArray(new PaxosPacket[0]).length > 0) : missingDecisions;
-		for (PValuePacket pvalue : missingDecisionsMap.values()) {
-			pvalue.setNoCoalesce();
-			assert (pvalue.hasRequestValue());
-		}
 		// the list of missing decisions to be sent
 		MessagingTask unicasts = missingDecisionsMap.isEmpty() ? null
 				: new MessagingTask(syncReply.nodeID,
@@ -2463,8 +2672,9 @@ private String getBallots() {
 		if (checkpoint != null)
 			log.log(Level.INFO,
 					"{0} sending checkpoint for slot {1} to node {2} in response to {3}",
-					new Object[] { this, minMissingSlot - 1, syncReply.nodeID,
-							syncReply.getSummary() });
+					new Object[] { this,
+							((StatePacket) (checkpoint.msgs[0])).slotNumber,
+							syncReply.nodeID, syncReply.getSummary() });
 
 		// combine checkpoint and missing decisions in unicasts
 		MessagingTask mtask =
@@ -2481,6 +2691,78 @@ private String getBallots() {
 		return mtask;
 	}
 
+	/* Returns up to MAX_SYNC_DECISIONS_BATCH decisions missing at the sender of
+	 * syncReply, only those after the checkpoint if it is not null. */
+	private HashMap<Integer, PValuePacket> getMissingDecisions(
+			SyncDecisionsPacket syncReply, MessagingTask checkpoint)
+			throws JSONException {
+		// only get decisions beyond checkpoint
+		int fromSlot = checkpoint != null ? ((StatePacket) (checkpoint.msgs[0])).slotNumber + 1
+				: syncReply.getMinMissingSlot();
+		/* If maxDecision <= fromSlot, sender is probably doing a creation sync.
+		 * But we need from < to for the log query to return nonzero results,
+		 * so we adjust up the max if needed. Note that getMaxCommittedSlot() at
+		 * this node may not be greater than fromSlot either. For example, the
+		 * sender may be all caught up at slot 0 and request a creation sync for
+		 * 1 and this node may have committed up to 1; if so, it should return
+		 * decision 1. */
+		boolean creationSync = syncReply.maxDecisionSlot - fromSlot <= 0;
+		int toSlot = !creationSync ? syncReply.maxDecisionSlot : Math.max(
+				fromSlot + 1, this.paxosState.getMaxCommittedSlot() + 1);
+		if (toSlot - fromSlot > MAX_SYNC_DECISIONS_BATCH)
+			toSlot = fromSlot + MAX_SYNC_DECISIONS_BATCH;
+
+		// try to get decisions from memory first
+		HashMap<Integer, PValuePacket> missingDecisionsMap = new HashMap<Integer, PValuePacket>();
+		for (PValuePacket pvalue : this.paxosState.getCommitted(syncReply))
+			if (pvalue.slot - fromSlot >= 0 && pvalue.slot - toSlot < 0)
+				missingDecisionsMap.put(pvalue.slot, pvalue.setNoCoalesce());
+
+		// get decisions from the log as unlikely to have all of them in memory
+		ArrayList<PValuePacket> missingDecisions = new ArrayList<PValuePacket>();
+		if (creationSync)
+			missingDecisions.addAll(this.paxosManager.getPaxosLogger()
+					.getLoggedDecisions(this.getPaxosID(), this.getVersion(),
+							fromSlot, toSlot));
+		else
+			// one contiguous read per missing range within [fromSlot, toSlot)
+			for (int i = 0; i < syncReply.missingRanges.size(); i += 2) {
+				int first = syncReply.missingRanges.get(i);
+				int last = syncReply.missingRanges.get(i + 1);
+				if (last - fromSlot < 0)
+					continue;
+				if (first - toSlot >= 0)
+					break;
+				missingDecisions.addAll(this.paxosManager.getPaxosLogger()
+						.getLoggedDecisions(this.getPaxosID(),
+								this.getVersion(),
+								first - fromSlot < 0 ? fromSlot : first,
+								last + 1 - toSlot > 0 ? toSlot : last + 1));
+			}
+
+		/* Copy over log decisions not in memory. The journal's log index treats
+		 * maxSlot as inclusive unlike the DB, so drop anything beyond the
+		 * window or not missing at the sender. */
+		for (PValuePacket pvalue : missingDecisions) {
+			// isRecovery() true only in rollForward
+			assert (!pvalue.isRecovery());
+			if (pvalue.slot - toSlot >= 0
+					|| (!creationSync && !syncReply.isMissing(pvalue.slot)))
+				continue;
+			if (!missingDecisionsMap.containsKey(pvalue.slot))
+				missingDecisionsMap.put(pvalue.slot, pvalue);
+		}
+
+		// replace meta decisions with actual decisions
+		getActualDecisions(missingDecisionsMap);
+
+		for (PValuePacket pvalue : missingDecisionsMap.values()) {
+			pvalue.setNoCoalesce(); // send as-is, no compacting
+			assert (pvalue.hasRequestValue());
+		}
+		return missingDecisionsMap;
+	}
+
 	/* We reconstruct decisions from logged accepts. This is safe because we
 	 * only log a decision with a meta request value when we already have
 	 * previously accepted the corresponding accept. */
@@ -2557,13 +2839,13 @@ private String getBallots() {
 		 * a read to check if the checkpointSlot is at least higher than the
 		 * minMissingSlot in syncReply. If the state is tiny, this will double
 		 * the state fetching overhead as we are doing two database reads. */
-		assert (syncReply.missingSlotNumbers.get(0)
+		assert (syncReply.getMinMissingSlot()
 				- lastCheckpointSlot(this.paxosState.getSlot(),
 						syncReply.getPaxosID()) <= 0);
 		int checkpointSlot = this.paxosManager.getPaxosLogger()
 				.getCheckpointSlot(getPaxosID());
-		StatePacket statePacket = (checkpointSlot >= syncReply.missingSlotNumbers
-				.get(0) ? StatePacket.getStatePacket(this.paxosManager
+		StatePacket statePacket = (checkpointSlot >= syncReply
+				.getMinMissingSlot() ? StatePacket.getStatePacket(this.paxosManager
 				.getPaxosLogger().getSlotBallotState(this.getPaxosID())) : null);
 		if (statePacket != null)
 			log.log(Level.INFO,
@@ -27,6 +27,7 @@ import edu.umass.cs.nio.*;
 import edu.umass.cs.nio.SSLDataProcessingWorker.SSL_MODES;
 import edu.umass.cs.nio.interfaces.*;
 import edu.umass.cs.nio.nioutils.NIOHeader;
+import edu.umass.cs.nio.nioutils.RTTEstimator;
 import edu.umass.cs.nio.nioutils.PacketDemultiplexerDefault;
 import edu.umass.cs.nio.nioutils.SampleNodeConfig;
 import edu.umass.cs.utils.*;
@@ -39,7 +40,6 @@ import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.logging.Level;
@@ -74,7 +74,7 @@ public class PaxosManager<NodeIDType> {
     // background deactivation/cremation tasks, all else event-driven
     private final ScheduledExecutorService executor;
     // paxos instance mapping
-    private final MultiArrayMap<String, PaxosInstanceStateMachine> pinstances;
+    private final OffHeapHashMap<String, PaxosInstanceStateMachine> pinstances;
     // stopped paxos instances about to be incinerated
     private final HashMap<String, PaxosInstanceStateMachine> corpses;
     private final IntegerMap<NodeIDType> integerMap = new IntegerMap<NodeIDType>();
@@ -100,6 +100,12 @@ public class PaxosManager<NodeIDType> {
      */
     private final ScheduledExecutorService appExecuteThreadPool;
 
+    /**
+     * Per-paxosID ordered lanes for executing decisions off the message
+     * processing threads; null unless {@link PC#ENABLE_EXECUTION_LANES}.
+     */
+    private final ExecutionLanes executionLanes;
+
     private static final boolean USE_GC_MAP = Config
             .getGlobalBoolean(PC.USE_GC_MAP);
 
@@ -367,14 +373,18 @@ public class PaxosManager<NodeIDType> {
 						return thread;
 						}
 					});
-		
+		this.executionLanes = Config
+				.getGlobalBoolean(PC.ENABLE_EXECUTION_LANES) ? new ExecutionLanes(
+				Config.getGlobalInt(PC.EXECUTION_LANE_THREADS),
+				Config.getGlobalInt(PC.MAX_EXECUTION_LANE_BACKLOG),
+				PaxosManager.class.getSimpleName() + myID) : null;
 		
 		this.unstringer = unstringer;
 		this.largeCheckpointer = new LargeCheckpointer(paxosLogFolder, 
 				id.toString());
 		this.myApp = LargeCheckpointer.wrap(pi, largeCheckpointer);
 		this.FD = new FailureDetection<NodeIDType>(id, niot, paxosLogFolder);
-		this.pinstances = new MultiArrayMap<String, PaxosInstanceStateMachine>(
+		this.pinstances = new OffHeapHashMap<String, PaxosInstanceStateMachine>(
 				Config.getGlobalInt(PC.PINSTANCES_CAPACITY));
 		this.corpses = new HashMap<String, PaxosInstanceStateMachine>();
 		// this.activePaxii = new HashMap<String, ActivePaxosState>();
@@ -387,7 +397,6 @@ public class PaxosManager<NodeIDType> {
 				Config.getGlobalInt(PC.DEACTIVATION_PERIOD),
 				TimeUnit.MILLISECONDS);
 		this.pendingDigests = new PendingDigests(this.outstanding.requests,
-				Config.getGlobalInt(PC.NUM_MESSAGE_DIGESTS),
 				new PendingDigests.PendingDigestCallback() {
 					public void callback(AcceptPacket accept) {
 						PaxosManager.this.callbackDigestedAcceptTimeout(accept);
@@ -537,8 +546,12 @@ public class PaxosManager<NodeIDType> {
 
 	private void synchronizedNoop(String paxosID, int version) {
 		PaxosInstanceStateMachine pism = this.getInstance(paxosID);
-		if (pism != null && pism.getVersion() == version)
+		if (pism != null && pism.getVersion() == version) {
+			// a stop may still be executing in the execution lane
+			if (this.executionLanes != null)
+				this.executionLanes.awaitIdle(pism.getPaxosIDVersion());
 			pism.synchronizedNoop();
+		}
 	}
 
 	/**
@@ -821,6 +834,13 @@ public class PaxosManager<NodeIDType> {
 			this.register(PaxosPacket.PaxosPacketType.PAXOS_PACKET);
 			this.setThreadName(myID + (clientFacing ? "-clientFacing" : ""));
 			this.clientFacing = clientFacing;
+			this.setKeyAffine(Config
+					.getGlobalBoolean(PC.KEY_AFFINE_DEMULTIPLEXER));
+		}
+
+		@Override
+		protected Object getAffinityKey(JSONObject jsonMsg) {
+			return jsonMsg.optString(PaxosPacket.Keys.ID.toString(), null);
 		}
 
 		public boolean handleMessage(JSONObject jsonMsg, edu.umass.cs.nio.nioutils.NIOHeader header) {
@@ -1154,6 +1174,7 @@ public class PaxosManager<NodeIDType> {
 							requestPacket.getSummary() });
 			this.outstanding.enqueue(new RequestAndCallback(requestPacket,
 					callback));
+			RequestTracer.record(requestPacket, RequestTracer.Stage.PROPOSE);
 			this.handleIncomingPacket(requestPacket);
 		} else
 			PaxosConfig.log.log(Level.INFO,
@@ -1635,7 +1656,10 @@ public class PaxosManager<NodeIDType> {
 		 * instance of PaxosManager in this JVM. */
 		waitToFinishAll();
 
-		/* Close logger, FD, messenger, request batcher, executor */
+		/* Close execution lanes, logger, FD, messenger, request batcher,
+		 * executor */
+		if (this.executionLanes != null)
+			this.executionLanes.close();
 		this.paxosLogger.close();
 		this.FD.close();
 		this.messenger.stop();
@@ -2440,6 +2464,11 @@ public class PaxosManager<NodeIDType> {
 		return paxosLogger;
 	}
 
+	// null if execution lanes are disabled
+	protected ExecutionLanes getExecutionLanes() {
+		return this.executionLanes;
+	}
+
 	protected PaxosMessenger<NodeIDType> getMessenger() {
 		return this.messenger;
 	}
@@ -2891,6 +2920,38 @@ public class PaxosManager<NodeIDType> {
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	private InetAddress getNodeAddress(int node) {
+		NodeIDType id = null;
+		return this.unstringer instanceof NodeConfig
+				&& (id = this.integerMap.get(node)) != null ? ((NodeConfig<NodeIDType>) this.unstringer)
+				.getNodeAddress(id) : null;
+	}
+
+	/* RTT in milliseconds to node as estimated by the transport, or -1 if
+	 * unknown. */
+	protected long getRTT(int node) {
+		InetAddress address = this.getNodeAddress(node);
+		return address != null ? RTTEstimator.getRTT(address) : -1;
+	}
+
+	/* Adds an RTT sample in milliseconds, e.g., an accept reply time, to the
+	 * RTT estimate for node. */
+	protected void recordRTT(int node, long rtt) {
+		InetAddress address = this.getNodeAddress(node);
+		if (address != null)
+			RTTEstimator.record(address, rtt);
+	}
+
+	protected void schedule(Runnable task, long delay) {
+		try {
+			this.executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ree) {
+			if (!this.executor.isShutdown())
+				ree.printStackTrace();
+		}
+	}
+
 	protected int getMyID() {
 		return this.myID;
 	}
@@ -3315,21 +3376,30 @@ public class PaxosManager<NodeIDType> {
 		return this.myApp;
 	}
 
-	protected MessageDigest getMessageDigest() {
-		return RequestPacket.getMessageDigest();
-	}
-
 	private static final int DIGEST_THRESHOLD = Config
 			.getGlobalInt(PC.DIGEST_THRESHOLD);
 	private static final boolean DIGEST_REQUESTS = Config
 			.getGlobalBoolean(PC.DIGEST_REQUESTS);
-
-	protected boolean shouldDigest() {
-		return DIGEST_REQUESTS && this.pinstances.size() <= DIGEST_THRESHOLD;
-	}
-
-	protected AcceptPacket match(AcceptPacket accept) {
-		return this.pendingDigests.match(accept);
+	private static final long DIGEST_FETCH_TIMEOUT = Config
+			.getGlobalLong(PC.DIGEST_FETCH_TIMEOUT);
+
+	protected boolean shouldDigest(RequestPacket request) {
+		return DIGEST_REQUESTS
+				&& (this.pinstances.size() <= DIGEST_THRESHOLD || request
+						.shouldDigest());
+	}
+
+	protected AcceptPacket match(final AcceptPacket accept) {
+		AcceptPacket matched = this.pendingDigests.match(accept);
+		if (matched == null)
+			// fetch request body unless broadcast arrives in the meantime
+			this.executor.schedule(new Runnable() {
+				public void run() {
+					if (PaxosManager.this.pendingDigests.isPending(accept))
+						PaxosManager.this.fetchDigestedAccept(accept);
+				}
+			}, DIGEST_FETCH_TIMEOUT, TimeUnit.MILLISECONDS);
+		return matched;
 	}
 
 	protected AcceptPacket release(RequestPacket request, boolean remove) {
@@ -3340,13 +3410,42 @@ public class PaxosManager<NodeIDType> {
 		return this.release(request, true);
 	}
 
+	/* Discards the digested copy if any of an accept whose request body has
+	 * been received with the accept itself. */
+	protected void unpend(AcceptPacket accept) {
+		if (this.pendingDigests.size() > 0)
+			this.pendingDigests.remove(accept);
+	}
+
 	protected AcceptPacket digest(AcceptPacket multicastAccept) {
-		return this.shouldDigest() ? multicastAccept.digest(this
-				.getMessageDigest()) : multicastAccept;
+		return this.shouldDigest(multicastAccept) ? multicastAccept.digest()
+				: multicastAccept;
+	}
+
+	/* Sends a nack accept reply in order to get the coordinator to send the
+	 * undigested accept. */
+	private void fetchDigestedAccept(AcceptPacket accept) {
+		PaxosConfig.log.log(Level.FINE, "{0} fetching digested accept {1}",
+				new Object[] { this, accept.getSummary(PaxosConfig.log.isLoggable(Level.FINE)) });
+		try {
+			this.send(new MessagingTask(accept.ballot.coordinatorID,
+					new AcceptReplyPacket(this.getMyID(), accept.ballot,
+							accept.slot,
+							/* FIXME: wraparound means that maxCheckpointedSlot
+							 * of 0 can be unsafe. We need to get the correct
+							 * value from the paxos instance. But for now
+							 * digests are disabled by default, and the
+							 * coordinator does not use this field for undigest
+							 * requests, so this is okay. */
+							0, accept.requestID).setDigestRequest().putPaxosID(
+							accept.getPaxosID(), accept.getVersion())));
+		} catch (JSONException | IOException e) {
+			e.printStackTrace();
+		}
 	}
 
-	/* Callback for timed out digested accept. Will send a nack accept reply in
-	 * order to try to get the sender to send the undigested accept. The
+	/* Callback for timed out digested accept. Will re-insert the accept in
+	 * order to try again to get the sender to send the undigested accept. The
 	 * digested accept will be discarded in any case after this callback. */
 	private void callbackDigestedAcceptTimeout(AcceptPacket accept) {
 		try {
@@ -3360,21 +3459,10 @@ public class PaxosManager<NodeIDType> {
 				PaxosManager.this.handlePaxosPacket(released);
 			} else
 				try {
-					// non-loopback send to re-insert accept
+					/* Non-loopback send to re-insert accept, which will also
+					 * fetch it again after DIGEST_FETCH_TIMEOUT. */
 					PaxosManager.this.messenger.send(new MessagingTask(
 							PaxosManager.this.getMyID(), accept));
-					PaxosManager.this.send(new MessagingTask(
-							accept.ballot.coordinatorID, new AcceptReplyPacket(
-									PaxosManager.this.getMyID(), accept.ballot,
-									accept.slot,
-									/* FIXME: wraparound means that
-									 * maxCheckpointedSlot of 0 can be unsafe.
-									 * We need to get the correct value from the
-									 * paxos instance. But for now digests are
-									 * not disabled by default, so this is okay. */
-									0, accept.requestID).setDigestRequest()
-									.putPaxosID(accept.getPaxosID(),
-											accept.getVersion())));
 				} catch (JSONException | IOException e) {
 					e.printStackTrace();
 				}
@@ -3422,6 +3510,15 @@ public class PaxosManager<NodeIDType> {
 		return nodes;
 	}
 
+	/**
+	 * @param node
+	 * @return True if the failure detector currently considers {@code node}
+	 *         to be up.
+	 */
+	public boolean isNodeAlive(NodeIDType node) {
+		return FD != null && FD.isNodeUp(node);
+	}
+
 	protected AcceptPacket getPreviouslyIssuedAccept(RequestPacket proposal) {
 		RequestAndCallback rc = null;
 		if (((rc = this.outstanding.requests.get(proposal.getRequestID())) != null || (rc = this.outstanding.conflictIDRequests
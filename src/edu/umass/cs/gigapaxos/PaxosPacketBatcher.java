@@ -20,14 +20,17 @@ package edu.umass.cs.gigapaxos;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.json.JSONException;
 
@@ -43,7 +46,6 @@ import edu.umass.cs.gigapaxos.paxospackets.PaxosPacket;
 import edu.umass.cs.gigapaxos.paxospackets.PaxosPacket.PaxosPacketType;
 import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
 import edu.umass.cs.gigapaxos.paxosutil.Ballot;
-import edu.umass.cs.gigapaxos.paxosutil.ConsumerTask;
 import edu.umass.cs.gigapaxos.paxosutil.LogMessagingTask;
 import edu.umass.cs.gigapaxos.paxosutil.MessagingTask;
 import edu.umass.cs.nio.NIOTransport;
@@ -52,256 +54,323 @@ import edu.umass.cs.utils.DelayProfiler;
 import edu.umass.cs.utils.Util;
 
 /**
+ * Batches paxos packets headed to the same destination. Each destination,
+ * i.e., set of recipients, has its own lock-free accumulator, so paxos threads
+ * enqueueing packets never contend on a common monitor. A single flusher
+ * thread merges the accumulated packets, e.g., accept replies of the same
+ * paxos group and ballot into one {@link BatchedAcceptReply}, and sends them.
+ * <p>
+ * A destination is flushed when its accumulated packets fill a message, when
+ * its oldest packet has waited for the destination's hold time, or as soon as
+ * more packets are not expected to arrive within the remaining hold time. The
+ * hold time is a fraction of the RTT to the destination capped by
+ * {@link PC#PP_BATCH_MAX_DELAY}. Thus, at low load packets are sent
+ * immediately, and at high load they wait a little to be sent in fewer and
+ * larger messages.
+ * 
  * @author arun
  *
  */
-public class PaxosPacketBatcher extends ConsumerTask<MessagingTask[]> {
+public class PaxosPacketBatcher implements Runnable {
+
+	private static final double MAX_DELAY = Config
+			.getGlobalDouble(PC.PP_BATCH_MAX_DELAY);
+	private static final double RTT_FRACTION = Config
+			.getGlobalDouble(PC.PP_BATCH_RTT_FRACTION);
+	// refresh the hold time from RTT estimates at most this often
+	private static final long HOLD_TIME_REFRESH = 1000000000L;
 
 	private final PaxosManager<?> paxosManager;
-	private final HashMap<String, HashMap<Ballot, BatchedAcceptReply>> acceptReplies;
-	private final HashMap<String, HashMap<Ballot, BatchedCommit>> commits;
-	private final HashMap<String, HashMap<Ballot, BatchedAccept>> accepts;
-	private final LinkedList<MessagingTask> requests;
+	private final int myID;
+	private final long maxDelay; // nanoseconds
+
+	private final ConcurrentHashMap<Set<Integer>, Accumulator> accumulators = new ConcurrentHashMap<Set<Integer>, Accumulator>();
+	private volatile Thread flusher = null;
+	private volatile boolean stopped = false;
+
+	private final AtomicLong numEnqueued = new AtomicLong(0);
+	private final AtomicLong numSent = new AtomicLong(0);
+
+	/* Packets accumulated for one destination. Enqueueing threads only add to
+	 * the queue and update counters, while only the flusher drains the queue
+	 * and merges packets, so no lock is needed. */
+	private static class Accumulator {
+		final int[] recipients;
+		final ConcurrentLinkedQueue<MessagingTask> queue = new ConcurrentLinkedQueue<MessagingTask>();
+		final AtomicInteger count = new AtomicInteger(0);
+		final AtomicInteger bytes = new AtomicInteger(0);
+		final AtomicLong lastEnqueued = new AtomicLong(0);
+		volatile long firstEnqueued = 0;
+		volatile double interArrival = Double.MAX_VALUE;
+		// accessed only by the flusher, a negative hold time is yet to be set
+		long holdTime = -1;
+		long holdTimeRefreshed = 0;
+
+		Accumulator(int[] recipients) {
+			this.recipients = recipients;
+		}
+	}
 
 	/**
-	 * @param lock
 	 * @param paxosManager
 	 */
-	private PaxosPacketBatcher(HashMapContainer lock,
-			PaxosManager<?> paxosManager) {
-		super(lock);
-		this.acceptReplies = lock.acceptReplies;
-		this.commits = lock.commits;
-		this.accepts = lock.accepts;
-		this.requests = lock.requests;
-		this.paxosManager = paxosManager;
+	public PaxosPacketBatcher(PaxosManager<?> paxosManager) {
+		this(paxosManager, paxosManager.getMyID(), MAX_DELAY);
 	}
 
 	/**
 	 * @param paxosManager
+	 * @param myID
+	 * @param maxDelay
+	 *            Maximum hold time in milliseconds.
 	 */
-	public PaxosPacketBatcher(PaxosManager<?> paxosManager) {
-		// we are using only one of the two structures to lock
-		this(new HashMapContainer(), paxosManager);
+	PaxosPacketBatcher(PaxosManager<?> paxosManager, int myID, double maxDelay) {
+		this.paxosManager = paxosManager;
+		this.myID = myID;
+		this.maxDelay = (long) (maxDelay * 1000 * 1000);
 	}
 
-	// just to name the thread, otherwise super suffices
+	/**
+	 * Starts the flusher thread.
+	 */
 	public void start() {
 		Thread me = (new Thread(this));
-		me.setName(PaxosPacketBatcher.class.getSimpleName()
-				+ this.paxosManager.getMyID());
+		me.setName(PaxosPacketBatcher.class.getSimpleName() + this.myID);
+		me.setDaemon(true);
+		this.flusher = me;
 		me.start();
 	}
 
-	@Override
-	public void enqueueImpl(MessagingTask[] tasks) {
-		for (MessagingTask task : tasks)
-			if (task != null) {
-				assert(!task.isEmptyMessaging() && task.msgs[0].getType()!=null) : task;
-				switch (task.msgs[0].getType()) {
-				case ACCEPT_REPLY:
-					assert(task.msgs.length==1);
-					this.enqueueImpl((AcceptReplyPacket) task.msgs[0]);
-					break;
-				case BATCHED_COMMIT:
-					assert(task.msgs.length==1);
-					this.enqueueImpl((BatchedCommit) task.msgs[0]);
-					break;
-				case BATCHED_ACCEPT:
-					assert(task.msgs.length==1);
-					this.enqueueImpl((BatchedAccept) task.msgs[0]);
-					break;
-				default:
-					if(task.msgs[0] instanceof RequestPacket)
-						this.enqueueImpl(task);
-				}
-			}
+	/**
+	 * Stops the flusher thread after a final flush.
+	 */
+	public void stop() {
+		this.stopped = true;
+		LockSupport.unpark(this.flusher);
 	}
 
-	private boolean enqueueImpl(AcceptReplyPacket acceptReply) {
-		if (!this.acceptReplies.containsKey(acceptReply.getPaxosID()))
-			this.acceptReplies.put(acceptReply.getPaxosID(),
-					new HashMap<Ballot, BatchedAcceptReply>());
-
-		HashMap<Ballot, BatchedAcceptReply> arMap = this.acceptReplies
-				.get(acceptReply.getPaxosID());
-		boolean added = false;
-		if (arMap.isEmpty())
-			added = (arMap.put(acceptReply.ballot, new BatchedAcceptReply(
-					acceptReply)) != null);
-		else if (arMap.containsKey(acceptReply.ballot)) {
-			added = arMap.get(acceptReply.ballot).addAcceptReply(acceptReply);
-		} else {
-			arMap.put(acceptReply.ballot, new BatchedAcceptReply(acceptReply));
-		}
+	private static int lengthEstimate(PaxosPacket pp) {
+		if (pp instanceof BatchedAcceptReply)
+			return RequestPacket.SIZE_ESTIMATE
+					* ((BatchedAcceptReply) pp).size();
+		if (pp instanceof BatchedCommit)
+			return RequestPacket.SIZE_ESTIMATE * ((BatchedCommit) pp).size();
+		if (pp instanceof BatchedAccept)
+			return RequestPacket.SIZE_ESTIMATE * ((BatchedAccept) pp).size();
+		if (pp instanceof RequestPacket)
+			return ((RequestPacket) pp).lengthEstimate();
+		return RequestPacket.SIZE_ESTIMATE;
+	}
 
-		return added;
-	}
-
-	private boolean enqueueImpl(BatchedCommit commit) {
-		if (!this.commits.containsKey(commit.getPaxosID()))
-			this.commits.put(commit.getPaxosID(),
-					new HashMap<Ballot, BatchedCommit>());
-		HashMap<Ballot, BatchedCommit> cMap = this.commits.get(commit
-				.getPaxosID());
-		boolean added = false;
-		if (cMap.isEmpty())
-			added = (cMap.put(commit.ballot, (commit)) != null);
-		else if (cMap.containsKey(commit.ballot))
-			added = cMap.get(commit.ballot).addBatchedCommit(commit);
-		else
-			added = (cMap.put(commit.ballot, (commit)) != null);
-
-		return added;
-	}
-
-	private boolean enqueueImpl(BatchedAccept bAccept) {
-		assert(bAccept.getPaxosID()!=null);
-		if (!this.accepts.containsKey(bAccept.getPaxosID()))
-			this.accepts.put(bAccept.getPaxosID(),
-					new HashMap<Ballot, BatchedAccept>());
-		HashMap<Ballot, BatchedAccept> aMap = this.accepts.get(bAccept
-				.getPaxosID());
-		boolean added = false;
-		if (aMap.isEmpty())
-			added = (aMap.put(bAccept.ballot, (bAccept)) != null);
-		else if (aMap.containsKey(bAccept.ballot))
-			added = aMap.get(bAccept.ballot).addBatchedAccept(bAccept);
-		else
-			added = (aMap.put(bAccept.ballot, (bAccept)) != null);
-
-		return added;
-		
+	private void enqueue(MessagingTask[] mtasks) {
+		for (MessagingTask mtask : mtasks)
+			if (mtask != null && !mtask.isEmptyMessaging())
+				this.enqueue(mtask);
 	}
-	
-	private boolean enqueueImpl(MessagingTask requestMTask) {
-		return this.requests.add(requestMTask);
+
+	private void enqueue(MessagingTask mtask) {
+		Set<Integer> destination = Util.arrayToIntSet(mtask.recipients);
+		Accumulator acc = this.accumulators.get(destination);
+		if (acc == null) {
+			this.accumulators.putIfAbsent(destination, new Accumulator(
+					mtask.recipients));
+			acc = this.accumulators.get(destination);
+		}
+		int length = 0;
+		for (PaxosPacket pp : mtask.msgs)
+			length += lengthEstimate(pp);
+		long now = this.nanoTime();
+		long prev = acc.lastEnqueued.getAndSet(now);
+		if (prev != 0)
+			// racy but only a heuristic
+			acc.interArrival = acc.interArrival == Double.MAX_VALUE ? now
+					- prev : Util.movingAverage(now - prev, acc.interArrival);
+
+		acc.queue.add(mtask);
+		this.numEnqueued.addAndGet(mtask.msgs.length);
+		boolean full = acc.bytes.addAndGet(length) >= NIOTransport.MAX_PAYLOAD_SIZE;
+		boolean first = acc.count.getAndIncrement() == 0;
+		if (first)
+			acc.firstEnqueued = now;
+		// wake up the flusher to set a deadline or to flush right away
+		if (first || full)
+			LockSupport.unpark(this.flusher);
 	}
-	
+
 	@Override
-	public MessagingTask[] dequeueImpl() {
+	public void run() {
+		while (true) {
+			boolean stopping = this.stopped;
+			long wait = this.flushDue(stopping);
+			if (stopping)
+				break;
+			if (wait == Long.MAX_VALUE)
+				LockSupport.park(this);
+			else
+				LockSupport.parkNanos(this, wait);
+		}
+	}
 
-		ArrayList<MessagingTask> pkts = new ArrayList<MessagingTask>();
-		
-		int lengthEstimate=0;
-		
-		PaxosPacket pp = null;
-		MessagingTask mtask = null;
-		while (lengthEstimate < NIOTransport.MAX_PAYLOAD_SIZE
-				&& (pp = this.dequeueImplAR()) != null)
-			if (pkts.add(new MessagingTask(((BatchedAcceptReply)pp).ballot.coordinatorID, pp)))
-				lengthEstimate += RequestPacket.SIZE_ESTIMATE*((BatchedAcceptReply)pp).size();
-		while (lengthEstimate < NIOTransport.MAX_PAYLOAD_SIZE
-				&& (pp = this.dequeueImplC()) != null)
-			if (pkts.add(new MessagingTask(((BatchedCommit)pp).getGroup(), pp)))
-				lengthEstimate += RequestPacket.SIZE_ESTIMATE*((BatchedCommit)pp).size();
-		while (lengthEstimate < NIOTransport.MAX_PAYLOAD_SIZE
-				&& (pp = this.dequeueImplA()) != null)
-			if (pkts.add(new MessagingTask(((BatchedAccept)pp).getGroup(), pp)))
-				lengthEstimate += RequestPacket.SIZE_ESTIMATE*((BatchedAccept)pp).size();
-		while (!this.requests.isEmpty()
-				&& lengthEstimate < NIOTransport.MAX_PAYLOAD_SIZE
-				&& (mtask = this.requests.removeFirst()) != null)
-			if (pkts.add(mtask))
-				lengthEstimate += ((RequestPacket) mtask.msgs[0]).lengthEstimate();
-
-		return pkts.toArray(new MessagingTask[0]);
-	}
-
-	private PaxosPacket dequeueImplAR() {
-		BatchedAcceptReply batchedAR = null;
-		if (!this.acceptReplies.isEmpty()) {
-			Map<Ballot, BatchedAcceptReply> arMap = this.acceptReplies.values()
-					.iterator().next();
-			assert (!arMap.isEmpty());
-			batchedAR = arMap.values().iterator().next();
-			arMap.remove(batchedAR.ballot);
-			if (arMap.isEmpty())
-				this.acceptReplies.remove(batchedAR.getPaxosID());
+	/* Flushes the destinations whose hold time is over, or all of them if
+	 * stopping, and returns the nanoseconds until the next one must be
+	 * flushed, or Long.MAX_VALUE if nothing is pending. */
+	long flushDue(boolean stopping) {
+		long now = this.nanoTime();
+		long wait = Long.MAX_VALUE;
+		for (Accumulator acc : this.accumulators.values()) {
+			if (acc.count.get() <= 0)
+				continue;
+			long remaining = stopping ? 0 : this.getRemainingHoldTime(acc, now);
+			if (remaining <= 0)
+				do {
+					this.flush(acc);
+				} while (stopping && !acc.queue.isEmpty());
+			else
+				wait = Math.min(wait, remaining);
 		}
-		return batchedAR;
+		return wait;
 	}
 
-	public String toString() {
-		return this.getClass().getSimpleName() + this.paxosManager.getMyID();
-	}
-
-	private PaxosPacket dequeueImplC() {
-		BatchedCommit batchedCommit = null;
-		if (!this.commits.isEmpty()) {
-			Map<Ballot, BatchedCommit> cMap = this.commits.values().iterator()
-					.next();
-			assert (!cMap.isEmpty());
-			batchedCommit = cMap.values().iterator().next();
-			cMap.remove(batchedCommit.ballot);
-			if (cMap.isEmpty())
-				this.commits.remove(batchedCommit.getPaxosID());
+	// nanoseconds to go before acc must be flushed
+	private long getRemainingHoldTime(Accumulator acc, long now) {
+		if (acc.bytes.get() >= NIOTransport.MAX_PAYLOAD_SIZE)
+			return 0;
+		if (acc.holdTime < 0 || now - acc.holdTimeRefreshed > HOLD_TIME_REFRESH) {
+			acc.holdTime = this.getHoldTime(acc.recipients);
+			acc.holdTimeRefreshed = now;
+		}
+		long remaining = acc.holdTime - (now - acc.firstEnqueued);
+		// no point waiting if no more packets are expected in the meantime
+		if (acc.interArrival >= remaining)
+			return 0;
+		return remaining;
+	}
+
+	private long getHoldTime(int[] recipients) {
+		long hold = this.maxDelay;
+		for (int recipient : recipients) {
+			long rtt = this.getRTT(recipient);
+			if (rtt > 0)
+				hold = Math.min(hold, (long) (rtt * RTT_FRACTION * 1000 * 1000));
 		}
-		return batchedCommit;
+		return hold;
+	}
+
+	/**
+	 * @param node
+	 * @return RTT in milliseconds to {@code node}, or -1 if unknown.
+	 */
+	protected long getRTT(int node) {
+		return this.paxosManager != null ? this.paxosManager.getRTT(node) : -1;
+	}
 
+	/**
+	 * @return The current time in nanoseconds, as {@link System#nanoTime()}.
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
 	}
 
-	private PaxosPacket dequeueImplA() {
-		BatchedAccept batchedAccept = null;
-		if (!this.accepts.isEmpty()) {
-			Map<Ballot, BatchedAccept> aMap = this.accepts.values().iterator()
-					.next();
-			assert (!aMap.isEmpty());
-			batchedAccept = aMap.values().iterator().next();
-			aMap.remove(batchedAccept.ballot);
-			if (aMap.isEmpty())
-				this.accepts.remove(batchedAccept.getPaxosID());
+	private static final boolean BATCH_ACROSS_GROUPS = Config.getGlobalBoolean(PC.BATCH_ACROSS_GROUPS);
+	private static final int MIN_PP_BATCH_SIZE = Config.getGlobalInt(PC.MIN_PP_BATCH_SIZE);
+	private static final boolean ENABLE_INSTRUMENTATION = Config.getGlobalBoolean(PC.ENABLE_INSTRUMENTATION);
+
+	/* Drains up to a message worth of packets and merges packets of the same
+	 * paxos group and ballot. Merging batched accepts only shares references
+	 * to their digests, so no request bytes are copied. */
+	private void flush(Accumulator acc) {
+		LinkedHashMap<Object, PaxosPacket> merged = new LinkedHashMap<Object, PaxosPacket>();
+		int drained = 0, drainedBytes = 0;
+		MessagingTask mtask = null;
+		while (drainedBytes < NIOTransport.MAX_PAYLOAD_SIZE
+				&& (mtask = acc.queue.poll()) != null) {
+			drained++;
+			for (PaxosPacket pp : mtask.msgs) {
+				drainedBytes += lengthEstimate(pp);
+				this.merge(merged, pp);
+			}
 		}
-		return batchedAccept;
+		acc.bytes.addAndGet(-drainedBytes);
+		if (acc.count.addAndGet(-drained) > 0)
+			acc.firstEnqueued = this.nanoTime();
+		if (merged.isEmpty())
+			return;
+
+		PaxosPacket[] pkts = merged.values().toArray(new PaxosPacket[0]);
+		if (BATCH_ACROSS_GROUPS && pkts.length > MIN_PP_BATCH_SIZE) {
+			this.dispatch(new MessagingTask(acc.recipients,
+					new BatchedPaxosPacket(pkts)));
+			if (ENABLE_INSTRUMENTATION && Util.oneIn(10))
+				DelayProfiler.updateMovAvg("#ppbatched", pkts.length);
+		} else
+			for (PaxosPacket pkt : pkts)
+				this.dispatch(new MessagingTask(acc.recipients, pkt));
 	}
 
-	private void send(MessagingTask mtask) {
+	private void merge(LinkedHashMap<Object, PaxosPacket> merged,
+			PaxosPacket pp) {
+		if (pp instanceof AcceptReplyPacket) {
+			AcceptReplyPacket ar = (AcceptReplyPacket) pp;
+			Object key = Arrays.asList(PaxosPacketType.ACCEPT_REPLY,
+					ar.getPaxosID(), ar.ballot);
+			PaxosPacket prev = merged.get(key);
+			if (prev != null)
+				((BatchedAcceptReply) prev).addAcceptReply(ar);
+			else
+				merged.put(key, new BatchedAcceptReply(ar));
+		} else if (pp instanceof BatchedCommit) {
+			BatchedCommit commit = (BatchedCommit) pp;
+			Object key = Arrays.asList(PaxosPacketType.BATCHED_COMMIT,
+					commit.getPaxosID(), commit.ballot);
+			PaxosPacket prev = merged.get(key);
+			if (prev != null)
+				((BatchedCommit) prev).addBatchedCommit(commit);
+			else
+				merged.put(key, commit);
+		} else if (pp instanceof BatchedAccept) {
+			BatchedAccept accept = (BatchedAccept) pp;
+			Object key = Arrays.asList(PaxosPacketType.BATCHED_ACCEPT,
+					accept.getPaxosID(), accept.ballot);
+			PaxosPacket prev = merged.get(key);
+			if (prev != null)
+				((BatchedAccept) prev).addBatchedAccept(accept);
+			else
+				merged.put(key, accept);
+		} else
+			// requests are not merged
+			merged.put(new Object(), pp);
+	}
+
+	private void dispatch(MessagingTask mtask) {
+		this.numSent.incrementAndGet();
+		this.send(mtask);
+	}
+
+	protected void send(MessagingTask mtask) {
 		try {
 			this.paxosManager.send(mtask, false, false);
 		} catch (JSONException | IOException e) {
 			e.printStackTrace();
 		}
 	}
-	
-	private static final boolean BATCH_ACROSS_GROUPS = Config.getGlobalBoolean(PC.BATCH_ACROSS_GROUPS);
-	private static final int MIN_PP_BATCH_SIZE = Config.getGlobalInt(PC.MIN_PP_BATCH_SIZE);
 
-	@Override
-	public void process(MessagingTask[] tasks) {
-		if (BATCH_ACROSS_GROUPS && tasks.length>MIN_PP_BATCH_SIZE)
-			for (MessagingTask mtask : this.batch(tasks))
-				this.send(mtask);
-		else 
-			for (MessagingTask mtask : tasks)
-				this.send(mtask);
+	/**
+	 * @return Number of paxos packets enqueued so far.
+	 */
+	public long getNumEnqueued() {
+		return this.numEnqueued.get();
 	}
-	
-	private static final boolean ENABLE_INSTRUMENTATION = Config.getGlobalBoolean(PC.ENABLE_INSTRUMENTATION);
-	private MessagingTask[] batch(MessagingTask[] mtasks) {
-		Map<Set<Integer>, BatchedPaxosPacket> grouped = new LinkedHashMap<Set<Integer>, BatchedPaxosPacket>();
-		for (MessagingTask mtask : mtasks) {
-			if (mtask == null || mtask.isEmptyMessaging())
-				continue;
-			{
-				Set<Integer> group = Util.arrayToIntSet(mtask.recipients);
-				assert (group != null);
-				if (!grouped.containsKey(group))
-					grouped.put(group, new BatchedPaxosPacket(mtask.msgs));
-				else
-					grouped.get(group).append(mtask.msgs);
-				assert (grouped.get(group).size() > 0);
-				if(ENABLE_INSTRUMENTATION && Util.oneIn(10)) DelayProfiler
-						.updateMovAvg("#ppbatched", grouped.get(group).size());
-			}
-		}
-		ArrayList<MessagingTask> batchedMTasks = new ArrayList<MessagingTask>();
-		for (Set<Integer> group : grouped.keySet())
-			batchedMTasks.add(new MessagingTask(Util.setToIntArray(group),
-					grouped.get(group)));
-		return batchedMTasks.toArray(new MessagingTask[0]);
 
+	/**
+	 * @return Number of messages sent so far.
+	 */
+	public long getNumSent() {
+		return this.numSent.get();
+	}
+
+	public String toString() {
+		return this.getClass().getSimpleName() + this.myID;
 	}
-	
 
 	private static boolean BATCHED_REQUESTS = 
 			//Config.getGlobalBoolean(PC.DIGEST_REQUESTS) && 
@@ -352,11 +421,11 @@ public class PaxosPacketBatcher extends ConsumerTask<MessagingTask[]> {
 			return mtask;
 		
 		MessagingTask nonLocal = MessagingTask.getNonLoopback(mtask,
-				this.paxosManager.getMyID());
+				this.myID);
 		if (nonLocal == null || nonLocal.isEmptyMessaging())
 			return mtask;
 		MessagingTask local = MessagingTask.getLoopback(mtask,
-				this.paxosManager.getMyID());
+				this.myID);
 		if(local == null || local.isEmptyMessaging()) ; // no-op
 
 		boolean isAccReply = allPositiveAcceptReplies(mtask), isCommit = allCoalescableDecisions(mtask),
@@ -378,7 +447,7 @@ public class PaxosPacketBatcher extends ConsumerTask<MessagingTask[]> {
 			this.enqueue(new MessagingTask(mtask.recipients, new BatchedAccept(
 					(AcceptPacket) mtask.msgs[0],
 					Util.arrayToIntSet((SHORT_CIRCUIT_LOCAL ? Util.filter(
-							mtask.recipients, this.paxosManager.getMyID())
+							mtask.recipients, this.myID)
 							: mtask.recipients)))).toArray());
 		} else if (isRequest) {
 			this.enqueue(mtask.toArray());
@@ -391,7 +460,7 @@ public class PaxosPacketBatcher extends ConsumerTask<MessagingTask[]> {
 		BatchedCommit batchedCommit = new BatchedCommit(
 				(PValuePacket) mtask.msgs[0],
 				Util.arrayToIntSet((SHORT_CIRCUIT_LOCAL ? Util.filter(
-						mtask.recipients, this.paxosManager.getMyID())
+						mtask.recipients, this.myID)
 						: mtask.recipients)));
 		batchedCommits.add(new MessagingTask(batchedCommit.getGroup(), batchedCommit));
 		// add rest into first, so index starts from 1
@@ -405,7 +474,7 @@ public class PaxosPacketBatcher extends ConsumerTask<MessagingTask[]> {
 				batchedCommit = new BatchedCommit(
 						(PValuePacket) mtask.msgs[i],
 						Util.arrayToIntSet((SHORT_CIRCUIT_LOCAL ? Util.filter(
-								mtask.recipients, this.paxosManager.getMyID())
+								mtask.recipients, this.myID)
 								: mtask.recipients)));
 				batchedCommits.add(new MessagingTask(batchedCommit.getGroup(), batchedCommit));
 			}
@@ -415,7 +484,7 @@ public class PaxosPacketBatcher extends ConsumerTask<MessagingTask[]> {
 
 	private boolean allLocal(MessagingTask mtask) {
 		for (int recipient : mtask.recipients)
-			if (recipient != this.paxosManager.getMyID())
+			if (recipient != this.myID)
 				return false;
 		return true;
 	}
@@ -475,81 +544,6 @@ public class PaxosPacketBatcher extends ConsumerTask<MessagingTask[]> {
 		return maxLoggedDecisionMap;
 	}
 
-	// entire piece of stupidity needed only for the isEmpty() method
-	static class HashMapContainer implements
-			Collection<HashMap<String, HashMap<Ballot, ?>>> {
-		private final HashMap<String, HashMap<Ballot, BatchedAcceptReply>> acceptReplies = new HashMap<String, HashMap<Ballot, BatchedAcceptReply>>();
-		private final HashMap<String, HashMap<Ballot, BatchedCommit>> commits = new HashMap<String, HashMap<Ballot, BatchedCommit>>();
-		private final HashMap<String, HashMap<Ballot, BatchedAccept>> accepts = new HashMap<String, HashMap<Ballot, BatchedAccept>>();
-		private final LinkedList<MessagingTask> requests = new LinkedList<MessagingTask>();
-
-		@Override
-		public int size() {
-			return acceptReplies.size() + commits.size() + this.accepts.size() + requests.size() ;
-		}
-
-		@Override
-		public boolean isEmpty() {
-			return size() == 0;
-		}
-
-		@Override
-		public boolean contains(Object o) {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public Iterator<HashMap<String, HashMap<Ballot, ?>>> iterator() {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public Object[] toArray() {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public <T> T[] toArray(T[] a) {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public boolean add(HashMap<String, HashMap<Ballot, ?>> e) {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public boolean remove(Object o) {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public boolean containsAll(Collection<?> c) {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public boolean addAll(
-				Collection<? extends HashMap<String, HashMap<Ballot, ?>>> c) {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public boolean removeAll(Collection<?> c) {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public boolean retainAll(Collection<?> c) {
-			throw new RuntimeException("Not implemented");
-		}
-
-		@Override
-		public void clear() {
-			throw new RuntimeException("Not implemented");
-		}
-	}
-
 	/**
 	 * @param args
 	 */
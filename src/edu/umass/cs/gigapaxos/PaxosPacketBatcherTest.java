@@ -0,0 +1,142 @@
+package edu.umass.cs.gigapaxos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.gigapaxos.paxospackets.AcceptReplyPacket;
+import edu.umass.cs.gigapaxos.paxospackets.BatchedAcceptReply;
+import edu.umass.cs.gigapaxos.paxosutil.Ballot;
+import edu.umass.cs.gigapaxos.paxosutil.MessagingTask;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * PaxosPacketBatcher test class for the hold time of packets at low and high
+ * load, driven by a clock and RTT set by the test.
+ */
+public class PaxosPacketBatcherTest extends DefaultTest {
+
+	private static final int MY_ID = 0;
+	private static final long MS = 1000 * 1000;
+	private static final long US = 1000;
+
+	/* Records the messages instead of sending them. */
+	private static class Batcher extends PaxosPacketBatcher {
+		final List<MessagingTask> sent = Collections
+				.synchronizedList(new ArrayList<MessagingTask>());
+		volatile long now = 1000 * MS;
+		volatile long rtt = -1;
+
+		Batcher(double maxDelay) {
+			super(null, MY_ID, maxDelay);
+		}
+
+		@Override
+		protected long getRTT(int node) {
+			return this.rtt;
+		}
+
+		@Override
+		protected long nanoTime() {
+			return this.now;
+		}
+
+		@Override
+		protected void send(MessagingTask mtask) {
+			this.sent.add(mtask);
+		}
+	}
+
+	private static void enqueue(Batcher batcher, int slot) {
+		AcceptReplyPacket ar = new AcceptReplyPacket(MY_ID, new Ballot(0, 1),
+				slot, -1, slot);
+		ar.putPaxosID("group", 0);
+		batcher.coalesce(new MessagingTask(1, ar));
+	}
+
+	/**
+	 * At low load, packets are sent right away as no other packet is expected
+	 * within the hold time.
+	 */
+	@Test
+	public void test_LowLoadIsNotHeld() {
+		Batcher batcher = new Batcher(1);
+		for (int slot = 0; slot < 10; slot++) {
+			enqueue(batcher, slot);
+			Assert.assertEquals(Long.MAX_VALUE, batcher.flushDue(false));
+			Assert.assertEquals(slot + 1, batcher.sent.size());
+			batcher.now += 10 * MS;
+		}
+	}
+
+	/**
+	 * At high load, packets are held for the maximum delay and then sent in a
+	 * single message.
+	 */
+	@Test
+	public void test_HighLoadIsHeld() {
+		Batcher batcher = new Batcher(1);
+		for (int slot = 0; slot < 100; slot++) {
+			enqueue(batcher, slot);
+			batcher.now += 5 * US;
+		}
+		Assert.assertEquals(1 * MS - 500 * US, batcher.flushDue(false));
+		Assert.assertTrue(batcher.sent.isEmpty());
+
+		batcher.now += 500 * US;
+		Assert.assertEquals(Long.MAX_VALUE, batcher.flushDue(false));
+		Assert.assertEquals(1, batcher.sent.size());
+		Assert.assertEquals(100,
+				((BatchedAcceptReply) batcher.sent.get(0).msgs[0]).size());
+	}
+
+	/**
+	 * The hold time is a fraction of the RTT to the destination if that is
+	 * less than the maximum delay.
+	 */
+	@Test
+	public void test_HoldTimeFollowsRTT() {
+		Batcher batcher = new Batcher(1);
+		batcher.rtt = 2;
+		long hold = (long) (2 * MS * Config
+				.getGlobalDouble(PC.PP_BATCH_RTT_FRACTION));
+		Assert.assertTrue(hold < 1 * MS);
+		for (int slot = 0; slot < 10; slot++) {
+			enqueue(batcher, slot);
+			batcher.now += 5 * US;
+		}
+		Assert.assertEquals(hold - 50 * US, batcher.flushDue(false));
+		Assert.assertTrue(batcher.sent.isEmpty());
+
+		batcher.now += hold - 50 * US;
+		batcher.flushDue(false);
+		Assert.assertEquals(1, batcher.sent.size());
+	}
+
+	/**
+	 * Accept replies for the same group and ballot are merged.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void test_Merge() throws InterruptedException {
+		Batcher batcher = new Batcher(1000);
+		for (int slot = 0; slot < 10; slot++)
+			enqueue(batcher, slot);
+		// flushes everything on stopping
+		batcher.start();
+		batcher.stop();
+		for (long t = System.currentTimeMillis(); batcher.sent.isEmpty()
+				&& System.currentTimeMillis() - t < 1000;)
+			TimeUnit.MILLISECONDS.sleep(10);
+		Assert.assertEquals(1, batcher.sent.size());
+		Assert.assertEquals(10,
+				((BatchedAcceptReply) batcher.sent.get(0).msgs[0]).size());
+	}
+}
@@ -90,6 +90,7 @@ import edu.umass.cs.gigapaxos.paxosutil.LogIndex.LogIndexEntry;
 import edu.umass.cs.gigapaxos.paxosutil.LogMessagingTask;
 import edu.umass.cs.gigapaxos.paxosutil.PaxosInstanceCreationException;
 import edu.umass.cs.gigapaxos.paxosutil.PaxosMessenger;
+import edu.umass.cs.gigapaxos.paxosutil.PauseStore;
 import edu.umass.cs.gigapaxos.paxosutil.RecoveryInfo;
 import edu.umass.cs.gigapaxos.paxosutil.SQL;
 import edu.umass.cs.gigapaxos.paxosutil.SlotBallotState;
@@ -253,6 +254,8 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 
 	private final ScheduledExecutorService GC;
 	private final MessageLogDiskMap messageLog;
+	// null if disabled or unable to open
+	private final PauseStore pauseStore;
 
 	private static Logger log = Logger.getLogger(PaxosManager.class.getName());;
 
@@ -294,6 +297,9 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		};
 		this.messageLog = USE_DISK_MAP ? new MessageLogDiskMap(disk)
 						: new MessageLogPausable(disk);
+		this.pauseStore = USE_DISK_MAP
+				&& Config.getGlobalBoolean(PC.PAUSE_STORE) ? this
+				.openPauseStore() : null;
 
 		// will set up db, connection, tables, etc. as needed
 		if (!initialize(true))
@@ -307,6 +313,7 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		super(IntegerMap.NULL_INT_NODE, null, null);
 		this.strID = strID;
 		this.messageLog = null;
+		this.pauseStore = null;
 		this.journaler = null;
 		this.GC = null;
 		this.initialize(false);
@@ -328,6 +335,9 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 					// logIndex match pattern
 					SQLPaxosLogger.getLogIndexDBPrefix(
 							SQLPaxosLogger.LOG_DIRECTORY, strID),
+					// pause store
+					SQLPaxosLogger.getPauseStoreFilename(
+							SQLPaxosLogger.LOG_DIRECTORY, strID),
 					// locks dir
 					SQLPaxosLogger.getLocksDir()+"/"+strID);
 		}
@@ -352,6 +362,21 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		return getLogIndexDBPrefix(this.logDirectory, this.strID /* this.myID */);
 	}
 
+	private static String getPauseStoreFilename(String logdir, Object strID) {
+		return logdir + "/" + "pause" + strID;
+	}
+
+	private PauseStore openPauseStore() {
+		try {
+			return new PauseStore(getPauseStoreFilename(this.logDirectory,
+					this.strID));
+		} catch (IOException | IllegalArgumentException e) {
+			log.severe(this + " unable to open pause store; pausing in DB: "
+					+ e);
+			return null;
+		}
+	}
+
 	/**
 	 * @param id
 	 * @param dbPath
@@ -1463,50 +1488,60 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			cleanup(conn);
 		}
 
-		this.deleteOutdatedMessages(paxosID, version, ballot, acceptedGCSlot,
-				ballot.ballotNumber, ballot.coordinatorID, acceptedGCSlot);
+		this.deleteOutdatedMessages(new CheckpointTask[] { new CheckpointTask(
+				this, paxosID, version, group, acceptedGCSlot, ballot, state,
+				acceptedGCSlot) });
 
 	}
 
 	private static final boolean ENABLE_INSTRUMENTATION = Config
 			.getGlobalBoolean(PC.ENABLE_INSTRUMENTATION);
 
-	private void deleteOutdatedMessages(String paxosID, int version,
-			Ballot ballot, int slot, int ballotnum, int coordinator,
-			int acceptedGCSlot) {
+	private void deleteOutdatedMessages(CheckpointTask[] tasks) {
 		/* Delete logged messages from before the checkpoint. Note: Putting this
 		 * before cleanup(conn) above can cause deadlock if we don't have at
 		 * least 2x the number of connections as concurrently active paxosIDs.
 		 * Realized this the hard way. :) */
-		if (ENABLE_JOURNALING && PAUSABLE_INDEX_JOURNAL)
-			this.messageLog.setGCSlot(paxosID, version,
-					slot - acceptedGCSlot < 0 ? slot : acceptedGCSlot);
-		else if (Util.oneIn(getLogGCFrequency()) && this.incrNumGCs() == 0) {
-			Runnable gcTask = new TimerTask() {
-				@Override
-				public void run() {
-					try {
-						int priority = Thread.currentThread().getPriority();
-						Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
-						long t = System.currentTimeMillis();
-						SQLPaxosLogger.this.deleteOutdatedMessagesDB(paxosID,
-								slot, ballot.ballotNumber,
-								ballot.coordinatorID, acceptedGCSlot);
-						Thread.currentThread().setPriority(priority);
-						DelayProfiler.updateDelay("DBGC", t);
-					} catch (Exception | Error e) {
-						log.severe(this + " incurred exception "
-								+ e.getMessage());
-						e.printStackTrace();
-					}
+		if (ENABLE_JOURNALING && PAUSABLE_INDEX_JOURNAL) {
+			for (CheckpointTask task : tasks)
+				this.messageLog.setGCSlot(task.paxosID, task.version,
+						task.slot - task.gcSlot < 0 ? task.slot : task.gcSlot);
+			return;
+		}
+		ArrayList<CheckpointTask> gcTasks = new ArrayList<CheckpointTask>();
+		for (CheckpointTask task : tasks)
+			if (Util.oneIn(getLogGCFrequency()))
+				gcTasks.add(task);
+		if (gcTasks.isEmpty())
+			return;
+		// at most one DB GC at a time
+		if (this.incrNumGCs() > 0) {
+			this.decrNumGCs();
+			return;
+		}
+		Runnable gcTask = new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					int priority = Thread.currentThread().getPriority();
+					Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+					long t = System.currentTimeMillis();
+					SQLPaxosLogger.this.deleteOutdatedMessagesDB(gcTasks
+							.toArray(new CheckpointTask[0]));
+					Thread.currentThread().setPriority(priority);
+					DelayProfiler.updateDelay("DBGC", t, gcTasks.size());
+				} catch (Exception | Error e) {
+					log.severe(this + " incurred exception " + e.getMessage());
+					e.printStackTrace();
+				} finally {
+					SQLPaxosLogger.this.decrNumGCs();
 				}
-			};
-			if (getLogGCFrequency() == 0) {
-				gcTask.run();
-			} else {
-				this.GC.submit(gcTask, 0);
 			}
-			assert (this.decrNumGCs() == 1);
+		};
+		if (getLogGCFrequency() == 0) {
+			gcTask.run();
+		} else {
+			this.GC.submit(gcTask, 0);
 		}
 	}
 
@@ -1701,10 +1736,7 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 				new Object[] { this, tasks.length,
 						System.currentTimeMillis() - t });
 
-		for (CheckpointTask task : tasks)
-			this.deleteOutdatedMessages(task.paxosID, task.version,
-					task.ballot, task.slot, task.ballot.ballotNumber,
-					task.ballot.coordinatorID, task.gcSlot);
+		this.deleteOutdatedMessages(tasks);
 		return true;
 	}
 
@@ -1726,7 +1758,7 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		try {
 			conn = this.getDefaultConn();
 			pstmt = conn.prepareStatement("delete from " + this.getCTable()
-					+ " where paxosID=?");
+					+ " where paxos_id=?");
 			pstmt.setString(1, paxosID);
 			pstmt.execute();
 		} catch (SQLException e) {
@@ -1755,98 +1787,117 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	/* Forms the constraint field < limit while handling wraparounds. Looks like
 	 * in SQL, we can not conveniently just check (field - limit < 0). SQL
 	 * arithmetic stops at wraparound boundaries, e.g., Integer.MAX_VALUE + 1 is
-	 * just Integer.MAX_VALUE. */
-	private static String getIntegerLTConstraint(String field, int limit) {
-		return "("
-				+ field
-				+ " < "
-				+ limit
-				+ (limit < Integer.MIN_VALUE / 2 ? " or " + field + " > "
-						+ Integer.MAX_VALUE / 2 : "") + ")";
-	}
-
-	// Forms the constraint field > limit while handling wraparounds
-	private static String getIntegerGTEConstraint(String field, int limit) {
-		return "("
-				+ field
-				+ " >= "
-				+ limit
-				+ (limit > Integer.MAX_VALUE / 2 ? " or " + field + " < "
-						+ Integer.MIN_VALUE / 2 : "") + ")";
+	 * just Integer.MAX_VALUE. The constraint takes two parameters, limit and
+	 * getIntegerLTBound(limit), so that the statement is the same for every
+	 * limit and can be reused from the statement cache. */
+	private static String getIntegerLTConstraint(String field) {
+		return "(" + field + " < ? or " + field + " > ?)";
+	}
+
+	// field > Integer.MAX_VALUE is never true
+	private static int getIntegerLTBound(int limit) {
+		return limit < Integer.MIN_VALUE / 2 ? Integer.MAX_VALUE / 2
+				: Integer.MAX_VALUE;
+	}
+
+	/* Forms the constraint field >= limit while handling wraparounds. The
+	 * parameters are limit and getIntegerGTEBound(limit). */
+	private static String getIntegerGTEConstraint(String field) {
+		return "(" + field + " >= ? or " + field + " < ?)";
+	}
+
+	// field < Integer.MIN_VALUE is never true
+	private static int getIntegerGTEBound(int limit) {
+		return limit > Integer.MAX_VALUE / 2 ? Integer.MIN_VALUE / 2
+				: Integer.MIN_VALUE;
 	}
 
 	/* Called by putCheckpointState to delete logged messages from before the
-	 * checkpoint. */
-	private void deleteOutdatedMessagesDB(String paxosID, int slot,
-			int ballotnum, int coordinator, int acceptedGCSlot) {
+	 * checkpoints of the given groups. The deletes of all groups are batched
+	 * and committed together every MAX_DB_BATCH_SIZE groups. */
+	private void deleteOutdatedMessagesDB(CheckpointTask[] tasks) {
 		if (isClosed())
 			return;
-		if (slot == 0)
-			return; // a hack to avoid GC at slot 0
 
-		PreparedStatement pstmt = null;
-		ResultSet rset = null;
+		// the same statement deletes both accepts and decisions
+		String slotCmd = "delete from " + getMTable()
+				+ " where paxos_id=? and packet_type=? and "
+				+ getIntegerLTConstraint("slot");
+		String prepareCmd = "delete from " + getMTable()
+				+ " where paxos_id=? and packet_type=? and ("
+				+ getIntegerLTConstraint("ballotnum")
+				+ " or (ballotnum=? and coordinator<?))";
+		PreparedStatement slotPstmt = null, preparePstmt = null;
 		Connection conn = null;
+		int batched = 0;
 		try {
-			/* All accepts at or above the most recent checkpoint slot are
-			 * retained. We retain the accept at the checkpoint slot to ensure
-			 * that the accepted pvalues list is never empty unless there are
-			 * truly no accepts beyond prepare.firstUndecidedSlot. If we don't
-			 * ensure this property, we would have to maintain GC slot
-			 * information in the database and send it along with prepare
-			 * replies. */
-			int minLoggedAccept = (acceptedGCSlot - slot < 0 ? acceptedGCSlot + 1
-					: slot);
-			int minLoggedDecision = slot - MAX_OLD_DECISIONS;
-			// The following are for handling integer wraparound arithmetic
-			String decisionConstraint = getIntegerLTConstraint("slot",
-					minLoggedDecision);
-			String acceptConstraint = getIntegerLTConstraint("slot",
-					minLoggedAccept);
-			String ballotnumConstraint = getIntegerLTConstraint("ballotnum",
-					ballotnum);
-
-			String[] cmds = new String[3];
-			// create delete command using the slot, ballot, and gcSlot
-			cmds[0] = "delete from " + getMTable() + " where paxos_id='"
-					+ paxosID + "' and " + "(packet_type="
-					+ PaxosPacketType.ACCEPT.getInt() + " and "
-					+ acceptConstraint + ")";
-			cmds[1] = "delete from " + getMTable() + " where paxos_id='"
-					+ paxosID + "' and " + "(packet_type="
-					+ PaxosPacketType.DECISION.getInt() + " and "
-					+ decisionConstraint + ") ";
-			cmds[2] = "delete from " + getMTable() + " where paxos_id='"
-					+ paxosID + "' and " + "(packet_type="
-					+ PaxosPacketType.PREPARE.getInt() + " and ("
-					+ ballotnumConstraint + " or (ballotnum=" + ballotnum
-					+ " and coordinator<" + coordinator + ")))";
-
 			conn = getDefaultConn();
-			int deleted = 0;
-			// have to literally break it down for derby :(
-			for (int i = 0; i < 3; i++) {
-				pstmt = conn.prepareStatement(cmds[i]);
-				deleted += pstmt.executeUpdate();
-				pstmt.close();
+			conn.setAutoCommit(false);
+			slotPstmt = conn.prepareStatement(slotCmd);
+			preparePstmt = conn.prepareStatement(prepareCmd);
+			for (CheckpointTask task : tasks) {
+				if (task.slot == 0)
+					continue; // a hack to avoid GC at slot 0
+				/* All accepts at or above the most recent checkpoint slot are
+				 * retained. We retain the accept at the checkpoint slot to
+				 * ensure that the accepted pvalues list is never empty unless
+				 * there are truly no accepts beyond
+				 * prepare.firstUndecidedSlot. If we don't ensure this property,
+				 * we would have to maintain GC slot information in the
+				 * database and send it along with prepare replies. */
+				int minLoggedAccept = (task.gcSlot - task.slot < 0 ? task.gcSlot + 1
+						: task.slot);
+				int minLoggedDecision = task.slot - MAX_OLD_DECISIONS;
+				int ballotnum = task.ballot.ballotNumber;
+
+				// have to literally break it down for derby :(
+				addSlotDelete(slotPstmt, task.paxosID, PaxosPacketType.ACCEPT,
+						minLoggedAccept);
+				addSlotDelete(slotPstmt, task.paxosID,
+						PaxosPacketType.DECISION, minLoggedDecision);
+				preparePstmt.setString(1, task.paxosID);
+				preparePstmt.setInt(2, PaxosPacketType.PREPARE.getInt());
+				preparePstmt.setInt(3, ballotnum);
+				preparePstmt.setInt(4, getIntegerLTBound(ballotnum));
+				preparePstmt.setInt(5, ballotnum);
+				preparePstmt.setInt(6, task.ballot.coordinatorID);
+				preparePstmt.addBatch();
+
+				if (++batched % MAX_DB_BATCH_SIZE == 0) {
+					slotPstmt.executeBatch();
+					preparePstmt.executeBatch();
+					conn.commit();
+				}
+			}
+			if (batched % MAX_DB_BATCH_SIZE != 0) {
+				slotPstmt.executeBatch();
+				preparePstmt.executeBatch();
+				conn.commit();
 			}
 
-			// conn.commit();
-			log.log(Level.FINE, "{0}{1}{2}", new Object[] { this,
-					" DB deleted up to slot ", acceptedGCSlot });
-			if (deleted > 0)
-				// DelayProfiler.updateCount("#logged", -deleted)
-				;
+			log.log(Level.FINE, "{0} DB deleted outdated messages of {1} groups",
+					new Object[] { this, batched });
 		} catch (SQLException sqle) {
-			log.severe(this + ": SQLException while deleting outdated messages for "
-					+ paxosID);
+			log.severe(this
+					+ ": SQLException while deleting outdated messages of "
+					+ batched + "+ groups");
 			sqle.printStackTrace();
 		} finally {
-			cleanup(pstmt, rset);
+			cleanup(slotPstmt);
+			cleanup(preparePstmt);
 			cleanup(conn);
 		}
 	}
 
+	private static void addSlotDelete(PreparedStatement pstmt, String paxosID,
+			PaxosPacketType type, int minSlot) throws SQLException {
+		pstmt.setString(1, paxosID);
+		pstmt.setInt(2, type.getInt());
+		pstmt.setInt(3, minSlot);
+		pstmt.setInt(4, getIntegerLTBound(minSlot));
+		pstmt.addBatch();
+	}
+
 	/* Used to be the entry point for message logging. Replaced by batchLog and
 	 * log(PaxosPacket) now. */
 	@Deprecated
@@ -1910,16 +1961,34 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			Map<String, HotRestoreInfo> hriMap) {
 		Map<String, HotRestoreInfo> paused = new HashMap<String, HotRestoreInfo>();
 		for (HotRestoreInfo hri : hriMap.values()) {
-			if (this.pause(hri.paxosID, hri.toString()))
+			if (this.pauseDB(hri.paxosID, hri.toString()))
 				paused.put(hri.paxosID, hri);
 		}
 		return paused;
 	}
 
+	/* Pauses to the pause store if any, falling back to the DB for instances
+	 * that do not fit in the store. The logIndex of an instance paused to the
+	 * store is left to the DiskMap that pages it out on its own. */
 	public/* synchronized */Map<String, HotRestoreInfo> pause(
 			Map<String, HotRestoreInfo> hriMap) {
 		if (isClosed())
 			return null;
+		if (this.pauseStore == null)
+			return this.pauseDB(hriMap);
+		Map<String, HotRestoreInfo> paused = new HashMap<String, HotRestoreInfo>();
+		for (HotRestoreInfo hri : hriMap.values())
+			if (this.pauseStore.put(hri))
+				paused.put(hri.paxosID, hri);
+		log.log(Level.FINE, "{0} paused [{1}] to pause store",
+				new Object[] { this, Util.truncatedLog(paused.keySet(), 16) });
+		if (paused.size() < hriMap.size())
+			paused.putAll(this.pauseDB(this.diffHRI(hriMap, paused)));
+		return paused;
+	}
+
+	private/* synchronized */Map<String, HotRestoreInfo> pauseDB(
+			Map<String, HotRestoreInfo> hriMap) {
 		if (!USE_CHECKPOINTS_AS_PAUSE_TABLE)
 			return pauseBatchIndividually(hriMap);
 
@@ -1998,6 +2067,19 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	public/* synchronized */boolean pause(String paxosID, String serializedState) {
 		if (isClosed() /* || !isLoggingEnabled() */)
 			return false;
+		if (this.pauseStore != null
+				&& this.pauseStore.put(new HotRestoreInfo(serializedState))) {
+			log.log(Level.FINE, "{0} paused [{1}] to pause store",
+					new Object[] { this, serializedState });
+			return true;
+		}
+		return this.pauseDB(paxosID, serializedState);
+	}
+
+	private/* synchronized */boolean pauseDB(String paxosID,
+			String serializedState) {
+		if (isClosed() /* || !isLoggingEnabled() */)
+			return false;
 
 		boolean paused = false;
 		String insertCmd = "insert into "
@@ -2079,6 +2161,13 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			return null;
 
 		HotRestoreInfo hri = null;
+		// a single lookup that also deletes the paused state
+		if (this.pauseStore != null
+				&& (hri = this.pauseStore.remove(paxosID)) != null) {
+			log.log(Level.FINEST, "{0} unpaused {1} from pause store",
+					new Object[] { this, paxosID });
+			return hri;
+		}
 		PreparedStatement pstmt = null;
 		ResultSet rset = null;
 		Connection conn = null;
@@ -2136,8 +2225,9 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 							: getPTable())
 					+ " set serialized=null"
 					+ (USE_CHECKPOINTS_AS_PAUSE_TABLE ? ", has_serialized=false"
-							: "") + " where paxos_id='" + paxosID + "'";
+							: "") + " where paxos_id=?";
 			pstmt = conn.prepareStatement(cmd);
+			pstmt.setString(1, paxosID);
 			pstmt.executeUpdate();
 			// conn.commit();
 		} catch (SQLException sqle) {
@@ -2693,7 +2783,11 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 									+ getPTable() + ")"));
 			rset = pstmt.executeQuery();
 			while (rset != null && rset.next()) {
-				unpaused.add(rset.getString(1));
+				String paxosID = rset.getString(1);
+				// paused to the pause store
+				if (this.pauseStore == null
+						|| !this.pauseStore.contains(paxosID))
+					unpaused.add(paxosID);
 			}
 		} catch (SQLException e) {
 			log.severe(this + ": SQLException while getting all paxos IDs " + " : " + e);
@@ -2868,20 +2962,26 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	 * @param table
 	 * @param paxosID
 	 * @param column
+	 * @param fieldConstraints
+	 * @param params
+	 *            Integer parameters of fieldConstraints.
 	 * @return PreparedStatement to lookup the specified table, paxosID and
 	 *         column(s)
 	 * @throws SQLException
 	 */
 	private PreparedStatement getPreparedStatement(Connection conn,
-			String table, String paxosID, String column, String fieldConstraints)
-			throws SQLException {
+			String table, String paxosID, String column,
+			String fieldConstraints, int... params) throws SQLException {
 		String cmd = "select " + column + " from " + table
 				+ (paxosID != null ? " where paxos_id=?" : "");
 		cmd += (fieldConstraints != null ? fieldConstraints : "");
 		PreparedStatement getCPState = (conn != null ? conn : this
 				.getDefaultConn()).prepareStatement(cmd);
+		int index = 1;
 		if (paxosID != null)
-			getCPState.setString(1, paxosID);
+			getCPState.setString(index++, paxosID);
+		for (int param : params)
+			getCPState.setInt(index++, param);
 		return getCPState;
 	}
 
@@ -2979,11 +3079,13 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	 * 
 	 * @param paxosID
 	 * @param fieldConstraints
+	 * @param params
+	 *            Integer parameters of {@code fieldConstraints}.
 	 * @return A list of logged messages for {@code paxosID} meeting
 	 *         {@code fieldConstraints}.
 	 */
 	private synchronized ArrayList<PaxosPacket> getLoggedMessages(
-			String paxosID, String fieldConstraints) {
+			String paxosID, String fieldConstraints, int... params) {
 		long t = System.currentTimeMillis();
 		if (ENABLE_JOURNALING && LOG_INDEX_FREQUENCY > 0)
 			this.syncLogMessagesIndex(paxosID);
@@ -3000,7 +3102,7 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			pstmt = this.getPreparedStatement(conn, getMTable(), paxosID,
 					"packet_type, message"
 							+ (ENABLE_JOURNALING ? ", logfile, foffset, length"
-									: ""), fieldConstraints);
+									: ""), fieldConstraints, params);
 			messagesRS = pstmt.executeQuery();
 
 			assert (!messagesRS.isClosed());
@@ -3064,7 +3166,7 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	private byte[] getJournaledMessage(String logfile, long offset, int length,
 			RandomAccessFile raf) throws IOException {
 		assert (logfile != null);
-		if (!new File(logfile).exists())
+		if (raf == null && !new File(logfile).exists())
 			return null;
 		boolean locallyOpened = false;
 		if (raf == null) {
@@ -3125,11 +3227,17 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		}
 	}
 
+	/* Reads the given messages in file and offset order so that each journal
+	 * file is opened once and read front to back. The returned messages are
+	 * therefore not necessarily in the order of fols. */
 	private ArrayList<byte[]> getJournaledMessage(FileOffsetLength[] fols)
 			throws IOException {
 		ArrayList<byte[]> logStrings = new ArrayList<byte[]>();
 		RandomAccessFile raf = null;
 		String filename = null;
+		fols = fols.clone();
+		Arrays.sort(fols, (a, b) -> a.file.equals(b.file) ? Long.compare(
+				a.offset, b.offset) : a.file.compareTo(b.file));
 		for (FileOffsetLength fol : fols) {
 			try {
 				if (raf == null) {
@@ -3146,6 +3254,8 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 				raf = null;
 			}
 		}
+		if (raf != null)
+			raf.close();
 		return logStrings;
 	}
 
@@ -3623,10 +3733,12 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		if (maxSlot - minSlot <= 0)
 			return decisions;
 		ArrayList<PaxosPacket> list = this.getLoggedMessages(paxosID,
-				"and version=" + version + " and packet_type="
-						+ PaxosPacketType.DECISION.getInt() + " and "
-						+ getIntegerGTEConstraint("slot", minSlot) + " and "
-						+ getIntegerLTConstraint("slot", maxSlot)); // wraparound-arithmetic
+				" and version=? and packet_type=? and "
+						+ getIntegerGTEConstraint("slot") + " and "
+						+ getIntegerLTConstraint("slot"), version,
+				PaxosPacketType.DECISION.getInt(), minSlot,
+				getIntegerGTEBound(minSlot), maxSlot,
+				getIntegerLTBound(maxSlot)); // wraparound-arithmetic
 		assert (list != null);
 		for (PaxosPacket p : list)
 			decisions.add((PValuePacket) p);
@@ -3646,16 +3758,16 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 
 		// long t1 = System.currentTimeMillis();
 		// fetch all accepts and then weed out those below firstSlot
-		ArrayList<PaxosPacket> list = this.getLoggedMessages(
-				paxosID,
-				" and packet_type="
-						+ PaxosPacketType.ACCEPT.getInt()
-						+ " and "
-						+ getIntegerGTEConstraint("slot", firstSlot)
-						// maxSlot is null for getting lower ballot pvalues
-						+ (maxSlot != null ? " and "
-								+ getIntegerLTConstraint("slot", maxSlot) : "")
-						+ " and version=" + version);
+		String constraints = " and version=? and packet_type=? and "
+				+ getIntegerGTEConstraint("slot");
+		// maxSlot is null for getting lower ballot pvalues
+		ArrayList<PaxosPacket> list = maxSlot != null ? this.getLoggedMessages(
+				paxosID, constraints + " and " + getIntegerLTConstraint("slot"),
+				version, PaxosPacketType.ACCEPT.getInt(), firstSlot,
+				getIntegerGTEBound(firstSlot), maxSlot,
+				getIntegerLTBound(maxSlot)) : this.getLoggedMessages(paxosID,
+				constraints, version, PaxosPacketType.ACCEPT.getInt(),
+				firstSlot, getIntegerGTEBound(firstSlot));
 
 		TreeMap<Integer, PValuePacket> accepted = new TreeMap<Integer, PValuePacket>();
 		for (PaxosPacket p : list) {
@@ -3762,16 +3874,19 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	 */
 	public boolean remove(String paxosID, int version) {
 		boolean removedCP = false, removedM = false, removedP = false;
-		Statement stmt = null;
-		String cmdC = "delete from "
-				+ getCTable()
-				+ (paxosID != null ? " where paxos_id='"
-						+ paxosID
-						+ "' and (version="
-						+ version
-						+ " or "
-						+ SQLPaxosLogger.getIntegerLTConstraint("version",
-								version) + ")" : " where true");
+		String versionConstraint = (paxosID != null ? " where paxos_id=? and (version=? or "
+				+ SQLPaxosLogger.getIntegerLTConstraint("version") + ")"
+				: " where true");
+		String cmdC = "delete from " + getCTable() + versionConstraint;
+		if (this.pauseStore != null)
+			try {
+				if (paxosID == null)
+					this.pauseStore.clear();
+				else
+					this.pauseStore.remove(paxosID, version);
+			} catch (IOException e) {
+				log.severe(this + " unable to clear pause store: " + e);
+			}
 		synchronized (this.messageLog) {
 			if (paxosID == null)
 				this.messageLog.clear();
@@ -3783,28 +3898,17 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 						new Object[] { this, paxosID, version });
 			}
 		}
-		String cmdM = "delete from "
-				+ getMTable()
-				+ (paxosID != null ? " where paxos_id='"
-						+ paxosID
-						+ "' and (version="
-						+ version
-						+ " or "
-						+ SQLPaxosLogger.getIntegerLTConstraint("version",
-								version) + ")" : " where true");
-		String cmdP = "delete from "
-				+ getPTable()
-				+ (paxosID != null ? " where paxos_id='" + paxosID + "'"
-						: " where true");
+		String cmdM = "delete from " + getMTable() + versionConstraint;
+		String cmdP = "delete from " + getPTable()
+				+ (paxosID != null ? " where paxos_id=?" : " where true");
 		Connection conn = null;
 		try {
 			conn = this.getDefaultConn();
-			stmt = conn.createStatement();
-			stmt.execute(cmdC);
+			this.delete(conn, cmdC, paxosID, version);
 			removedCP = true;
-			stmt.execute(cmdM);
+			this.delete(conn, cmdM, paxosID, version);
 			removedM = true;
-			stmt.execute(cmdP);
+			this.delete(conn, cmdP, paxosID, null);
 			removedP = true;
 			// conn.commit();
 			log.log(Level.FINE,
@@ -3817,12 +3921,31 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 								: getCTable()));
 			sqle.printStackTrace();
 		} finally {
-			cleanup(stmt);
 			cleanup(conn);
 		}
 		return removedCP && removedM;
 	}
 
+	/* Executes a delete command formed in remove(String, int) with paxosID and
+	 * optionally the version constraint as parameters. */
+	private void delete(Connection conn, String cmd, String paxosID,
+			Integer version) throws SQLException {
+		PreparedStatement pstmt = null;
+		try {
+			pstmt = conn.prepareStatement(cmd);
+			if (paxosID != null)
+				pstmt.setString(1, paxosID);
+			if (paxosID != null && version != null) {
+				pstmt.setInt(2, version);
+				pstmt.setInt(3, version);
+				pstmt.setInt(4, getIntegerLTBound(version));
+			}
+			pstmt.execute();
+		} finally {
+			cleanup(pstmt);
+		}
+	}
+
 	public boolean removeAll() {
 		this.removeAllJournals();
 		// remove all paxos DB state
@@ -3852,6 +3975,8 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		// messageLog should be closed before DB
 		if (this.messageLog != null)
 			this.messageLog.close();
+		if (this.pauseStore != null)
+			this.pauseStore.close();
 		this.setClosed(true);
 		// can not close derby until all instances are done
 		if (allClosed() || !isEmbeddedDB())
@@ -4523,17 +4648,19 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		ResultSet messagesRS = null;
 		Connection conn = null;
 		String cmd = "select paxos_id, message from " + getMTable()
-				+ " where paxos_id='" + paxosID + "' " + " and slot=" + slot
-				+ " and ballotnum=" + ballotnum + " and coordinator="
-				+ coordinator
+				+ " where paxos_id=? and slot=? and ballotnum=? and coordinator=?"
 				+ (getLogMessageBlobOption() ? "" : " and message=?");
 		boolean logged = false;
 
 		try {
 			conn = this.getDefaultConn();
 			pstmt = conn.prepareStatement(cmd);
+			pstmt.setString(1, paxosID);
+			pstmt.setInt(2, slot);
+			pstmt.setInt(3, ballotnum);
+			pstmt.setInt(4, coordinator);
 			if (!getLogMessageBlobOption())
-				pstmt.setString(1, msg); // will not work for clobs
+				pstmt.setString(5, msg); // will not work for clobs
 			messagesRS = pstmt.executeQuery();
 			while (messagesRS.next() && !logged) {
 				String insertedMsg = (!getLogMessageBlobOption() ? messagesRS
@@ -4626,6 +4753,8 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			}
 			cpds.setAutoCommitOnClose(true);
 			cpds.setMaxPoolSize(MAX_POOL_SIZE);
+			cpds.setMaxStatementsPerConnection(Config
+					.getGlobalInt(PC.STATEMENT_CACHE_SIZE));
 		} catch (PropertyVetoException pve) {
 			pve.printStackTrace();
 		}
@@ -4683,13 +4812,16 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		ResultSet rset = null;
 		Connection conn = null;
 		String cmd = "delete from " + getPCTable()
-				+ " where paxos_id=? and (version=" + version + " or "
-				+ getIntegerLTConstraint("version", version) + ")";
+				+ " where paxos_id=? and (version=? or "
+				+ getIntegerLTConstraint("version") + ")";
 		Integer ghostVersion = null;
 		try {
 			conn = this.getDefaultConn();
 			pstmt = conn.prepareStatement(cmd);
 			pstmt.setString(1, paxosID);
+			pstmt.setInt(2, version);
+			pstmt.setInt(3, version);
+			pstmt.setInt(4, getIntegerLTBound(version));
 			int numDeleted = pstmt.executeUpdate();
 			// conn.commit();
 			deleted = numDeleted > 0;
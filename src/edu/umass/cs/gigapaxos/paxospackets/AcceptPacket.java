@@ -18,7 +18,6 @@ package edu.umass.cs.gigapaxos.paxospackets;
 import java.io.UnsupportedEncodingException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -159,8 +158,9 @@ public final class AcceptPacket extends PValuePacket {
 		return super.getSummaryString();
 	}
 
-	public AcceptPacket digest(MessageDigest md) {
-		assert (md != null);
+	public AcceptPacket digest() {
+		// computes digest if not already received with broadcast request
+		this.getDigest();
 		AcceptPacket accept = new AcceptPacket(this.sender,
 				new PValuePacket(this.ballot, new ProposalPacket(this.slot,
 						new RequestPacket(this.requestID, null, this.stop, this
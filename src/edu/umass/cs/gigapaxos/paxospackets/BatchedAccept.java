@@ -43,7 +43,7 @@ public class BatchedAccept extends PaxosPacket {
 		super(accept);
 		this.packetType = PaxosPacketType.BATCHED_ACCEPT;
 		this.ballot = accept.ballot;
-		this.slotDigests.put(accept.slot, (accept.getDigest(null)));
+		this.slotDigests.put(accept.slot, (accept.getDigest()));
 		this.slotRequestIDs.put(accept.slot, accept.requestID);
 //		this.slotBatchSizes.put(accept.slot, accept.batchSize());
 		this.group = group;
@@ -231,7 +231,7 @@ public class BatchedAccept extends PaxosPacket {
 					+ accept.getSummary() + " with " + this.getSummary());
 		if (accept.getMedianCheckpointedSlot() - this.medianCheckpointedSlot > 0)
 			this.medianCheckpointedSlot = accept.getMedianCheckpointedSlot();
-		this.slotDigests.put(accept.slot, accept.getDigest(null));
+		this.slotDigests.put(accept.slot, accept.getDigest());
 		this.slotRequestIDs.put(accept.slot, accept.requestID);
 //		this.slotBatchSizes.put(accept.slot, accept.batchSize());
 	}
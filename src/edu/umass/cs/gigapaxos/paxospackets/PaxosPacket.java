@@ -100,9 +100,18 @@ public abstract class PaxosPacket extends JSONPacket implements Summarizable {
 		TOT_S,
 
 		/**
-		 * missing decisions
+		 * missing decisions as individual slots, sent by older nodes
 		 */
 		MISS,
+		/**
+		 * missing decisions as first and last slots of missing ranges
+		 */
+		MISS_R,
+		/**
+		 * whether missing decisions before the last checkpoint may be sent as
+		 * the checkpoint
+		 */
+		SYNC_CP,
 		/**
 		 * first slot being prepared
 		 */
@@ -21,8 +21,6 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.logging.Level;
 
@@ -41,6 +39,7 @@ import edu.umass.cs.nio.JSONNIOTransport;
 import edu.umass.cs.nio.interfaces.Byteable;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.MurmurHash3;
 import edu.umass.cs.utils.Util;
 
 /**
@@ -54,23 +53,6 @@ public class RequestPacket extends PaxosPacket implements Request,
 	private static final boolean DEBUG = Config.getGlobalBoolean(PC.DEBUG);
 	public static final String NO_OP = Request.NO_OP;
 
-	private static final MessageDigest[] mds = new MessageDigest[Config.getGlobalInt(PC.NUM_MESSAGE_DIGESTS)];
-	static {
-		for (int i = 0; i < mds.length; i++)
-			try {
-				mds[i] = MessageDigest.getInstance("MD5");
-			} catch (NoSuchAlgorithmException e) {
-				Util.suicide("Unable to initialize MessageDigest; exiting");
-			}
-	}
-
-	/**
-	 * @return MessageDigest.
-	 */
-	public static MessageDigest getMessageDigest() {
-		return mds[(int) (Math.random() * mds.length)];
-	}
-
 	/**
 	 * These JSON keys are rather specific to RequestPacket or for debugging, so
 	 * they are here as opposed to PaxosPacket. Application developers don't
@@ -1406,29 +1388,19 @@ public class RequestPacket extends PaxosPacket implements Request,
 		return this.requestID;
 	}
 
-	// in-depth
-	public byte[] getDigest(MessageDigest md) {
+	/**
+	 * @return 128-bit {@link MurmurHash3} digest of the top-level request value,
+	 *         computed once and cached.
+	 */
+	public byte[] getDigest() {
 		if (this.digest != null)
 			return digest;
-
-		try {
-			// long t = System.nanoTime();
-			assert (this.requestValue != null);
-			synchronized (md) {
-				this.digest = md.digest(this.requestValue.getBytes(CHARSET));
-			}
-			// DelayProfiler.updateDelayNano("digest", t);
-			return this.digest;
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		}
-		return null;
+		assert (this.requestValue != null);
+		return this.digest = MurmurHash3.hash128(this.requestValue);
 	}
 
-	public boolean digestEquals(RequestPacket req, MessageDigest md) {
-		byte[] d1 = this.getDigest(md);
-		byte[] d2 = req.getDigest(md);
-		return (MessageDigest.isEqual(d1, d2));
+	public boolean digestEquals(RequestPacket req) {
+		return Arrays.equals(this.getDigest(), req.getDigest());
 	}
 
 	// only top level
@@ -1502,7 +1474,7 @@ public class RequestPacket extends PaxosPacket implements Request,
 				&& (!enforceRequestValueMatch || this.requestValue != null
 						&& this.requestValue.equals(req.requestValue)
 				// or digests match
-				|| (this.digestEquals(req, getMessageDigest()) || logAnomaly(
+				|| (this.digestEquals(req) || logAnomaly(
 						this, req))
 
 				);
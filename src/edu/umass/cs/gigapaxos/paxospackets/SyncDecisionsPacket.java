@@ -29,8 +29,10 @@ import edu.umass.cs.utils.Util;
  * @author arun
  *
  *         A sync reply packet contains commits missing at the sending node
- *         (nodeID). The receiver is expected to send to the sender the commits
- *         it is reporting as missing in this sync reply.
+ *         (nodeID) as ranges of slots. The receiver is expected to send to the
+ *         sender the commits it is reporting as missing in this sync reply or,
+ *         if too many of them are from before the receiver's last checkpoint,
+ *         the checkpoint and the commits after it.
  */
 @SuppressWarnings("javadoc")
 public final class SyncDecisionsPacket extends PaxosPacket {
@@ -45,17 +47,24 @@ public final class SyncDecisionsPacket extends PaxosPacket {
 	 */
 	public final int maxDecisionSlot;
 	/**
-	 * Missing decision slot numbers beyond {@link #maxDecisionSlot
-	 * maxDecisionSlot}.
+	 * Missing decision slots as the first and last (inclusive) slots of each
+	 * missing range in increasing, wraparound-aware order.
 	 */
-	public final ArrayList<Integer> missingSlotNumbers;
+	public final ArrayList<Integer> missingRanges;
+	/**
+	 * Whether the sending node would rather get a checkpoint than the missing
+	 * decisions from before the receiver's last checkpoint.
+	 */
+	public final boolean checkpointIfBehind;
 
 	public SyncDecisionsPacket(int nodeID, int maxDecisionSlot,
-			ArrayList<Integer> missingSlotNumbers, boolean flag) {
+			ArrayList<Integer> missingRanges, boolean checkpointIfBehind) {
 		super((PaxosPacket) null);
+		assert (missingRanges.size() > 0 && missingRanges.size() % 2 == 0);
 		this.nodeID = nodeID;
 		this.maxDecisionSlot = maxDecisionSlot;
-		this.missingSlotNumbers = missingSlotNumbers;
+		this.missingRanges = missingRanges;
+		this.checkpointIfBehind = checkpointIfBehind;
 		this.packetType = PaxosPacket.PaxosPacketType.SYNC_DECISIONS_REQUEST;
 	}
 
@@ -65,34 +74,109 @@ public final class SyncDecisionsPacket extends PaxosPacket {
 				.getInt(PaxosPacket.NodeIDKeys.SNDR.toString());
 		this.maxDecisionSlot = json
 				.getInt(PaxosPacket.Keys.MAX_S.toString());
-		if (json.has(PaxosPacket.Keys.MISS.toString()))
-			missingSlotNumbers = Util.JSONArrayToArrayListInteger(json
-					.getJSONArray(PaxosPacket.Keys.MISS.toString()));
+		if (json.has(PaxosPacket.Keys.MISS_R.toString())) {
+			missingRanges = Util.JSONArrayToArrayListInteger(json
+					.getJSONArray(PaxosPacket.Keys.MISS_R.toString()));
+			if (missingRanges.isEmpty() || missingRanges.size() % 2 != 0)
+				throw new JSONException("Missing ranges " + missingRanges
+						+ " are not pairs of first and last slots");
+		} else if (json.has(PaxosPacket.Keys.MISS.toString()))
+			missingRanges = toRanges(Util.JSONArrayToArrayListInteger(json
+					.getJSONArray(PaxosPacket.Keys.MISS.toString())));
 		else
-			missingSlotNumbers = null;
+			missingRanges = null;
+		this.checkpointIfBehind = json.optBoolean(PaxosPacket.Keys.SYNC_CP
+				.toString());
 		assert (PaxosPacket.getPaxosPacketType(json) == PaxosPacketType.SYNC_DECISIONS_REQUEST || PaxosPacket
 				.getPaxosPacketType(json) == PaxosPacketType.CHECKPOINT_REQUEST); 
 		this.packetType = PaxosPacketType.SYNC_DECISIONS_REQUEST;
 	}
 
+	/*
+	 * Coalesces the sorted individual missing slots sent by older nodes into
+	 * ranges.
+	 */
+	private static ArrayList<Integer> toRanges(ArrayList<Integer> missingSlots)
+			throws JSONException {
+		if (missingSlots.isEmpty())
+			throw new JSONException("Empty missing slots");
+		ArrayList<Integer> ranges = new ArrayList<Integer>();
+		for (int slot : missingSlots) {
+			if (!ranges.isEmpty() && ranges.get(ranges.size() - 1) + 1 == slot)
+				ranges.set(ranges.size() - 1, slot);
+			else {
+				ranges.add(slot);
+				ranges.add(slot);
+			}
+		}
+		return ranges;
+	}
+
+	/**
+	 * @param missingSlot
+	 * @return A single missing range consisting of just {@code missingSlot}.
+	 */
+	public static ArrayList<Integer> singleRange(int missingSlot) {
+		ArrayList<Integer> range = new ArrayList<Integer>();
+		range.add(missingSlot);
+		range.add(missingSlot);
+		return range;
+	}
+
+	public int getMinMissingSlot() {
+		return this.missingRanges.get(0);
+	}
+
+	public int getMaxMissingSlot() {
+		return this.missingRanges.get(this.missingRanges.size() - 1);
+	}
+
+	/**
+	 * @return Total number of missing slots in all ranges.
+	 */
+	public long getNumMissing() {
+		long n = 0;
+		for (int i = 0; i < this.missingRanges.size(); i += 2)
+			n += this.missingRanges.get(i + 1) - this.missingRanges.get(i) + 1;
+		return n;
+	}
+
+	/**
+	 * @param slot
+	 * @return True if {@code slot} is in one of the missing ranges.
+	 */
+	public boolean isMissing(int slot) {
+		// binary search over offsets from the first missing slot
+		int min = this.getMinMissingSlot(), offset = slot - min;
+		int lo = 0, hi = this.missingRanges.size() / 2 - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (offset - (this.missingRanges.get(2 * mid) - min) < 0)
+				hi = mid - 1;
+			else if (offset - (this.missingRanges.get(2 * mid + 1) - min) > 0)
+				lo = mid + 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
 	@Override
 	public JSONObject toJSONObjectImpl() throws JSONException {
 		JSONObject json = new JSONObject();
 		json.put(PaxosPacket.NodeIDKeys.SNDR.toString(), nodeID);
 		json.put(PaxosPacket.Keys.MAX_S.toString(), maxDecisionSlot);
-		if (missingSlotNumbers != null && missingSlotNumbers.size() > 0)
-			json.put(PaxosPacket.Keys.MISS.toString(), new JSONArray(
-					missingSlotNumbers));
+		if (missingRanges != null && missingRanges.size() > 0)
+			json.put(PaxosPacket.Keys.MISS_R.toString(), new JSONArray(
+					missingRanges));
+		if (this.checkpointIfBehind)
+			json.put(PaxosPacket.Keys.SYNC_CP.toString(), true);
 		return json;
 	}
 
 	@Override
 	protected String getSummaryString() {
-		return nodeID
-				+ "["
-				+ this.missingSlotNumbers.get(0)
-				+ ", "
-				+ this.missingSlotNumbers
-						.get(this.missingSlotNumbers.size() - 1) + "]";
+		return nodeID + "[" + this.getMinMissingSlot() + ", "
+				+ this.getMaxMissingSlot() + "]#" + this.getNumMissing();
 	}
 }
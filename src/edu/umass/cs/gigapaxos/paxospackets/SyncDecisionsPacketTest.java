@@ -0,0 +1,98 @@
+package edu.umass.cs.gigapaxos.paxospackets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * SyncDecisionsPacket test class for missing ranges including ranges across
+ * the integer wraparound.
+ */
+public class SyncDecisionsPacketTest extends DefaultTest {
+
+	private static SyncDecisionsPacket sync(Integer... ranges) {
+		SyncDecisionsPacket sync = new SyncDecisionsPacket(2,
+				ranges[ranges.length - 1] + 1, new ArrayList<Integer>(
+						Arrays.asList(ranges)), false);
+		sync.putPaxosID("paxos0", 0);
+		return sync;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIsMissing() {
+		SyncDecisionsPacket sync = sync(10, 19, 25, 25, 30, 1000029);
+		Assert.assertEquals(10, sync.getMinMissingSlot());
+		Assert.assertEquals(1000029, sync.getMaxMissingSlot());
+		Assert.assertEquals(10 + 1 + 1000000, sync.getNumMissing());
+		for (int slot : new int[] { 10, 15, 19, 25, 30, 500000, 1000029 })
+			Assert.assertTrue(slot + "", sync.isMissing(slot));
+		for (int slot : new int[] { 9, 20, 24, 26, 29, 1000030, -10 })
+			Assert.assertFalse(slot + "", sync.isMissing(slot));
+
+		sync = sync(Integer.MAX_VALUE - 5, Integer.MAX_VALUE,
+				Integer.MIN_VALUE + 1, Integer.MIN_VALUE + 4);
+		Assert.assertEquals(10, sync.getNumMissing());
+		Assert.assertTrue(sync.isMissing(Integer.MAX_VALUE));
+		Assert.assertTrue(sync.isMissing(Integer.MIN_VALUE + 2));
+		Assert.assertFalse(sync.isMissing(Integer.MIN_VALUE));
+		Assert.assertFalse(sync.isMissing(Integer.MIN_VALUE + 5));
+		Assert.assertFalse(sync.isMissing(Integer.MAX_VALUE - 6));
+	}
+
+	/**
+	 * @throws JSONException
+	 */
+	@Test
+	public void testJSON() throws JSONException {
+		SyncDecisionsPacket sync = new SyncDecisionsPacket(3, 100,
+				SyncDecisionsPacket.singleRange(0), true);
+		sync.putPaxosID("paxos0", 0);
+		SyncDecisionsPacket copy = new SyncDecisionsPacket(sync.toJSONObject());
+		Assert.assertEquals(sync.missingRanges, copy.missingRanges);
+		Assert.assertEquals(3, copy.nodeID);
+		Assert.assertEquals(100, copy.maxDecisionSlot);
+		Assert.assertTrue(copy.checkpointIfBehind);
+		Assert.assertEquals(1, copy.getNumMissing());
+
+		copy = new SyncDecisionsPacket(sync(5, 7, 9, 9).toJSONObject());
+		Assert.assertEquals(Arrays.asList(5, 7, 9, 9), copy.missingRanges);
+		Assert.assertFalse(copy.checkpointIfBehind);
+	}
+
+	/**
+	 * @throws JSONException
+	 */
+	@Test
+	public void testLegacyMissingSlots() throws JSONException {
+		JSONObject json = sync(0, 0).toJSONObject();
+		json.remove(PaxosPacket.Keys.MISS_R.toString());
+		json.put(PaxosPacket.Keys.MISS.toString(),
+				new JSONArray(Arrays.asList(5, 6, 7, 9, 12, 13)));
+		SyncDecisionsPacket copy = new SyncDecisionsPacket(json);
+		Assert.assertEquals(Arrays.asList(5, 7, 9, 9, 12, 13),
+				copy.missingRanges);
+		Assert.assertEquals(6, copy.getNumMissing());
+		Assert.assertFalse(copy.isMissing(8));
+	}
+
+	/**
+	 * @throws JSONException
+	 */
+	@Test(expected = JSONException.class)
+	public void testOddMissingRanges() throws JSONException {
+		JSONObject json = sync(5, 7).toJSONObject();
+		json.put(PaxosPacket.Keys.MISS_R.toString(),
+				new JSONArray(Arrays.asList(5, 7, 9)));
+		new SyncDecisionsPacket(json);
+	}
+}
@@ -3,6 +3,7 @@ package edu.umass.cs.gigapaxos.paxosutil;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -14,6 +15,10 @@ import edu.umass.cs.utils.Util;
 /**
  * @author arun
  *
+ *         Thread-safe. Besides a moving average of end-to-end latency, it
+ *         keeps a window of recent samples per replica in order to estimate
+ *         latency quantiles, which clients use to decide when to send a hedged
+ *         duplicate of a slow request to the next best replica.
  */
 public class E2ELatencyAwareRedirector implements NearestServerSelector {
 
@@ -24,21 +29,60 @@ public class E2ELatencyAwareRedirector implements NearestServerSelector {
 	public static final double PROBE_RATIO = 0.05;
 	static final long MIN_PROBE_TIME = 10 * 1000; // 10s
 	private static final int MAX_ENTRIES = 256;
+	// samples per replica used to estimate quantiles
+	private static final int WINDOW_SIZE = 128;
+	// no quantile estimate with fewer samples than this
+	static final int MIN_QUANTILE_SAMPLES = 8;
 
 	@SuppressWarnings("serial")
-	final LinkedHashMap<InetSocketAddress, Double> e2eLatencies = new LinkedHashMap<InetSocketAddress, Double>() {
-		protected boolean removeEldestEntry(
-				@SuppressWarnings("rawtypes") Map.Entry eldest) {
-			return size() > MAX_ENTRIES;
-		}
-	};
+	final Map<InetSocketAddress, Double> e2eLatencies = Collections
+			.synchronizedMap(new LinkedHashMap<InetSocketAddress, Double>() {
+				protected boolean removeEldestEntry(
+						@SuppressWarnings("rawtypes") Map.Entry eldest) {
+					return size() > MAX_ENTRIES;
+				}
+			});
+	@SuppressWarnings("serial")
+	final Map<InetSocketAddress, Long> lastProbed = Collections
+			.synchronizedMap(new LinkedHashMap<InetSocketAddress, Long>() {
+				protected boolean removeEldestEntry(
+						@SuppressWarnings("rawtypes") Map.Entry eldest) {
+					return size() > MAX_ENTRIES;
+				}
+			});
 	@SuppressWarnings("serial")
-	final LinkedHashMap<InetSocketAddress, Long> lastProbed = new LinkedHashMap<InetSocketAddress, Long>() {
-		protected boolean removeEldestEntry(
-				@SuppressWarnings("rawtypes") Map.Entry eldest) {
-			return size() > MAX_ENTRIES;
+	private final Map<InetSocketAddress, LatencyWindow> windows = Collections
+			.synchronizedMap(new LinkedHashMap<InetSocketAddress, LatencyWindow>() {
+				protected boolean removeEldestEntry(
+						@SuppressWarnings("rawtypes") Map.Entry eldest) {
+					return size() > MAX_ENTRIES;
+				}
+			});
+
+	/*
+	 * Circular buffer of the most recent samples. The sorted copy used for
+	 * quantiles is rebuilt lazily only after new samples arrive.
+	 */
+	private static class LatencyWindow {
+		private final double[] samples = new double[WINDOW_SIZE];
+		private int count = 0;
+		private double[] sorted = null;
+
+		synchronized void add(double latency) {
+			this.samples[this.count++ % WINDOW_SIZE] = latency;
+			this.sorted = null;
+		}
+
+		synchronized double quantile(double q) {
+			int n = Math.min(this.count, WINDOW_SIZE);
+			if (n < MIN_QUANTILE_SAMPLES)
+				return -1;
+			if (this.sorted == null)
+				Arrays.sort(this.sorted = Arrays.copyOf(this.samples, n));
+			return this.sorted[Math.min(n - 1, (int) Math.ceil(q * n) - 1)];
 		}
-	};
+	}
+
 	final InetSocketAddress myAddress;
 	private double probeRatio = PROBE_RATIO;
 	private long minProbeTime = MIN_PROBE_TIME;
@@ -103,9 +147,57 @@ public class E2ELatencyAwareRedirector implements NearestServerSelector {
 	public void learnSample(InetSocketAddress isa, double latency) {
 		Double historical;
 		assert (isa != null);
-		if ((historical = e2eLatencies.putIfAbsent(isa, latency)) != null)
-			e2eLatencies.put(isa,
-					Util.movingAverage(latency, historical, ALPHA));
+		synchronized (this.e2eLatencies) {
+			if ((historical = e2eLatencies.putIfAbsent(isa, latency)) != null)
+				e2eLatencies.put(isa,
+						Util.movingAverage(latency, historical, ALPHA));
+		}
+		LatencyWindow window;
+		synchronized (this.windows) {
+			if ((window = this.windows.get(isa)) == null)
+				this.windows.put(isa, window = new LatencyWindow());
+		}
+		window.add(latency);
+	}
+
+	/**
+	 * @param isa
+	 * @param q
+	 *            Quantile in (0, 1].
+	 * @return The {@code q} quantile of recent latency samples from
+	 *         {@code isa} or -1 if too few samples are known.
+	 */
+	public double getLatencyQuantile(InetSocketAddress isa, double q) {
+		LatencyWindow window = this.windows.get(isa);
+		return window != null ? window.quantile(q) : -1;
+	}
+
+	/**
+	 * @param addresses
+	 * @param exclude
+	 * @return The address in {@code addresses} other than {@code exclude}
+	 *         with the lowest average latency, or a random one if no
+	 *         latencies are known, or null if there is no other address.
+	 *         Unlike {@link #getNearest(Set)}, this method never probes.
+	 */
+	public InetSocketAddress getNextNearest(Set<InetSocketAddress> addresses,
+			InetSocketAddress exclude) {
+		ArrayList<InetSocketAddress> shuffled = new ArrayList<InetSocketAddress>(
+				addresses);
+		Collections.shuffle(shuffled);
+		InetSocketAddress best = null;
+		Double bestLatency = null;
+		for (InetSocketAddress address : shuffled) {
+			if (address.equals(exclude))
+				continue;
+			Double latency = this.e2eLatencies.get(address);
+			if (best == null
+					|| (latency != null && (bestLatency == null || latency < bestLatency))) {
+				best = address;
+				bestLatency = latency;
+			}
+		}
+		return best;
 	}
 
 	/**
@@ -126,4 +126,60 @@ public class E2ELatencyAwareRedirectorTest extends DefaultTest {
                 * (1 - 2 * E2ELatencyAwareRedirector.PROBE_RATIO)));
         System.out.println(result + allOK);
     }
+
+    /**
+     * Quantiles reflect the recent window of samples and the next nearest
+     * replica excludes the given one.
+     */
+    @Test
+    public void test_QuantileAndNextNearest() {
+        E2ELatencyAwareRedirector redirector = new E2ELatencyAwareRedirector();
+        InetSocketAddress fast = new InetSocketAddress("127.0.0.1", 3000);
+        InetSocketAddress slow = new InetSocketAddress("127.0.0.1", 3001);
+        InetSocketAddress unknown = new InetSocketAddress("127.0.0.1", 3002);
+        for (int i = 0; i < E2ELatencyAwareRedirector.MIN_QUANTILE_SAMPLES - 1; i++)
+            redirector.learnSample(fast, i + 1);
+        Assert.assertEquals(-1, redirector.getLatencyQuantile(fast, 0.95), 0);
+        Assert.assertEquals(-1, redirector.getLatencyQuantile(unknown, 0.95), 0);
+        for (int i = 0; i < 100; i++) {
+            redirector.learnSample(fast, i + 1);
+            redirector.learnSample(slow, 1000 + i);
+        }
+        // last 100 of fast's samples are 1..100
+        Assert.assertEquals(95, redirector.getLatencyQuantile(fast, 0.95), 0);
+        Assert.assertEquals(100, redirector.getLatencyQuantile(fast, 1), 0);
+        Set<InetSocketAddress> all = new HashSet<InetSocketAddress>(
+                Arrays.asList(fast, slow, unknown));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(slow, redirector.getNextNearest(all, fast));
+            Assert.assertEquals(fast, redirector.getNextNearest(all, slow));
+        }
+        Assert.assertNull(redirector.getNextNearest(
+                new HashSet<InetSocketAddress>(Arrays.asList(fast)), fast));
+    }
+
+    /**
+     * Concurrent learning and lookups do not corrupt the redirector.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void test_Concurrent() throws InterruptedException {
+        final E2ELatencyAwareRedirector redirector = new E2ELatencyAwareRedirector();
+        final Set<InetSocketAddress> addresses = new HashSet<InetSocketAddress>();
+        for (int i = 0; i < 300; i++)
+            addresses.add(new InetSocketAddress("127.0.0.1", 4000 + i));
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++)
+            (threads[t] = new Thread(() -> {
+                for (int j = 0; j < 20000; j++) {
+                    InetSocketAddress isa = redirector.getNearest(addresses);
+                    redirector.learnSample(isa, Math.random() * 100);
+                    redirector.getLatencyQuantile(isa, 0.95);
+                }
+            })).start();
+        for (Thread thread : threads)
+            thread.join();
+        Assert.assertTrue(redirector.e2eLatencies.size() <= 256);
+    }
 }
@@ -15,6 +15,9 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.gigapaxos.paxosutil;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -98,6 +101,76 @@ public class HotRestoreInfo {
 				.stringToIntArray(tokens[8]) : null;
 	}
 
+	/**
+	 * Decodes the fixed-layout binary encoding produced by {@link #toBytes()}
+	 * starting at the current position of buf.
+	 * 
+	 * @param buf
+	 */
+	public HotRestoreInfo(ByteBuffer buf) {
+		byte[] id = new byte[buf.getShort()];
+		buf.get(id);
+		this.paxosID = new String(id, StandardCharsets.UTF_8);
+		this.version = buf.getInt();
+		this.members = getInts(buf);
+		this.accSlot = buf.getInt();
+		this.accBallot = new Ballot(buf.getInt(), buf.getInt());
+		this.accGCSlot = buf.getInt();
+		this.coordBallot = buf.get() != 0 ? new Ballot(buf.getInt(),
+				buf.getInt()) : null;
+		this.nextProposalSlot = buf.getInt();
+		this.nodeSlots = getInts(buf);
+	}
+
+	public HotRestoreInfo(byte[] bytes) {
+		this(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * @return Fixed-layout binary encoding of this object that, unlike
+	 *         {@link #toString()}, is decoded without any string splitting or
+	 *         integer parsing.
+	 */
+	public byte[] toBytes() {
+		byte[] id = this.paxosID.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buf = ByteBuffer.allocate(2 + id.length + 4
+				+ (2 + 4 * members.length) + 4 + 8 + 4
+				+ (coordBallot != null ? 9 : 1) + 4
+				+ (2 + (nodeSlots != null ? 4 * nodeSlots.length : 0)));
+		buf.putShort((short) id.length).put(id);
+		buf.putInt(version);
+		putInts(buf, members);
+		buf.putInt(accSlot);
+		buf.putInt(accBallot.ballotNumber).putInt(accBallot.coordinatorID);
+		buf.putInt(accGCSlot);
+		if (coordBallot != null)
+			buf.put((byte) 1).putInt(coordBallot.ballotNumber)
+					.putInt(coordBallot.coordinatorID);
+		else
+			buf.put((byte) 0);
+		buf.putInt(nextProposalSlot);
+		putInts(buf, nodeSlots);
+		return buf.array();
+	}
+
+	// a negative length encodes a null array
+	private static void putInts(ByteBuffer buf, int[] ints) {
+		buf.putShort((short) (ints != null ? ints.length : -1));
+		if (ints != null)
+			for (int i : ints)
+				buf.putInt(i);
+	}
+
+	private static int[] getInts(ByteBuffer buf) {
+		int length = buf.getShort();
+		if (length < 0)
+			return null;
+		int[] ints = new int[length];
+		for (int i = 0; i < ints.length; i++)
+			ints[i] = buf.getInt();
+		return ints;
+	}
+
 	private static final char SEP = '|';
 
 	public String toString() {
@@ -170,5 +243,25 @@ public class HotRestoreInfo {
 			System.out.println(str2);
 			Assert.assertEquals(str1, str2);
 		}
+
+		@Test
+		public void testToBytesAndBack() {
+			int[] members = { 1, 4, 67 };
+			int[] nodeSlots = { 1, 3, 5 };
+			HotRestoreInfo hri1 = new HotRestoreInfo("paxos0", 2, members, 5,
+					new Ballot(3, 4), 3, new Ballot(45, 67), 34, nodeSlots);
+			byte[] bytes = hri1.toBytes();
+			Assert.assertEquals(hri1.toString(),
+					new HotRestoreInfo(bytes).toString());
+
+			// null coordinator ballot and node slots
+			HotRestoreInfo hri2 = new HotRestoreInfo("pax\u00f6s1", 0, members,
+					1, new Ballot(0, 1), -1, null, 1, null);
+			Assert.assertEquals(hri2.toString(),
+					new HotRestoreInfo(hri2.toBytes()).toString());
+
+			HotRestoreInfo hri3 = createHRI("paxos2", members, 4);
+			Assert.assertTrue(new HotRestoreInfo(hri3.toBytes()).isCreateHRI());
+		}
 	}
 }
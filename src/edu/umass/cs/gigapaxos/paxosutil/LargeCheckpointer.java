@@ -1,36 +1,56 @@
 package edu.umass.cs.gigapaxos.paxosutil;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32C;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Result;
@@ -323,72 +343,192 @@ public class LargeCheckpointer {
 		}
 	}
 
+	private static final int CHUNK_SIZE = Config
+			.getGlobalInt(PC.LARGE_CHECKPOINT_CHUNK_SIZE);
+	private static final int FETCH_THREADS = Config
+			.getGlobalInt(PC.LARGE_CHECKPOINT_FETCH_THREADS);
+	private static final int TIMEOUT = Config
+			.getGlobalInt(PC.LARGE_CHECKPOINT_TIMEOUT);
+	private static final int RETRIES = Config
+			.getGlobalInt(PC.LARGE_CHECKPOINT_RETRIES);
+
+	// file being fetched and the ranges of it fetched so far
+	private static final String PART_SUFFIX = ".part";
+	private static final String PROGRESS_SUFFIX = ".progress";
+
+	private static String fetchRemoteCheckpoint(InetSocketAddress sockAddr,
+			String remoteFilename, long fileSize, String localFilename) {
+		return fetchRemoteCheckpoint(sockAddr, remoteFilename, fileSize,
+				localFilename, CHUNK_SIZE);
+	}
+
 	/**
 	 * Helper function for getRemoteCheckpoint above that actually fetches the
-	 * reads from the socket and writes to a local file.
+	 * file in checksummed ranges of {@code chunkSize} bytes, up to
+	 * {@link #FETCH_THREADS} at a time, into a part file. The indices of
+	 * fetched ranges are appended to a progress file, so a fetch that fails
+	 * even after retries can be resumed by a later call for the same file.
 	 * 
-	 * @param paxosID
 	 * @param sockAddr
 	 * @param remoteFilename
 	 * @param fileSize
-	 * @return
+	 * @param localFilename
+	 * @param chunkSize
+	 * @return Local filename, or null if the fetch failed.
 	 */
-	private static String fetchRemoteCheckpoint(InetSocketAddress sockAddr,
-			String remoteFilename, long fileSize, String localFilename) {
+	private static String fetchRemoteCheckpoint(
+			final InetSocketAddress sockAddr, final String remoteFilename,
+			final long fileSize, String localFilename, final int chunkSize) {
 		log.log(Level.FINE, "LargeCheckpointer.fetchRemoteCheckpoint: about to fetch from {0} to get {1} and put at {2}", 
 				new Object[]{sockAddr, remoteFilename, localFilename});
 		synchronized (stringLocker.get(localFilename)) {
-			String request = remoteFilename + "\n";
-			Socket sock = null;
-			FileOutputStream fos = null;
+			File part = new File(localFilename + PART_SUFFIX).getAbsoluteFile();
+			File progress = new File(localFilename + PROGRESS_SUFFIX);
+			if (!createCheckpointFile(part.getPath())) {
+				log.warning("LargeCheckpointer.fetchRemoteCheckpoint: failed to create "+part);
+				return null;
+			}
+			final int numChunks = (int) ((fileSize + chunkSize - 1) / chunkSize);
+			ExecutorService fetchers = null;
+			final BitSet fetched;
 			try {
-				sock = new Socket(sockAddr.getAddress(), sockAddr.getPort());
-				log.log(Level.FINE, "LargeCheckpointer.fetchRemoteCheckpoint: connected {0} to get {1} and put at {2}",
-						new Object[]{sockAddr, remoteFilename, localFilename});
-				sock.getOutputStream().write(request.getBytes(CHARSET));
-				InputStream inStream = (sock.getInputStream());
-				if (!createCheckpointFile(localFilename)){
-					log.warning("LargeCheckpointer.fetchRemoteCheckpoint: failed to create "+localFilename);
-					return null;
-				}
-				log.log(Level.FINE, "LargeCheckpointer.fetchRemoteCheckpoint: file created successfully {0}", new Object[]{localFilename});
-				fos = new FileOutputStream(new File(localFilename));
-				byte[] buf = new byte[1024];
-				int nread = 0;
-				int nTotalRead = 0;
-				// read from sock, write to file
-				while ((nread = inStream.read(buf)) >= 0) {
-					/* FIXME: need to ensure that the read won't block forever
-					 * if the remote endpoint crashes ungracefully and there is
-					 * no exception triggered here. */
-					nTotalRead += nread;
-					fos.write(buf, 0, nread);
+				fetched = readProgress(progress, progressHeader(sockAddr,
+						remoteFilename, fileSize, chunkSize));
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+			try (FileChannel fc = FileChannel.open(part.toPath(),
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+					final FileWriter progressWriter = new FileWriter(progress,
+							!fetched.isEmpty())) {
+				if (fetched.isEmpty()) {
+					fc.truncate(0);
+					progressWriter.write(progressHeader(sockAddr,
+							remoteFilename, fileSize, chunkSize) + "\n");
+					progressWriter.flush();
+				} else
+					log.log(Level.INFO, "LargeCheckpointer.fetchRemoteCheckpoint: resuming fetch of {0} with {1}/{2} ranges already fetched",
+							new Object[] { localFilename, fetched.cardinality(), numChunks });
+				// ranges can be written in any order only within the file size
+				if (fc.size() < fileSize)
+					fc.write(ByteBuffer.allocate(1), fileSize - 1);
+
+				List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+				fetchers = Executors.newFixedThreadPool(Math.max(1,
+						Math.min(FETCH_THREADS, numChunks - fetched.cardinality())));
+				for (int i = fetched.nextClearBit(0); i < numChunks; i = fetched
+						.nextClearBit(i + 1)) {
+					final int chunk = i;
+					futures.add(fetchers.submit(() -> {
+						long offset = (long) chunk * chunkSize;
+						if (!fetchRange(sockAddr, remoteFilename, fc, offset,
+								Math.min(chunkSize, fileSize - offset)))
+							return false;
+						synchronized (progressWriter) {
+							progressWriter.write(chunk + "\n");
+							progressWriter.flush();
+						}
+						return true;
+					}));
 				}
-				fos.flush();
-				// check exact expected file size
-				if (nTotalRead != fileSize) {
-					log.log(Level.WARNING, "LargeCheckpointer.fetchRemoteCheckpoint: expect {0} bytes, but read {1} bytes, delete file {2}",
-							new Object[]{fileSize, nTotalRead, localFilename});
-					new File(localFilename).delete();
-					localFilename = null;
+				boolean success = true;
+				for (Future<Boolean> future : futures)
+					success = future.get() && success;
+				if (!success) {
+					log.log(Level.WARNING, "LargeCheckpointer.fetchRemoteCheckpoint: failed to fetch {0} from {1}; fetched ranges kept for a retry",
+							new Object[] { remoteFilename, sockAddr });
+					return null;
 				}
-			} catch (IOException e) {
+				fc.force(false);
+			} catch (IOException | InterruptedException | ExecutionException e) {
 				e.printStackTrace();
-				localFilename = null;
+				return null;
 			} finally {
-				try {
-					if (fos != null)
-						fos.close();
-					if (sock != null)
-						sock.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+				if (fetchers != null)
+					fetchers.shutdownNow();
+			}
+			try {
+				Files.move(part.toPath(), Paths.get(localFilename),
+						StandardCopyOption.REPLACE_EXISTING);
+				progress.delete();
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
 			}
 			return localFilename;
 		}
 	}
 
+	/* Identifies the fetched file in the progress file, so that ranges fetched
+	 * for an earlier file with the same local name and size are not reused.
+	 * The name of a stowed away checkpoint embeds its creation time. */
+	private static String progressHeader(InetSocketAddress sockAddr,
+			String remoteFilename, long fileSize, int chunkSize) {
+		return fileSize + " " + chunkSize + " " + sockAddr + " "
+				+ remoteFilename;
+	}
+
+	/* Returns the ranges recorded as fetched in the progress file if the file
+	 * was written with the same header, else an empty set. */
+	private static BitSet readProgress(File progress, String header)
+			throws IOException {
+		BitSet fetched = new BitSet();
+		if (!progress.exists())
+			return fetched;
+		List<String> lines = Files.readAllLines(progress.toPath(),
+				Charset.forName(CHARSET));
+		if (lines.isEmpty() || !lines.get(0).equals(header))
+			return fetched;
+		for (String line : lines.subList(1, lines.size()))
+			try {
+				fetched.set(Integer.parseInt(line));
+			} catch (NumberFormatException e) {
+				// partially written last line
+			}
+		return fetched;
+	}
+
+	/* Fetches and checksums the range at offset of the remote file, retrying
+	 * up to RETRIES times. */
+	private static boolean fetchRange(InetSocketAddress sockAddr,
+			String remoteFilename, FileChannel fc, long offset, long length) {
+		for (int attempt = 0; attempt <= RETRIES; attempt++) {
+			try (Socket sock = new Socket()) {
+				sock.connect(sockAddr, TIMEOUT);
+				sock.setSoTimeout(TIMEOUT);
+				sock.getOutputStream().write(
+						(remoteFilename + " " + offset + " " + length + "\n")
+								.getBytes(CHARSET));
+				DataInputStream inStream = new DataInputStream(
+						sock.getInputStream());
+				int checksum = inStream.readInt();
+				ReadableByteChannel in = Channels.newChannel(inStream);
+				for (long nread = 0, n; nread < length; nread += n)
+					if ((n = fc.transferFrom(in, offset + nread, length
+							- nread)) <= 0)
+						throw new EOFException("Received " + nread + "/"
+								+ length + " bytes at offset " + offset);
+				if (checksum(fc, offset, length) == checksum)
+					return true;
+				log.log(Level.WARNING, "LargeCheckpointer.fetchRange: checksum mismatch for {0} bytes at offset {1} of {2}",
+						new Object[] { length, offset, remoteFilename });
+			} catch (IOException e) {
+				log.log(Level.WARNING, "LargeCheckpointer.fetchRange: attempt {0} to fetch {1} bytes at offset {2} of {3} from {4} failed: {5}",
+						new Object[] { attempt, length, offset, remoteFilename,
+								sockAddr, e });
+			}
+		}
+		return false;
+	}
+
+	private static int checksum(FileChannel fc, long offset, long length)
+			throws IOException {
+		CRC32C crc = new CRC32C();
+		crc.update(fc.map(FileChannel.MapMode.READ_ONLY, offset, length));
+		return (int) crc.getValue();
+	}
+
 	private String getCheckpointDir() {
 		return this.checkpointDir + CHECKPOINTS_DIR + "/" + myID + "/";
 	}
@@ -457,7 +597,8 @@ public class LargeCheckpointer {
 
 	// /////// Start of file system checkpoint methods and classes /////////
 
-	private static final int THREAD_POOL_SIZE = 4;
+	// enough for a few replicas fetching FETCH_THREADS ranges each
+	private static final int THREAD_POOL_SIZE = 4 * FETCH_THREADS;
 
 	// opens the server thread for file system based checkpoints
 	private boolean initCheckpointServer() {
@@ -474,7 +615,8 @@ public class LargeCheckpointer {
 				});
 
 		try {
-			this.serverSock = new ServerSocket();
+			// channel-backed so that files can be sent with transferTo
+			this.serverSock = ServerSocketChannel.open().socket();
 			this.serverSock.bind(new InetSocketAddress(0));
 			executor.submit(new CheckpointServer());
 			return true;
@@ -552,48 +694,74 @@ public class LargeCheckpointer {
 		return new File(filename).delete();
 	}
 
-	// reads request and transfers requested checkpoint.
-	private static void transferCheckpoint(Socket sock) {
-		{
-			BufferedReader brSock = null, brFile = null;
+	private final AtomicLong bytesServed = new AtomicLong();
+
+	/* Reads the request and transfers the requested checkpoint. The request
+	 * is a filename optionally followed by the offset and length of a range,
+	 * in which case the range is preceded by its CRC32C checksum. */
+	private void transferCheckpoint(Socket sock) {
+		try {
+			sock.setSoTimeout(TIMEOUT);
+			// first and only line is request
+			String request = new BufferedReader(new InputStreamReader(
+					sock.getInputStream(), CHARSET)).readLine();
+			if (request == null)
+				return;
+			String filename = request;
+			long offset = 0, length = -1;
+			String[] tokens = request.split(" ");
+			if (!new File(request).exists() && tokens.length >= 3)
+				try {
+					length = Long.parseLong(tokens[tokens.length - 1]);
+					offset = Long.parseLong(tokens[tokens.length - 2]);
+					filename = request.substring(0, request.length()
+							- tokens[tokens.length - 1].length()
+							- tokens[tokens.length - 2].length() - 2);
+				} catch (NumberFormatException e) {
+					// not a range request
+				}
+
+			FileChannel fc = null;
+			// synchronized to prevent concurrent file delete
+			synchronized (stringLocker.get(filename)) {
+				if ((new File(filename).exists()))
+					fc = FileChannel.open(Paths.get(filename),
+							StandardOpenOption.READ);
+			}
+			if (fc == null)
+				return;
+			// file successfully open if here, can be sent even if deleted now
 			try {
-				brSock = new BufferedReader(new InputStreamReader(
-						sock.getInputStream()));
-				// first and only line is request
-				String request = brSock.readLine();
-
-				// synchronized to prevent concurrent file delete
-				synchronized (stringLocker.get(request)) {
-					if ((new File(request).exists())) {
-						// request is filename
-						brFile = new BufferedReader(new InputStreamReader(
-								new FileInputStream(request)));
-						final BufferedInputStream inStream = new BufferedInputStream(new FileInputStream(request));
-						// file successfully open if here
-						OutputStream outStream = sock.getOutputStream();
-//						String line = null; // each line is a record
-//						while ((line = brFile.readLine()) != null)
-//							outStream.write(line.getBytes(CHARSET));
-						
-						// read in the binary file and send out
-						final byte[] buffer = new byte[4096];
-					    for (int read = inStream.read(buffer); read >= 0; read = inStream.read(buffer))
-					        outStream.write(buffer, 0, read);
-					    inStream.close();
-						outStream.close();
-					}
+				SocketChannel out = sock.getChannel();
+				if (length < 0)
+					length = fc.size();
+				else if (offset < 0 || offset + length > fc.size())
+					throw new EOFException(filename + " has only "
+							+ fc.size() + " bytes");
+				else {
+					ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+					header.putInt(checksum(fc, offset, length)).flip();
+					while (header.hasRemaining())
+						out.write(header);
 				}
+				// zero-copy send of the file from the page cache
+				for (long nsent = 0, n; nsent < length; nsent += n)
+					if ((n = fc.transferTo(offset + nsent, length - nsent, out)) <= 0)
+						throw new EOFException(filename + " has only "
+								+ (offset + nsent) + " bytes");
+				this.bytesServed.addAndGet(length);
+			} finally {
+				fc.close();
+			}
+		} catch (IOException e) {
+			if (!isClosed())
+				log.log(Level.WARNING, "{0} failed to transfer checkpoint: {1}",
+						new Object[] { this, e });
+		} finally {
+			try {
+				sock.close();
 			} catch (IOException e) {
 				e.printStackTrace();
-			} finally {
-				try {
-					if (brSock != null)
-						brSock.close();
-					if (brFile != null)
-						brFile.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
 			}
 		}
 	}
@@ -703,6 +871,7 @@ public class LargeCheckpointer {
 	public static class LargeCheckpointerTest extends DefaultTest {
 
 		private static final String NAME = "name";
+		private static final String THROUGHPUT_PROPERTY = "largeCheckpointThroughput";
 
 		/**
 		 * @throws JSONException
@@ -769,6 +938,140 @@ public class LargeCheckpointer {
 			// lcp1.deleteAllCheckpointsAndClose();
 			lcp1.close();
 		}
+
+		private static File randomFile(String name, long size)
+				throws IOException {
+			File file = new File(name);
+			Random random = new Random(size);
+			byte[] buf = new byte[1024 * 1024];
+			try (FileOutputStream fos = new FileOutputStream(file)) {
+				for (long n = 0; n < size; n += buf.length) {
+					random.nextBytes(buf);
+					fos.write(buf, 0, (int) Math.min(buf.length, size - n));
+				}
+			}
+			return file;
+		}
+
+		private static long checksum(File file) throws IOException {
+			try (FileChannel fc = FileChannel.open(file.toPath())) {
+				return LargeCheckpointer.checksum(fc, 0, fc.size());
+			}
+		}
+
+		/**
+		 * Ranges recorded in the progress file of an earlier fetch are not
+		 * fetched again.
+		 * 
+		 * @throws IOException
+		 */
+		@Test
+		public void test_resumeTransfer() throws IOException {
+			LargeCheckpointer lcp = new LargeCheckpointer(".", "123");
+			int chunkSize = 1024 * 1024;
+			long size = 5 * chunkSize + chunkSize / 2;
+			File remote = randomFile("remote.resume", size);
+			String local = "local.resume";
+			// an earlier fetch got the second range
+			try (FileChannel in = FileChannel.open(remote.toPath());
+					FileChannel out = FileChannel.open(
+							Paths.get(local + PART_SUFFIX),
+							StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				in.transferTo(chunkSize, chunkSize, out.position(chunkSize));
+			}
+			InetSocketAddress isa = new InetSocketAddress(
+					InetAddress.getLoopbackAddress(),
+					lcp.serverSock.getLocalPort());
+			Files.write(Paths.get(local + PROGRESS_SUFFIX), (progressHeader(isa,
+					remote.getAbsolutePath(), size, chunkSize) + "\n1\n")
+					.getBytes(CHARSET));
+
+			Assert.assertEquals(local, fetchRemoteCheckpoint(isa,
+					remote.getAbsolutePath(), size, local, chunkSize));
+			Assert.assertEquals(size - chunkSize, lcp.bytesServed.get());
+			Assert.assertEquals(checksum(remote), checksum(new File(local)));
+			Assert.assertFalse(new File(local + PROGRESS_SUFFIX).exists());
+
+			remote.delete();
+			new File(local).delete();
+			lcp.deleteAllCheckpointsAndClose();
+		}
+
+		/**
+		 * Ranges recorded in the progress file of an earlier fetch of another
+		 * remote file of the same size are fetched again.
+		 * 
+		 * @throws IOException
+		 */
+		@Test
+		public void test_resumeOtherFile() throws IOException {
+			LargeCheckpointer lcp = new LargeCheckpointer(".", "123");
+			int chunkSize = 1024 * 1024;
+			long size = 2 * chunkSize;
+			File remote = randomFile("remote.other", size);
+			String local = "local.other";
+			InetSocketAddress isa = new InetSocketAddress(
+					InetAddress.getLoopbackAddress(),
+					lcp.serverSock.getLocalPort());
+			// an earlier fetch of an older checkpoint got the first range
+			Files.write(Paths.get(local + PART_SUFFIX), new byte[chunkSize]);
+			Files.write(Paths.get(local + PROGRESS_SUFFIX), (progressHeader(isa,
+					remote.getAbsolutePath() + ".old", size, chunkSize) + "\n0\n")
+					.getBytes(CHARSET));
+
+			Assert.assertEquals(local, fetchRemoteCheckpoint(isa,
+					remote.getAbsolutePath(), size, local, chunkSize));
+			Assert.assertEquals(size, lcp.bytesServed.get());
+			Assert.assertEquals(checksum(remote), checksum(new File(local)));
+
+			remote.delete();
+			new File(local).delete();
+			lcp.deleteAllCheckpointsAndClose();
+		}
+
+		/**
+		 * Loopback throughput of a 1GB checkpoint fetch compared to reading it
+		 * whole in 1KB reads over a single connection as done before. Needs
+		 * over 2GB of disk, so it only runs with -DlargeCheckpointThroughput=true.
+		 * 
+		 * @throws IOException
+		 */
+		@Test
+		public void test_transferThroughput() throws IOException {
+			Assume.assumeTrue(Boolean.getBoolean(THROUGHPUT_PROPERTY));
+			LargeCheckpointer lcp = new LargeCheckpointer(".", "123");
+			long size = 1024L * 1024 * 1024;
+			File remote = randomFile("remote.throughput", size);
+			InetSocketAddress isa = new InetSocketAddress(
+					InetAddress.getLoopbackAddress(),
+					lcp.serverSock.getLocalPort());
+			File local = new File("local.throughput");
+
+			long t = System.nanoTime();
+			try (Socket sock = new Socket(isa.getAddress(), isa.getPort());
+					FileOutputStream fos = new FileOutputStream(local)) {
+				sock.getOutputStream().write(
+						(remote.getAbsolutePath() + "\n").getBytes(CHARSET));
+				byte[] buf = new byte[1024];
+				for (int nread; (nread = sock.getInputStream().read(buf)) >= 0;)
+					fos.write(buf, 0, nread);
+			}
+			long oldTime = System.nanoTime() - t;
+			Assert.assertEquals(size, local.length());
+			local.delete();
+
+			t = System.nanoTime();
+			Assert.assertEquals(local.getPath(), fetchRemoteCheckpoint(isa,
+					remote.getAbsolutePath(), size, local.getPath()));
+			long newTime = System.nanoTime() - t;
+			Assert.assertEquals(checksum(remote), checksum(local));
+			System.out.print(String.format("[1GB 1KB reads %.0fMB/s ranges %.0fMB/s] ",
+					1024 * 1000000000.0 / oldTime, 1024 * 1000000000.0 / newTime));
+
+			remote.delete();
+			local.delete();
+			lcp.deleteAllCheckpointsAndClose();
+		}
 	};
 
 	/**
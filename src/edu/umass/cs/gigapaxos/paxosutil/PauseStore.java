@@ -0,0 +1,391 @@
+package edu.umass.cs.gigapaxos.paxosutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umass.cs.gigapaxos.PaxosConfig;
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.utils.Config;
+
+/**
+ * A memory-mapped hash table of paused paxos instances, keyed by paxosID,
+ * holding the binary encoding of their {@link HotRestoreInfo}. The table is a
+ * sparse file of fixed-size slots with linear probing, so pausing or unpausing
+ * an instance touches just the page(s) around the slot its name hashes to,
+ * and unlike the paused state in the checkpoint table, involves no SQL at all.
+ * Removals shift later entries of the same probe sequence back instead of
+ * leaving tombstones, so the table does not degrade with pause/unpause churn.
+ * <p>
+ * The table holds at most 3/4 of {@link PC#PAUSE_STORE_CAPACITY} entries, and
+ * a record must fit in {@link PC#PAUSE_STORE_RECORD_SIZE}; {@link #put} fails
+ * otherwise and the caller is expected to pause the instance elsewhere.
+ * <p>
+ * Writes go to the page cache and are forced to disk only if {@link PC#SYNC}
+ * is set. Losing a record in a crash is harmless because the instance is then
+ * restored from its checkpoint and log instead. A record duplicated by a crash
+ * in the middle of a removal is also harmless because lookups return the
+ * first copy in the probe sequence, which is the one that later writes update,
+ * and removals remove all copies.
+ */
+public final class PauseStore {
+
+	private static final int MAGIC = 0x50415553;
+	// magic, capacity, slot size; padded to a page
+	private static final int FILE_HEADER_SIZE = 4096;
+	// state, hash, record length
+	private static final int SLOT_HEADER_SIZE = 7;
+	private static final int MAX_SEGMENT_SIZE = 1 << 30;
+	private static final byte EMPTY = 0;
+	private static final byte USED = 1;
+
+	private static final Logger log = PaxosConfig.getLogger();
+
+	private final File file;
+	private final int capacity;
+	private final int slotSize;
+	private final int slotsPerSegment;
+	private final int maxSize;
+	private final boolean sync;
+
+	private RandomAccessFile raf;
+	private MappedByteBuffer[] segments;
+	private int size = 0;
+
+	/**
+	 * @param filename
+	 * @param capacity
+	 *            Number of slots.
+	 * @param slotSize
+	 *            Size in bytes of a slot, including its 7-byte header.
+	 * @param sync
+	 *            If true, every write is forced to disk before returning.
+	 * @throws IOException
+	 */
+	public PauseStore(String filename, int capacity, int slotSize,
+			boolean sync) throws IOException {
+		if (capacity <= 0 || slotSize <= SLOT_HEADER_SIZE
+				|| slotSize > MAX_SEGMENT_SIZE)
+			throw new IllegalArgumentException("Invalid "
+					+ PauseStore.class.getSimpleName() + " capacity "
+					+ capacity + " or slot size " + slotSize);
+		this.file = new File(filename);
+		this.capacity = capacity;
+		this.slotSize = slotSize;
+		this.slotsPerSegment = MAX_SEGMENT_SIZE / slotSize;
+		this.maxSize = (int) (capacity * 0.75);
+		this.sync = sync;
+		if (this.file.getParentFile() != null)
+			this.file.getParentFile().mkdirs();
+		this.open();
+	}
+
+	/**
+	 * @param filename
+	 * @throws IOException
+	 */
+	public PauseStore(String filename) throws IOException {
+		this(filename, Config.getGlobalInt(PC.PAUSE_STORE_CAPACITY), Config
+				.getGlobalInt(PC.PAUSE_STORE_RECORD_SIZE), Config
+				.getGlobalBoolean(PC.SYNC));
+	}
+
+	private void open() throws IOException {
+		boolean existed = this.file.exists();
+		this.raf = new RandomAccessFile(this.file, "rw");
+		FileChannel channel = this.raf.getChannel();
+		long length = FILE_HEADER_SIZE + (long) this.capacity * this.slotSize;
+		if (existed && this.raf.length() > 0) {
+			ByteBuffer header = ByteBuffer.allocate(12);
+			channel.read(header, 0);
+			header.flip();
+			if (this.raf.length() != length || header.getInt() != MAGIC
+					|| header.getInt() != this.capacity
+					|| header.getInt() != this.slotSize) {
+				log.log(Level.WARNING,
+						"{0} discarding {1} created with a different capacity or slot size",
+						new Object[] { this, this.file });
+				this.raf.setLength(0);
+				existed = false;
+			}
+		}
+		this.raf.setLength(length);
+		if (!existed) {
+			ByteBuffer header = ByteBuffer.allocate(12);
+			header.putInt(MAGIC).putInt(this.capacity).putInt(this.slotSize)
+					.flip();
+			channel.write(header, 0);
+		}
+
+		this.segments = new MappedByteBuffer[(this.capacity - 1)
+				/ this.slotsPerSegment + 1];
+		for (int i = 0; i < this.segments.length; i++) {
+			int slots = Math.min(this.slotsPerSegment, this.capacity - i
+					* this.slotsPerSegment);
+			this.segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+					FILE_HEADER_SIZE + (long) i * this.slotsPerSegment
+							* this.slotSize, (long) slots * this.slotSize);
+		}
+
+		this.size = 0;
+		if (existed)
+			for (int slot = 0; slot < this.capacity; slot++)
+				if (this.segment(slot).get(this.offset(slot)) == USED)
+					this.size++;
+		log.log(Level.INFO, "{0} opened {1} with {2} paused instances",
+				new Object[] { this, this.file, this.size });
+	}
+
+	private MappedByteBuffer segment(int slot) {
+		return this.segments[slot / this.slotsPerSegment];
+	}
+
+	private int offset(int slot) {
+		return (slot % this.slotsPerSegment) * this.slotSize;
+	}
+
+	private int home(int hash) {
+		return (hash & Integer.MAX_VALUE) % this.capacity;
+	}
+
+	private int next(int slot) {
+		return slot + 1 < this.capacity ? slot + 1 : 0;
+	}
+
+	private static int hash(byte[] id) {
+		int h = Arrays.hashCode(id);
+		return h ^ (h >>> 16);
+	}
+
+	private boolean isUsed(int slot) {
+		return this.segment(slot).get(this.offset(slot)) == USED;
+	}
+
+	private int getHash(int slot) {
+		return this.segment(slot).getInt(this.offset(slot) + 1);
+	}
+
+	// compares the length-prefixed paxosID at the start of the record
+	private boolean matches(int slot, int hash, byte[] id) {
+		if (!this.isUsed(slot) || this.getHash(slot) != hash)
+			return false;
+		MappedByteBuffer segment = this.segment(slot);
+		int offset = this.offset(slot) + SLOT_HEADER_SIZE;
+		if (segment.getShort(offset) != id.length)
+			return false;
+		for (int i = 0; i < id.length; i++)
+			if (segment.get(offset + 2 + i) != id[i])
+				return false;
+		return true;
+	}
+
+	// slot holding paxosID, or -1 - the empty slot that ends its probe sequence
+	private int find(int hash, byte[] id) {
+		int slot = this.home(hash);
+		for (int probes = 0; probes < this.capacity; probes++) {
+			if (!this.isUsed(slot))
+				return -1 - slot;
+			if (this.matches(slot, hash, id))
+				return slot;
+			slot = this.next(slot);
+		}
+		return -1 - this.capacity;
+	}
+
+	private HotRestoreInfo read(int slot) {
+		MappedByteBuffer segment = this.segment(slot);
+		int offset = this.offset(slot);
+		byte[] record = new byte[segment.getShort(offset + 5)];
+		segment.get(offset + SLOT_HEADER_SIZE, record);
+		try {
+			return new HotRestoreInfo(record);
+		} catch (RuntimeException e) {
+			// only a torn write in a crash can leave a corrupted record
+			log.log(Level.SEVERE, "{0} found corrupted record in slot {1}: {2}",
+					new Object[] { this, slot, e });
+			return null;
+		}
+	}
+
+	// the state byte is written last so that a torn insert leaves an empty slot
+	private void write(int slot, int hash, byte[] record) {
+		MappedByteBuffer segment = this.segment(slot);
+		int offset = this.offset(slot);
+		segment.putInt(offset + 1, hash);
+		segment.putShort(offset + 5, (short) record.length);
+		segment.put(offset + SLOT_HEADER_SIZE, record);
+		segment.put(offset, USED);
+		if (this.sync)
+			segment.force(offset, SLOT_HEADER_SIZE + record.length);
+	}
+
+	private void copy(int from, int to) {
+		MappedByteBuffer segment = this.segment(from);
+		int offset = this.offset(from);
+		byte[] record = new byte[segment.getShort(offset + 5)];
+		segment.get(offset + SLOT_HEADER_SIZE, record);
+		this.write(to, segment.getInt(offset + 1), record);
+	}
+
+	private void clear(int slot) {
+		MappedByteBuffer segment = this.segment(slot);
+		segment.put(this.offset(slot), EMPTY);
+		if (this.sync)
+			segment.force(this.offset(slot), 1);
+	}
+
+	/* Backward shift deletion: moves every later entry of the probe sequence
+	 * whose home slot is not cyclically in (hole, entry] back into the hole. */
+	private void delete(int slot) {
+		int hole = slot;
+		for (int cur = this.next(slot); this.isUsed(cur); cur = this.next(cur)) {
+			int home = this.home(this.getHash(cur));
+			if (hole <= cur ? (hole < home && home <= cur)
+					: (hole < home || home <= cur))
+				continue;
+			this.copy(cur, hole);
+			hole = cur;
+		}
+		this.clear(hole);
+		this.size--;
+	}
+
+	/**
+	 * Inserts or replaces the paused state of hri.paxosID.
+	 *
+	 * @param hri
+	 * @return True if stored; false if the store is closed or full or the
+	 *         encoded record does not fit in a slot.
+	 */
+	public synchronized boolean put(HotRestoreInfo hri) {
+		byte[] record = hri.toBytes();
+		if (this.segments == null
+				|| record.length > this.slotSize - SLOT_HEADER_SIZE)
+			return false;
+		byte[] id = hri.paxosID.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(id);
+		int slot = this.find(hash, id);
+		if (slot < 0) {
+			if (this.size >= this.maxSize)
+				return false;
+			slot = -1 - slot;
+			this.size++;
+		}
+		this.write(slot, hash, record);
+		return true;
+	}
+
+	/**
+	 * @param paxosID
+	 * @return Paused state of paxosID if any.
+	 */
+	public synchronized HotRestoreInfo get(String paxosID) {
+		if (this.segments == null)
+			return null;
+		byte[] id = paxosID.getBytes(StandardCharsets.UTF_8);
+		int slot = this.find(hash(id), id);
+		return slot >= 0 ? this.read(slot) : null;
+	}
+
+	/**
+	 * @param paxosID
+	 * @return True if paxosID has paused state in this store.
+	 */
+	public synchronized boolean contains(String paxosID) {
+		if (this.segments == null)
+			return false;
+		byte[] id = paxosID.getBytes(StandardCharsets.UTF_8);
+		return this.find(hash(id), id) >= 0;
+	}
+
+	/**
+	 * Removes and returns the paused state of paxosID, so an unpause is a
+	 * single lookup.
+	 *
+	 * @param paxosID
+	 * @return Removed paused state, or null if none.
+	 */
+	public synchronized HotRestoreInfo remove(String paxosID) {
+		return this.removeUpTo(paxosID, null);
+	}
+
+	/**
+	 * Removes the paused state of paxosID only if it is for a version less
+	 * than or equal to maxVersion.
+	 *
+	 * @param paxosID
+	 * @param maxVersion
+	 * @return Removed paused state, or null if none.
+	 */
+	public synchronized HotRestoreInfo remove(String paxosID, int maxVersion) {
+		return this.removeUpTo(paxosID, maxVersion);
+	}
+
+	private HotRestoreInfo removeUpTo(String paxosID, Integer maxVersion) {
+		if (this.segments == null)
+			return null;
+		byte[] id = paxosID.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(id);
+		HotRestoreInfo removed = null;
+		for (int slot; (slot = this.find(hash, id)) >= 0;) {
+			HotRestoreInfo hri = this.read(slot);
+			// handles wraparounds
+			if (hri != null && maxVersion != null
+					&& hri.version - maxVersion > 0)
+				break;
+			if (removed == null)
+				removed = hri;
+			this.delete(slot);
+		}
+		return removed;
+	}
+
+	/**
+	 * @return Number of paused instances in this store.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes all paused state.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void clear() throws IOException {
+		if (this.segments == null || this.size == 0)
+			return;
+		this.close();
+		this.file.delete();
+		this.open();
+	}
+
+	/**
+	 * Forces all writes to disk and unmaps the file. The store returns
+	 * nothing and stores nothing after it is closed.
+	 */
+	public synchronized void close() {
+		if (this.segments == null)
+			return;
+		for (MappedByteBuffer segment : this.segments)
+			segment.force();
+		this.segments = null;
+		try {
+			this.raf.close();
+		} catch (IOException e) {
+			log.log(Level.WARNING, "{0} unable to close {1}: {2}",
+					new Object[] { this, this.file, e });
+		}
+	}
+
+	public String toString() {
+		return this.getClass().getSimpleName() + ":" + this.file.getName();
+	}
+}
@@ -0,0 +1,170 @@
+package edu.umass.cs.gigapaxos.paxosutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * PauseStore test class including removals that shift colliding entries and
+ * reopening a store.
+ */
+public class PauseStoreTest extends DefaultTest {
+
+	private static final int[] MEMBERS = { 0, 1, 2 };
+
+	private File file;
+
+	/**
+	 * @throws IOException
+	 */
+	@Before
+	public void createFile() throws IOException {
+		this.file = File.createTempFile("pause_store", null);
+		this.file.delete();
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void deleteFile() {
+		this.file.delete();
+	}
+
+	private static HotRestoreInfo hri(String paxosID, int version, int accSlot) {
+		return new HotRestoreInfo(paxosID, version, MEMBERS, accSlot,
+				new Ballot(3, 1), accSlot - 1, new Ballot(3, 1), accSlot,
+				new int[] { 0, accSlot, accSlot });
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testPutGetRemove() throws IOException {
+		PauseStore store = new PauseStore(this.file.getPath(), 1024, 256, false);
+		Assert.assertNull(store.get("paxos0"));
+		Assert.assertTrue(store.put(hri("paxos0", 0, 10)));
+		Assert.assertTrue(store.contains("paxos0"));
+		Assert.assertEquals(hri("paxos0", 0, 10).toString(),
+				store.get("paxos0").toString());
+
+		// overwrite
+		Assert.assertTrue(store.put(hri("paxos0", 0, 20)));
+		Assert.assertEquals(1, store.size());
+		Assert.assertEquals(20, store.get("paxos0").accSlot);
+
+		Assert.assertEquals(20, store.remove("paxos0").accSlot);
+		Assert.assertNull(store.remove("paxos0"));
+		Assert.assertFalse(store.contains("paxos0"));
+		Assert.assertEquals(0, store.size());
+		store.close();
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testRemoveVersion() throws IOException {
+		PauseStore store = new PauseStore(this.file.getPath(), 1024, 256, false);
+		store.put(hri("paxos0", 3, 10));
+		Assert.assertNull(store.remove("paxos0", 2));
+		Assert.assertNotNull(store.get("paxos0"));
+		Assert.assertNotNull(store.remove("paxos0", 3));
+		store.put(hri("paxos0", Integer.MAX_VALUE, 10));
+		// wraparound
+		Assert.assertNull(store.remove("paxos0", Integer.MAX_VALUE - 1));
+		Assert.assertNotNull(store.remove("paxos0", Integer.MIN_VALUE));
+		store.close();
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testFullAndOversized() throws IOException {
+		PauseStore store = new PauseStore(this.file.getPath(), 16, 96, false);
+		for (int i = 0; i < 12; i++)
+			Assert.assertTrue(store.put(hri("p" + i, 0, 1)));
+		Assert.assertFalse(store.put(hri("p12", 0, 1)));
+		// replacing does not need a free slot
+		Assert.assertTrue(store.put(hri("p0", 0, 2)));
+		store.remove("p1");
+		Assert.assertTrue(store.put(hri("p12", 0, 1)));
+
+		StringBuilder longName = new StringBuilder();
+		for (int i = 0; i < 64; i++)
+			longName.append('x');
+		Assert.assertFalse(store.put(hri(longName.toString(), 0, 1)));
+		store.close();
+	}
+
+	/**
+	 * Random puts and removes in a small, mostly full store, so that most
+	 * entries collide, compared against a HashMap.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testRandomOperations() throws IOException {
+		PauseStore store = new PauseStore(this.file.getPath(), 64, 96, false);
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			String paxosID = "paxos" + random.nextInt(80);
+			if (random.nextBoolean()) {
+				int accSlot = random.nextInt(1000) + 1;
+				if (store.put(hri(paxosID, 0, accSlot)))
+					expected.put(paxosID, accSlot);
+				else
+					Assert.assertTrue(expected.size() >= 48);
+			} else {
+				HotRestoreInfo hri = store.remove(paxosID);
+				Integer accSlot = expected.remove(paxosID);
+				Assert.assertEquals(accSlot, hri != null ? hri.accSlot : null);
+			}
+			Assert.assertEquals(expected.size(), store.size());
+		}
+		for (String paxosID : expected.keySet())
+			Assert.assertEquals(expected.get(paxosID).intValue(),
+					store.get(paxosID).accSlot);
+		store.close();
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testReopenAndClear() throws IOException {
+		PauseStore store = new PauseStore(this.file.getPath(), 1024, 256, false);
+		for (int i = 0; i < 100; i++)
+			store.put(hri("paxos" + i, 0, i + 1));
+		store.close();
+		Assert.assertNull(store.get("paxos0"));
+
+		store = new PauseStore(this.file.getPath(), 1024, 256, false);
+		Assert.assertEquals(100, store.size());
+		Assert.assertEquals(43, store.get("paxos42").accSlot);
+		store.clear();
+		Assert.assertEquals(0, store.size());
+		Assert.assertNull(store.get("paxos42"));
+		store.close();
+
+		// different capacity discards previous state
+		store = new PauseStore(this.file.getPath(), 2048, 256, false);
+		store.put(hri("paxos0", 0, 1));
+		store.close();
+		store = new PauseStore(this.file.getPath(), 1024, 256, true);
+		Assert.assertEquals(0, store.size());
+		store.close();
+	}
+}
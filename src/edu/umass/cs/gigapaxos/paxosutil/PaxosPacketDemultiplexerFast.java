@@ -61,6 +61,21 @@ public abstract class PaxosPacketDemultiplexerFast extends
 	 */
 	public PaxosPacketDemultiplexerFast(int numThreads) {
 		super(numThreads);
+		this.setKeyAffine(Config.getGlobalBoolean(PC.KEY_AFFINE_DEMULTIPLEXER));
+	}
+
+	/**
+	 * The paxosID, so that all packets of a paxos group are handled in order
+	 * by the same thread if key-affine dispatch is enabled.
+	 */
+	@Override
+	protected Object getAffinityKey(Object msg) {
+		if (msg instanceof PaxosPacket)
+			return ((PaxosPacket) msg).getPaxosID();
+		if (msg instanceof net.minidev.json.JSONObject)
+			return ((net.minidev.json.JSONObject) msg)
+					.get(PaxosPacket.Keys.ID.toString());
+		return null;
 	}
 
 	private static PaxosPacket toPaxosPacket(byte[] bytes)
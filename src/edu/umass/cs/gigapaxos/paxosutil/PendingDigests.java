@@ -1,7 +1,5 @@
 package edu.umass.cs.gigapaxos.paxosutil;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -14,7 +12,6 @@ import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.GCConcurrentHashMap;
 import edu.umass.cs.utils.GCConcurrentHashMapCallback;
-import edu.umass.cs.utils.Util;
 
 /**
  * @author arun
@@ -26,17 +23,6 @@ public class PendingDigests {
 	final Map<Long, RequestAndCallback> requests;
 	final PendingDigestCallback callback;
 
-	private static final MessageDigest[] mds = new MessageDigest[Config.getGlobalInt(PC.NUM_MESSAGE_DIGESTS)];
-    static {
-        for (int i = 0; i < mds.length; i++)
-            try {
-                mds[i] = MessageDigest.getInstance("MD5");
-            } catch (NoSuchAlgorithmException e) {
-                Util.suicide("Unable to initialize MessageDigest; exiting");
-            }
-    }
-
-
 	private static final long ACCEPT_TIMEOUT = Config.getGlobalLong(PC.ACCEPT_TIMEOUT);
 	
 	/**
@@ -50,12 +36,10 @@ public class PendingDigests {
 	}
 	/**
 	 * @param rcs 
-	 * @param numMDs
 	 * @param callback 
 	 */
-	public PendingDigests(Map<Long, RequestAndCallback> rcs, int numMDs, PendingDigestCallback callback) {
+	public PendingDigests(Map<Long, RequestAndCallback> rcs, PendingDigestCallback callback) {
 		this.requests = rcs;
-		//this.mds = new MessageDigest[numMDs];
 		this.callback = callback;
 		this.accepts = (ACCEPT_TIMEOUT == Integer.MAX_VALUE ? new ConcurrentHashMap<Long, AcceptPacket>()
 				: new GCConcurrentHashMap<Long, AcceptPacket>(
@@ -67,12 +51,6 @@ public class PendingDigests {
 							}
 
 						}, ACCEPT_TIMEOUT));
-		try {
-			for (int i = 0; i < mds.length; i++)
-				mds[i] = MessageDigest.getInstance("MD5");
-		} catch (NoSuchAlgorithmException e) {
-			Util.suicide("Unable to initialize MessageDigest; exiting");
-		}
 	}
 
 	/**
@@ -88,8 +66,7 @@ public class PendingDigests {
 		}
 
 		if (rc != null && rc.getRequestPacket().getPaxosID().equals(accept.getPaxosID())) {
-			if (rc.getRequestPacket().digestEquals(accept,
-					mds[(int) (Math.random() * mds.length)])) {
+			if (rc.getRequestPacket().digestEquals(accept)) {
 				accept = accept.undigest(rc.getRequestPacket());
 				assert (accept.hasRequestValue());
 				return accept;
@@ -131,8 +108,7 @@ public class PendingDigests {
 				.getPaxosID() != null));
 
 		if (accept != null && accept.getPaxosID().equals(request.getPaxosID())) {
-			if (request.digestEquals(accept,
-					mds[(int) (Math.random() * mds.length)])) {
+			if (request.digestEquals(accept)) {
 				accept = accept.undigest(request);
 				if(remove)
 				synchronized(this.requests) {
@@ -175,6 +151,14 @@ public class PendingDigests {
 		return this.accepts.size();
 	}
 
+	/**
+	 * @param accept
+	 * @return True if {@code accept} is still waiting for its request body.
+	 */
+	public boolean isPending(AcceptPacket accept) {
+		return this.accepts.get(accept.requestID) == accept;
+	}
+
 	/**
 	 * @param request
 	 * @return Removed accept if any.
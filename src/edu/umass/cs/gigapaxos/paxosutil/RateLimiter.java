@@ -21,7 +21,9 @@ package edu.umass.cs.gigapaxos.paxosutil;
  * @author V. Arun
  * 
  *         A utility class to do some action repeatedly but in a rate limited
- *         manner.
+ *         manner. {@link #record()} blocks the caller until the action is
+ *         within the rate whereas {@link #tryRecord()} is a token bucket that
+ *         never blocks and instead tells the caller whether to do the action.
  */
 public class RateLimiter {
 
@@ -31,12 +33,54 @@ public class RateLimiter {
 	private long beginTime = 0;
 	private int count = 0;
 
+	// token bucket for tryRecord
+	private final double burst;
+	private double tokens;
+	private long lastRefill = System.nanoTime();
+
 	/**
 	 * @param r
 	 *            The rate limit.
 	 */
 	public RateLimiter(double r) {
+		this(r, Math.max(1, r));
+	}
+
+	/**
+	 * @param r
+	 *            The rate limit.
+	 * @param burst
+	 *            The number of actions {@link #tryRecord()} allows at once
+	 *            after a period of no actions.
+	 */
+	public RateLimiter(double r, double burst) {
 		this.rate = r;
+		this.burst = burst;
+		this.tokens = burst;
+	}
+
+	/**
+	 * @return The rate limit.
+	 */
+	public double getRate() {
+		return this.rate;
+	}
+
+	/**
+	 * To be invoked before doing the action without blocking.
+	 * 
+	 * @return True if the action is within the rate and is recorded, false if
+	 *         the action should not be done.
+	 */
+	public synchronized boolean tryRecord() {
+		long curTime = System.nanoTime();
+		this.tokens = Math.min(this.burst, this.tokens + (curTime - this.lastRefill)
+				/ 1000000000.0 * this.rate);
+		this.lastRefill = curTime;
+		if (this.tokens < 1)
+			return false;
+		this.tokens--;
+		return true;
 	}
 
 	/**
@@ -0,0 +1,313 @@
+package edu.umass.cs.gigapaxos.paxosutil;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.GCConcurrentHashMap;
+
+/**
+ * Sampled tracing of the stages of client requests at this node. A request is
+ * traced if its request ID falls in the sampled fraction
+ * {@link PC#TRACE_SAMPLING_RATE}, so the request ID itself is the trace
+ * context and every node traces the same requests without any extra bytes on
+ * the wire; the only exception are statediffs in primary-backup that carry the
+ * IDs of the traced requests they cover. Recording a stage of a request that
+ * is not sampled costs a hash of its ID.
+ * <p>
+ * Each node keeps its own traces, as monotonic timestamps of different nodes
+ * are not comparable. A trace is finished when the response is written or, at
+ * nodes that do not respond to the client, once it is idle for a while. The
+ * most recent {@link PC#TRACE_BUFFER_SIZE} finished traces are kept in a ring
+ * buffer, and finished traces are added to per-stage histograms of the time
+ * since the previous recorded stage of the same trace, with log2 buckets.
+ */
+public class RequestTracer {
+
+	/**
+	 * Traced stages, in the order they usually happen.
+	 */
+	public static enum Stage {
+		/**
+		 * An HTTP request is received by the active replica.
+		 */
+		HTTP_RECEIVED,
+
+		/**
+		 * The request is handed to the replica coordinator.
+		 */
+		COORDINATE,
+
+		/**
+		 * The request is proposed to paxos, or the statediff covering it is.
+		 */
+		PROPOSE,
+
+		/**
+		 * A majority accepted the request at the paxos coordinator.
+		 */
+		ACCEPT_QUORUM,
+
+		/**
+		 * The request, or the statediff covering it, is committed at this
+		 * node.
+		 */
+		COMMIT,
+
+		/**
+		 * The app starts executing the request.
+		 */
+		EXECUTE,
+
+		/**
+		 * The app finished executing the request.
+		 */
+		EXECUTED,
+
+		/**
+		 * The primary captured the statediff covering the request.
+		 */
+		STATEDIFF_CAPTURE,
+
+		/**
+		 * A backup applied the statediff covering the request.
+		 */
+		STATEDIFF_APPLY,
+
+		/**
+		 * The response is written to the client, which finishes the trace.
+		 */
+		RESPONSE_WRITTEN,
+	}
+
+	private static final Stage[] STAGES = Stage.values();
+
+	private static final int NUM_BUCKETS = 64;
+
+	// idle time in milliseconds after which a trace is finished
+	private static final long TRACE_TIMEOUT = 10000;
+
+	private static class Trace {
+		final long requestID;
+		final long[] times = new long[STAGES.length];
+
+		Trace(long requestID) {
+			this.requestID = requestID;
+		}
+
+		// keeps the first time of each stage
+		synchronized void record(Stage stage, long nanoTime) {
+			if (this.times[stage.ordinal()] == 0)
+				this.times[stage.ordinal()] = nanoTime;
+		}
+
+		// recorded stages in the order they happened
+		synchronized Stage[] getStages() {
+			return Arrays
+					.stream(STAGES)
+					.filter(stage -> this.times[stage.ordinal()] != 0)
+					.sorted((s1, s2) -> Long.compare(this.times[s1.ordinal()],
+							this.times[s2.ordinal()])).toArray(Stage[]::new);
+		}
+
+		synchronized JSONObject toJSONObject() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("id", Long.toString(this.requestID));
+			JSONObject stages = new JSONObject();
+			Stage[] recorded = this.getStages();
+			for (Stage stage : recorded)
+				stages.put(stage.toString(), (this.times[stage.ordinal()] - this.times[recorded[0]
+						.ordinal()]) / 1000);
+			json.put("stages_us", stages);
+			return json;
+		}
+	}
+
+	private static class Histogram {
+		final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong sum = new AtomicLong();
+
+		void add(long nanos) {
+			this.buckets.incrementAndGet(NUM_BUCKETS
+					- Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+			this.count.incrementAndGet();
+			this.sum.addAndGet(nanos);
+		}
+
+		// upper bound of the bucket holding the given quantile
+		long quantile(double q) {
+			long rank = (long) Math.ceil(q * this.count.get()), seen = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++)
+				if ((seen += this.buckets.get(i)) >= rank && seen > 0)
+					return i == 63 ? Long.MAX_VALUE : 1L << i;
+			return 0;
+		}
+
+		JSONObject toJSONObject() throws JSONException {
+			JSONObject json = new JSONObject();
+			long n = this.count.get();
+			json.put("count", n);
+			json.put("mean_us", n > 0 ? this.sum.get() / n / 1000 : 0);
+			json.put("p50_us", this.quantile(0.5) / 1000);
+			json.put("p99_us", this.quantile(0.99) / 1000);
+			JSONObject buckets = new JSONObject();
+			for (int i = 0; i < NUM_BUCKETS; i++)
+				if (this.buckets.get(i) > 0)
+					buckets.put("<" + ((1L << i) / 1000) + "us",
+							this.buckets.get(i));
+			json.put("buckets", buckets);
+			return json;
+		}
+	}
+
+	private static volatile double samplingRate = Config
+			.getGlobalDouble(PC.TRACE_SAMPLING_RATE);
+
+	private static final GCConcurrentHashMap<Long, Trace> active = new GCConcurrentHashMap<Long, Trace>(
+			(requestID, trace) -> finish((Trace) trace), TRACE_TIMEOUT)
+			.setGCThresholdSize(Config.getGlobalInt(PC.TRACE_BUFFER_SIZE));
+
+	private static final AtomicReferenceArray<Trace> finished = new AtomicReferenceArray<Trace>(
+			Config.getGlobalInt(PC.TRACE_BUFFER_SIZE));
+	private static final AtomicLong numFinished = new AtomicLong();
+
+	private static final Histogram[] histograms = new Histogram[STAGES.length];
+	private static final Histogram total = new Histogram();
+	static {
+		for (int i = 0; i < histograms.length; i++)
+			histograms[i] = new Histogram();
+	}
+
+	/**
+	 * @param rate
+	 *            The fraction of requests to trace from now on.
+	 */
+	public static void setSamplingRate(double rate) {
+		samplingRate = rate;
+	}
+
+	/**
+	 * @param requestID
+	 * @return Whether the request is traced.
+	 */
+	public static boolean isSampled(long requestID) {
+		if (samplingRate <= 0)
+			return false;
+		// the finalizer of MurmurHash3, so that sequential IDs are spread out
+		long h = requestID;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (h >>> 11) * 0x1.0p-53 < samplingRate;
+	}
+
+	/**
+	 * Records the current time as the time of the stage of the request, if
+	 * the request is traced.
+	 *
+	 * @param requestID
+	 * @param stage
+	 */
+	public static void record(long requestID, Stage stage) {
+		if (isSampled(requestID))
+			recordSampled(requestID, stage, System.nanoTime());
+	}
+
+	/**
+	 * @param requestID
+	 * @param stage
+	 * @param nanoTime
+	 *            The time of the stage as given by {@link System#nanoTime()}.
+	 */
+	public static void record(long requestID, Stage stage, long nanoTime) {
+		if (isSampled(requestID))
+			recordSampled(requestID, stage, nanoTime);
+	}
+
+	/**
+	 * Records the stage of the request and of the requests batched with it.
+	 *
+	 * @param request
+	 * @param stage
+	 */
+	public static void record(RequestPacket request, Stage stage) {
+		if (samplingRate <= 0)
+			return;
+		long now = System.nanoTime();
+		record(request.requestID, stage, now);
+		RequestPacket[] batched = request.getBatched();
+		if (batched != null)
+			for (RequestPacket req : batched)
+				record(req.requestID, stage, now);
+	}
+
+	private static void recordSampled(long requestID, Stage stage,
+			long nanoTime) {
+		Trace trace = active.get(requestID);
+		if (trace == null) {
+			Trace prev = active.putIfAbsent(requestID, trace = new Trace(
+					requestID));
+			if (prev != null)
+				trace = prev;
+		}
+		trace.record(stage, nanoTime);
+		if (stage == Stage.RESPONSE_WRITTEN && active.remove(requestID, trace))
+			finish(trace);
+	}
+
+	private static void finish(Trace trace) {
+		long n = numFinished.getAndIncrement();
+		finished.set((int) (n % finished.length()), trace);
+		Stage[] stages = trace.getStages();
+		for (int i = 1; i < stages.length; i++)
+			histograms[stages[i].ordinal()]
+					.add(trace.times[stages[i].ordinal()]
+							- trace.times[stages[i - 1].ordinal()]);
+		if (stages.length > 1)
+			total.add(trace.times[stages[stages.length - 1].ordinal()]
+					- trace.times[stages[0].ordinal()]);
+	}
+
+	/**
+	 * @param numTraces
+	 *            The number of most recent traces to include.
+	 * @return The per-stage histograms of the time since the previous stage
+	 *         and of the total time of finished traces, and the most recent
+	 *         traces, in microseconds.
+	 * @throws JSONException
+	 */
+	public static JSONObject toJSONObject(int numTraces) throws JSONException {
+		active.tryGC(TRACE_TIMEOUT);
+		JSONObject json = new JSONObject();
+		json.put("sampling_rate", samplingRate);
+		long n = numFinished.get();
+		json.put("finished", n);
+		json.put("active", active.size());
+		JSONObject stages = new JSONObject();
+		for (Stage stage : STAGES)
+			if (histograms[stage.ordinal()].count.get() > 0)
+				stages.put(stage.toString(),
+						histograms[stage.ordinal()].toJSONObject());
+		json.put("stages", stages);
+		json.put("total", total.toJSONObject());
+		JSONArray traces = new JSONArray();
+		for (long i = n - 1; i >= Math.max(0, n - Math.min(numTraces, finished.length())); i--) {
+			Trace trace = finished.get((int) (i % finished.length()));
+			if (trace != null)
+				traces.put(trace.toJSONObject());
+		}
+		json.put("traces", traces);
+		return json;
+	}
+}
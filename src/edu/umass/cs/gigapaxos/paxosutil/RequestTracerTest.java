@@ -0,0 +1,132 @@
+package edu.umass.cs.gigapaxos.paxosutil;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer.Stage;
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * RequestTracer test class including the overhead of recording stages.
+ */
+public class RequestTracerTest extends DefaultTest {
+
+	/**
+	 *
+	 */
+	@After
+	public void disableTracing() {
+		RequestTracer.setSamplingRate(0);
+	}
+
+	// the first request ID from start that is sampled
+	private static long nextSampled(long start) {
+		long requestID = start;
+		while (!RequestTracer.isSampled(requestID))
+			requestID++;
+		return requestID;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSamplingRate() {
+		RequestTracer.setSamplingRate(0);
+		Assert.assertFalse(RequestTracer.isSampled(42));
+
+		RequestTracer.setSamplingRate(0.01);
+		int sampled = 0, n = 1000000;
+		for (long requestID = 0; requestID < n; requestID++)
+			if (RequestTracer.isSampled(requestID)) {
+				sampled++;
+				// every node makes the same decision
+				Assert.assertTrue(RequestTracer.isSampled(requestID));
+			}
+		Assert.assertEquals(0.01, (double) sampled / n, 0.001);
+
+		RequestTracer.setSamplingRate(1);
+		Assert.assertTrue(RequestTracer.isSampled(42));
+	}
+
+	/**
+	 * @throws JSONException
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testStagesOfTrace() throws JSONException, InterruptedException {
+		RequestTracer.setSamplingRate(1);
+		long requestID = nextSampled(System.nanoTime());
+		long received = System.nanoTime();
+		RequestTracer.record(requestID, Stage.HTTP_RECEIVED, received);
+		RequestTracer.record(requestID, Stage.COORDINATE);
+		RequestTracer.record(requestID, Stage.EXECUTE);
+		Thread.sleep(2);
+		RequestTracer.record(requestID, Stage.EXECUTED);
+		// only the first time of a stage is kept
+		RequestTracer.record(requestID, Stage.EXECUTED);
+		RequestTracer.record(requestID, Stage.RESPONSE_WRITTEN);
+
+		JSONObject json = RequestTracer.toJSONObject(1);
+		JSONObject trace = json.getJSONArray("traces").getJSONObject(0);
+		Assert.assertEquals(Long.toString(requestID), trace.getString("id"));
+		JSONObject stages = trace.getJSONObject("stages_us");
+		Assert.assertEquals(5, stages.length());
+		Assert.assertEquals(0, stages.getLong(Stage.HTTP_RECEIVED.toString()));
+		Assert.assertTrue(stages.getLong(Stage.EXECUTED.toString())
+				- stages.getLong(Stage.EXECUTE.toString()) >= 2000);
+		Assert.assertFalse(json.getJSONObject("stages").has(
+				Stage.HTTP_RECEIVED.toString()));
+		Assert.assertTrue(json.getJSONObject("stages")
+				.getJSONObject(Stage.EXECUTED.toString()).getLong("p99_us") >= 2000);
+		Assert.assertTrue(json.getJSONObject("total").getLong("count") > 0);
+	}
+
+	/**
+	 * @throws JSONException
+	 */
+	@Test
+	public void testRecentTraces() throws JSONException {
+		RequestTracer.setSamplingRate(1);
+		long requestID = System.nanoTime();
+		long finished = RequestTracer.toJSONObject(0).getLong("finished");
+		long[] requestIDs = new long[3];
+		for (int i = 0; i < requestIDs.length; i++) {
+			requestIDs[i] = requestID = nextSampled(requestID + 1);
+			RequestTracer.record(requestID, Stage.COORDINATE);
+			RequestTracer.record(requestID, Stage.RESPONSE_WRITTEN);
+		}
+		JSONObject json = RequestTracer.toJSONObject(2);
+		Assert.assertEquals(finished + requestIDs.length, json.getLong("finished"));
+		// most recent first
+		JSONArray traces = json.getJSONArray("traces");
+		Assert.assertEquals(2, traces.length());
+		Assert.assertEquals(Long.toString(requestIDs[2]), traces
+				.getJSONObject(0).getString("id"));
+		Assert.assertEquals(Long.toString(requestIDs[1]), traces
+				.getJSONObject(1).getString("id"));
+	}
+
+	/**
+	 * Time to record a stage of requests that are not sampled, which is the
+	 * cost of tracing for most requests.
+	 */
+	@Test
+	public void testRecordOverhead() {
+		RequestTracer.setSamplingRate(0.001);
+		int n = 10000000;
+		for (int warmup = 0; warmup < 2; warmup++) {
+			long t = System.nanoTime();
+			for (long requestID = 0; requestID < n; requestID++)
+				if (!RequestTracer.isSampled(requestID))
+					RequestTracer.record(requestID, Stage.COMMIT);
+			if (warmup == 1)
+				System.out.print(String.format("[%.1fns per unsampled record] ",
+						(double) (System.nanoTime() - t) / n));
+		}
+	}
+}
@@ -67,6 +67,10 @@ public class WaitforUtility {
 		return false;
 	}
 
+	public boolean heardFromQuorum(int quorumSize) {
+		return this.heardCount >= quorumSize;
+	}
+
 	public boolean alreadyHeardFrom(int node) {
 		int index = this.getIndex(node);
 		if (index >= 0 && index < this.members.length) {
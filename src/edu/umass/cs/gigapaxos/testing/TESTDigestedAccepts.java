@@ -0,0 +1,204 @@
+package edu.umass.cs.gigapaxos.testing;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gigapaxos.PaxosConfig;
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.gigapaxos.PaxosManager;
+import edu.umass.cs.gigapaxos.interfaces.Replicable;
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.nio.JSONMessenger;
+import edu.umass.cs.nio.MessageNIOTransport;
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.nio.nioutils.PacketDemultiplexerDefault;
+import edu.umass.cs.nio.nioutils.SampleNodeConfig;
+import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Loopback benchmark of request latency and coordinator egress for large
+ * requests in a three-node {@link PaxosManager} group running in this JVM.
+ * Requests are sent one at a time to a replica other than the coordinator, so
+ * with {@link PC#DIGEST_REQUESTS} enabled, the entry replica broadcasts each
+ * request body once and the coordinator's accepts carry only digests.
+ * <p>
+ * Usage: {@code TESTDigestedAccepts [numRequests] [DIGEST_REQUESTS=true]}
+ */
+public class TESTDigestedAccepts {
+
+	private static final String GROUP = "digest0";
+	private static final int NUM_NODES = 3;
+	// gigapaxos does not allow 0 as a node ID
+	private static final int FIRST_NODE_ID = 1;
+	private static final int[] REQUEST_SIZES = { 64 * 1024, 256 * 1024,
+			1024 * 1024 };
+	// requests need a resolved client address to be serialized by gigapaxos
+	private static final InetSocketAddress CLIENT = new InetSocketAddress(
+			InetAddress.getLoopbackAddress(), 1);
+
+	private static class NoopApp implements Replicable {
+		@Override
+		public boolean execute(Request request, boolean doNotReplyToClient) {
+			return true;
+		}
+
+		@Override
+		public boolean execute(Request request) {
+			return true;
+		}
+
+		@Override
+		public String checkpoint(String name) {
+			return "";
+		}
+
+		@Override
+		public boolean restore(String name, String state) {
+			return true;
+		}
+
+		@Override
+		public Request getRequest(String stringified)
+				throws RequestParseException {
+			try {
+				return new RequestPacket(new JSONObject(stringified));
+			} catch (JSONException e) {
+				throw new RequestParseException(e);
+			}
+		}
+
+		@Override
+		public Set<IntegerPacketType> getRequestTypes() {
+			return null;
+		}
+	}
+
+	// counts bytes sent to other nodes
+	private static class CountingTransport extends
+			MessageNIOTransport<Integer, JSONObject> {
+		final AtomicLong bytesSent = new AtomicLong();
+
+		CountingTransport(Integer id, SampleNodeConfig<Integer> nc)
+				throws IOException {
+			super(id, nc, new PacketDemultiplexerDefault(), true);
+		}
+
+		@Override
+		public int sendToID(Integer id, byte[] msg) throws IOException {
+			if (!id.equals(this.getMyID()))
+				this.bytesSent.addAndGet(msg.length);
+			return super.sendToID(id, msg);
+		}
+	}
+
+	private static String randomValue(int size, Random random) {
+		char[] chars = new char[size];
+		for (int i = 0; i < size; i++)
+			chars[i] = (char) ('a' + random.nextInt(26));
+		return new String(chars);
+	}
+
+	// returns after the request is executed at the entry replica
+	private static void propose(PaxosManager<Integer> entry, long id,
+			String value) throws InterruptedException {
+		RequestPacket request = new RequestPacket(id, value, false, CLIENT);
+		request.putPaxosID(GROUP, 0);
+		final CountDownLatch executed = new CountDownLatch(1);
+		entry.propose(GROUP, request, (req, handled) -> executed.countDown());
+		if (!executed.await(10, TimeUnit.SECONDS))
+			throw new RuntimeException("Request of size " + value.length()
+					+ " not executed");
+	}
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		// accepts would otherwise bypass CountingTransport via worker transports
+		Config.register(new String[] { PC.NUM_MESSENGER_WORKERS + "=0" });
+		Config.register(args);
+		int numRequests = args.length > 0 && !args[0].contains("=") ? Integer
+				.parseInt(args[0]) : 50;
+		PaxosConfig.load();
+		PaxosConfig.getLogger().setLevel(Level.WARNING);
+		Set<Integer> group = Set.of(FIRST_NODE_ID, FIRST_NODE_ID + 1,
+				FIRST_NODE_ID + 2);
+
+		SampleNodeConfig<Integer> nc = new SampleNodeConfig<Integer>(
+				SampleNodeConfig.DEFAULT_START_PORT + 300, FIRST_NODE_ID,
+				NUM_NODES);
+		String logFolder = Files.createTempDirectory("digestedaccepts")
+				.toString();
+		List<CountingTransport> transports = new ArrayList<CountingTransport>();
+		List<PaxosManager<Integer>> paxos = new ArrayList<PaxosManager<Integer>>();
+		for (int i = 0; i < NUM_NODES; i++) {
+			transports.add(new CountingTransport(FIRST_NODE_ID + i, nc));
+			paxos.add(new PaxosManager<Integer>(FIRST_NODE_ID + i, nc,
+					new JSONMessenger<Integer>(transports.get(i)),
+					new NoopApp(), logFolder, true));
+			paxos.get(i).createPaxosInstance(GROUP, 0, group, null, "");
+		}
+		Thread.sleep(2000);
+		// the coordinator is settled by the first request
+		propose(paxos.get(0), 0, "warmup");
+		while (paxos.stream().map(pm -> pm.getPaxosCoordinator(GROUP))
+				.distinct().count() > 1)
+			Thread.sleep(100);
+		int entry = (paxos.get(0).getPaxosCoordinator(GROUP) - FIRST_NODE_ID + 1)
+				% NUM_NODES;
+
+		System.out.println("DIGEST_REQUESTS="
+				+ Config.getGlobalBoolean(PC.DIGEST_REQUESTS));
+		Random random = new Random(0);
+		long id = 0;
+		for (int size : REQUEST_SIZES) {
+			String value = randomValue(size, random);
+			long[] latencies = new long[numRequests];
+			// the first iteration warms up
+			for (int round = 0; round < 2; round++) {
+				long[] egress = new long[NUM_NODES];
+				for (int j = 0; j < NUM_NODES; j++)
+					egress[j] = -transports.get(j).bytesSent.get();
+				for (int i = 0; i < numRequests; i++) {
+					long t = System.nanoTime();
+					propose(paxos.get(entry), ++id, value);
+					latencies[i] = System.nanoTime() - t;
+				}
+				for (int j = 0; j < NUM_NODES; j++)
+					egress[j] += transports.get(j).bytesSent.get();
+				if (round == 0)
+					continue;
+				// in case coordinatorship changed during the round
+				int coordinator = paxos.get(entry).getPaxosCoordinator(GROUP)
+						- FIRST_NODE_ID;
+				Arrays.sort(latencies);
+				System.out.printf(
+						"%4dKB: latency median %.2fms p90 %.2fms; egress/request coordinator %.1fKB entry %.1fKB%s%n",
+						size / 1024, latencies[numRequests / 2] / 1000000.0,
+						latencies[(int) (0.9 * (numRequests - 1))] / 1000000.0,
+						egress[coordinator] / 1024.0 / numRequests,
+						egress[entry] / 1024.0 / numRequests,
+						coordinator == entry ? " (entry is coordinator)" : "");
+			}
+		}
+		paxos.forEach(PaxosManager::close);
+		System.exit(0);
+	}
+}
@@ -0,0 +1,257 @@
+package edu.umass.cs.gigapaxos.testing;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gigapaxos.PaxosConfig;
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.gigapaxos.PaxosManager;
+import edu.umass.cs.gigapaxos.interfaces.Replicable;
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.nio.JSONDelayEmulator;
+import edu.umass.cs.nio.JSONMessenger;
+import edu.umass.cs.nio.MessageNIOTransport;
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.nio.nioutils.InterfaceDelayEmulator;
+import edu.umass.cs.nio.nioutils.PacketDemultiplexerDefault;
+import edu.umass.cs.nio.nioutils.SampleNodeConfig;
+import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Emulated-WAN benchmark of commit latency and coordinator egress in a
+ * five-node {@link PaxosManager} group running in this JVM with
+ * {@link JSONDelayEmulator} delaying each message by half the emulated RTT of
+ * its destination. Each node listens on its own loopback /24 prefix so that
+ * {@link edu.umass.cs.nio.nioutils.RTTEstimator} keeps separate estimates for
+ * each node. Requests are sent one at a time to the coordinator.
+ * <p>
+ * Usage:
+ * {@code TESTThriftyQuorums [numRequests] [THRIFTY_ACCEPTS=true] [PHASE2_QUORUM_SIZE=2]}
+ */
+public class TESTThriftyQuorums {
+
+	private static final String GROUP = "thrifty0";
+	// gigapaxos does not allow 0 as a node ID
+	private static final int FIRST_NODE_ID = 1;
+	/* Emulated RTT in ms to each node starting from the coordinator, so the
+	 * coordinator is the nearest node. */
+	private static final long[] RTTS = { 20, 40, 60, 160, 240 };
+	private static final int NUM_NODES = RTTS.length;
+	private static final int REQUEST_SIZE = 4 * 1024;
+	// requests need a resolved client address to be serialized by gigapaxos
+	private static final InetSocketAddress CLIENT = new InetSocketAddress(
+			InetAddress.getLoopbackAddress(), 1);
+
+	private static class NoopApp implements Replicable {
+		@Override
+		public boolean execute(Request request, boolean doNotReplyToClient) {
+			return true;
+		}
+
+		@Override
+		public boolean execute(Request request) {
+			return true;
+		}
+
+		@Override
+		public String checkpoint(String name) {
+			return "";
+		}
+
+		@Override
+		public boolean restore(String name, String state) {
+			return true;
+		}
+
+		@Override
+		public Request getRequest(String stringified)
+				throws RequestParseException {
+			try {
+				return new RequestPacket(new JSONObject(stringified));
+			} catch (JSONException e) {
+				throw new RequestParseException(e);
+			}
+		}
+
+		@Override
+		public Set<IntegerPacketType> getRequestTypes() {
+			return null;
+		}
+	}
+
+	private static class GeoNodeConfig extends SampleNodeConfig<Integer>
+			implements InterfaceDelayEmulator<Integer> {
+		volatile int coordinator = 0;
+
+		GeoNodeConfig() throws IOException {
+			super(SampleNodeConfig.DEFAULT_START_PORT + 400);
+			for (int i = 0; i < NUM_NODES; i++)
+				this.add(FIRST_NODE_ID + i, InetAddress
+						.getByAddress(new byte[] { 127, 0, (byte) (i + 1), 1 }));
+		}
+
+		@Override
+		public long getEmulatedDelay(Integer node) {
+			return RTTS[this.getRank(node - FIRST_NODE_ID)];
+		}
+
+		int getRank(int index) {
+			return (index - this.coordinator + NUM_NODES) % NUM_NODES;
+		}
+	}
+
+	/* Delays and counts bytes sent to other nodes. Paxos packets are sent as
+	 * bytes, so the emulated delay is applied here at the sender. */
+	private static class DelayingTransport extends
+			MessageNIOTransport<Integer, JSONObject> {
+		final AtomicLongArray bytesSent = new AtomicLongArray(NUM_NODES);
+		final AtomicLongArray messagesSent = new AtomicLongArray(NUM_NODES);
+		final ScheduledExecutorService delayer = Executors
+				.newSingleThreadScheduledExecutor();
+
+		DelayingTransport(Integer id, GeoNodeConfig nc) throws IOException {
+			super(id, nc, new PacketDemultiplexerDefault(), true);
+		}
+
+		@Override
+		public int sendToID(Integer id, byte[] msg) throws IOException {
+			if (id.equals(this.getMyID()))
+				return super.sendToID(id, msg);
+			this.bytesSent.addAndGet(id - FIRST_NODE_ID, msg.length);
+			this.messagesSent.incrementAndGet(id - FIRST_NODE_ID);
+			JSONObject delay = new JSONObject();
+			JSONDelayEmulator.putEmulatedDelay(id, delay);
+			this.delayer.schedule(() -> {
+				try {
+					DelayingTransport.super.sendToID(id, msg);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}, JSONDelayEmulator.getEmulatedDelay(delay), TimeUnit.MILLISECONDS);
+			return msg.length;
+		}
+	}
+
+	private static String randomValue(int size, Random random) {
+		char[] chars = new char[size];
+		for (int i = 0; i < size; i++)
+			chars[i] = (char) ('a' + random.nextInt(26));
+		return new String(chars);
+	}
+
+	// returns after the request is executed at the entry replica
+	private static void propose(PaxosManager<Integer> entry, long id,
+			String value) throws InterruptedException {
+		RequestPacket request = new RequestPacket(id, value, false, CLIENT);
+		request.putPaxosID(GROUP, 0);
+		final CountDownLatch executed = new CountDownLatch(1);
+		entry.propose(GROUP, request, (req, handled) -> executed.countDown());
+		if (!executed.await(10, TimeUnit.SECONDS))
+			throw new RuntimeException("Request " + id + " not executed");
+	}
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		// accepts would otherwise bypass DelayingTransport via worker transports
+		Config.register(new String[] { PC.NUM_MESSENGER_WORKERS + "=0" });
+		Config.register(args);
+		int numRequests = args.length > 0 && !args[0].contains("=") ? Integer
+				.parseInt(args[0]) : 100;
+		PaxosConfig.load();
+		PaxosConfig.getLogger().setLevel(Level.WARNING);
+		Set<Integer> group = new HashSet<Integer>();
+		for (int i = 0; i < NUM_NODES; i++)
+			group.add(FIRST_NODE_ID + i);
+
+		GeoNodeConfig nc = new GeoNodeConfig();
+		JSONDelayEmulator.emulateConfigFileDelays(nc, 0.1);
+		String logFolder = Files.createTempDirectory("thriftyquorums")
+				.toString();
+		List<DelayingTransport> transports = new ArrayList<DelayingTransport>();
+		List<PaxosManager<Integer>> paxos = new ArrayList<PaxosManager<Integer>>();
+		for (int i = 0; i < NUM_NODES; i++) {
+			transports.add(new DelayingTransport(FIRST_NODE_ID + i, nc));
+			paxos.add(new PaxosManager<Integer>(FIRST_NODE_ID + i, nc,
+					new JSONMessenger<Integer>(transports.get(i)),
+					new NoopApp(), logFolder, true));
+			paxos.get(i).createPaxosInstance(GROUP, 0, group, null, "");
+		}
+		Thread.sleep(2000);
+		// the coordinator is settled by the first request
+		propose(paxos.get(0), 0, "warmup");
+		while (paxos.stream().map(pm -> pm.getPaxosCoordinator(GROUP))
+				.distinct().count() > 1)
+			Thread.sleep(100);
+		int coordinator = nc.coordinator = paxos.get(0).getPaxosCoordinator(
+				GROUP) - FIRST_NODE_ID;
+
+		System.out.println("THRIFTY_ACCEPTS="
+				+ Config.getGlobalBoolean(PC.THRIFTY_ACCEPTS)
+				+ " PHASE2_QUORUM_SIZE="
+				+ Config.getGlobalInt(PC.PHASE2_QUORUM_SIZE));
+		Random random = new Random(0);
+		String value = randomValue(REQUEST_SIZE, random);
+		long[] latencies = new long[numRequests];
+		long id = 0;
+		// the first iteration warms up and lets RTT estimates settle
+		for (int round = 0; round < 2; round++) {
+			// bytes and messages from and to the coordinator
+			long[] egress = new long[NUM_NODES], out = new long[NUM_NODES], in = new long[NUM_NODES];
+			for (int j = 0; j < NUM_NODES; j++) {
+				egress[j] = -transports.get(coordinator).bytesSent.get(j);
+				out[j] = -transports.get(coordinator).messagesSent.get(j);
+				in[j] = -transports.get(j).messagesSent.get(coordinator);
+			}
+			for (int i = 0; i < numRequests; i++) {
+				long t = System.nanoTime();
+				propose(paxos.get(coordinator), ++id, value);
+				latencies[i] = System.nanoTime() - t;
+			}
+			for (int j = 0; j < NUM_NODES; j++) {
+				egress[j] += transports.get(coordinator).bytesSent.get(j);
+				out[j] += transports.get(coordinator).messagesSent.get(j);
+				in[j] += transports.get(j).messagesSent.get(coordinator);
+			}
+			if (round == 0)
+				continue;
+			Arrays.sort(latencies);
+			StringBuilder perNode = new StringBuilder();
+			for (int j = 0; j < NUM_NODES; j++)
+				if (j != coordinator)
+					perNode.append(String.format(" %dms:%.1fKB,%.2f/%.2f",
+							RTTS[nc.getRank(j)], egress[j] / 1024.0
+									/ numRequests, out[j] / (double) numRequests,
+							in[j] / (double) numRequests));
+			System.out.printf(
+					"latency median %.1fms p90 %.1fms; coordinator egress/request %.1fKB [to node with RTT:KB,messages out/in per request%s]%n",
+					latencies[numRequests / 2] / 1000000.0,
+					latencies[(int) (0.9 * (numRequests - 1))] / 1000000.0,
+					Arrays.stream(egress).sum() / 1024.0 / numRequests,
+					perNode);
+		}
+		paxos.forEach(PaxosManager::close);
+		System.exit(0);
+	}
+}
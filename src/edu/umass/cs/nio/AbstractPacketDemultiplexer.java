@@ -15,6 +15,7 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.nio;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -93,6 +94,8 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 	}
 
 	private final ScheduledThreadPoolExecutor executor;
+	// single-threaded executors for key-affine dispatch; null if disabled
+	private volatile AffineLane[] affineExecutors = null;
 	private final HashMap<Integer, PacketDemultiplexer<MessageType>> demuxMap = new HashMap<Integer, PacketDemultiplexer<MessageType>>();
 	private final Set<Integer> orderPreservingTypes = new HashSet<Integer>();
 	protected static final Logger log = NIOTransport.getLogger();
@@ -147,6 +150,58 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 		this(getThreadPoolSize());
 	}
 
+	/**
+	 * Enables or disables key-affine dispatch. If enabled, every message for
+	 * which {@link #getAffinityKey(Object)} returns a non-null key is handled
+	 * by one of a fixed set of single-threaded executors chosen by hashing the
+	 * key, so messages with the same key are handled one at a time in arrival
+	 * order and always by the same thread. Messages without a key continue to
+	 * use the shared thread pool. The number of affine threads is the thread
+	 * pool size this demultiplexer was created with; key-affine dispatch is a
+	 * noop if that size is 0.
+	 * 
+	 * @param keyAffine
+	 * @return {@code this}
+	 */
+	public final synchronized AbstractPacketDemultiplexer<MessageType> setKeyAffine(
+			boolean keyAffine) {
+		if (keyAffine && this.affineExecutors == null
+				&& this.myThreadPoolSize > 0) {
+			AffineLane[] executors = new AffineLane[this.myThreadPoolSize];
+			for (int i = 0; i < executors.length; i++) {
+				final int index = i;
+				executors[i] = new AffineLane(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = Executors.defaultThreadFactory()
+								.newThread(r);
+						thread.setName(threadName + ":affine" + index);
+						return thread;
+					}
+				});
+			}
+			this.affineExecutors = executors;
+		} else if (!keyAffine && this.affineExecutors != null) {
+			for (ScheduledThreadPoolExecutor affineExecutor : this.affineExecutors)
+				affineExecutor.shutdown();
+			this.affineExecutors = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Used only if key-affine dispatch is enabled via
+	 * {@link #setKeyAffine(boolean)}.
+	 * 
+	 * @param message
+	 * @return The key, e.g., a paxosID or service name, of messages that must
+	 *         be handled in order by the same thread; null if {@code message}
+	 *         may be handled by any thread.
+	 */
+	protected Object getAffinityKey(MessageType message) {
+		return null;
+	}
+
 	protected AbstractPacketDemultiplexer<MessageType> setThreadName(String name) {
 		this.threadName = DEFAULT_THREAD_NAME + "[" + myThreadPoolSize + "]"
 				+ (name != null ? ":" + name : "");
@@ -198,7 +253,15 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 			return false;
 		}
 		Tasker tasker = new Tasker(message, this.demuxMap.get(type), header);
-		if (this.myThreadPoolSize == 0 || isOrderPreserving(message)) {
+		AffineLane[] affine = this.affineExecutors;
+		Object key = null;
+		if (affine != null && (key = this.getAffinityKey(message)) != null)
+			/* Per-key FIFO subsumes order preservation, so there is no need
+			 * to run order-preserving messages in the selector thread. */
+			return this.dispatch(
+					affine[Math.floorMod(key.hashCode(), affine.length)],
+					tasker, message);
+		else if (this.myThreadPoolSize == 0 || isOrderPreserving(message)) {
 			log.log(Level.FINER,
 					"{0} handling message type {1} in selector thread; this can cause "
 							+ "deadlocks if the handler involves blocking operations",
@@ -206,24 +269,77 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 			// task better be lightning quick
 			tasker.run();
 		} else
+			return this.dispatch(this.executor, tasker, message);
+		return true;
+	}
+
+	/* A single-threaded executor for key-affine dispatch. Tasks handed off
+	 * with scheduleInOrder run in hand-off order even if a later one has a
+	 * shorter emulated delay: each hand-off schedules a run of the oldest
+	 * pending task rather than of its own, no earlier than the deadlines of
+	 * the tasks handed off before it. */
+	static final class AffineLane extends ScheduledThreadPoolExecutor {
+		// guarded by this
+		private final ArrayDeque<Runnable> pending = new ArrayDeque<Runnable>();
+		private long lastDeadline = System.nanoTime();
+
+		private final Runnable runOldest = new Runnable() {
+			@Override
+			public void run() {
+				Runnable task;
+				synchronized (AffineLane.this) {
+					task = AffineLane.this.pending.poll();
+				}
+				task.run();
+			}
+		};
+
+		AffineLane(ThreadFactory threadFactory) {
+			super(1, threadFactory);
+		}
+
+		synchronized void scheduleInOrder(Runnable task, long delayMs) {
+			long now = System.nanoTime();
+			long deadline = now + TimeUnit.MILLISECONDS.toNanos(delayMs);
+			if (deadline - this.lastDeadline < 0)
+				deadline = this.lastDeadline;
+			this.pending.add(task);
 			try {
-				log.log(level = Level.FINER,
-						"{0} invoking {1}.handleMessage({2})",
-						new Object[] {
-								this,
-								tasker.pd,
-								(message instanceof Summarizable ? ((Summarizable) message)
-										.getSummary(log.isLoggable(level))
-										: Util.truncate(message, 32, 32)) });
-				// task should still be non-blocking
+				this.schedule(this.runOldest, deadline - now,
+						TimeUnit.NANOSECONDS);
+			} catch (RejectedExecutionException ree) {
+				this.pending.removeLast();
+				throw ree;
+			}
+			this.lastDeadline = deadline;
+		}
+	}
+
+	private boolean dispatch(ScheduledThreadPoolExecutor executor,
+			Tasker tasker, MessageType message) {
+		try {
+			Level level = Level.FINER;
+			log.log(level,
+					"{0} invoking {1}.handleMessage({2})",
+					new Object[] {
+							this,
+							tasker.pd,
+							(message instanceof Summarizable ? ((Summarizable) message)
+									.getSummary(log.isLoggable(level))
+									: Util.truncate(message, 32, 32)) });
+			// task should still be non-blocking
+			if (emulateDelays && executor instanceof AffineLane)
+				((AffineLane) executor).scheduleInOrder(tasker,
+						JSONDelayEmulator.getEmulatedDelay());
+			else
 				executor.schedule(tasker,
 						emulateDelays ? JSONDelayEmulator.getEmulatedDelay()
 								: 0, TimeUnit.MILLISECONDS);
-			} catch (RejectedExecutionException ree) {
-				if (!executor.isShutdown())
-					ree.printStackTrace();
-				return false;
-			}
+		} catch (RejectedExecutionException ree) {
+			if (!executor.isShutdown())
+				ree.printStackTrace();
+			return false;
+		}
 		/* Note: executor.submit() consistently yields poorer performance than
 		 * scheduling at 0 as above even though they are equivalent. Probably
 		 * garbage collection or heap optimization issues. */
@@ -353,6 +469,7 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 	 */
 	public void stop() {
 		this.executor.shutdown();
+		this.setKeyAffine(false);
 	}
 
 	// helper task for handleMessageSuper
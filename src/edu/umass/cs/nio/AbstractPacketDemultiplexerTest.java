@@ -0,0 +1,150 @@
+package edu.umass.cs.nio;
+
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.nio.nioutils.NIOHeader;
+import edu.umass.cs.utils.DefaultTest;
+import org.json.JSONException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AbstractPacketDemultiplexer test class.
+ */
+public class AbstractPacketDemultiplexerTest extends DefaultTest {
+
+	// messages are of the form key:seqnum
+	private static class KeyedDemultiplexer extends
+			AbstractPacketDemultiplexer<String> {
+		final Map<String, List<Integer>> handled = new HashMap<String, List<Integer>>();
+		final Map<String, Set<String>> threads = new HashMap<String, Set<String>>();
+		final CountDownLatch done;
+
+		KeyedDemultiplexer(int numThreads, int numMessages) {
+			super(numThreads);
+			this.done = new CountDownLatch(numMessages);
+			this.register(new IntegerPacketType() {
+				@Override
+				public int getInt() {
+					return 1;
+				}
+			});
+			this.setKeyAffine(true);
+		}
+
+		@Override
+		public boolean handleMessage(String message, NIOHeader header) {
+			String key = message.split(":")[0];
+			int seq = Integer.parseInt(message.split(":")[1]);
+			synchronized (this) {
+				this.handled.computeIfAbsent(key, k -> new ArrayList<Integer>())
+						.add(seq);
+				this.threads.computeIfAbsent(key, k -> new HashSet<String>())
+						.add(Thread.currentThread().getName());
+			}
+			this.done.countDown();
+			return true;
+		}
+
+		@Override
+		protected Object getAffinityKey(String message) {
+			return message.split(":")[0];
+		}
+
+		@Override
+		protected Integer getPacketType(String message) {
+			return 1;
+		}
+
+		@Override
+		protected String processHeader(byte[] message, NIOHeader header) {
+			return new String(message, StandardCharsets.ISO_8859_1);
+		}
+
+		@Override
+		protected boolean matchesType(Object message) {
+			return message instanceof String;
+		}
+	}
+
+	/**
+	 * Messages with the same key are handled in arrival order by a single
+	 * thread.
+	 *
+	 * @throws JSONException
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testKeyAffineOrder() throws JSONException,
+			InterruptedException {
+		int numKeys = 32, numPerKey = 200;
+		KeyedDemultiplexer demux = new KeyedDemultiplexer(4, numKeys
+				* numPerKey);
+		NIOHeader header = new NIOHeader(new InetSocketAddress(
+				"127.0.0.1", 1000), new InetSocketAddress("127.0.0.1", 2000));
+		for (int seq = 0; seq < numPerKey; seq++)
+			for (int k = 0; k < numKeys; k++)
+				Assert.assertTrue(demux.handleMessageSuper(("key" + k + ":" + seq)
+						.getBytes(StandardCharsets.ISO_8859_1), header));
+		Assert.assertTrue(demux.done.await(10, TimeUnit.SECONDS));
+		demux.stop();
+
+		Set<String> allThreads = new HashSet<String>();
+		for (int k = 0; k < numKeys; k++) {
+			List<Integer> handled = demux.handled.get("key" + k);
+			Assert.assertEquals(numPerKey, handled.size());
+			for (int seq = 0; seq < numPerKey; seq++)
+				Assert.assertEquals(seq, handled.get(seq).intValue());
+			Assert.assertEquals(1, demux.threads.get("key" + k).size());
+			allThreads.addAll(demux.threads.get("key" + k));
+		}
+		// keys are spread across the affine threads
+		Assert.assertTrue(allThreads.size() > 1);
+	}
+
+	/**
+	 * An affine lane runs tasks in hand-off order even if later tasks have
+	 * shorter emulated delays.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testAffineLaneDelayOrder() throws InterruptedException {
+		int numTasks = 20;
+		AbstractPacketDemultiplexer.AffineLane lane = new AbstractPacketDemultiplexer.AffineLane(
+				Executors.defaultThreadFactory());
+		final List<Integer> ran = new ArrayList<Integer>();
+		final CountDownLatch done = new CountDownLatch(numTasks);
+		long start = System.nanoTime();
+		for (int i = 0; i < numTasks; i++) {
+			final int seq = i;
+			lane.scheduleInOrder(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (ran) {
+						ran.add(seq);
+					}
+					done.countDown();
+				}
+			}, 2 * (numTasks - i));
+		}
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		lane.shutdown();
+		// no task ran before the longest delay of the tasks handed off before it
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+				.toNanos(2 * numTasks));
+		for (int i = 0; i < numTasks; i++)
+			Assert.assertEquals(i, ran.get(i).intValue());
+	}
+}
@@ -440,8 +440,9 @@ public class MessageNIOTransport<NodeIDType, MessageType> extends
 			}
 		InetSocketAddress isa = null;
 		try {
+			// may be stamped as InetSocketAddress.toString(), i.e., "/ip:port"
 			isa = json.has(MessageNIOTransport.RCVR_ADDRESS_FIELD) ? Util
-					.getInetSocketAddressFromStringStrict(json
+					.getInetSocketAddressFromString(json
 							.getString(MessageNIOTransport.RCVR_ADDRESS_FIELD))
 					: null;
 
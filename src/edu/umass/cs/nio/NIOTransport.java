@@ -563,6 +563,18 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 		try {
 			if (this.senderTask != null)
 				this.senderTask.close();
+			/* Closing the selector does not close its channels, so close them
+			 * explicitly, otherwise peers never notice that this end stopped
+			 * and sneaky writes keep going out on the still-open sockets. */
+			for (SelectionKey key : this.selector.keys()) {
+				try {
+					key.channel().close();
+				} catch (IOException e) {
+					// still close the others, the selector, and the server channel
+					log.log(Level.FINE, "{0} unable to close {1}: {2}",
+							new Object[] { this, key.channel(), e.getMessage() });
+				}
+			}
 			this.selector.close();
 			this.serverChannel.close();
 
@@ -69,9 +69,11 @@ public class RTTEstimator {
 		int index = addrToPrefixInt(address);
 		bitset.set(index);
 		insertTestMap(address, rtt); // for testing only
-		return rtts[index] = (byte) Util.movingAverage(rtt,
-				rtts[index] != 0 ? (rtts[index] < 0 ? rtts[index] + 255
-						: rtts[index]) : rtt, ALPHA);
+		// stored as an unsigned byte capped at 255ms
+		rtts[index] = (byte) Math.min(255, Util.movingAverage(
+				Math.min(rtt, 255), rtts[index] != 0 ? rtts[index] & 0xff
+						: rtt, ALPHA));
+		return rtts[index] & 0xff;
 	}
 
 	/**
@@ -81,7 +83,7 @@ public class RTTEstimator {
 	public static long getRTT(InetAddress address) {
 		int index = addrToPrefixInt(address);
 		if (bitset.get(index))
-			return rtts[addrToPrefixInt(address)];
+			return rtts[index] & 0xff;
 		else
 			return -1;
 	}
@@ -0,0 +1,195 @@
+package edu.umass.cs.primarybackup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * ForwardedRequestBatcher accumulates, per service, the requests that a backup needs to hand
+ * to the primary, and passes them to the sender as one batch.
+ * <p>
+ * Batching is reactive: when there is no batch in flight for a service, a request is sent
+ * right away, so a lightly loaded backup adds no delay. Otherwise, the request waits until
+ * (1) the in-flight batch is answered, (2) maxBatchSize requests are queued, or (3) the
+ * oldest queued request has waited maxBatchDelayMs, whichever comes first. Under load, many
+ * requests are thus forwarded with a single message and answered with a single response.
+ * <p>
+ * A batch that is not answered within batchTimeoutMs, e.g., because the primary failed, is
+ * handed to the expirer so that its requests are not waited upon forever.
+ */
+class ForwardedRequestBatcher {
+
+    /**
+     * Sends a batch of requests for a service, identified by batchID, to the primary. The
+     * response for the batch must carry the same batchID.
+     */
+    interface BatchSender {
+        void send(String serviceName, long batchID, List<RequestAndCallback> batch);
+    }
+
+    private final int maxBatchSize;
+    private final long maxBatchDelayMs;
+    private final long batchTimeoutMs;
+    private final BatchSender sender;
+    private final BiConsumer<String, List<RequestAndCallback>> expirer;
+    private final ScheduledExecutorService flusher;
+
+    // guarded by this
+    private final Map<String, PendingBatch> pendingBatches;
+    // expiry of every batch given to the sender and not yet answered, by batchID
+    private final Map<Long, ScheduledFuture<?>> expiryTasks;
+    private long nextBatchID = 0;
+
+    private static class PendingBatch {
+        private final List<RequestAndCallback> requests = new ArrayList<>();
+        // batches in flight to the current primary, holding back the queued requests
+        private final Set<Long> inFlight = new HashSet<>();
+        private ScheduledFuture<?> flushTask = null;
+    }
+
+    private record Batch(long batchID, List<RequestAndCallback> requests) {
+    }
+
+    ForwardedRequestBatcher(int maxBatchSize, long maxBatchDelayMs, long batchTimeoutMs,
+                            BatchSender sender,
+                            BiConsumer<String, List<RequestAndCallback>> expirer) {
+        assert maxBatchSize > 0 && maxBatchDelayMs >= 0 && batchTimeoutMs > 0;
+        assert sender != null && expirer != null;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayMs = maxBatchDelayMs;
+        this.batchTimeoutMs = batchTimeoutMs;
+        this.sender = sender;
+        this.expirer = expirer;
+        this.pendingBatches = new HashMap<>();
+        this.expiryTasks = new HashMap<>();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, ForwardedRequestBatcher.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void enqueue(RequestAndCallback rc) {
+        String serviceName = rc.requestPacket().getServiceName();
+        Batch batch = null;
+        synchronized (this) {
+            PendingBatch pending = this.pendingBatches.computeIfAbsent(
+                    serviceName, k -> new PendingBatch());
+            pending.requests.add(rc);
+            if (pending.inFlight.isEmpty() || pending.requests.size() >= this.maxBatchSize) {
+                batch = this.drain(serviceName, pending);
+            } else if (pending.flushTask == null) {
+                pending.flushTask = this.flusher.schedule(() -> this.sendQueued(serviceName),
+                        this.maxBatchDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        this.send(serviceName, batch);
+    }
+
+    /**
+     * Must be invoked when the response for the batch previously given to the sender with
+     * batchID arrives, so that the requests queued behind it can be sent.
+     */
+    void onBatchResponded(String serviceName, long batchID) {
+        Batch batch = null;
+        synchronized (this) {
+            ScheduledFuture<?> expiryTask = this.expiryTasks.remove(batchID);
+            if (expiryTask != null) {
+                expiryTask.cancel(false);
+            }
+            batch = this.onBatchDone(serviceName, batchID);
+        }
+        this.send(serviceName, batch);
+    }
+
+    /**
+     * Must be invoked when the primary of the service changes. The batches in flight to the
+     * previous primary no longer hold back the queued requests, which are sent right away;
+     * those batches still expire if they are never answered.
+     */
+    void flush(String serviceName) {
+        synchronized (this) {
+            PendingBatch pending = this.pendingBatches.get(serviceName);
+            if (pending == null) {
+                return;
+            }
+            pending.inFlight.clear();
+        }
+        this.sendQueued(serviceName);
+    }
+
+    void close() {
+        this.flusher.shutdownNow();
+    }
+
+    // sends all the queued requests for the service, regardless of the in-flight batches
+    private void sendQueued(String serviceName) {
+        Batch batch = null;
+        synchronized (this) {
+            PendingBatch pending = this.pendingBatches.get(serviceName);
+            if (pending != null && !pending.requests.isEmpty()) {
+                batch = this.drain(serviceName, pending);
+            }
+        }
+        this.send(serviceName, batch);
+    }
+
+    private void expire(String serviceName, long batchID, List<RequestAndCallback> requests) {
+        Batch batch = null;
+        synchronized (this) {
+            if (this.expiryTasks.remove(batchID) == null) {
+                return;
+            }
+            batch = this.onBatchDone(serviceName, batchID);
+        }
+        this.expirer.accept(serviceName, requests);
+        this.send(serviceName, batch);
+    }
+
+    private void send(String serviceName, Batch batch) {
+        if (batch != null) {
+            this.sender.send(serviceName, batch.batchID(), batch.requests());
+        }
+    }
+
+    // must be invoked while holding the lock on this
+    private Batch onBatchDone(String serviceName, long batchID) {
+        PendingBatch pending = this.pendingBatches.get(serviceName);
+        if (pending == null) {
+            return null;
+        }
+        pending.inFlight.remove(batchID);
+        if (!pending.requests.isEmpty()) {
+            return this.drain(serviceName, pending);
+        }
+        if (pending.inFlight.isEmpty()) {
+            this.pendingBatches.remove(serviceName);
+        }
+        return null;
+    }
+
+    // must be invoked while holding the lock on this
+    private Batch drain(String serviceName, PendingBatch pending) {
+        if (pending.flushTask != null) {
+            pending.flushTask.cancel(false);
+            pending.flushTask = null;
+        }
+        List<RequestAndCallback> requests = new ArrayList<>(pending.requests);
+        pending.requests.clear();
+        long batchID = this.nextBatchID++;
+        pending.inFlight.add(batchID);
+        this.expiryTasks.put(batchID, this.flusher.schedule(
+                () -> this.expire(serviceName, batchID, requests),
+                this.batchTimeoutMs, TimeUnit.MILLISECONDS));
+        return new Batch(batchID, requests);
+    }
+
+}
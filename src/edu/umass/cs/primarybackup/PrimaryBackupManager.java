@@ -4,6 +4,7 @@ import edu.umass.cs.gigapaxos.PaxosConfig;
 import edu.umass.cs.gigapaxos.PaxosManager;
 import edu.umass.cs.gigapaxos.interfaces.*;
 import edu.umass.cs.gigapaxos.paxosutil.PaxosInstanceCreationException;
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
 import edu.umass.cs.nio.GenericMessagingTask;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.nio.interfaces.Messenger;
@@ -11,11 +12,13 @@ import edu.umass.cs.nio.interfaces.Stringifiable;
 import edu.umass.cs.primarybackup.interfaces.BackupableApplication;
 import edu.umass.cs.primarybackup.packets.*;
 import edu.umass.cs.reconfiguration.AbstractReconfiguratorDB;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.reconfiguration.interfaces.Reconfigurable;
 import edu.umass.cs.reconfiguration.interfaces.ReconfigurableRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReplicableClientRequest;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
 import edu.umass.cs.utils.Config;
+import edu.umass.cs.xdn.interfaces.behavior.BehavioralRequest;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -25,9 +28,17 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
 
+    private static final Logger logger = PaxosConfig.getLogger();
+
     private final boolean ENABLE_INTERNAL_REDIRECT_PRIMARY = true;
 
     private final NodeIDType myNodeID;
@@ -43,12 +54,40 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
 
     private final Messenger<NodeIDType, ?> messenger;
 
-    // requests while waiting role change from PRIMARY_CANDIDATE to PRIMARY
-    private final Queue<RequestAndCallback> outstandingRequests;
+    // requests while waiting role change from PRIMARY_CANDIDATE to PRIMARY, per service
+    private final Map<String, Queue<RequestAndCallback>> outstandingRequests;
 
     // requests forwarded to the PRIMARY
     private final Map<Long, RequestAndCallback> forwardedRequests;
 
+    // batches requests forwarded to the PRIMARY, null if batching is disabled
+    private final ForwardedRequestBatcher forwardedRequestBatcher;
+
+    // maximum number of requests executed by the PRIMARY for a single stateDiff
+    private final int maxBatchSize;
+
+    // expiration of the lease held by this node as the PRIMARY, in System.nanoTime(), per
+    // service. Read-only requests are only executed locally while the lease is valid.
+    private final Map<String, Long> leaseExpiry;
+    private final long leaseDurationNanos;
+
+    // number of stateDiffs proposed by this node as the PRIMARY that are not yet agreed upon
+    private final Map<String, AtomicInteger> pendingStateDiffs;
+
+    // held from the execution of requests until their stateDiff is proposed, so that
+    // stateDiffs are proposed, hence applied by the backups, in the order they are captured.
+    // It is not this, as paxos may need this to execute a stateDiff while a proposal is
+    // being handed over.
+    private final Object proposeLock = new Object();
+
+    // epoch of the StartEpochPacket proposed by this node as a PRIMARY_CANDIDATE that is not
+    // yet agreed upon, per service
+    private final Map<String, PrimaryEpoch<NodeIDType>> pendingStartEpochs;
+    private final long startEpochRetryTimeout;
+
+    // runs the delayed promotion of a PRIMARY_CANDIDATE and the primary failure checks
+    private final ScheduledExecutorService scheduler;
+
     public PrimaryBackupManager(NodeIDType nodeID,
                                 Replicable replicableApp,
                                 BackupableApplication backupableApp,
@@ -96,8 +135,36 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
         }
 
         this.messenger = messenger;
-        this.outstandingRequests = new ConcurrentLinkedQueue<>();
+        this.outstandingRequests = new ConcurrentHashMap<>();
         this.forwardedRequests = new ConcurrentHashMap<>();
+        this.maxBatchSize = Config.getGlobalInt(ReconfigurationConfig.RC.PB_MAX_BATCH_SIZE);
+        this.forwardedRequestBatcher =
+                Config.getGlobalBoolean(ReconfigurationConfig.RC.PB_BATCH_FORWARDED_REQUESTS)
+                        ? new ForwardedRequestBatcher(
+                        this.maxBatchSize,
+                        Config.getGlobalLong(ReconfigurationConfig.RC.PB_MAX_BATCH_DELAY),
+                        Config.getGlobalLong(ReconfigurationConfig.RC.PB_FORWARDED_BATCH_TIMEOUT),
+                        this::sendForwardedRequestBatch,
+                        this::expireForwardedRequestBatch)
+                        : null;
+        this.leaseExpiry = new ConcurrentHashMap<>();
+        this.leaseDurationNanos = TimeUnit.MILLISECONDS.toNanos(
+                Config.getGlobalLong(ReconfigurationConfig.RC.PB_PRIMARY_LEASE_DURATION));
+        this.pendingStateDiffs = new ConcurrentHashMap<>();
+        this.pendingStartEpochs = new ConcurrentHashMap<>();
+        this.startEpochRetryTimeout =
+                Config.getGlobalLong(ReconfigurationConfig.RC.PB_START_EPOCH_RETRY_TIMEOUT);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, PrimaryBackupManager.class.getSimpleName() + myNodeID);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long failoverCheckPeriod =
+                Config.getGlobalLong(ReconfigurationConfig.RC.PB_FAILOVER_CHECK_PERIOD);
+        if (failoverCheckPeriod > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::checkPrimaryFailures,
+                    failoverCheckPeriod, failoverCheckPeriod, TimeUnit.MILLISECONDS);
+        }
 
         System.out.printf(">> %s PrimaryBackupManager is initialized.\n", myNodeID);
     }
@@ -174,6 +241,16 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
             return handleResponsePacket(responsePacket, callback);
         }
 
+        // BatchedForwardedRequestPacket: entry replica -> primary
+        if (packet instanceof BatchedForwardedRequestPacket batchedForwardedRequestPacket) {
+            return handleBatchedForwardedRequestPacket(batchedForwardedRequestPacket);
+        }
+
+        // BatchedResponsePacket: primary -> entry replica
+        if (packet instanceof BatchedResponsePacket batchedResponsePacket) {
+            return handleBatchedResponsePacket(batchedResponsePacket);
+        }
+
         // ChangePrimaryPacket: client -> entry replica
         if (packet instanceof ChangePrimaryPacket changePrimaryPacket) {
             return handleChangePrimaryPacket(changePrimaryPacket, callback);
@@ -211,7 +288,8 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
 
         if (currentServiceRole == Role.PRIMARY_CANDIDATE) {
             RequestAndCallback rc = new RequestAndCallback(packet, callback);
-            outstandingRequests.add(rc);
+            outstandingRequests.computeIfAbsent(serviceName, k -> new ConcurrentLinkedQueue<>())
+                    .add(rc);
             return true;
         }
 
@@ -223,84 +301,174 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
                 currentServiceRole, serviceName));
     }
 
-    // TODO: handle a batch of request from outstanding queue, instead of handling it one by one.
     private boolean executeRequestCoordinateStateDiff(RequestPacket packet,
                                                       ExecutedCallback callback) {
-        // System.out.printf(">> PBManager-%s: handling request on primary %s\n",
-        //        myNodeID, packet.toString());
-
-        String serviceName = packet.getServiceName();
+        return executeRequestsCoordinateStateDiff(packet.getServiceName(),
+                List.of(new RequestAndCallback(packet, callback)));
+    }
 
+    /**
+     * Executes a batch of requests for the same service in the primary, then captures and
+     * proposes a single stateDiff covering all of them. The callback of each request is
+     * invoked once that stateDiff is agreed upon.
+     */
+    private boolean executeRequestsCoordinateStateDiff(String serviceName,
+                                                       List<RequestAndCallback> batch) {
         // ensure this method is only invoked by the primary node
         Role currentServiceRole = this.currentRole.get(serviceName);
         assert currentServiceRole == Role.PRIMARY : String.format("%s my role for %s is %s",
-                myNodeID, serviceName, currentServiceRole.toString());
+                myNodeID, serviceName, currentServiceRole);
 
         // RequestPacket -> AppRequest -> execute() -> AppResponse -> RequestPacket (with response)
-        Request appRequest = null;
-        try {
-            // parse the encapsulated application request
-            String encodedServiceRequest = new String(packet.getEncodedServiceRequest(),
-                    StandardCharsets.ISO_8859_1);
-            appRequest = replicableApp.getRequest(encodedServiceRequest);
-        } catch (RequestParseException e) {
-            throw new RuntimeException(e);
+        List<Request> appRequests = new ArrayList<>(batch.size());
+        for (RequestAndCallback rc : batch) {
+            assert serviceName.equals(rc.requestPacket().getServiceName());
+            try {
+                // parse the encapsulated application request
+                String encodedServiceRequest = new String(
+                        rc.requestPacket().getEncodedServiceRequest(),
+                        StandardCharsets.ISO_8859_1);
+                appRequests.add(replicableApp.getRequest(encodedServiceRequest));
+            } catch (RequestParseException e) {
+                throw new RuntimeException(e);
+            }
         }
 
-
-        // execute the app request, and capture the stateDiff
-        PrimaryEpoch currentEpoch = null;
-        boolean isExecuteSuccess = false;
+        // execute the app requests, and capture the stateDiff once for the whole batch.
+        // Read-only requests are answered locally, without any stateDiff, if this node holds
+        // a valid lease and all the writes executed before them are already agreed upon.
+        PrimaryEpoch<NodeIDType> currentEpoch = null;
         String stateDiff = null;
-        synchronized (this) {
-            currentEpoch = this.currentPrimaryEpoch.get(serviceName);
-            if (currentEpoch == null) {
-                throw new RuntimeException("Unknown current primary epoch for " + serviceName);
+        List<RequestAndCallback> localReads = new ArrayList<>();
+        List<RequestAndCallback> coordinated = new ArrayList<>(batch.size());
+        AtomicInteger numPendingStateDiffs = this.pendingStateDiffs.computeIfAbsent(
+                serviceName, k -> new AtomicInteger());
+        synchronized (this.proposeLock) {
+            synchronized (this) {
+                currentEpoch = this.executeRequests(serviceName, appRequests, batch,
+                        localReads, coordinated, numPendingStateDiffs);
+                if (!coordinated.isEmpty()) {
+                    stateDiff = backupableApp.captureStatediff(serviceName);
+                    numPendingStateDiffs.incrementAndGet();
+                }
+            }
+            if (!coordinated.isEmpty()) {
+                this.proposeStateDiff(serviceName, currentEpoch, stateDiff, coordinated,
+                        numPendingStateDiffs);
             }
-            isExecuteSuccess = replicableApp.execute(appRequest);
+        }
+
+        for (RequestAndCallback rc : localReads) {
+            rc.callback().executed(rc.requestPacket(), true);
+        }
+        return true;
+    }
+
+    // Executes the requests, adding each of them either to the localReads answered without
+    // coordination or to the coordinated ones, and returns the current epoch. Must be invoked
+    // while holding the lock on this.
+    private PrimaryEpoch<NodeIDType> executeRequests(
+            String serviceName, List<Request> appRequests, List<RequestAndCallback> batch,
+            List<RequestAndCallback> localReads, List<RequestAndCallback> coordinated,
+            AtomicInteger numPendingStateDiffs) {
+        PrimaryEpoch<NodeIDType> currentEpoch = this.currentPrimaryEpoch.get(serviceName);
+        if (currentEpoch == null) {
+            throw new RuntimeException("Unknown current primary epoch for " + serviceName);
+        }
+        boolean canReadLocally = this.isLeaseValid(serviceName) &&
+                numPendingStateDiffs.get() == 0;
+        for (int i = 0; i < appRequests.size(); i++) {
+            Request appRequest = appRequests.get(i);
+            boolean isExecuteSuccess = replicableApp.execute(appRequest);
             if (!isExecuteSuccess) {
                 throw new RuntimeException("Failed to execute request for " + serviceName);
             }
-            stateDiff = backupableApp.captureStatediff(serviceName);
+
+            // put response if request is ClientRequest
+            if (appRequest instanceof ClientRequest) {
+                ClientRequest responsePacket = ((ClientRequest) appRequest).getResponse();
+                batch.get(i).requestPacket().setResponse(responsePacket);
+            }
+
+            if (canReadLocally && appRequest instanceof BehavioralRequest br &&
+                    br.isReadOnlyRequest()) {
+                localReads.add(batch.get(i));
+            } else {
+                coordinated.add(batch.get(i));
+                canReadLocally = false;
+            }
+        }
+        return currentEpoch;
+    }
+
+    private void proposeStateDiff(String serviceName, PrimaryEpoch<NodeIDType> currentEpoch,
+                                  String stateDiff, List<RequestAndCallback> coordinated,
+                                  AtomicInteger numPendingStateDiffs) {
+        // the stateDiff carries the IDs of the traced requests it covers, so that the
+        // backups can trace when they apply it
+        long[] tracedRequestIDs = coordinated.stream()
+                .mapToLong(rc -> rc.requestPacket().getRequestID())
+                .filter(RequestTracer::isSampled)
+                .toArray();
+        for (long requestID : tracedRequestIDs) {
+            RequestTracer.record(requestID, RequestTracer.Stage.STATEDIFF_CAPTURE);
         }
 
         // propose the stateDiff
         // System.out.printf(">>> %s:PBManager proposing epoch=%s statediff=%s\n",
         //        myNodeID, currentEpoch, stateDiff);
-        PrimaryEpoch finalCurrentEpoch = currentEpoch;
-        String finalStateDiff = stateDiff;
-        ApplyStateDiffPacket applyStateDiffPacket = new ApplyStateDiffPacket(
-                serviceName, currentEpoch, stateDiff);
+        // the agreement of the stateDiff also renews the lease, starting from the time it
+        // is proposed, as no other node can become the primary before it is agreed upon.
+        long proposeTime = System.nanoTime();
+        ApplyStateDiffPacket applyStateDiffPacket = ApplyStateDiffPacket.createWithTracedRequests(
+                serviceName, currentEpoch, stateDiff, tracedRequestIDs);
         ReplicableClientRequest gpPacket = ReplicableClientRequest.wrap(applyStateDiffPacket);
         gpPacket.setClientAddress(messenger.getListeningSocketAddress());
+        for (long requestID : tracedRequestIDs) {
+            RequestTracer.record(requestID, RequestTracer.Stage.PROPOSE, proposeTime);
+        }
         this.paxosManager.propose(
                 serviceName,
                 gpPacket,
                 (stateDiffPacket, handled) -> {
-                    // System.out.printf(">>> %s:PBManager epoch=%s statediff=%s is accepted\n",
-                    //        myNodeID, finalCurrentEpoch, finalStateDiff);
-                    callback.executed(packet, handled);
+                    numPendingStateDiffs.decrementAndGet();
+                    renewLease(serviceName, currentEpoch, proposeTime);
+                    for (long requestID : tracedRequestIDs) {
+                        RequestTracer.record(requestID, RequestTracer.Stage.COMMIT);
+                    }
+                    for (RequestAndCallback rc : coordinated) {
+                        rc.callback().executed(rc.requestPacket(), handled);
+                    }
                 });
-
-        // put response if request is ClientRequest
-        if (appRequest instanceof ClientRequest) {
-            ClientRequest responsePacket = ((ClientRequest) appRequest).getResponse();
-            packet.setResponse(responsePacket);
-            // System.out.printf(">> PBManager-%s: set response to %s\n",
-            //        myNodeID, responsePacket.toString());
-        }
-
-        return true;
     }
 
     private boolean handRequestToPrimary(RequestPacket packet, ExecutedCallback callback) {
-        System.out.printf(">> PBManager-%s: handing request to primary %s\n",
-                myNodeID, packet.toString());
-
         if (!ENABLE_INTERNAL_REDIRECT_PRIMARY) {
             askClientToContactPrimary(packet, callback);
         }
 
+        // buffer the request until the StartEpochPacket of the current primary is executed
+        String name = packet.getServiceName();
+        if (currentPrimary.get(name) == null) {
+            outstandingRequests.computeIfAbsent(name, k -> new ConcurrentLinkedQueue<>())
+                    .add(new RequestAndCallback(packet, callback));
+            if (currentPrimary.get(name) != null) {
+                forwardOutstandingRequests(name);
+            }
+            return true;
+        }
+
+        // hand the request to the batcher, which later invokes sendForwardedRequestBatch(.)
+        if (this.forwardedRequestBatcher != null) {
+            RequestAndCallback rc = new RequestAndCallback(packet, callback);
+            this.forwardedRequests.put(packet.getRequestID(), rc);
+            this.forwardedRequestBatcher.enqueue(rc);
+            return true;
+        }
+
+        logger.log(Level.FINE, "{0} handing request to primary: {1}",
+                new Object[]{myNodeID, packet.getSummary()});
+
         // get the current primary for the serviceName
         String serviceName = packet.getServiceName();
         NodeIDType currentPrimaryIDStr = currentPrimary.get(serviceName);
@@ -337,6 +505,44 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
         return true;
     }
 
+    // sendForwardedRequestBatch is being called by the ForwardedRequestBatcher
+    private void sendForwardedRequestBatch(String serviceName, long batchID,
+                                           List<RequestAndCallback> batch) {
+        NodeIDType currentPrimaryID = currentPrimary.get(serviceName);
+        if (currentPrimaryID == null) {
+            throw new RuntimeException("Unknown primary ID");
+        }
+
+        List<byte[]> encodedRequests = new ArrayList<>(batch.size());
+        for (RequestAndCallback rc : batch) {
+            encodedRequests.add(
+                    rc.requestPacket().toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+        BatchedForwardedRequestPacket forwardPacket =
+                BatchedForwardedRequestPacket.createWithPacketID(
+                        serviceName, myNodeID.toString(), encodedRequests, batchID);
+        GenericMessagingTask<NodeIDType, PrimaryBackupPacket> m = new GenericMessagingTask<>(
+                currentPrimaryID, forwardPacket);
+
+        try {
+            this.messenger.send(m);
+        } catch (IOException | JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // expireForwardedRequestBatch is being called by the ForwardedRequestBatcher for a batch
+    // that the primary never answered
+    private void expireForwardedRequestBatch(String serviceName, List<RequestAndCallback> batch) {
+        logger.log(Level.FINE, "{0} {1} forwarded requests for {2} are not answered",
+                new Object[]{myNodeID, batch.size(), serviceName});
+        for (RequestAndCallback rc : batch) {
+            if (this.forwardedRequests.remove(rc.requestPacket().getRequestID(), rc)) {
+                rc.callback().executed(rc.requestPacket(), false);
+            }
+        }
+    }
+
     private boolean askClientToContactPrimary(RequestPacket packet, ExecutedCallback callback) {
         throw new RuntimeException("unimplemented");
     }
@@ -398,6 +604,143 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
         throw new RuntimeException(exceptionMsg);
     }
 
+    private boolean handleBatchedForwardedRequestPacket(BatchedForwardedRequestPacket packet) {
+        String groupName = packet.getServiceName();
+        Role curentRole = this.currentRole.get(groupName);
+
+        if (curentRole == null) {
+            String exceptionMsg = String.format("%s:PrimaryBackupManager - unknown role for " +
+                    "group '%s'", myNodeID, groupName);
+            throw new RuntimeException(exceptionMsg);
+        }
+
+        // the entry replica took this node for the primary, e.g., before learning about a
+        // new epoch, so the batch is passed on to the primary that responds to the entry
+        // replica directly.
+        if (curentRole.equals(Role.BACKUP)) {
+            return this.reforwardToPrimary(groupName, packet);
+        }
+
+        // the responses are gathered, then sent back to the entry replica in a single packet
+        // once all the requests in the batch are executed and their stateDiff is agreed upon.
+        int batchSize = packet.size();
+        Long[] requestIDs = new Long[batchSize];
+        byte[][] responses = new byte[batchSize][];
+        AtomicInteger numPending = new AtomicInteger(batchSize);
+        List<RequestAndCallback> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            final int idx = i;
+            String encodedRequestString = new String(packet.getForwardedRequests().get(i),
+                    StandardCharsets.ISO_8859_1);
+            RequestPacket rp = RequestPacket.createFromString(encodedRequestString);
+            requestIDs[idx] = rp.getRequestID();
+            batch.add(new RequestAndCallback(rp, (executedRequest, handled) -> {
+                ClientRequest response = executedRequest instanceof ClientRequest
+                        requestWithResponse ? requestWithResponse.getResponse() : null;
+                responses[idx] = response == null ? new byte[0] :
+                        response.toString().getBytes(StandardCharsets.ISO_8859_1);
+                if (numPending.decrementAndGet() == 0) {
+                    sendBatchedResponse(packet, requestIDs, responses);
+                }
+            }));
+        }
+
+        if (curentRole.equals(Role.PRIMARY_CANDIDATE)) {
+            Queue<RequestAndCallback> queue = outstandingRequests.computeIfAbsent(
+                    groupName, k -> new ConcurrentLinkedQueue<>());
+            queue.addAll(batch);
+            return true;
+        }
+
+        for (int i = 0; i < batchSize; i += this.maxBatchSize) {
+            this.executeRequestsCoordinateStateDiff(groupName,
+                    batch.subList(i, Math.min(batchSize, i + this.maxBatchSize)));
+        }
+        return true;
+    }
+
+    private boolean reforwardToPrimary(String groupName, BatchedForwardedRequestPacket packet) {
+        NodeIDType primaryID = this.currentPrimary.get(groupName);
+        NodeIDType entryNodeID = nodeIDTypeStringifiable.valueOf(packet.getEntryNodeID());
+        // the entry replica expires the batch if it is not answered
+        if (primaryID == null || primaryID.equals(myNodeID) || primaryID.equals(entryNodeID)) {
+            logger.log(Level.FINE, "{0} dropping forwarded batch {1} for {2}, primary is {3}",
+                    new Object[]{myNodeID, packet.getRequestID(), groupName, primaryID});
+            return true;
+        }
+        logger.log(Level.FINE, "{0} re-forwarding batch {1} for {2} to primary {3}",
+                new Object[]{myNodeID, packet.getRequestID(), groupName, primaryID});
+        GenericMessagingTask<NodeIDType, PrimaryBackupPacket> m =
+                new GenericMessagingTask<>(primaryID, packet);
+        try {
+            this.messenger.send(m);
+        } catch (IOException | JSONException e) {
+            throw new RuntimeException(e);
+        }
+        return true;
+    }
+
+    private void sendBatchedResponse(BatchedForwardedRequestPacket batchPacket,
+                                     Long[] requestIDs, byte[][] responses) {
+        BatchedResponsePacket resp = new BatchedResponsePacket(
+                batchPacket.getServiceName(),
+                batchPacket.getRequestID(),
+                Arrays.asList(requestIDs),
+                Arrays.asList(responses));
+        NodeIDType entryNodeID = nodeIDTypeStringifiable.valueOf(batchPacket.getEntryNodeID());
+        GenericMessagingTask<NodeIDType, BatchedResponsePacket> m =
+                new GenericMessagingTask<>(entryNodeID, resp);
+        try {
+            messenger.send(m);
+        } catch (IOException | JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean handleBatchedResponsePacket(BatchedResponsePacket batchedResponsePacket) {
+        List<Long> requestIDs = batchedResponsePacket.getRequestIDs();
+        List<byte[]> encodedResponses = batchedResponsePacket.getEncodedResponses();
+        try {
+            for (int i = 0; i < requestIDs.size(); i++) {
+                RequestAndCallback rc = forwardedRequests.remove(requestIDs.get(i));
+                if (rc == null) {
+                    logger.log(Level.FINE, "{0} unknown callback for RequestPacket-{1}",
+                            new Object[]{myNodeID, requestIDs.get(i)});
+                    continue;
+                }
+
+                // the primary sends an empty response for a request executed without one
+                byte[] encodedResponse = encodedResponses.get(i);
+                if (encodedResponse.length == 0) {
+                    rc.callback().executed(rc.requestPacket(), true);
+                    continue;
+                }
+
+                Request appRequest;
+                try {
+                    appRequest = this.replicableApp.getRequest(
+                            new String(encodedResponse, StandardCharsets.ISO_8859_1));
+                } catch (RequestParseException e) {
+                    logger.log(Level.FINE, "{0} unparseable response for RequestPacket-{1}: {2}",
+                            new Object[]{myNodeID, requestIDs.get(i), e});
+                    rc.callback().executed(rc.requestPacket(), false);
+                    continue;
+                }
+                if (appRequest instanceof ClientRequest appRequestWithResponse) {
+                    rc.requestPacket().setResponse(appRequestWithResponse);
+                    rc.callback().executed(rc.requestPacket(), true);
+                }
+            }
+        } finally {
+            if (this.forwardedRequestBatcher != null) {
+                this.forwardedRequestBatcher.onBatchResponded(
+                        batchedResponsePacket.getServiceName(),
+                        batchedResponsePacket.getRequestID());
+            }
+        }
+        return true;
+    }
+
     private boolean handleResponsePacket(ResponsePacket responsePacket, ExecutedCallback callback) {
         try {
             byte[] encodedResponse = responsePacket.getEncodedResponse();
@@ -457,23 +800,166 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
                 myNodeID, curEpoch.counter + 1);
 
         this.paxosManager.tryToBePaxosCoordinator(groupName); // could still be fail
-        this.currentRole.put(groupName, Role.PRIMARY_CANDIDATE);
-        this.currentPrimaryEpoch.put(groupName, newEpoch);
+        this.proposeStartEpoch(groupName, newEpoch,
+                (proposedPacket, isHandled) -> callback.executed(packet, isHandled));
+        return true;
+    }
+
+    /**
+     * Makes this node a PRIMARY_CANDIDATE for the group, and proposes the StartEpochPacket
+     * for the new epoch. Once the StartEpochPacket is agreed upon, this node becomes the
+     * PRIMARY, but only after the lease possibly held by the previous primary has expired:
+     * the previous primary only renews its lease with stateDiffs proposed before the
+     * StartEpochPacket is agreed upon, so waiting for a whole lease duration (plus a guard
+     * for clock drift) afterward ensures it no longer serves local reads.
+     */
+    private void proposeStartEpoch(String groupName, PrimaryEpoch<NodeIDType> newEpoch,
+                                   ExecutedCallback onPrimary) {
+        synchronized (this) {
+            this.currentRole.put(groupName, Role.PRIMARY_CANDIDATE);
+            this.currentPrimaryEpoch.put(groupName, newEpoch);
+            this.pendingStartEpochs.put(groupName, newEpoch);
+        }
+        this.doProposeStartEpoch(groupName, newEpoch, onPrimary);
+    }
+
+    /**
+     * Proposes the StartEpochPacket, and proposes it again after startEpochRetryTimeout if it
+     * is still not agreed upon by then. A proposal is lost if the paxos coordinator it goes
+     * through fails, which is typically the case right after the primary fails as it is also
+     * the coordinator; so before proposing again, this node tries to become the coordinator
+     * if the one it knows is dead.
+     */
+    private void doProposeStartEpoch(String groupName, PrimaryEpoch<NodeIDType> newEpoch,
+                                     ExecutedCallback onPrimary) {
         StartEpochPacket startPacket = new StartEpochPacket(groupName, newEpoch);
         this.paxosManager.propose(
                 groupName,
                 startPacket,
                 (proposedPacket, isHandled) -> {
-                    System.out.printf("\n\n>> %s I'M THE PRIMARY NOW FOR %s!!\n\n",
-                            myNodeID, groupName);
-                    currentRole.put(groupName, Role.PRIMARY);
-                    currentPrimary.put(groupName, myNodeID);
-                    processOutstandingRequests();
-
-                    callback.executed(packet, isHandled);
+                    // the same epoch may be agreed upon more than once after retries
+                    if (!this.pendingStartEpochs.remove(groupName, newEpoch)) {
+                        return;
+                    }
+                    long leaseWaitNanos = newEpoch.counter > 0 ?
+                            this.leaseDurationNanos + this.leaseDurationNanos / 10 : 0;
+                    if (leaseWaitNanos == 0) {
+                        becomePrimary(groupName, newEpoch, proposedPacket, isHandled, onPrimary);
+                        return;
+                    }
+                    this.scheduler.schedule(
+                            () -> becomePrimary(groupName, newEpoch, proposedPacket, isHandled,
+                                    onPrimary),
+                            leaseWaitNanos, TimeUnit.NANOSECONDS);
                 }
         );
-        return true;
+
+        if (this.startEpochRetryTimeout <= 0) {
+            return;
+        }
+        this.scheduler.schedule(() -> {
+            if (!newEpoch.equals(this.pendingStartEpochs.get(groupName))) {
+                return;
+            }
+            NodeIDType coordinatorID = this.paxosManager.getPaxosCoordinator(groupName);
+            if (coordinatorID == null || (!coordinatorID.equals(myNodeID) &&
+                    !this.paxosManager.isNodeAlive(coordinatorID))) {
+                this.paxosManager.tryToBePaxosCoordinator(groupName);
+            }
+            logger.log(Level.FINE, "{0} re-proposing start of epoch {1} for {2}",
+                    new Object[]{myNodeID, newEpoch, groupName});
+            this.doProposeStartEpoch(groupName, newEpoch, onPrimary);
+        }, this.startEpochRetryTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void becomePrimary(String groupName, PrimaryEpoch<NodeIDType> newEpoch,
+                               Request proposedPacket, boolean isHandled,
+                               ExecutedCallback onPrimary) {
+        synchronized (this) {
+            // a higher epoch was started while waiting for the previous lease to expire
+            if (!newEpoch.equals(this.currentPrimaryEpoch.get(groupName))) {
+                return;
+            }
+            this.currentRole.put(groupName, Role.PRIMARY);
+            this.currentPrimary.put(groupName, myNodeID);
+            this.pendingStateDiffs.remove(groupName);
+        }
+        logger.log(Level.FINE, "{0} is now the primary for {1}",
+                new Object[]{myNodeID, groupName});
+        this.flushForwardedRequests(groupName);
+        processOutstandingRequests(groupName);
+
+        if (onPrimary != null) {
+            onPrimary.executed(proposedPacket, isHandled);
+        }
+    }
+
+    private boolean isLeaseValid(String groupName) {
+        Long expiry = this.leaseExpiry.get(groupName);
+        return this.leaseDurationNanos > 0 && expiry != null && System.nanoTime() - expiry < 0;
+    }
+
+    // renewLease is invoked once a stateDiff proposed at proposeTime is agreed upon
+    private void renewLease(String groupName, PrimaryEpoch<NodeIDType> epoch, long proposeTime) {
+        if (this.leaseDurationNanos <= 0) {
+            return;
+        }
+        synchronized (this) {
+            if (this.currentRole.get(groupName) != Role.PRIMARY ||
+                    !epoch.equals(this.currentPrimaryEpoch.get(groupName))) {
+                return;
+            }
+            long newExpiry = proposeTime + this.leaseDurationNanos;
+            this.leaseExpiry.merge(groupName, newExpiry,
+                    (oldExpiry, expiry) -> expiry - oldExpiry > 0 ? expiry : oldExpiry);
+        }
+    }
+
+    /**
+     * Periodically invoked to promote a new primary when the failure detector of the
+     * underlying PaxosManager considers the current primary as dead. Only the first live
+     * node of the replica group, in the order of their IDs, tries to become the primary, so
+     * the backups do not compete with each other.
+     */
+    private void checkPrimaryFailures() {
+        try {
+            for (Map.Entry<String, Role> entry : this.currentRole.entrySet()) {
+                String groupName = entry.getKey();
+                NodeIDType primaryID = this.currentPrimary.get(groupName);
+                PrimaryEpoch<NodeIDType> curEpoch = this.currentPrimaryEpoch.get(groupName);
+                if (entry.getValue() != Role.BACKUP || primaryID == null || curEpoch == null ||
+                        primaryID.equals(myNodeID) || this.paxosManager.isNodeAlive(primaryID)) {
+                    continue;
+                }
+
+                Set<NodeIDType> group = this.paxosManager.getReplicaGroup(groupName);
+                if (group == null) {
+                    continue;
+                }
+                NodeIDType nextInLine = null;
+                for (NodeIDType node : group) {
+                    if (node.equals(primaryID) || !this.paxosManager.isNodeAlive(node)) {
+                        continue;
+                    }
+                    if (nextInLine == null ||
+                            node.toString().compareTo(nextInLine.toString()) < 0) {
+                        nextInLine = node;
+                    }
+                }
+                if (!myNodeID.equals(nextInLine)) {
+                    continue;
+                }
+
+                logger.log(Level.FINE, "{0} primary {1} of {2} is down, promoting myself",
+                        new Object[]{myNodeID, primaryID, groupName});
+                this.paxosManager.tryToBePaxosCoordinator(groupName);
+                this.proposeStartEpoch(groupName,
+                        new PrimaryEpoch<>(myNodeID, curEpoch.counter + 1), null);
+            }
+        } catch (RuntimeException e) {
+            // keep the periodic check alive
+            e.printStackTrace();
+        }
     }
 
     // executeApplyStateDiffPacket is being called by execute() in the PaxosMiddlewareApp
@@ -525,6 +1011,9 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
             // As a backup, this node simply apply the stateDiff coming from the PRIMARY
             if (myCurrentRole.equals(Role.BACKUP)) {
                 this.backupableApp.applyStatediff(groupName, packet.getStateDiff());
+                for (long requestID : packet.getTracedRequestIDs()) {
+                    RequestTracer.record(requestID, RequestTracer.Stage.STATEDIFF_APPLY);
+                }
                 return true;
             }
 
@@ -557,6 +1046,7 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
             this.currentPrimaryEpoch.put(groupName, newPrimaryEpoch);
             this.currentPrimary.put(groupName, newPrimaryID);
             currentEpoch = newPrimaryEpoch;
+            this.forwardOutstandingRequests(groupName);
         }
 
         // receive smaller, ignore that epoch.
@@ -585,11 +1075,15 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
                 this.currentPrimary.put(groupName, newPrimaryID);
                 System.out.printf(">> %s putting current primary for %s as %s\n",
                         myNodeID, groupName, newPrimaryID);
+                this.flushForwardedRequests(groupName);
+                this.forwardOutstandingRequests(groupName);
                 return true;
             }
 
             if (myCurrentRole.equals(Role.PRIMARY) ||
                     myCurrentRole.equals(Role.PRIMARY_CANDIDATE)) {
+                this.leaseExpiry.remove(groupName);
+                this.pendingStartEpochs.remove(groupName);
                 this.currentRole.put(groupName, Role.BACKUP);
                 this.currentPrimaryEpoch.put(groupName, newPrimaryEpoch);
                 this.currentPrimary.put(groupName, newPrimaryID);
@@ -621,6 +1115,7 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
                 myNodeID, groupName, state);
         if (state == null || state.isEmpty()) {
             this.currentPrimaryEpoch.remove(groupName);
+            this.pendingStartEpochs.remove(groupName);
             this.currentRole.put(groupName, Role.BACKUP);
         }
         return this.replicableApp.restore(groupName, state);
@@ -687,40 +1182,53 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
         if (paxosCoordinatorID.equals(myNodeID)) {
             System.out.printf(">> %s Initializing primary epoch for %s\n", myNodeID, groupName);
             PrimaryEpoch<NodeIDType> zero = new PrimaryEpoch<>(myNodeID, 0);
-            this.currentRole.put(groupName, Role.PRIMARY_CANDIDATE);
-            this.currentPrimaryEpoch.put(groupName, zero);
-            StartEpochPacket startPacket = new StartEpochPacket(groupName, zero);
-            this.paxosManager.propose(
-                    groupName,
-                    startPacket,
-                    (proposedPacket, isHandled) -> {
-                        System.out.printf("\n\n>> %s I'M THE PRIMARY NOW FOR %s!!\n\n",
-                                myNodeID, groupName);
-                        currentRole.put(groupName, Role.PRIMARY);
-                        currentPrimary.put(groupName, paxosCoordinatorID);
-                        currentPrimaryEpoch.put(groupName, zero);
-                        processOutstandingRequests();
-                    }
-            );
-        }
-
-        // FIXME: as a temporary measure, we wait until StartEpochPacket is being agreed upon.
-        //  This is needed for now as the current implementation has not handle the case when
-        //  a node does not know the current Primary.
-        try {
-            Thread.sleep(1000);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            this.proposeStartEpoch(groupName, zero, null);
         }
 
+        // Other nodes do not wait for the StartEpochPacket to be agreed upon: requests they
+        // receive before knowing the primary are buffered, then forwarded once the
+        // StartEpochPacket is executed.
         return true;
     }
 
-    private void processOutstandingRequests() {
+    // processOutstandingRequests executes, in batches, all the requests buffered while this
+    // node was still a PRIMARY_CANDIDATE for the group.
+    private void processOutstandingRequests(String groupName) {
         assert this.outstandingRequests != null;
-        while (!this.outstandingRequests.isEmpty()) {
-            RequestAndCallback rc = this.outstandingRequests.poll();
-            executeRequestCoordinateStateDiff(rc.requestPacket(), rc.callback());
+        Queue<RequestAndCallback> queue = this.outstandingRequests.get(groupName);
+        if (queue == null) {
+            return;
+        }
+        while (!queue.isEmpty()) {
+            List<RequestAndCallback> batch = new ArrayList<>();
+            RequestAndCallback rc;
+            while (batch.size() < this.maxBatchSize && (rc = queue.poll()) != null) {
+                batch.add(rc);
+            }
+            if (!batch.isEmpty()) {
+                executeRequestsCoordinateStateDiff(groupName, batch);
+            }
+        }
+    }
+
+    // forwardOutstandingRequests hands the requests buffered while this backup did not know
+    // the primary of the group to the now known primary.
+    // flushForwardedRequests is invoked once the primary of groupName changes, so that the
+    // requests held back by batches in flight to the previous primary are sent to the new one
+    private void flushForwardedRequests(String groupName) {
+        if (this.forwardedRequestBatcher != null) {
+            this.forwardedRequestBatcher.flush(groupName);
+        }
+    }
+
+    private void forwardOutstandingRequests(String groupName) {
+        Queue<RequestAndCallback> queue = this.outstandingRequests.get(groupName);
+        if (queue == null || this.currentRole.get(groupName) != Role.BACKUP) {
+            return;
+        }
+        RequestAndCallback rc;
+        while ((rc = queue.poll()) != null) {
+            handRequestToPrimary(rc.requestPacket(), rc.callback());
         }
     }
 
@@ -737,6 +1245,10 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
     }
 
     public final void stop() {
+        this.scheduler.shutdownNow();
+        if (this.forwardedRequestBatcher != null) {
+            this.forwardedRequestBatcher.close();
+        }
         this.paxosManager.close();
     }
 
@@ -775,6 +1287,14 @@ public class PrimaryBackupManager<NodeIDType> implements AppRequestParser {
             return ResponsePacket.createFromString(stringified);
         }
 
+        if (stringified.startsWith(BatchedForwardedRequestPacket.SERIALIZED_PREFIX)) {
+            return BatchedForwardedRequestPacket.createFromString(stringified);
+        }
+
+        if (stringified.startsWith(BatchedResponsePacket.SERIALIZED_PREFIX)) {
+            return BatchedResponsePacket.createFromString(stringified);
+        }
+
         throw new RuntimeException(String.format("PBManager-%s: Unknown encoded request %s\n",
                 myNodeID, stringified));
     }
@@ -41,6 +41,7 @@ public class MonotonicApp implements Replicable, Reconfigurable, BackupableAppli
     protected record Number(Integer timestamp, Integer number) {
     }
 
+    // guarded by this, which the test_{*} methods of MonotonicTestApp also lock
     protected final List<Number> sequence = new ArrayList<>();
 
     private void start(int port) {
@@ -187,7 +188,7 @@ public class MonotonicApp implements Replicable, Reconfigurable, BackupableAppli
     }
 
     @Override
-    public String checkpoint(String name) {
+    public synchronized String checkpoint(String name) {
         System.out.printf("MonotonicApp checkpoint name=%s\n", name);
         StringBuilder stateSnapshot = new StringBuilder();
         for (Number n : sequence) {
@@ -197,7 +198,7 @@ public class MonotonicApp implements Replicable, Reconfigurable, BackupableAppli
     }
 
     @Override
-    public boolean restore(String name, String state) {
+    public synchronized boolean restore(String name, String state) {
         System.out.printf("MonotonicApp restore name=%s state=%s\n", name, state);
         if (state == null || state.isEmpty()) {
             this.sequence.clear();
@@ -224,11 +225,8 @@ public class MonotonicApp implements Replicable, Reconfigurable, BackupableAppli
     // from sequence. Applying statediff then simply adding number at the end of sequence.
     //==============================================================================================
     @Override
-    public String captureStatediff(String serviceName) {
-        Number last = null;
-        synchronized (sequence) {
-            last = sequence.getLast();
-        }
+    public synchronized String captureStatediff(String serviceName) {
+        Number last = sequence.getLast();
         if (last == null) {
             return "";
         }
@@ -236,14 +234,12 @@ public class MonotonicApp implements Replicable, Reconfigurable, BackupableAppli
     }
 
     @Override
-    public boolean applyStatediff(String serviceName, String statediff) {
+    public synchronized boolean applyStatediff(String serviceName, String statediff) {
         System.out.println(">> applying stateDiff: " + statediff);
         String[] lastNumber = statediff.split(":");
         int timestamp = Integer.parseInt(lastNumber[0]);
         int number = Integer.parseInt(lastNumber[1]);
-        synchronized (sequence) {
-            sequence.add(new Number(timestamp, number));
-        }
+        sequence.add(new Number(timestamp, number));
         return true;
     }
 
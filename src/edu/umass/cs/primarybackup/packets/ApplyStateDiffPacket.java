@@ -2,6 +2,7 @@ package edu.umass.cs.primarybackup.packets;
 
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.primarybackup.PrimaryEpoch;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
@@ -9,6 +10,7 @@ import org.junit.experimental.runners.Enclosed;
 import org.junit.runner.RunWith;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Random;
 
@@ -22,27 +24,42 @@ public class ApplyStateDiffPacket extends PrimaryBackupPacket {
     private final String stateDiff;
     private final long requestID;
 
+    // IDs of the traced requests covered by the stateDiff, usually none
+    private final long[] tracedRequestIDs;
+
     public ApplyStateDiffPacket(String serviceName,
                                 PrimaryEpoch<?> primaryEpoch,
                                 String stateDiff) {
+        this(serviceName, primaryEpoch, stateDiff, System.currentTimeMillis(), new long[0]);
         assert serviceName != null;
         assert primaryEpoch != null;
         assert stateDiff != null;
+    }
 
-        this.serviceName = serviceName;
-        this.primaryEpoch = primaryEpoch;
-        this.stateDiff = stateDiff;
-        this.requestID = System.currentTimeMillis();
+    // a static factory, rather than another public constructor, as the enclosed tests
+    // require this class to have a single public constructor
+    public static ApplyStateDiffPacket createWithTracedRequests(String serviceName,
+                                                               PrimaryEpoch<?> primaryEpoch,
+                                                               String stateDiff,
+                                                               long[] tracedRequestIDs) {
+        assert serviceName != null;
+        assert primaryEpoch != null;
+        assert stateDiff != null;
+        assert tracedRequestIDs != null;
+        return new ApplyStateDiffPacket(serviceName, primaryEpoch, stateDiff,
+                System.currentTimeMillis(), tracedRequestIDs);
     }
 
     private ApplyStateDiffPacket(String serviceName,
                                  PrimaryEpoch<?> primaryEpoch,
                                  String stateDiff,
-                                 long requestID) {
+                                 long requestID,
+                                 long[] tracedRequestIDs) {
         this.serviceName = serviceName;
         this.primaryEpoch = primaryEpoch;
         this.stateDiff = stateDiff;
         this.requestID = requestID;
+        this.tracedRequestIDs = tracedRequestIDs;
     }
 
     @Override
@@ -73,6 +90,10 @@ public class ApplyStateDiffPacket extends PrimaryBackupPacket {
         return stateDiff;
     }
 
+    public long[] getTracedRequestIDs() {
+        return tracedRequestIDs;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -81,7 +102,8 @@ public class ApplyStateDiffPacket extends PrimaryBackupPacket {
         return requestID == that.requestID &&
                 Objects.equals(serviceName, that.serviceName) &&
                 Objects.equals(primaryEpoch, that.primaryEpoch) &&
-                Objects.equals(stateDiff, that.stateDiff);
+                Objects.equals(stateDiff, that.stateDiff) &&
+                Arrays.equals(tracedRequestIDs, that.tracedRequestIDs);
     }
 
     @Override
@@ -97,6 +119,13 @@ public class ApplyStateDiffPacket extends PrimaryBackupPacket {
             json.put("ep", this.primaryEpoch.toString());
             json.put("sd", this.stateDiff);
             json.put("id", this.requestID);
+            if (this.tracedRequestIDs.length > 0) {
+                JSONArray traced = new JSONArray();
+                for (long id : this.tracedRequestIDs) {
+                    traced.put(id);
+                }
+                json.put("tr", traced);
+            }
             return String.format("%s%s", SERIALIZED_PREFIX, json.toString());
         } catch (JSONException e) {
             throw new RuntimeException(e);
@@ -116,12 +145,18 @@ public class ApplyStateDiffPacket extends PrimaryBackupPacket {
             String primaryEpochStr = json.getString("ep");
             String stateDiff = json.getString("sd");
             long requestID = json.getLong("id");
+            JSONArray traced = json.optJSONArray("tr");
+            long[] tracedRequestIDs = new long[traced != null ? traced.length() : 0];
+            for (int i = 0; i < tracedRequestIDs.length; i++) {
+                tracedRequestIDs[i] = traced.getLong(i);
+            }
 
             return new ApplyStateDiffPacket(
                     serviceName,
                     new PrimaryEpoch(primaryEpochStr),
                     stateDiff,
-                    requestID);
+                    requestID,
+                    tracedRequestIDs);
         } catch (JSONException e) {
             throw new RuntimeException(e);
         }
@@ -142,6 +177,17 @@ public class ApplyStateDiffPacket extends PrimaryBackupPacket {
 
             assert p2.equals(p1);
         }
+
+        @Test
+        public void TestApplyStateDiffPacketWithTracedRequests() {
+            ApplyStateDiffPacket p1 = ApplyStateDiffPacket.createWithTracedRequests(
+                    "dummyServiceName", new PrimaryEpoch<String>("0:0"), "dummyStateDiff",
+                    new long[]{42, -7});
+            ApplyStateDiffPacket p2 = ApplyStateDiffPacket.createFromString(p1.toString());
+
+            assert p2.equals(p1);
+            assert p2.getTracedRequestIDs().length == 2 && p2.getTracedRequestIDs()[1] == -7;
+        }
     }
 
 }
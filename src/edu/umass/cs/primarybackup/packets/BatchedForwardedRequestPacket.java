@@ -0,0 +1,186 @@
+package edu.umass.cs.primarybackup.packets;
+
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * BatchedForwardedRequestPacket carries multiple {@link RequestPacket}s, all for the same
+ * service, from an entry replica (a backup) to the primary. It is the batched counterpart of
+ * {@link ForwardedRequestPacket}; the primary answers it with a single
+ * {@link BatchedResponsePacket} carrying the same packetID.
+ */
+@RunWith(Enclosed.class)
+public class BatchedForwardedRequestPacket extends PrimaryBackupPacket {
+
+    public static final String SERIALIZED_PREFIX = "pb:bfwd:";
+    private final String serviceName;
+    private final String entryNodeID;
+    private final List<byte[]> forwardedRequests;
+    private final long packetID;
+
+    public BatchedForwardedRequestPacket(String serviceName, String entryNodeID,
+                                         List<byte[]> forwardedRequests) {
+        this(serviceName, entryNodeID, forwardedRequests,
+                ThreadLocalRandom.current().nextLong(Long.MAX_VALUE));
+    }
+
+    // a static factory, rather than another public constructor, as the enclosed tests
+    // require this class to have a single public constructor
+    public static BatchedForwardedRequestPacket createWithPacketID(String serviceName,
+                                                                   String entryNodeID,
+                                                                   List<byte[]> forwardedRequests,
+                                                                   long packetID) {
+        return new BatchedForwardedRequestPacket(serviceName, entryNodeID, forwardedRequests,
+                packetID);
+    }
+
+    private BatchedForwardedRequestPacket(String serviceName, String entryNodeID,
+                                          List<byte[]> forwardedRequests, long packetID) {
+        assert serviceName != null;
+        assert entryNodeID != null;
+        assert forwardedRequests != null && !forwardedRequests.isEmpty();
+        this.serviceName = serviceName;
+        this.entryNodeID = entryNodeID;
+        this.forwardedRequests = forwardedRequests;
+        this.packetID = packetID;
+    }
+
+    @Override
+    public IntegerPacketType getRequestType() {
+        return PrimaryBackupPacketType.PB_BATCHED_FORWARDED_REQUEST_PACKET;
+    }
+
+    @Override
+    public String getServiceName() {
+        return this.serviceName;
+    }
+
+    @Override
+    public long getRequestID() {
+        return this.packetID;
+    }
+
+    @Override
+    public boolean needsCoordination() {
+        return true;
+    }
+
+    public List<byte[]> getForwardedRequests() {
+        return forwardedRequests;
+    }
+
+    public int size() {
+        return forwardedRequests.size();
+    }
+
+    public String getEntryNodeID() {
+        return entryNodeID;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BatchedForwardedRequestPacket that = (BatchedForwardedRequestPacket) o;
+        if (packetID != that.packetID ||
+                !Objects.equals(serviceName, that.serviceName) ||
+                !Objects.equals(entryNodeID, that.entryNodeID) ||
+                forwardedRequests.size() != that.forwardedRequests.size()) {
+            return false;
+        }
+        for (int i = 0; i < forwardedRequests.size(); i++) {
+            if (!Arrays.equals(forwardedRequests.get(i),
+                    that.forwardedRequests.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(serviceName, entryNodeID, packetID, forwardedRequests.size());
+    }
+
+    @Override
+    public String toString() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("serviceName", this.serviceName);
+            json.put("entryID", this.entryNodeID);
+            JSONArray requests = new JSONArray();
+            for (byte[] forwardedRequest : this.forwardedRequests) {
+                requests.put(new String(forwardedRequest, StandardCharsets.ISO_8859_1));
+            }
+            json.put("forwardedRequests", requests);
+            json.put("id", this.packetID);
+            return SERIALIZED_PREFIX + json.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static BatchedForwardedRequestPacket createFromString(String encodedPacket) {
+        assert encodedPacket != null;
+        assert !encodedPacket.isEmpty();
+        assert encodedPacket.startsWith(SERIALIZED_PREFIX);
+
+        encodedPacket = encodedPacket.substring(SERIALIZED_PREFIX.length());
+
+        try {
+            JSONObject json = new JSONObject(encodedPacket);
+            String serviceName = json.getString("serviceName");
+            String entryNodeID = json.getString("entryID");
+            JSONArray requests = json.getJSONArray("forwardedRequests");
+            long packetID = json.getLong("id");
+
+            List<byte[]> forwardedRequests = new ArrayList<>(requests.length());
+            for (int i = 0; i < requests.length(); i++) {
+                forwardedRequests.add(
+                        requests.getString(i).getBytes(StandardCharsets.ISO_8859_1));
+            }
+
+            return new BatchedForwardedRequestPacket(
+                    serviceName,
+                    entryNodeID,
+                    forwardedRequests,
+                    packetID
+            );
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static class TestBatchedForwardedRequestPacket {
+        @Test
+        public void TestBatchedForwardedRequestPacketSerializationDeserialization() {
+            String serviceName = "dummy-service-name";
+            String entryNodeID = "ar0";
+            List<byte[]> forwardedReqs = List.of(
+                    "raw-request-1".getBytes(StandardCharsets.ISO_8859_1),
+                    "raw-request-2".getBytes(StandardCharsets.ISO_8859_1),
+                    "{\"quoted\":\"request\"}".getBytes(StandardCharsets.ISO_8859_1));
+            BatchedForwardedRequestPacket p1 = new BatchedForwardedRequestPacket(
+                    serviceName, entryNodeID, forwardedReqs);
+            BatchedForwardedRequestPacket p2 =
+                    BatchedForwardedRequestPacket.createFromString(p1.toString());
+
+            assert p2 != null;
+            assert p2.size() == 3;
+            assert Objects.equals(p1, p2);
+        }
+    }
+
+}
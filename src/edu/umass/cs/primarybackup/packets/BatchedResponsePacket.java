@@ -0,0 +1,166 @@
+package edu.umass.cs.primarybackup.packets;
+
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * BatchedResponsePacket carries the responses for all the requests inside a
+ * {@link BatchedForwardedRequestPacket}, sent from the primary back to the entry replica.
+ * The packetID is the ID of the batch being answered, while each response is paired with
+ * the ID of the {@link RequestPacket} that produced it.
+ */
+@RunWith(Enclosed.class)
+public class BatchedResponsePacket extends PrimaryBackupPacket {
+
+    public static final String SERIALIZED_PREFIX = "pb:bres:";
+    private final String serviceName;
+    private final long batchID; // ID of the batch whose responses contained in this packet
+    private final List<Long> requestIDs;
+    private final List<byte[]> responses;
+
+    public BatchedResponsePacket(String serviceName, long batchID,
+                                 List<Long> requestIDs, List<byte[]> responses) {
+        assert serviceName != null;
+        assert requestIDs != null && responses != null;
+        assert requestIDs.size() == responses.size();
+        this.serviceName = serviceName;
+        this.batchID = batchID;
+        this.requestIDs = requestIDs;
+        this.responses = responses;
+    }
+
+    @Override
+    public IntegerPacketType getRequestType() {
+        return PrimaryBackupPacketType.PB_BATCHED_RESPONSE_PACKET;
+    }
+
+    @Override
+    public String getServiceName() {
+        return this.serviceName;
+    }
+
+    @Override
+    public long getRequestID() {
+        return this.batchID;
+    }
+
+    @Override
+    public boolean needsCoordination() {
+        return true;
+    }
+
+    public List<Long> getRequestIDs() {
+        return requestIDs;
+    }
+
+    public List<byte[]> getEncodedResponses() {
+        return responses;
+    }
+
+    public int size() {
+        return requestIDs.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BatchedResponsePacket that = (BatchedResponsePacket) o;
+        if (batchID != that.batchID ||
+                !Objects.equals(serviceName, that.serviceName) ||
+                !Objects.equals(requestIDs, that.requestIDs)) {
+            return false;
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            if (!Arrays.equals(responses.get(i), that.responses.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(serviceName, batchID, requestIDs);
+    }
+
+    @Override
+    public String toString() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("serviceName", this.serviceName);
+            json.put("id", this.batchID);
+            JSONArray ids = new JSONArray();
+            JSONArray encodedResponses = new JSONArray();
+            for (int i = 0; i < this.requestIDs.size(); i++) {
+                ids.put(this.requestIDs.get(i));
+                encodedResponses.put(new String(
+                        this.responses.get(i),
+                        StandardCharsets.ISO_8859_1));
+            }
+            json.put("requestIDs", ids);
+            json.put("responses", encodedResponses);
+            return SERIALIZED_PREFIX + json.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static BatchedResponsePacket createFromString(String encodedPacket) {
+        assert encodedPacket != null;
+        assert !encodedPacket.isEmpty();
+        assert encodedPacket.startsWith(SERIALIZED_PREFIX);
+
+        encodedPacket = encodedPacket.substring(SERIALIZED_PREFIX.length());
+
+        try {
+            JSONObject json = new JSONObject(encodedPacket);
+            String serviceName = json.getString("serviceName");
+            long batchID = json.getLong("id");
+            JSONArray ids = json.getJSONArray("requestIDs");
+            JSONArray encodedResponses = json.getJSONArray("responses");
+
+            List<Long> requestIDs = new ArrayList<>(ids.length());
+            List<byte[]> responses = new ArrayList<>(encodedResponses.length());
+            for (int i = 0; i < ids.length(); i++) {
+                requestIDs.add(ids.getLong(i));
+                responses.add(encodedResponses.getString(i).
+                        getBytes(StandardCharsets.ISO_8859_1));
+            }
+
+            return new BatchedResponsePacket(serviceName, batchID, requestIDs, responses);
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static class TestBatchedResponsePacket {
+        @Test
+        public void TestBatchedResponsePacketSerializationDeserialization() {
+            String serviceName = "dummy-service-name";
+            List<Long> requestIDs = List.of(1000L, 1001L);
+            List<byte[]> responses = List.of(
+                    "raw-response-1".getBytes(StandardCharsets.ISO_8859_1),
+                    "raw-response-2".getBytes(StandardCharsets.ISO_8859_1));
+            BatchedResponsePacket p1 = new BatchedResponsePacket(
+                    serviceName, 42L, requestIDs, responses);
+            BatchedResponsePacket p2 = BatchedResponsePacket.createFromString(p1.toString());
+
+            assert p2 != null;
+            assert p2.size() == 2;
+            assert Objects.equals(p1, p2);
+        }
+    }
+
+}
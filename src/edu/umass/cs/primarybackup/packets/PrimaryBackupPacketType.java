@@ -23,7 +23,13 @@ public enum PrimaryBackupPacketType implements IntegerPacketType {
     PB_CHANGE_PRIMARY_PACKET(35404),
 
     // Primary -> All Replicas
-    PB_STATE_DIFF_PACKET(35405);
+    PB_STATE_DIFF_PACKET(35405),
+
+    // Entry Replica -> Primary
+    PB_BATCHED_FORWARDED_REQUEST_PACKET(35406),
+
+    // Primary -> Entry Replica
+    PB_BATCHED_RESPONSE_PACKET(35407);
 
     private static final Map<Integer, PrimaryBackupPacketType> numbers = new HashMap<>();
 
@@ -11,6 +11,7 @@ import org.junit.runner.RunWith;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 
 @RunWith(Enclosed.class)
 public class RequestPacket extends PrimaryBackupPacket implements ClientRequest {
@@ -25,7 +26,9 @@ public class RequestPacket extends PrimaryBackupPacket implements ClientRequest
     public RequestPacket(String serviceName, byte[] encodedServiceRequest) {
         this.serviceName = serviceName;
         this.encodedServiceRequest = encodedServiceRequest;
-        this.packetID = System.currentTimeMillis();
+        // random ID, since a backup can forward many requests within the same millisecond
+        // and the responses are matched back to the requests by this ID.
+        this.packetID = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
     }
 
     private RequestPacket(String serviceName, byte[] encodedServiceRequest, long packetID) {
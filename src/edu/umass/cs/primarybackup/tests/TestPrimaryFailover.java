@@ -0,0 +1,163 @@
+package edu.umass.cs.primarybackup.tests;
+
+import edu.umass.cs.primarybackup.PrimaryBackupManager;
+import edu.umass.cs.primarybackup.examples.MonotonicAppRequest;
+import edu.umass.cs.reconfiguration.interfaces.ReconfigurableNodeConfig;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.ReplicableClientRequest;
+import edu.umass.cs.reconfiguration.reconfigurationutils.DefaultNodeConfig;
+import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static edu.umass.cs.primarybackup.tests.TestPrimaryBackup.*;
+
+public class TestPrimaryFailover {
+
+    @Test
+    public void Test3_TestPrimaryFailsUnderLoad() throws InterruptedException, IOException {
+
+        String scenario = """
+
+                Scenario for TestPrimaryFailsUnderLoad:
+                  1. Create and initialize 3 active replicas: node1, node2, node3.
+                  2. Create and initialize replica group using PrimaryBackupReplicaCoordinator with
+                     MonotonicApp as the BackupableApplication (extended as the MonotonicTestApp).
+                  3. node2 is the primary, by default with deterministic startup.
+                  4. Continuously send client requests to node1, a backup.
+                  5. Kill node2.
+                  6. Assert that a backup is promoted as the new primary, without any
+                     ChangePrimaryPacket, and report the failover time.
+                  7. Assert that requests are executed again after the failover, and that the
+                     remaining backup converges to the state of the new primary.
+
+                """;
+        System.out.println(scenario);
+
+        TestPrimaryBackup.cleanPreviousState();
+
+        System.out.print("\n\n ===== Step-0: Preparing config ... \n\n");
+        ReconfigurableNodeConfig<String> config = new DefaultNodeConfig<>(
+                TestPrimaryBackup.getDefaultActiveReplicas(),
+                TestPrimaryBackup.getDefaultReconfigurators()
+        );
+        TestPrimaryBackup.printServers(config);
+        Thread.sleep(500);
+
+
+        System.out.print("\n\n ===== Step-1: Initializing PrimaryBackup in 3 nodes ... \n\n");
+        var servers = TestPrimaryBackup.startThreeNodesWithMonotonicApp(config);
+        var node1 = servers.get(NODE_1_ID).coordinator();
+        var node2 = servers.get(NODE_2_ID).coordinator();
+        var node3 = servers.get(NODE_3_ID).coordinator();
+        var managerAtNode1 = servers.get(NODE_1_ID).manager();
+        var managerAtNode2 = servers.get(NODE_2_ID).manager();
+        var managerAtNode3 = servers.get(NODE_3_ID).manager();
+        var appAtNode1 = servers.get(NODE_1_ID).app();
+        var appAtNode3 = servers.get(NODE_3_ID).app();
+        Thread.sleep(3000);
+
+        System.out.print("\n\n ===== Step-2: Initializing Applications in 3 nodes ... \n\n");
+        int zeroPlacementEpoch = 0;
+        String initialState = null;
+        String serviceName = SERVICE_NAME;
+        Set<String> nodes = new HashSet<>(List.of(new String[]{NODE_1_ID, NODE_2_ID, NODE_3_ID}));
+        node1.createReplicaGroup(serviceName, zeroPlacementEpoch, initialState, nodes);
+        node3.createReplicaGroup(serviceName, zeroPlacementEpoch, initialState, nodes);
+        Thread.sleep(500);
+        node2.createReplicaGroup(serviceName, zeroPlacementEpoch, initialState, nodes);
+        Thread.sleep(3000);
+        assert managerAtNode2.isCurrentPrimary(serviceName) :
+                "With `ENABLE_STARTUP_LEADER_ELECTION=false`, node2 must deterministically " +
+                        "be the primary";
+
+
+        System.out.print("\n\n ===== Step-3: Send app requests to node1 under load ... \n\n");
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+        AtomicInteger numExecuted = new AtomicInteger();
+        Thread loadGenerator = new Thread(() -> {
+            while (isRunning.get()) {
+                MonotonicAppRequest appRequest = new MonotonicAppRequest(
+                        serviceName, MonotonicAppRequest.MONOTONIC_APP_GEN_NUMBER_COMMAND);
+                try {
+                    node1.coordinateRequest(
+                            ReplicableClientRequest.wrap(appRequest),
+                            (executedRequest, handled) -> numExecuted.incrementAndGet());
+                    Thread.sleep(5);
+                } catch (IOException | RequestParseException | RuntimeException e) {
+                    System.out.printf(">> failed to send request: %s\n", e.getMessage());
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        loadGenerator.start();
+        Thread.sleep(2000);
+        assert numExecuted.get() > 0 : "Requests must be executed before the failure";
+
+
+        System.out.print("\n\n ===== Step-4: Kill the primary  ... \n\n");
+        // PaxosManager.close() stops packet processing for every PaxosManager in this JVM,
+        // so node2 is crashed by stopping its messenger instead of closing its coordinator.
+        long killTime = System.nanoTime();
+        servers.get(NODE_2_ID).messenger().stop();
+        List<PrimaryBackupManager<?>> survivors = List.of(managerAtNode1, managerAtNode3);
+        long deadline = killTime + 30_000_000_000L;
+        while (survivors.stream().noneMatch(m -> m.isCurrentPrimary(serviceName)) &&
+                System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        long failoverTimeMs = (System.nanoTime() - killTime) / 1_000_000;
+        assert survivors.stream().anyMatch(m -> m.isCurrentPrimary(serviceName)) :
+                "A backup must be promoted as the primary after the primary fails";
+        System.out.printf("\n\n>> failover time: %d ms\n\n", failoverTimeMs);
+
+        int numExecutedAtFailover = numExecuted.get();
+        Thread.sleep(2000);
+        isRunning.set(false);
+        loadGenerator.join();
+        Thread.sleep(1000);
+        assert numExecuted.get() > numExecutedAtFailover :
+                "Requests must be executed again after the failover";
+
+        System.out.print("\n\n\n ========== Final result at the end of execution:\n");
+        System.out.printf("++ monotonic-sequence at node 1: %s\n",
+                appAtNode1.test_GetSequenceAsString());
+        System.out.printf("++ monotonic-sequence at node 3: %s\n",
+                appAtNode3.test_GetSequenceAsString());
+        appAtNode1.test_AssertMonotonicallyIncreasingNumbers();
+        appAtNode3.test_AssertMonotonicallyIncreasingNumbers();
+        // MonotonicApp's stateDiff only carries the last number generated by a batch of
+        // requests, not every number of the batch, so the backup can not hold the same sequence
+        // as the primary. What replication guarantees is that the backup applies the
+        // primary's stateDiffs in order: its sequence is a subsequence of the primary's and,
+        // once the load stops, ends with the same number.
+        var newPrimaryApp = managerAtNode1.isCurrentPrimary(serviceName) ? appAtNode1 : appAtNode3;
+        var backupApp = newPrimaryApp == appAtNode1 ? appAtNode3 : appAtNode1;
+        List<String> primaryNumbers = List.of(newPrimaryApp.test_GetSequenceAsString().split(", "));
+        List<String> backupNumbers = List.of(backupApp.test_GetSequenceAsString().split(", "));
+        assert backupNumbers.getLast().equals(primaryNumbers.getLast()) :
+                "The remaining backup must end with the last number of the new primary";
+        assert isSubsequence(backupNumbers, primaryNumbers) :
+                "The remaining backup must have the primary's numbers in the same order";
+
+        servers.remove(NODE_2_ID);
+        killServers(servers);
+    }
+
+    private static boolean isSubsequence(List<String> subsequence, List<String> sequence) {
+        int i = 0;
+        for (String s : sequence) {
+            if (i < subsequence.size() && subsequence.get(i).equals(s)) {
+                i++;
+            }
+        }
+        return i == subsequence.size();
+    }
+
+}
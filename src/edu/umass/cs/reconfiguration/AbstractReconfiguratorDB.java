@@ -39,6 +39,7 @@ import edu.umass.cs.reconfiguration.interfaces.ReplicableRequest;
 import edu.umass.cs.reconfiguration.interfaces.Repliconfigurable;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReportBatch;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.RCRecordRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestActiveReplicas;
@@ -216,6 +217,17 @@ public abstract class AbstractReconfiguratorDB<NodeIDType> implements
 	public boolean handleDemandReport(DemandReport<NodeIDType> report, boolean recovery) {
 		return this.updateDemandStats(report);
 	}
+
+	/**
+	 * @param batch
+	 * @param recovery
+	 * @return True if all demand reports in the batch are handled
+	 *         successfully.
+	 */
+	public boolean handleDemandReportBatch(DemandReportBatch<NodeIDType> batch,
+			boolean recovery) {
+		return this.updateDemandStats(batch.getReports());
+	}
 	
 	private ReconfiguratorCallback callback = null;
 	
@@ -84,6 +84,7 @@ public abstract class AbstractReplicaCoordinator<NodeIDType> implements
 
 	private ReconfiguratorCallback callback = null;
 	private ReconfiguratorCallback stopCallback = null; // for stops
+	private AbstractReplicaCoordinator<NodeIDType> wrapper = null;
 	private boolean largeCheckpoints = false;
 	protected Messenger<NodeIDType, ?> messenger;
 
@@ -198,6 +199,69 @@ public abstract class AbstractReplicaCoordinator<NodeIDType> implements
 		return this.callback;
 	}
 
+	/**
+	 * Used by a coordinator wrapper, e.g., a transaction processor, that wraps
+	 * {@code this} coordinator. The wrapper gets to parse and intercept every
+	 * request executed by {@code this} coordinator before the app does, which
+	 * is necessary because the coordination protocol underneath, e.g., paxos,
+	 * calls back {@code this} coordinator, not the wrapper.
+	 * 
+	 * @param wrapper
+	 * @return {@code this}
+	 */
+	public final AbstractReplicaCoordinator<NodeIDType> setWrapper(
+			AbstractReplicaCoordinator<NodeIDType> wrapper) {
+		this.wrapper = wrapper;
+		return this;
+	}
+
+	/**
+	 * Invoked for every request before it is handed over to the app. The
+	 * default implementation defers to the wrapper, if any.
+	 * 
+	 * @param request
+	 * @param noReplyToClient
+	 * @param requestCallback
+	 * @return True if the request has been handled (or queued for later
+	 *         execution) and must not be executed by the app now.
+	 */
+	protected boolean preExecute(Request request, boolean noReplyToClient,
+			ExecutedCallback requestCallback) {
+		return this.wrapper != null
+				&& this.wrapper.preExecute(request, noReplyToClient,
+						requestCallback);
+	}
+
+	/**
+	 * Invoked before the default parsing logic. The default implementation
+	 * defers to the wrapper, if any.
+	 * 
+	 * @param stringified
+	 * @return Request if {@code stringified} is a request type known only to a
+	 *         wrapper; null otherwise.
+	 * @throws RequestParseException
+	 */
+	protected Request getWrapperRequest(String stringified)
+			throws RequestParseException {
+		return this.wrapper != null ? this.wrapper
+				.getWrapperRequest(stringified) : null;
+	}
+
+	/**
+	 * Same as {@link #getWrapperRequest(String)} for requests received as
+	 * bytes.
+	 * 
+	 * @param bytes
+	 * @return Request if {@code bytes} is a request type known only to a
+	 *         wrapper; null otherwise.
+	 * @throws RequestParseException
+	 */
+	protected Request getWrapperRequest(byte[] bytes)
+			throws RequestParseException {
+		return this.wrapper != null ? this.wrapper.getWrapperRequest(bytes)
+				: null;
+	}
+
 	/**
 	 * Used only at active replicas.
 	 * 
@@ -294,6 +358,9 @@ public abstract class AbstractReplicaCoordinator<NodeIDType> implements
 			// no further execution
 			return true;
 		}
+		if (this.wrapper != null
+				&& this.preExecute(request, noReplyToClient, requestCallback))
+			return true;
 		
 		boolean handled = request.getRequestType()==ReconfigurationPacket.PacketType.NO_TYPE ||
 				(((this.app instanceof Replicable) ? ((Replicable) (this.app))
@@ -309,6 +376,9 @@ public abstract class AbstractReplicaCoordinator<NodeIDType> implements
 	public final Request getRequest(String stringified)
 			throws RequestParseException {
 		if (JSONPacket.couldBeJSON(stringified)) {
+			Request wrapped = this.getWrapperRequest(stringified);
+			if (wrapped != null)
+				return wrapped;
 			boolean internal = false;
 			try {
 				JSONObject json = new JSONObject(stringified);
@@ -360,6 +430,10 @@ public abstract class AbstractReplicaCoordinator<NodeIDType> implements
 			//  Wrapping all requests into ReplicableClientRequest, even for CoordinatorPacket,
 			//  is a potential confusion because CoordinatorPacket comes from fellow ActiveReplica,
 			//  and not from the end user.
+			Request wrapped = bytes.length > 0 && bytes[0] == '{' ? this
+					.getWrapperRequest(bytes) : null;
+			if (wrapped != null)
+				return ReplicableClientRequest.wrap(wrapped);
 			if (this.parserBytes != null) {
 				return ReplicableClientRequest.wrap(parserBytes.getRequest(bytes, header));
 			}
@@ -80,6 +80,7 @@ import edu.umass.cs.reconfiguration.reconfigurationpackets.ActiveReplicaError;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DefaultAppRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReportBatch;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DropEpochFinalState;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.EchoRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.EpochFinalState;
@@ -87,6 +88,7 @@ import edu.umass.cs.reconfiguration.reconfigurationpackets.HelloRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket.PacketType;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReplicableClientRequest;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.ClientReconfigurationPacket.ResponseCodes;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestEpochFinalState;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.StartEpoch;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.StopEpoch;
@@ -94,10 +96,12 @@ import edu.umass.cs.reconfiguration.reconfigurationprotocoltasks.ActiveReplicaPr
 import edu.umass.cs.reconfiguration.reconfigurationprotocoltasks.WaitEpochFinalState;
 import edu.umass.cs.reconfiguration.reconfigurationutils.AbstractDemandProfile;
 import edu.umass.cs.reconfiguration.reconfigurationutils.AggregateDemandProfiler;
+import edu.umass.cs.reconfiguration.reconfigurationutils.DemandReportAggregator;
 import edu.umass.cs.reconfiguration.reconfigurationutils.AppInstrumenter;
 import edu.umass.cs.reconfiguration.reconfigurationutils.CallbackMap;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentReconfigurableNodeConfig;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ReconfigurationPacketDemultiplexer;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ServiceAdmissionController;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DelayProfiler;
@@ -148,6 +152,7 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 	private final SSLMessenger<NodeIDType, ?> messenger;
 
 	private final AggregateDemandProfiler demandProfiler;
+	private final DemandReportAggregator<NodeIDType> demandReportAggregator;
 	private final boolean noReporting;
 	private boolean recovering = true;
 
@@ -171,6 +176,8 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		this.nodeConfig = new ConsistentReconfigurableNodeConfig<NodeIDType>(
 				nodeConfig);
 		this.demandProfiler = new AggregateDemandProfiler(getReconfigurableAppInfo());
+		this.demandReportAggregator = new DemandReportAggregator<NodeIDType>(
+				getMyID(), Config.getGlobalInt(RC.MAX_DEMAND_REPORT_BATCH_SIZE));
 		this.messenger = messenger;
 		this.protocolExecutor = new ProtocolExecutor<NodeIDType, ReconfigurationPacket.PacketType, String>(
 				messenger);
@@ -241,8 +248,9 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 			return coordinator;
 		// reflectively instantiate
 		try {
-			return (AbstractReplicaCoordinator<?>) clazz.getConstructor(
-					AbstractReplicaCoordinator.class).newInstance(coordinator);
+			return setWrapper(coordinator, (AbstractReplicaCoordinator<?>) clazz
+					.getConstructor(AbstractReplicaCoordinator.class)
+					.newInstance(coordinator));
 		} catch (InstantiationException | IllegalAccessException
 				| IllegalArgumentException | InvocationTargetException
 				| NoSuchMethodException | SecurityException e) {
@@ -251,6 +259,17 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		return coordinator;
 	}
 
+	/* The coordinator calls back itself, not the wrapper, upon executing a
+	 * request, so the wrapper is registered with it to intercept execution. */
+	@SuppressWarnings("unchecked")
+	private static <NodeIDType> AbstractReplicaCoordinator<NodeIDType> setWrapper(
+			AbstractReplicaCoordinator<NodeIDType> coordinator,
+			AbstractReplicaCoordinator<?> wrapper) {
+		coordinator
+				.setWrapper((AbstractReplicaCoordinator<NodeIDType>) wrapper);
+		return (AbstractReplicaCoordinator<NodeIDType>) wrapper;
+	}
+
 	/**
 	 * @param name
 	 * @return Refer {@link Replicable#checkpoint(String)}.
@@ -430,6 +449,8 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		final boolean isCoordinated;
 		final InetSocketAddress mysa;
 		final long recvTime;
+		// released once the response is sent
+		ServiceAdmissionController.Permit permit;
 
 		SenderAndRequest(Request request, InetSocketAddress isa,
 				InetSocketAddress mysa, long recvTime) {
@@ -513,6 +534,8 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		if (senderAndRequest == null)
 			return null;
 		// else
+		if (senderAndRequest.permit != null)
+			senderAndRequest.permit.release();
 		// send demand report
 		this.updateDemandStats(request, senderAndRequest.csa.getAddress());
 		instrumentNanoApp(isCoordinated ? Instrument.replicable
@@ -671,10 +694,19 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 				Request request = incoming;
 				boolean isCoordinatedRequest = isCoordinated(request);
 
+				// reject right away if the service is over its limits here
+				ServiceAdmissionController.Permit permit = ServiceAdmissionController
+						.tryAdmit(request.getServiceName());
+				if (!permit.isAdmitted()) {
+					this.sendOverloadedError(request, header, permit);
+					return false;
+				}
+
 				SenderAndRequest senderAndRequest = new SenderAndRequest(
 						request, header.sndr, header.rcvr,
 						// startTime
 						entryTime);
+				senderAndRequest.permit = permit;
 				// enqueue demand stats sending callback
 				if (ENQUEUE_REQUEST)
 					if (isCoordinatedRequest)
@@ -704,6 +736,7 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 									senderAndRequest, false);
 					// else do nothing as coordinated callback will be called
 				} else {
+					permit.release();
 					// if failed, dequeue useless enqueue
 					if (isCoordinatedRequest)
 						this.dequeue(((ReplicableRequest) request));
@@ -734,6 +767,22 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		return false; // neither reconfiguration packet nor app request
 	}
 
+	private void sendOverloadedError(Request request, NIOHeader header,
+			ServiceAdmissionController.Permit permit) throws IOException,
+			JSONException {
+		log.log(Level.FINE, "{0} rejecting {1} as {2}", new Object[] { this,
+				request.getSummary(log.isLoggable(Level.FINE)),
+				permit.getDecision() });
+		if (request instanceof ClientRequest)
+			((JSONMessenger<?>) this.messenger).sendClient(header.sndr,
+					new ActiveReplicaError(this.nodeConfig
+							.getNodeSocketAddress(getMyID()), request
+							.getServiceName(), ((ClientRequest) request)
+							.getRequestID(), ResponseCodes.SERVICE_OVERLOADED),
+					header.rcvr);
+		AppInstrumenter.sentActiveReplicaError();
+	}
+
 	// TODO: unused, remove
 	@SuppressWarnings("unused")
 	private Request getRequest(JSONObject jsonObject)
@@ -1413,9 +1462,40 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 			DelayProfiler.updateDelayNano("updatedDemandStats", t);
 	}
 
+	/* Report demand stats to reconfigurators. Unless batching is disabled,
+	 * the report is coalesced with other reports to the same reconfigurator
+	 * and sent out within DEMAND_REPORT_BATCH_WINDOW. */
+	private void report(AbstractDemandProfile demand) {
+		long window = Config.getGlobalLong(RC.DEMAND_REPORT_BATCH_WINDOW);
+		if (window <= 0) {
+			this.reportNow(demand);
+			return;
+		}
+		Integer epoch = this.appCoordinator.getEpoch(demand.getName());
+		Map<NodeIDType, DemandReportBatch<NodeIDType>> full = this.demandReportAggregator
+				.add(this.getReconfigurators(demand.getName()), demand,
+						(epoch == null ? 0 : epoch));
+		if (full != null)
+			this.send(full);
+		if (this.demandReportAggregator.shouldScheduleFlush())
+			this.protocolExecutor.scheduleSimple(new Runnable() {
+				@Override
+				public void run() {
+					ActiveReplica.this.send(ActiveReplica.this.demandReportAggregator
+							.flush());
+				}
+			}, window, TimeUnit.MILLISECONDS);
+	}
+
+	private void send(Map<NodeIDType, DemandReportBatch<NodeIDType>> batches) {
+		for (NodeIDType reportee : batches.keySet())
+			this.send(new GenericMessagingTask<NodeIDType, Object>(reportee,
+					batches.get(reportee)));
+	}
+
 	/* Report demand stats to reconfigurators. This method will necessarily
 	 * result in a stats message being sent out to reconfigurators. */
-	private void report(AbstractDemandProfile demand) {
+	private void reportNow(AbstractDemandProfile demand) {
 		try {
 			NodeIDType reportee = selectReconfigurator(demand.getName());
 			assert (reportee != null);
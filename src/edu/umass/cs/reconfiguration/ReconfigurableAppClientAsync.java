@@ -206,9 +206,14 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 	private final GCConcurrentHashMap<String, RequestCallback> callbacksSRP = new GCConcurrentHashMap<String, RequestCallback>(
 			crpGCCallback, SRP_GC_TIMEOUT);
 
+	// request ID->hedged duplicate target for discarding late responses
+	private final GCConcurrentHashMap<Long, InetSocketAddress> hedged = new GCConcurrentHashMap<Long, InetSocketAddress>(
+			getAppRequestTimeout(DEFAULT_GC_TIMEOUT));
+
 	// name->actives map
 	private final GCConcurrentHashMap<String, ActivesInfo> activeReplicas = new GCConcurrentHashMap<String, ActivesInfo>(
-			defaultGCCallback, MIN_REQUEST_ACTIVES_INTERVAL);
+			defaultGCCallback, Math.max(MIN_REQUEST_ACTIVES_INTERVAL,
+					Config.getGlobalLong(RC.ACTIVES_CACHE_TTL)));
 	// name->unsent app requests for which active replicas are not yet known
 	private final GCConcurrentHashMap<String, LinkedBlockingQueue<RequestAndCallback>> requestsPendingActives = new GCConcurrentHashMap<String, LinkedBlockingQueue<RequestAndCallback>>(
 			defaultGCCallback, getCRPTimeout(DEFAULT_GC_TIMEOUT)); // FIXME: long timeout version
@@ -262,10 +267,17 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 		final Set<InetSocketAddress> actives;
 		// last queried time used to rate limit RequestActiveReplicas queries
 		final long createTime;
+		// time for which actives may be cached
+		final long ttl;
 
 		ActivesInfo(Set<InetSocketAddress> actives, long createTime) {
+			this(actives, createTime, MIN_REQUEST_ACTIVES_INTERVAL);
+		}
+
+		ActivesInfo(Set<InetSocketAddress> actives, long createTime, long ttl) {
 			this.actives = actives;
 			this.createTime = createTime;
+			this.ttl = ttl;
 		}
 	}
 
@@ -470,8 +482,24 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 			return request;
 		}
 
-		private void updateBestReplica(RequestAndCallback callback) {
+		private void updateBestReplica(RequestAndCallback callback,
+				NIOHeader header) {
 			Request request = callback.request;
+			if (callback.hedgeTask != null)
+				callback.hedgeTask.cancel();
+			if (callback.hedgedTo != null) {
+				long now = System.currentTimeMillis();
+				/* The first replica took at least this long, so learning it as
+				 * a sample penalizes it even if the hedge won. */
+				ReconfigurableAppClientAsync.this.e2eRedirector.learnSample(
+						callback.serverSentTo, now - callback.sentTime);
+				if (header != null
+						&& callback.hedgedTo.equals(header.sndr))
+					ReconfigurableAppClientAsync.this.e2eRedirector
+							.learnSample(callback.hedgedTo, now
+									- callback.hedgeSentTime);
+				return;
+			}
 			if (request instanceof ReplicableRequest
 					&& ((ReplicableRequest) request).needsCoordination()) {
 				// we could just always rely on serverSentTo here
@@ -542,7 +570,16 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 					callback.processResponse(response instanceof ReplicableClientRequest ? ((ReplicableClientRequest) response)
 							.getRequest() : (ClientRequest) response);
 
-					updateBestReplica((RequestAndCallback) callback);
+					updateBestReplica((RequestAndCallback) callback, header);
+				} else if (response instanceof ClientRequest
+						&& ReconfigurableAppClientAsync.this.hedged
+								.remove(((ClientRequest) response)
+										.getRequestID()) != null) {
+					// the other copy of a hedged request already responded
+					ReconfigurableAppClientAsync.log.log(Level.FINE,
+							"{0} discarding duplicate response to hedged request {1}",
+							new Object[] { ReconfigurableAppClientAsync.this,
+									response.getSummary() });
 				} else if (response instanceof ClientRequest) {
 					ReconfigurableAppClientAsync.log.log(Level.WARNING,
 							"{0} received an app response with no matching callback{1}",
@@ -557,8 +594,10 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 						&& callback instanceof ReconfigurableAppClientAsync.RequestAndCallback) {
 					ActivesInfo activesInfo = ReconfigurableAppClientAsync.this.activeReplicas
 							.get(response.getServiceName());
+					// overloaded services are not retried elsewhere right away
 					if (activesInfo != null
 							&& activesInfo.actives != null
+							&& ((ActiveReplicaError) response).getErrorCode() != ResponseCodes.SERVICE_OVERLOADED
 							&& ((RequestAndCallback) callback)
 									.incrActiveReplicaErrors() < activesInfo.actives
 									.size()/2 + 1)
@@ -867,6 +906,12 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 	 */
 	public RequestFuture<V> sendRequest(ClientRequest request, InetSocketAddress server,
 			Callback<Request, V> callback) throws IOException {
+		return this.sendRequest(request, server, callback, false);
+	}
+
+	private RequestFuture<V> sendRequest(ClientRequest request,
+			InetSocketAddress server, Callback<Request, V> callback,
+			boolean hedge) throws IOException {
 		boolean sendFailed = false;
 		assert (request.getServiceName() != null);
 		Callback<Request, V> prev = null;
@@ -944,6 +989,8 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 									log.isLoggable(level)), server });
 			if (!sendFailed && !(request instanceof EchoRequest))
 				AppInstrumenter.sentRequest(request);
+			if (!sendFailed && prev == null && hedge)
+				this.scheduleHedge(requestAndCallback);
 		} finally {
 			if (sendFailed && prev == null) {
 				this.callbacks.remove(request.getRequestID(), callback);
@@ -1133,6 +1180,72 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 
 
 	// we don't initialize a timer unless really needed at least once
+	private static final boolean HEDGE_REQUESTS = Config
+			.getGlobalBoolean(RC.HEDGE_REQUESTS);
+	private static final double HEDGE_QUANTILE = Config
+			.getGlobalDouble(RC.HEDGE_QUANTILE);
+
+	/* Only requests that do not need coordination are hedged as a duplicate
+	 * of a coordinated request could get executed twice. Mutual auth requests
+	 * and read-your-writes are excluded as they constrain the target
+	 * replica. */
+	private boolean isHedgeable(ClientRequest request) {
+		return HEDGE_REQUESTS && !READ_YOUR_WRITES
+				&& request instanceof ReplicableRequest
+				&& !((ReplicableRequest) request).needsCoordination()
+				&& !(request instanceof EchoRequest)
+				&& !this.sendToServerPort(request);
+	}
+
+	/* Schedules a duplicate to the next best replica after the HEDGE_QUANTILE
+	 * latency of the first replica. Nothing is scheduled until enough
+	 * latency samples from the first replica are known. */
+	private void scheduleHedge(final RequestAndCallback rc) {
+		if (!this.isHedgeable(rc.request))
+			return;
+		ActivesInfo activesInfo = this.activeReplicas.get(rc.request
+				.getServiceName());
+		if (activesInfo == null || activesInfo.actives == null
+				|| activesInfo.actives.size() < 2)
+			return;
+		double delay = this.e2eRedirector.getLatencyQuantile(rc.serverSentTo,
+				HEDGE_QUANTILE);
+		final InetSocketAddress hedgeTo;
+		if (delay < 0
+				|| (hedgeTo = this.e2eRedirector.getNextNearest(
+						activesInfo.actives, rc.serverSentTo)) == null)
+			return;
+		initTimerIfNeeded();
+		this.timer.schedule(rc.hedgeTask = new TimerTask() {
+			@Override
+			public void run() {
+				ReconfigurableAppClientAsync.this.sendHedge(rc, hedgeTo);
+			}
+		}, Math.max(1, (long) delay));
+	}
+
+	private void sendHedge(RequestAndCallback rc, InetSocketAddress hedgeTo) {
+		Long id = rc.request.getRequestID();
+		// already responded or timed out
+		if (this.callbacks.get(id) != rc
+				&& this.callbacksLongTimeout.get(id) != rc)
+			return;
+		rc.hedgeSentTime = System.currentTimeMillis();
+		rc.hedgedTo = hedgeTo;
+		this.hedged.put(id, hedgeTo);
+		try {
+			boolean sent = this.getNIO(rc.request).sendToAddress(hedgeTo,
+					rc.request) > 0;
+			log.log(Level.FINE, "{0} {1} hedged request {2} to {3} after {4}ms",
+					new Object[] { this, sent ? "sent" : "failed to send",
+							rc.request.getSummary(), hedgeTo,
+							rc.hedgeSentTime - rc.sentTime });
+		} catch (IOException e) {
+			log.log(Level.INFO, "{0} unable to send hedged request {1}: {2}",
+					new Object[] { this, rc.request.getSummary(), e });
+		}
+	}
+
 	private void initTimerIfNeeded() {
 		synchronized (this) {
 			if (this.timer == null)
@@ -1257,6 +1370,10 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 		int heardFromRCs = 0; // for request actives
 		int activeReplicaErrors = 0; // for app requests
 		LinkedHashSet<InetSocketAddress> tried;
+		// hedged duplicate, if any
+		volatile TimerTask hedgeTask;
+		volatile InetSocketAddress hedgedTo;
+		volatile long hedgeSentTime;
 
 		RequestAndCallback(ClientRequest request, Callback<Request, V> callback) {
 			this(request, callback, null);
@@ -1383,7 +1500,7 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 						- lastQueriedTime < getCRPTimeout(DEFAULT_GC_TIMEOUT) / 2)
 				// longer timeout once we have some actives
 				|| (activesInfo.actives != null && System.currentTimeMillis()
-						- lastQueriedTime < MIN_REQUEST_ACTIVES_INTERVAL))) {
+						- lastQueriedTime < activesInfo.ttl))) {
 
 			return true;
 		}
@@ -1417,7 +1534,8 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 						request,
 						redirector != null ? redirector.getNearest(actives)
 								: (InetSocketAddress) (Util
-										.selectRandom(actives)), callback);
+										.selectRandom(actives)), callback,
+						redirector == this.e2eRedirector);
 
 			RequestCallbackFuture<V> future;
 			// else enqueue them
@@ -1487,7 +1605,9 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 		if (actives != null && !actives.isEmpty()) {
 			synchronized (this.activeReplicas) {
 				this.activeReplicas.put(response.getServiceName(),
-						new ActivesInfo(actives, response.getCreateTime()));
+						new ActivesInfo(actives, response.getCreateTime(),
+								response.getTTL() > 0 ? response.getTTL()
+										: MIN_REQUEST_ACTIVES_INTERVAL));
 			}
 			if (this.mostRecentlyWrittenMap.contains(response.getServiceName())
 					&& !actives.contains(this.mostRecentlyWrittenMap
@@ -1557,7 +1677,8 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 											.getNearest(actives)
 											: (InetSocketAddress) (Util
 													.selectRandom(actives)),
-									rc.callback);
+									rc.callback,
+									rc.redirector == this.e2eRedirector);
 						} catch (IOException e) {
 							log.log(Level.WARNING,
 									"{0} encountered IOException while trying "
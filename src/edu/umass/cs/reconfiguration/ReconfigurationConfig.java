@@ -232,6 +232,21 @@ public class ReconfigurationConfig {
          */
         MAX_DEMAND_PROFILE_SIZE(4096),
 
+        /**
+         * Time window (ms) over which an active replica coalesces demand
+         * reports destined to the same reconfigurator into a single batched
+         * packet. Reports for the same name within the window are combined.
+         * A value of 0, the default, sends each demand report as soon as it
+         * is due.
+         */
+        DEMAND_REPORT_BATCH_WINDOW(0),
+
+        /**
+         * Maximum number of names in a batched demand report. A batch that
+         * fills up is sent without waiting for the window to elapse.
+         */
+        MAX_DEMAND_REPORT_BATCH_SIZE(256),
+
         /**
          * Whether most recent demand report should be combined with historic
          * demand stats.
@@ -284,6 +299,32 @@ public class ReconfigurationConfig {
          * of replicas thereafter is controlled by the reconfiguration policy.
          */
         REPLICATE_ALL(true),
+
+        /**
+         * Number of points (virtual nodes) per server on the consistent hash
+         * rings of reconfigurators and active replicas. The default of 1 uses
+         * the original MD5-based single-point ring; a larger value uses a fast
+         * 64-bit hash with that many points per server so as to even out load
+         * across small clusters. This parameter must be identical on all
+         * nodes and must not be changed on a deployment with existing state
+         * as it changes the reconfigurators responsible for names.
+         */
+        CONSISTENT_HASHING_VIRTUAL_NODES(1),
+
+        /**
+         * Comma-separated node:weight pairs, e.g., "RC0:2,RC1:0.5", that
+         * scale the number of virtual nodes of the listed servers relative to
+         * {@link #CONSISTENT_HASHING_VIRTUAL_NODES}. Unlisted servers have a
+         * weight of 1. Same caveats as {@link #CONSISTENT_HASHING_VIRTUAL_NODES}.
+         */
+        CONSISTENT_HASHING_WEIGHTS(""),
+
+        /**
+         * Maximum number of name to replica-set lookups cached by each
+         * consistent hash ring. The cache is invalidated whenever the ring
+         * changes. 0 disables caching.
+         */
+        CONSISTENT_HASHING_CACHE_SIZE(8192),
         /**
          *
          */
@@ -326,6 +367,30 @@ public class ReconfigurationConfig {
          */
         CLOSEST_K(3),
 
+        /**
+         * If true, clients send a duplicate of a request that does not need
+         * coordination to the next best active replica if no response has
+         * arrived from the first replica within {@link #HEDGE_QUANTILE} of
+         * that replica's recent latencies. The first response is used and
+         * the other is discarded. Requests that need coordination are never
+         * hedged as that could execute them twice.
+         */
+        HEDGE_REQUESTS(false),
+
+        /**
+         * The latency quantile of the first replica after which a hedged
+         * duplicate is sent if {@link #HEDGE_REQUESTS} is true.
+         */
+        HEDGE_QUANTILE(0.95),
+
+        /**
+         * Time in milliseconds for which clients may cache the active
+         * replicas of a name returned by a reconfigurator. Reconfigurators
+         * return this value with each active replicas response. Cached
+         * entries are dropped earlier upon errors or deletion.
+         */
+        ACTIVES_CACHE_TTL(60000),
+
         /**
          *
          */
@@ -387,6 +452,41 @@ public class ReconfigurationConfig {
          */
         DEFAULT_DNS_TRAFFIC_POLICY_CLASS("edu.umass.cs.reconfiguration.dns.NoopDnsTrafficPolicy"),
 
+        /**
+         * The UDP port on which DnsReconfigurator listens. Ports below 1024
+         * need admin privilege.
+         */
+        DNS_PORT(53),
+
+        /**
+         * The maximum number of A records returned by
+         * {@link edu.umass.cs.reconfiguration.dns.GeoLoadDnsTrafficPolicy}.
+         */
+        DNS_NUM_ANSWERS(1),
+
+        /**
+         * Time in milliseconds for which
+         * {@link edu.umass.cs.reconfiguration.dns.GeoLoadDnsTrafficPolicy}
+         * caches an answer per client /24 prefix. It also caps the TTL of its
+         * DNS answers so that clients re-resolve as load shifts.
+         */
+        DNS_POLICY_CACHE_TTL(5000),
+
+        /**
+         * How strongly
+         * {@link edu.umass.cs.reconfiguration.dns.GeoLoadDnsTrafficPolicy}
+         * steers clients away from replicas loaded above the mean relative to
+         * nearer ones. 0 ranks by proximity alone.
+         */
+        DNS_LOAD_WEIGHT(1.0),
+
+        /**
+         * Half-life in milliseconds of the per-replica load estimated from
+         * demand reports by
+         * {@link edu.umass.cs.reconfiguration.dns.GeoLoadDnsTrafficPolicy}.
+         */
+        DNS_LOAD_HALF_LIFE(10000),
+
         /**
          * Enable the HTTP server for reconfigurators.
          */
@@ -408,6 +508,51 @@ public class ReconfigurationConfig {
          */
         ENABLE_ACTIVE_REPLICA_HTTP_PORT_80(false),
 
+        /**
+         * Maximum size in bytes of an HTTP request body that HttpActiveReplica
+         * accepts for an XDN service whose
+         * {@link edu.umass.cs.xdn.service.ServiceProperty} does not set
+         * {@code max_request_size}. Larger requests are rejected with 413.
+         * A body is replicated within a single message, so this limit, as well
+         * as {@code max_request_size}, is capped by the largest body that fits
+         * in {@link edu.umass.cs.gigapaxos.PaxosConfig.PC#NIO_MAX_PAYLOAD_SIZE}
+         * once base64-encoded, about 12MB by default. 0 uses that cap.
+         */
+        HTTP_MAX_REQUEST_SIZE(0),
+
+        /**
+         * Size in bytes of the content-addressed chunks into which large XDN
+         * HTTP request bodies are split, see
+         * {@link edu.umass.cs.xdn.request.XDNHttpBody}.
+         */
+        XDN_BODY_CHUNK_SIZE(1024 * 1024),
+
+        /**
+         * Default maximum rate, in requests per second, at which an active
+         * replica admits client requests for each service, see
+         * {@link edu.umass.cs.reconfiguration.reconfigurationutils.ServiceAdmissionController}.
+         * Requests above the rate are rejected right away, with 429 for HTTP
+         * clients. XDN services override it with {@code rate_limit} in their
+         * {@link edu.umass.cs.xdn.service.ServiceProperty}. Zero means no limit.
+         */
+        SERVICE_RATE_LIMIT(0),
+
+        /**
+         * Default maximum number of admitted client requests of each service
+         * that an active replica has not yet responded to. Requests beyond it
+         * are rejected right away, with 503 for HTTP clients. XDN services
+         * override it with {@code max_concurrent_requests} in their
+         * {@link edu.umass.cs.xdn.service.ServiceProperty}. Zero means no limit.
+         */
+        SERVICE_MAX_OUTSTANDING_REQUESTS(0),
+
+        /**
+         * Time in milliseconds after which an admitted request that never got
+         * a response, e.g., because it was dropped, no longer counts towards
+         * {@link #SERVICE_MAX_OUTSTANDING_REQUESTS}.
+         */
+        SERVICE_ADMISSION_TIMEOUT(10000),
+
         /**
          * If true, transactions are enabled; else disabled.
          */
@@ -430,6 +575,19 @@ public class ReconfigurationConfig {
          */
         TX_GROUP_NAME("_TXGROUP_"),
 
+        /**
+         * Time, in milliseconds, for which {@link edu.umass.cs.txn.DistTransactor} keeps
+         * retrying to acquire a participant group's lock held by another transaction
+         * before aborting the transaction.
+         */
+        TX_LOCK_TIMEOUT(2000),
+
+        /**
+         * Maximum number of transactions whose lock (or unlock) operations on the same
+         * participant group are coalesced into a single paxos request.
+         */
+        TX_MAX_LOCK_BATCH_SIZE(64),
+
         /**
          * Used to set @link {@link edu.umass.cs.gigapaxos.PaxosManager#setOutOfOrderLimit(int)}.
          */
@@ -446,6 +604,70 @@ public class ReconfigurationConfig {
          */
         INITIAL_STATE_VALIDATOR_CLASS(""),
 
+        /**
+         * If true, a backup in {@link edu.umass.cs.primarybackup.PrimaryBackupManager}
+         * forwards client requests to the primary in batches, and the primary answers each
+         * batch with a single response packet. If false, each request is forwarded on its own.
+         */
+        PB_BATCH_FORWARDED_REQUESTS(true),
+
+        /**
+         * Maximum number of requests in a batch forwarded by a backup to the primary. This is
+         * also the maximum number of requests the primary executes before capturing and
+         * proposing a single statediff.
+         */
+        PB_MAX_BATCH_SIZE(64),
+
+        /**
+         * Maximum time, in milliseconds, a request forwarded by a backup waits in a batch
+         * while a previous batch for the same service is still in flight.
+         */
+        PB_MAX_BATCH_DELAY(2),
+
+        /**
+         * Time, in milliseconds, after which a batch of requests forwarded by a backup that
+         * is not answered by the primary, e.g., because the primary failed, is given up on and
+         * its requests are reported as not executed.
+         */
+        PB_FORWARDED_BATCH_TIMEOUT(10000),
+
+        /**
+         * Duration, in milliseconds, of the lease held by the primary in
+         * {@link edu.umass.cs.primarybackup.PrimaryBackupManager}. The lease is renewed
+         * every time a statediff proposed by the primary is agreed upon, and while it is
+         * valid the primary executes read-only requests locally. A new primary waits for
+         * this duration before executing requests. Zero disables leases and local reads.
+         */
+        PB_PRIMARY_LEASE_DURATION(1000),
+
+        /**
+         * Period, in milliseconds, of checking whether the primary is considered dead by the
+         * failure detector, in which case a backup is promoted as the new primary. Zero
+         * disables the automatic promotion.
+         */
+        PB_FAILOVER_CHECK_PERIOD(500),
+
+        /**
+         * Time, in milliseconds, after which a primary candidate re-proposes its
+         * StartEpochPacket if it is not yet agreed upon, e.g., because it was proposed
+         * through a paxos coordinator that has since failed.
+         */
+        PB_START_EPOCH_RETRY_TIMEOUT(1000),
+
+        /**
+         * Maximum number of requests the head of a chain in
+         * {@link edu.umass.cs.chainreplication.ChainManager} executes and forwards down the
+         * chain as a single batch.
+         */
+        CHAIN_MAX_BATCH_SIZE(64),
+
+        /**
+         * Maximum number of batches the head of a chain keeps in flight, i.e., forwarded but
+         * not yet acknowledged by the tail. Writes arriving while the window is full are
+         * batched until an acknowledgement arrives.
+         */
+        CHAIN_PIPELINE_WINDOW(4),
+
         ;
 
         final Object defaultValue;
@@ -18,10 +18,14 @@ package edu.umass.cs.reconfiguration;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -63,6 +67,7 @@ import edu.umass.cs.reconfiguration.reconfigurationpackets.ClientReconfiguration
 import edu.umass.cs.reconfiguration.reconfigurationpackets.CreateServiceName;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DeleteServiceName;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReportBatch;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.EchoRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.HelloRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.RCRecordRequest;
@@ -82,11 +87,13 @@ import edu.umass.cs.reconfiguration.reconfigurationprotocoltasks.WaitPrimaryExec
 import edu.umass.cs.reconfiguration.reconfigurationutils.AbstractDemandProfile;
 import edu.umass.cs.reconfiguration.reconfigurationutils.AggregateDemandProfiler;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentReconfigurableNodeConfig;
+import edu.umass.cs.reconfiguration.reconfigurationutils.DemandProfile;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ReconfigurationPacketDemultiplexer;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ReconfigurationRecord;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ReconfigurationRecord.RCStates;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.ReconfigureUponActivesChange;
 import edu.umass.cs.reconfiguration.dns.DnsReconfigurator;
+import edu.umass.cs.reconfiguration.dns.GeoLoadDnsTrafficPolicy;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DelayProfiler;
 import edu.umass.cs.utils.GCConcurrentHashMap;
@@ -405,6 +412,62 @@ public class Reconfigurator<NodeIDType> implements
                             .getReplicatedReconfigurators(report
                                     .getServiceName()))), report).toArray();
         }
+        this.applyDemandReport(report);
+        trimAggregateDemandProfile();
+        return null; // never any messaging or ptasks
+    }
+
+    /**
+     * Incorporates a batch of demand reports coalesced by an active replica.
+     * Reports for names that this reconfigurator is not responsible for are
+     * forwarded in per-reconfigurator batches, and the trimmed demand profile
+     * is persisted once for the whole batch.
+     *
+     * @param batch
+     * @param ptasks
+     * @return MessagingTask forwarding misdirected reports, typically null.
+     */
+    @SuppressWarnings("unchecked")
+    public GenericMessagingTask<NodeIDType, ?>[] handleDemandReportBatch(
+            DemandReportBatch<NodeIDType> batch,
+            ProtocolTask<NodeIDType, ReconfigurationPacket.PacketType, String>[] ptasks) {
+        ReconfigurationConfig.log.log(Level.FINEST, "{0} received {1}",
+                new Object[]{this, batch.getSummary()});
+        Map<NodeIDType, List<DemandReport<NodeIDType>>> misdirected = new HashMap<NodeIDType, List<DemandReport<NodeIDType>>>();
+        for (DemandReport<NodeIDType> report : batch.getReports()) {
+            Set<NodeIDType> reconfigurators = this.consistentNodeConfig
+                    .getReplicatedReconfigurators(report.getServiceName());
+            if (reconfigurators.contains(this.getMyID())) {
+                this.applyDemandReport(report);
+                continue;
+            }
+            NodeIDType forwardee = (NodeIDType) Util.selectRandom(reconfigurators);
+            if (!misdirected.containsKey(forwardee))
+                misdirected.put(forwardee, new ArrayList<DemandReport<NodeIDType>>());
+            misdirected.get(forwardee).add(report);
+        }
+        trimAggregateDemandProfile();
+        if (misdirected.isEmpty())
+            return null;
+        ArrayList<GenericMessagingTask<NodeIDType, ?>> mtasks = new ArrayList<GenericMessagingTask<NodeIDType, ?>>();
+        for (NodeIDType forwardee : misdirected.keySet())
+            mtasks.add(new GenericMessagingTask<NodeIDType, DemandReportBatch<NodeIDType>>(
+                    forwardee, new DemandReportBatch<NodeIDType>(batch
+                    .getInitiator(), misdirected.get(forwardee))));
+        return (GenericMessagingTask<NodeIDType, ?>[]) mtasks
+                .toArray(new GenericMessagingTask<?, ?>[0]);
+    }
+
+    // report must be for a name that this reconfigurator is responsible for
+    private void applyDemandReport(DemandReport<NodeIDType> report) {
+        // per-replica load used by the geo- and load-aware DNS policy
+        InetAddress reporter;
+        if (Config.getGlobalBoolean(RC.ENABLE_RECONFIGURATOR_DNS)
+                && (reporter = this.consistentNodeConfig.getNodeAddress(report
+                .getInitiator())) != null)
+            GeoLoadDnsTrafficPolicy.recordLoad(reporter,
+                    DemandProfile.getNumRequests(report.getStats()),
+                    System.currentTimeMillis());
         if (report.needsCoordination())
             this.DB.handleIncoming(report, null); // coordinated
         else
@@ -416,8 +479,6 @@ public class Reconfigurator<NodeIDType> implements
             this.initiateReconfiguration(report.getServiceName(), record,
                     shouldReconfigure(report.getServiceName()), null, null,
                     null, null, null, null, ReconfigurationConfig.ReconfigureUponActivesChange.DEFAULT); // coordinated
-        trimAggregateDemandProfile();
-        return null; // never any messaging or ptasks
     }
 
     private boolean isLegitimateCreateRequest(CreateServiceName create) {
@@ -1090,8 +1151,8 @@ public class Reconfigurator<NodeIDType> implements
         for (NodeIDType node : record.getActiveReplicas())
             activeIPs.add(this.consistentNodeConfig.getNodeSocketAddress(node));
         // to support different client facing ports
-        request.setActives(modifyPortsForSSL(activeIPs,
-                receivedOnSSLPort(request)));
+        request.setTTL(Config.getGlobalLong(RC.ACTIVES_CACHE_TTL)).setActives(
+                modifyPortsForSSL(activeIPs, receivedOnSSLPort(request)));
         // this.sendClientReconfigurationPacket
         callback.processResponse(request.makeResponse());
         /* We message using sendActiveReplicasToClient above as opposed to
@@ -1900,13 +1961,16 @@ public class Reconfigurator<NodeIDType> implements
      * refresh in the updateDemandProfile method if needed. */
     private void trimAggregateDemandProfile() {
         Set<AbstractDemandProfile> profiles = this.demandProfiler.trim();
-        for (AbstractDemandProfile profile : profiles) {
+        if (profiles.isEmpty())
+            return;
+        List<DemandReport<NodeIDType>> reports = new ArrayList<DemandReport<NodeIDType>>();
+        for (AbstractDemandProfile profile : profiles)
             // initiator and epoch are irrelevant in this report
-            DemandReport<NodeIDType> report = new DemandReport<NodeIDType>(
-                    this.getMyID(), profile.getName(), 0, profile);
-            // will update stats in DB
-            this.DB.execute(report);
-        }
+            reports.add(new DemandReport<NodeIDType>(this.getMyID(), profile
+                    .getName(), 0, profile));
+        // will update stats in DB in a single transaction
+        this.DB.execute(reports.size() == 1 ? reports.get(0)
+                : new DemandReportBatch<NodeIDType>(this.getMyID(), reports));
     }
 
     // coordinate reconfiguration intent
@@ -41,9 +41,11 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -209,6 +211,34 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 
 	private StringLocker stringLocker = new StringLocker();
 
+	/* Per-name locks for test-and-set operations on individual records. There
+	 * are far too many names to use stringLocker, so names are hashed onto a
+	 * fixed number of lock stripes. A stripe lock may be acquired while
+	 * holding a stringLocker lock but never the other way around, and a
+	 * thread holds more than one stripe lock only if it acquired them in
+	 * ascending order of stripe index. */
+	private static final int NUM_NAME_LOCKS = 1024;
+	private final Object[] nameLocks = new Object[NUM_NAME_LOCKS];
+	{
+		for (int i = 0; i < this.nameLocks.length; i++)
+			this.nameLocks[i] = new Object();
+	}
+
+	private final GroupCommitter<ReconfigurationRecord<NodeIDType>> recordCommitter = new GroupCommitter<ReconfigurationRecord<NodeIDType>>() {
+		@Override
+		Set<String> commit(
+				Map<String, ReconfigurationRecord<NodeIDType>> batch) {
+			return SQLReconfiguratorDB.this.putReconfigurationRecordDB(batch);
+		}
+	};
+
+	private final GroupCommitter<JSONObject> demandCommitter = new GroupCommitter<JSONObject>() {
+		@Override
+		Set<String> commit(Map<String, JSONObject> batch) {
+			return SQLReconfiguratorDB.this.putDemandStatsDB(batch);
+		}
+	};
+
 	private ScheduledExecutorService executor;
 	Future<?> checkpointServerFuture = null;
 
@@ -426,8 +456,10 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 
 	/******************** Start of overridden methods *********************/
 
+	/* Lock-free as DiskMap is a concurrent map. Modifications to the returned
+	 * record must be made while holding the name's lock. */
 	@Override
-	public synchronized ReconfigurationRecord<NodeIDType> getReconfigurationRecord(
+	public ReconfigurationRecord<NodeIDType> getReconfigurationRecord(
 			String name) {
 		if (USE_DISK_MAP)
 			return this.rcRecords.get(name);
@@ -466,47 +498,127 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 		return rcRecord;
 	}
 
+	/* The read-combine-write of a name's stats happens under the name's lock,
+	 * while the write itself is group-committed with concurrent updates to
+	 * other names. */
 	@Override
-	public synchronized boolean updateDemandStats(
-			DemandReport<NodeIDType> report) {
-		JSONObject update = report.getStats();
-		JSONObject historic = getDemandStatsJSON(report.getServiceName());
-		JSONObject combined = null;
-		String insertCmd = "insert into " + getDemandTable() + " ("
-				+ Columns.DEMAND_PROFILE.toString() + ", "
-				+ Columns.SERVICE_NAME.toString() + " ) values (?,?)";
+	public boolean updateDemandStats(DemandReport<NodeIDType> report) {
+		String name = report.getServiceName();
+		synchronized (this.getNameLock(name)) {
+			JSONObject update = report.getStats();
+			JSONObject historic = shouldCombineStats() ? getDemandStatsJSON(name)
+					: null;
+			JSONObject combined = update;
+			if (historic != null)
+				combined = combineStats(historic, update);
+			this.demandCommitter.put(name, combined);
+		}
+		return true;
+	}
+
+	/* Same as above but for many names at once, so that all of the stats are
+	 * written in a single transaction. With combining, the stripe locks of all
+	 * of the names are held in ascending order across the read-combine-write. */
+	@Override
+	public boolean updateDemandStats(List<DemandReport<NodeIDType>> reports) {
+		final Map<String, JSONObject> updates = new HashMap<String, JSONObject>();
+		for (DemandReport<NodeIDType> report : reports)
+			updates.put(report.getServiceName(), report.getStats());
+		if (!shouldCombineStats()) {
+			this.demandCommitter.putAll(updates);
+			return true;
+		}
+		TreeSet<Integer> stripes = new TreeSet<Integer>();
+		for (String name : updates.keySet())
+			stripes.add(this.getNameLockIndex(name));
+		this.updateDemandStatsLocked(updates, stripes.iterator());
+		return true;
+	}
+
+	private void updateDemandStatsLocked(Map<String, JSONObject> updates,
+			Iterator<Integer> stripes) {
+		if (stripes.hasNext())
+			synchronized (this.nameLocks[stripes.next()]) {
+				this.updateDemandStatsLocked(updates, stripes);
+				return;
+			}
+		Map<String, JSONObject> combined = new HashMap<String, JSONObject>();
+		for (String name : updates.keySet()) {
+			JSONObject historic = getDemandStatsJSON(name);
+			combined.put(name, historic != null ? combineStats(historic,
+					updates.get(name)) : updates.get(name));
+		}
+		this.demandCommitter.putAll(combined);
+	}
+
+	/* Batch-updates demand stats and inserts those that could not be updated
+	 * as they did not exist. */
+	private Set<String> putDemandStatsDB(Map<String, JSONObject> toCommit) {
 		String updateCmd = "update " + getDemandTable() + " set "
 				+ Columns.DEMAND_PROFILE.toString() + "=? where "
 				+ Columns.SERVICE_NAME.toString() + "=?";
-		String cmd = historic != null ? updateCmd : insertCmd;
-		combined = update;
-		if (historic != null && shouldCombineStats())
-			combined = combineStats(historic, update);
-
-		PreparedStatement insertCP = null;
+		String insertCmd = "insert into " + getDemandTable() + " ("
+				+ Columns.DEMAND_PROFILE.toString() + ", "
+				+ Columns.SERVICE_NAME.toString() + " ) values (?,?)";
+		Set<String> committed = new HashSet<String>();
 		Connection conn = null;
 		try {
 			conn = this.getDefaultConn();
-			insertCP = conn.prepareStatement(cmd);
-			if (DEMAND_PROFILE_CLOB_OPTION)
-				insertCP.setClob(1, new StringReader(combined.toString()));
-			else
-				insertCP.setString(1, combined.toString());
-			insertCP.setString(2, report.getServiceName());
-			insertCP.executeUpdate();
-			// conn.commit();
+			conn.setAutoCommit(false);
+			Set<String> missing = this.executeDemandBatch(conn, updateCmd,
+					toCommit, toCommit.keySet(), committed);
+			if (!missing.isEmpty())
+				this.executeDemandBatch(conn, insertCmd, toCommit, missing,
+						committed);
 		} catch (SQLException sqle) {
-			log.severe("SQLException while updating stats using " + cmd);
+			log.severe("SQLException while batch-updating stats using "
+					+ updateCmd);
 			sqle.printStackTrace();
 		} finally {
-			cleanup(insertCP);
 			cleanup(conn);
 		}
-		return true;
+		return committed;
+	}
+
+	// returns names whose execution did not affect any row
+	private Set<String> executeDemandBatch(Connection conn, String cmd,
+			Map<String, JSONObject> stats, Set<String> names,
+			Set<String> committed) throws SQLException {
+		Set<String> unaffected = new HashSet<String>();
+		PreparedStatement pstmt = null;
+		try {
+			pstmt = conn.prepareStatement(cmd);
+			ArrayList<String> batch = new ArrayList<String>();
+			int i = 0;
+			for (String name : names) {
+				if (DEMAND_PROFILE_CLOB_OPTION)
+					pstmt.setClob(1, new StringReader(stats.get(name)
+							.toString()));
+				else
+					pstmt.setString(1, stats.get(name).toString());
+				pstmt.setString(2, name);
+				pstmt.addBatch();
+				batch.add(name);
+				if (++i % MAX_DB_BATCH_SIZE == 0 || i == names.size()) {
+					int[] executed = pstmt.executeBatch();
+					conn.commit();
+					pstmt.clearBatch();
+					for (int j = 0; j < executed.length; j++)
+						if (executed[j] > 0)
+							committed.add(batch.get(j));
+						else
+							unaffected.add(batch.get(j));
+					batch.clear();
+				}
+			}
+		} finally {
+			cleanup(pstmt);
+		}
+		return unaffected;
 	}
 
 	@Override
-	public synchronized boolean setState(String name, int epoch,
+	public boolean setState(String name, int epoch,
 			ReconfigurationRecord.RCStates state) {
 		return this.setStateMerge(name, epoch, state, null, null);
 	}
@@ -516,7 +628,16 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	 * READY usually to WAIT_ACK_STOP. */
 
 	@Override
-	public synchronized boolean setStateMerge(String name, int epoch,
+	public boolean setStateMerge(String name, int epoch,
+			ReconfigurationRecord.RCStates state, Set<NodeIDType> newActives,
+			Set<String> mergees) {
+		synchronized (this.getNameLock(name)) {
+			return this.setStateMergeLocked(name, epoch, state, newActives,
+					mergees);
+		}
+	}
+
+	private boolean setStateMergeLocked(String name, int epoch,
 			ReconfigurationRecord.RCStates state, Set<NodeIDType> newActives,
 			Set<String> mergees) {
 		ReconfigurationRecord<NodeIDType> record = this
@@ -601,8 +722,16 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	 * only be changed to WAIT_ACK_STOP. The epoch argument must also match the
 	 * current epoch number. */
 	@Override
-	public synchronized boolean setStateInitReconfiguration(String name,
-			int epoch, RCStates state, Set<NodeIDType> newActives) {
+	public boolean setStateInitReconfiguration(String name, int epoch,
+			RCStates state, Set<NodeIDType> newActives) {
+		synchronized (this.getNameLock(name)) {
+			return this.setStateInitReconfigurationLocked(name, epoch, state,
+					newActives);
+		}
+	}
+
+	private boolean setStateInitReconfigurationLocked(String name, int epoch,
+			RCStates state, Set<NodeIDType> newActives) {
 		ReconfigurationRecord<NodeIDType> record = this
 				.getReconfigurationRecord(name);
 		assert (record != null && ((!TWO_PAXOS_RC && epoch - record.getEpoch() >= 0) || epoch
@@ -635,22 +764,26 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	private static final boolean USE_DISK_MAP = Config
 			.getGlobalBoolean(RC.USE_DISK_MAP_RCDB);
 
-	private synchronized void putReconfigurationRecord(
+	/* Without DiskMap, which already batches its commits, concurrent puts are
+	 * group-committed as JDBC batches. Either way, the put is durable or
+	 * cached when this method returns. */
+	private void putReconfigurationRecord(
 			ReconfigurationRecord<NodeIDType> rcRecord) {
 		if (USE_DISK_MAP)
 			this.rcRecords.put(rcRecord.getName(), rcRecord);
 		else
-			this.putReconfigurationRecordDB(rcRecord,
-					this.getRCGroupName(rcRecord.getName()));
+			this.recordCommitter.put(rcRecord.getName(), rcRecord
+					.setRCGroupName(this.getRCGroupName(rcRecord.getName())));
 	}
 
-	private synchronized void putReconfigurationRecord(
+	private void putReconfigurationRecord(
 			ReconfigurationRecord<NodeIDType> rcRecord, String rcGroupName) {
 		if (USE_DISK_MAP) {
 			this.rcRecords.put(rcRecord.getName(),
 					rcRecord.setRCGroupName(rcGroupName));
 		} else
-			this.putReconfigurationRecordDB(rcRecord, rcGroupName);
+			this.recordCommitter.put(rcRecord.getName(),
+					rcRecord.setRCGroupName(rcGroupName));
 	}
 
 	private void putReconfigurationRecordDB(
@@ -726,7 +859,16 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	/* Should put RC records only for non-RC group names. */
-	private synchronized boolean putReconfigurationRecordIfNotName(
+	private boolean putReconfigurationRecordIfNotName(
+			ReconfigurationRecord<NodeIDType> record, String rcGroupName,
+			String mergee) {
+		synchronized (this.getNameLock(record.getName())) {
+			return this.putReconfigurationRecordIfNotNameLocked(record,
+					rcGroupName, mergee);
+		}
+	}
+
+	private boolean putReconfigurationRecordIfNotNameLocked(
 			ReconfigurationRecord<NodeIDType> record, String rcGroupName,
 			String mergee) {
 
@@ -749,17 +891,18 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	@Override
-	public synchronized boolean deleteReconfigurationRecord(String name,
-			int epoch) {
-		if (USE_DISK_MAP) {
-			ReconfigurationRecord<NodeIDType> record = this
-					.getReconfigurationRecord(name);
-			if (record != null && record.getEpoch() == epoch)
-				return this.rcRecords.remove(name) != null;
-			else
-				return false;
-		} else
-			return this.deleteReconfigurationRecordDB(name, epoch);
+	public boolean deleteReconfigurationRecord(String name, int epoch) {
+		synchronized (this.getNameLock(name)) {
+			if (USE_DISK_MAP) {
+				ReconfigurationRecord<NodeIDType> record = this
+						.getReconfigurationRecord(name);
+				if (record != null && record.getEpoch() == epoch)
+					return this.rcRecords.remove(name) != null;
+				else
+					return false;
+			} else
+				return this.deleteReconfigurationRecordDB(name, epoch);
+		}
 	}
 
 	private boolean deleteReconfigurationRecordDB(String name,
@@ -786,7 +929,13 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	@Override
-	public synchronized boolean markDeleteReconfigurationRecord(String name,
+	public boolean markDeleteReconfigurationRecord(String name, int epoch) {
+		synchronized (this.getNameLock(name)) {
+			return this.markDeleteReconfigurationRecordLocked(name, epoch);
+		}
+	}
+
+	private boolean markDeleteReconfigurationRecordLocked(String name,
 			int epoch) {
 		ReconfigurationRecord<NodeIDType> record = this
 				.getReconfigurationRecord(name);
@@ -810,17 +959,19 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 
 	// This also sets newActives
 	@Override
-	public synchronized ReconfigurationRecord<NodeIDType> createReconfigurationRecord(
+	public ReconfigurationRecord<NodeIDType> createReconfigurationRecord(
 			ReconfigurationRecord<NodeIDType> record) {
-		if (this.getReconfigurationRecord(record.getName()) != null)
-			return null;
-		log.log(Level.INFO,
-				"==============================> {0} [] -> {1}:{2} {3} {4} ",
-				new Object[] { this, record.getName(), record.getEpoch(),
-						record.getState(), record.getNewActives() });
-		this.putReconfigurationRecord(record);
-		// put will be successful or throw an exception
-		return record;
+		synchronized (this.getNameLock(record.getName())) {
+			if (this.getReconfigurationRecord(record.getName()) != null)
+				return null;
+			log.log(Level.INFO,
+					"==============================> {0} [] -> {1}:{2} {3} {4} ",
+					new Object[] { this, record.getName(), record.getEpoch(),
+							record.getState(), record.getNewActives() });
+			this.putReconfigurationRecord(record);
+			// put will be successful or throw an exception
+			return record;
+		}
 	}
 
 	/******************** Incomplete paxos methods below **************/
@@ -1049,6 +1200,69 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 
 	/************************ Private methods below *********************/
 
+	private Object getNameLock(String name) {
+		return this.nameLocks[this.getNameLockIndex(name)];
+	}
+
+	private int getNameLockIndex(String name) {
+		return (name.hashCode() & Integer.MAX_VALUE) % this.nameLocks.length;
+	}
+
+	/* Group commit: a writer enqueues its row and blocks until the row has
+	 * been committed. If no commit is in progress, the writer itself commits
+	 * all rows enqueued so far as a single batch; otherwise it waits for the
+	 * ongoing commit and, if its row was not part of it, the next one. So a
+	 * lone writer commits immediately, and concurrent writers amortize a
+	 * JDBC batch and commit across however many rows queued up meanwhile. A
+	 * later row for a name supersedes an uncommitted earlier one. */
+	private static abstract class GroupCommitter<V> {
+		private Map<String, V> queue = new HashMap<String, V>();
+		private long enqueued = 0;
+		private long committed = 0;
+		private boolean committing = false;
+
+		abstract Set<String> commit(Map<String, V> batch);
+
+		void put(String name, V value) {
+			this.putAll(Collections.singletonMap(name, value));
+		}
+
+		// returns after all of the entries have been committed
+		void putAll(Map<String, V> entries) {
+			Map<String, V> batch = null;
+			long upTo = 0;
+			boolean interrupted = false;
+			synchronized (this) {
+				this.queue.putAll(entries);
+				long ticket = ++this.enqueued;
+				while (this.committed < ticket && this.committing)
+					try {
+						this.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				if (this.committed < ticket) {
+					this.committing = true;
+					batch = this.queue;
+					this.queue = new HashMap<String, V>();
+					upTo = this.enqueued;
+				}
+			}
+			if (batch != null)
+				try {
+					this.commit(batch);
+				} finally {
+					synchronized (this) {
+						this.committed = upTo;
+						this.committing = false;
+						this.notifyAll();
+					}
+				}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
 	private boolean setPending(String name, boolean set) {
 		return this.setPending(name, set, false);
 	}
@@ -2472,38 +2686,39 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 		return added;
 	}
 
-	/* The double synchronized is because we need to synchronize over "this" to
-	 * perform testAndSet checks over record, but we have to do that after,
-	 * never before, stringLocker lock. The stringLocker lock is so that we
-	 * don't have to lock all records in order to just synchronize a single
-	 * group's getState or updateState. */
+	/* The stringLocker lock is so that we don't have to lock all records in
+	 * order to just synchronize a single group's getState or updateState. The
+	 * group record's test-and-set is under its name lock that, like all name
+	 * locks, can be acquired only after, never before, the stringLocker lock.
+	 * The mergee's state is changed after releasing the group's name lock as
+	 * name locks are never nested. */
 	@Override
 	public boolean mergeState(String rcGroupName, int epoch, String mergee,
 			int mergeeEpoch, String state) {
 		synchronized (this.stringLocker.get(rcGroupName)) {
-			synchronized (this) {
-				ReconfigurationRecord<NodeIDType> record = this
-						.getReconfigurationRecord(rcGroupName);
+			ReconfigurationRecord<NodeIDType> record = this
+					.getReconfigurationRecord(rcGroupName);
 
-				assert (record.getEpoch() == epoch);
-				if (!record.hasBeenMerged(mergee))
-					if (this.updateState(rcGroupName, state, mergee)) {
+			assert (record.getEpoch() == epoch);
+			if (!record.hasBeenMerged(mergee))
+				if (this.updateState(rcGroupName, state, mergee)) {
+					synchronized (this.getNameLock(rcGroupName)) {
 						record.insertMerged(mergee);
 						this.putReconfigurationRecord(record);
-						// delete mergee RC record as it must have been stopped
-						this.setMergeeStateToWaitDelete(mergee, mergeeEpoch);
-						log.log(Level.INFO,
-								"{0} merged state from {1}:{2} into {3}:{4}",
-								new Object[] { this, mergee, mergeeEpoch,
-										rcGroupName, epoch, });
-					} else
-						log.warning(this + " attempt to merge " + mergee + ":"
-								+ mergeeEpoch + " failed.");
-				if (record.isReconfigurationReady())
-					this.setPending(rcGroupName, false, true);
-				// paxos will still always see a true return value
-				return record.hasBeenMerged(mergee);
-			}
+					}
+					// delete mergee RC record as it must have been stopped
+					this.setMergeeStateToWaitDelete(mergee, mergeeEpoch);
+					log.log(Level.INFO,
+							"{0} merged state from {1}:{2} into {3}:{4}",
+							new Object[] { this, mergee, mergeeEpoch,
+									rcGroupName, epoch, });
+				} else
+					log.warning(this + " attempt to merge " + mergee + ":"
+							+ mergeeEpoch + " failed.");
+			if (record.isReconfigurationReady())
+				this.setPending(rcGroupName, false, true);
+			// paxos will still always see a true return value
+			return record.hasBeenMerged(mergee);
 		}
 	}
 
@@ -2524,13 +2739,15 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	@Override
-	public synchronized void clearMerged(String rcGroupName, int epoch) {
-		ReconfigurationRecord<NodeIDType> record = this
-				.getReconfigurationRecord(rcGroupName, epoch);
-		if (record == null)
-			return;
-		record.clearMerged();
-		this.putReconfigurationRecord(record);
+	public void clearMerged(String rcGroupName, int epoch) {
+		synchronized (this.getNameLock(rcGroupName)) {
+			ReconfigurationRecord<NodeIDType> record = this
+					.getReconfigurationRecord(rcGroupName, epoch);
+			if (record == null)
+				return;
+			record.clearMerged();
+			this.putReconfigurationRecord(record);
+		}
 	}
 
 	@Override
@@ -2543,11 +2760,13 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 
 	@Override
 	public boolean mergeIntent(String name, int epoch, String mergee) {
-		ReconfigurationRecord<NodeIDType> record = this
-				.getReconfigurationRecord(name);
-		boolean added = record.addToMerge(mergee);
-		this.putReconfigurationRecord(record);
-		return added;
+		synchronized (this.getNameLock(name)) {
+			ReconfigurationRecord<NodeIDType> record = this
+					.getReconfigurationRecord(name);
+			boolean added = record.addToMerge(mergee);
+			this.putReconfigurationRecord(record);
+			return added;
+		}
 	}
 
 	private boolean recordLongPendingDelete(
@@ -2591,7 +2810,7 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	@Override
-	public synchronized boolean createReconfigurationRecords(
+	public boolean createReconfigurationRecords(
 			Map<String, String> nameStates, Set<NodeIDType> newActives, ReconfigurationConfig.ReconfigureUponActivesChange policy) {
 		if (USE_DISK_MAP) {
 			boolean insertedAll = true;
@@ -2600,12 +2819,14 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 				/* We just directly initialize with WAIT_ACK_STOP:-1 instead of
 				 * starting with READY:-1 and pretending to go through the whole
 				 * reconfiguration protocol sequence. */
-				if (insertedAll = insertedAll
-						&& (this.rcRecords.put(name,
-								new ReconfigurationRecord<NodeIDType>(name, -1,
-										newActives, policy).setState(name, -1,
-										RCStates.WAIT_ACK_STOP)) == null))
-					inserted.add(name);
+				synchronized (this.getNameLock(name)) {
+					if (insertedAll = insertedAll
+							&& (this.rcRecords.put(name,
+									new ReconfigurationRecord<NodeIDType>(name,
+											-1, newActives, policy).setState(
+											name, -1, RCStates.WAIT_ACK_STOP)) == null))
+						inserted.add(name);
+				}
 
 			if (!insertedAll)
 				// rollback
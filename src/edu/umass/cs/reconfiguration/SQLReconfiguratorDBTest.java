@@ -0,0 +1,222 @@
+package edu.umass.cs.reconfiguration;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.reconfiguration.examples.AppRequest;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentReconfigurableNodeConfig;
+import edu.umass.cs.reconfiguration.reconfigurationutils.DemandProfile;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ReconfigurableSampleNodeConfig;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ReconfigurationRecord;
+import edu.umass.cs.utils.DefaultTest;
+import edu.umass.cs.utils.Util;
+
+/**
+ * SQLReconfiguratorDB test class including a create-storm benchmark.
+ */
+public class SQLReconfiguratorDBTest extends DefaultTest {
+
+	private static final int NUM_THREADS = 16;
+	private static final int NUM_NAMES = 100000;
+
+	private static SQLReconfiguratorDB<Integer> rcDB;
+	private static Set<Integer> actives;
+	private static Level level;
+
+	/**
+	 *
+	 */
+	@BeforeClass
+	public static void setup() {
+		ReconfigurableSampleNodeConfig nc = new ReconfigurableSampleNodeConfig();
+		nc.localSetup(3);
+		ConsistentReconfigurableNodeConfig<Integer> consistentNodeConfig = new ConsistentReconfigurableNodeConfig<Integer>(
+				nc);
+		Integer myID = consistentNodeConfig.getReconfigurators().iterator()
+				.next();
+		// start afresh as created names must not already exist
+		SQLReconfiguratorDB.dropState(myID.toString(), null);
+		rcDB = new SQLReconfiguratorDB<Integer>(myID, consistentNodeConfig);
+		actives = consistentNodeConfig.getActiveReplicas();
+		// every create is otherwise logged at INFO
+		level = ReconfigurationConfig.getLogger().getLevel();
+		ReconfigurationConfig.getLogger().setLevel(Level.WARNING);
+	}
+
+	/**
+	 *
+	 */
+	@AfterClass
+	public static void teardown() {
+		ReconfigurationConfig.getLogger().setLevel(level);
+		rcDB.close();
+	}
+
+	private interface Task {
+		void run(int i);
+	}
+
+	// runs task(i) for i in [0, n) across NUM_THREADS threads
+	private static double storm(final int n, final Task task)
+			throws InterruptedException {
+		final AtomicInteger next = new AtomicInteger(0);
+		Thread[] threads = new Thread[NUM_THREADS];
+		long t = System.nanoTime();
+		for (int i = 0; i < threads.length; i++)
+			(threads[i] = new Thread(() -> {
+				for (int j; (j = next.getAndIncrement()) < n;)
+					task.run(j);
+			})).start();
+		for (Thread thread : threads)
+			thread.join();
+		return n / ((System.nanoTime() - t) / 1000000000.0);
+	}
+
+	/**
+	 * Concurrent creates of the same names succeed exactly once per name.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void test_ConcurrentCreate() throws InterruptedException {
+		final int numNames = 1000, numDuplicates = 4;
+		final AtomicInteger created = new AtomicInteger(0);
+		storm(numNames * numDuplicates, i -> {
+			if (rcDB.createReconfigurationRecord(new ReconfigurationRecord<Integer>(
+					"dup" + (i % numNames), 0, actives)) != null)
+				created.incrementAndGet();
+		});
+		Assert.assertEquals(numNames, created.get());
+		for (int i = 0; i < numNames; i++)
+			Assert.assertTrue(rcDB.deleteReconfigurationRecord("dup" + i, 0));
+	}
+
+	private static DemandReport<Integer> demandReport(final String name,
+			int numRequests) throws UnknownHostException {
+		DemandProfile profile = new DemandProfile(name);
+		Request request = new Request() {
+			@Override
+			public IntegerPacketType getRequestType() {
+				return AppRequest.PacketType.DEFAULT_APP_REQUEST;
+			}
+
+			@Override
+			public String getServiceName() {
+				return name;
+			}
+		};
+		for (int i = 0; i < numRequests; i++)
+			profile.shouldReportDemandStats(request,
+					InetAddress.getByName("127.0.0.1"), null);
+		return new DemandReport<Integer>(0, name, 0, profile);
+	}
+
+	/**
+	 * Group-committed demand stat updates from concurrent reporters are all
+	 * durably stored, both when inserted and when updated.
+	 *
+	 * @throws InterruptedException
+	 * @throws JSONException
+	 */
+	@Test
+	public void test_GroupCommittedDemandStats() throws InterruptedException,
+			JSONException {
+		final int numNames = 2000;
+		for (final int round : new int[] { 1, 2 }) {
+			double rate = storm(numNames, i -> {
+				try {
+					rcDB.updateDemandStats(demandReport("demand" + i,
+							(i % 7) + round));
+				} catch (UnknownHostException e) {
+					e.printStackTrace();
+				}
+			});
+			System.out.print("[round " + round + " demand updates/s "
+					+ Util.df(rate) + "] ");
+			for (int i = 0; i < numNames; i++)
+				Assert.assertEquals((i % 7) + round, new DemandProfile(
+						new JSONObject(rcDB.getDemandStats("demand" + i)))
+						.getNumRequests(), 0);
+		}
+	}
+
+	/**
+	 * Batched demand stat updates from concurrent reporters are all durably
+	 * stored.
+	 *
+	 * @throws InterruptedException
+	 * @throws JSONException
+	 */
+	@Test
+	public void test_BatchedDemandStats() throws InterruptedException,
+			JSONException {
+		final int numBatches = 40, batchSize = 50;
+		double rate = storm(numBatches, i -> {
+			List<DemandReport<Integer>> batch = new ArrayList<DemandReport<Integer>>();
+			try {
+				for (int j = i * batchSize; j < (i + 1) * batchSize; j++)
+					batch.add(demandReport("batched" + j, (j % 7) + 1));
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+			rcDB.updateDemandStats(batch);
+		});
+		System.out.print("[batched demand updates/s "
+				+ Util.df(rate * batchSize) + "] ");
+		for (int j = 0; j < numBatches * batchSize; j++)
+			Assert.assertEquals((j % 7) + 1, new DemandProfile(new JSONObject(
+					rcDB.getDemandStats("batched" + j))).getNumRequests(), 0);
+	}
+
+	/**
+	 * Create-storm benchmark: NUM_NAMES creates issued by concurrent threads
+	 * followed by lock-free reads of all created records.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void test_CreateStorm() throws InterruptedException {
+		double createRate = storm(NUM_NAMES, i -> Assert.assertNotNull(rcDB
+				.createReconfigurationRecord(new ReconfigurationRecord<Integer>(
+						"storm" + i, 0, actives))));
+		final Set<String> missing = new HashSet<String>();
+		double readRate = storm(NUM_NAMES, i -> {
+			if (rcDB.getReconfigurationRecord("storm" + i) == null)
+				synchronized (missing) {
+					missing.add("storm" + i);
+				}
+		});
+		Assert.assertTrue(missing.toString(), missing.isEmpty());
+		System.out.print("[" + NUM_NAMES + " creates/s " + Util.df(createRate)
+				+ " reads/s " + Util.df(readRate) + "] ");
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Util.assertAssertionsEnabled();
+		Result result = JUnitCore.runClasses(SQLReconfiguratorDBTest.class);
+		for (Failure failure : result.getFailures())
+			System.out.println(failure.toString());
+	}
+}
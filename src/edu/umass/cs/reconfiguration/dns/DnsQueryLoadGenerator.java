@@ -0,0 +1,159 @@
+package edu.umass.cs.reconfiguration.dns;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A closed-loop DNS query load generator for testing {@link DnsReconfigurator}
+ * and traffic policies locally. Each thread uses its own UDP socket and keeps
+ * one type-A query outstanding at a time, cycling through the given names.
+ *
+ * Usage: DnsQueryLoadGenerator host port numThreads durationSeconds name...
+ */
+public class DnsQueryLoadGenerator {
+
+	private static final int TIMEOUT = 1000; // ms
+
+	private final InetSocketAddress server;
+	private final String[] names;
+	private final AtomicLong sent = new AtomicLong(0);
+	private final AtomicLong answered = new AtomicLong(0);
+	private final AtomicLong empty = new AtomicLong(0);
+	private final AtomicLong timedOut = new AtomicLong(0);
+	private final List<Long> latencies = Collections
+			.synchronizedList(new ArrayList<Long>());
+
+	DnsQueryLoadGenerator(InetSocketAddress server, String[] names) {
+		this.server = server;
+		this.names = names;
+	}
+
+	/**
+	 * @param id
+	 * @param name
+	 * @return Wire format of a recursive type-A query for {@code name}.
+	 */
+	static byte[] makeQuery(int id, String name) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// header: id, flags (recursion desired), 1 question, 0 records
+		out.write(id >> 8);
+		out.write(id);
+		out.write(0x01);
+		out.write(0x00);
+		byte[] counts = { 0, 1, 0, 0, 0, 0, 0, 0 };
+		out.write(counts, 0, counts.length);
+		for (String label : name.split("\\.")) {
+			byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+			out.write(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+		out.write(0);
+		// type A, class IN
+		byte[] typeClass = { 0, 1, 0, 1 };
+		out.write(typeClass, 0, typeClass.length);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param response
+	 * @param length
+	 * @return Number of answer records in {@code response}.
+	 */
+	static int getAnswerCount(byte[] response, int length) {
+		return length < 12 ? 0 : ((response[6] & 0xff) << 8)
+				| (response[7] & 0xff);
+	}
+
+	private static int getID(byte[] response) {
+		return ((response[0] & 0xff) << 8) | (response[1] & 0xff);
+	}
+
+	private void runClient(long endTime, int offset) {
+		byte[] buf = new byte[512];
+		try (DatagramSocket socket = new DatagramSocket()) {
+			socket.setSoTimeout(TIMEOUT);
+			for (int i = offset; System.currentTimeMillis() < endTime; i++) {
+				int id = i & 0xffff;
+				byte[] query = makeQuery(id, this.names[i % this.names.length]);
+				long t = System.nanoTime();
+				socket.send(new DatagramPacket(query, query.length,
+						this.server));
+				this.sent.incrementAndGet();
+				DatagramPacket response = new DatagramPacket(buf, buf.length);
+				try {
+					// skip stale responses to earlier timed out queries
+					do
+						socket.receive(response);
+					while (getID(buf) != id);
+				} catch (SocketTimeoutException e) {
+					this.timedOut.incrementAndGet();
+					continue;
+				}
+				this.latencies.add((System.nanoTime() - t) / 1000);
+				if (getAnswerCount(buf, response.getLength()) > 0)
+					this.answered.incrementAndGet();
+				else
+					this.empty.incrementAndGet();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	void run(int numThreads, long durationMillis) throws InterruptedException {
+		final long endTime = System.currentTimeMillis() + durationMillis;
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			final int offset = i;
+			(threads[i] = new Thread(() -> this.runClient(endTime, offset)))
+					.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+	}
+
+	public String toString() {
+		List<Long> sorted = new ArrayList<Long>(this.latencies);
+		Collections.sort(sorted);
+		return "sent=" + this.sent + " answered=" + this.answered + " empty="
+				+ this.empty + " timedout=" + this.timedOut
+				+ (sorted.isEmpty() ? "" : " latency(us) p50="
+						+ sorted.get(sorted.size() / 2) + " p99="
+						+ sorted.get((int) (sorted.size() * 0.99)));
+	}
+
+	/**
+	 * @param args
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (args.length < 5) {
+			System.err.println("Usage: "
+					+ DnsQueryLoadGenerator.class.getSimpleName()
+					+ " host port numThreads durationSeconds name...");
+			System.exit(1);
+		}
+		DnsQueryLoadGenerator generator = new DnsQueryLoadGenerator(
+				new InetSocketAddress(InetAddress.getByName(args[0]),
+						Integer.parseInt(args[1])), Arrays.copyOfRange(args,
+						4, args.length));
+		long duration = Long.parseLong(args[3]) * 1000;
+		generator.run(Integer.parseInt(args[2]), duration);
+		System.out.println(generator + " throughput="
+				+ (generator.sent.get() - generator.timedOut.get()) * 1000
+				/ duration + "/s");
+	}
+}
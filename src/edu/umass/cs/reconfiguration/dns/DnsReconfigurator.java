@@ -13,6 +13,9 @@ import java.util.logging.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import edu.umass.cs.gigapaxos.async.RequestCallbackFuture;
+import edu.umass.cs.gigapaxos.interfaces.Callback;
+import edu.umass.cs.gigapaxos.interfaces.Request;
 import edu.umass.cs.nio.JSONPacket;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.reconfiguration.interfaces.ReconfiguratorFunctions;
@@ -99,7 +102,7 @@ public class DnsReconfigurator {
                     }).option(ChannelOption.SO_BROADCAST, true);
 
             // need admin privilege to bind to port 53 
-            ChannelFuture future = bootstrap.bind(53).sync();           
+            ChannelFuture future = bootstrap.bind(Config.getGlobalInt(ReconfigurationConfig.RC.DNS_PORT)).sync();
             future.channel().closeFuture().sync();
             
             log.log(Level.FINE, "DNS server {0} bootup successfully", new Object[]{this});
@@ -213,9 +216,10 @@ public class DnsReconfigurator {
                 }
                  
                 Set<InetAddress> r = policy.getAddresses(result, query.sender().getAddress());
+                int ttl = policy.getTTL(defaultTTL);
                 
                 for(InetAddress address : r){
-                	DefaultDnsRawRecord queryAnswer = new DefaultDnsRawRecord(dnsQuestion.name(), DnsRecordType.A, defaultTTL,
+                	DefaultDnsRawRecord queryAnswer = new DefaultDnsRawRecord(dnsQuestion.name(), DnsRecordType.A, ttl,
                             Unpooled.wrappedBuffer(convertIpStringToByteArray(address.getHostAddress())));
                     response.addRecord(DnsSection.ANSWER, queryAnswer);
                 }
@@ -239,9 +243,38 @@ public class DnsReconfigurator {
     }
     
     /**
-     * @param args
+     * Without arguments, answers no queries. With arguments, answers every
+     * name with the given active replica IPs, which together with
+     * {@link DnsQueryLoadGenerator} allows testing traffic policies locally
+     * without reconfigurators.
+     * 
+     * @param args Active replica IPs.
+     * @throws UnknownHostException 
      */
-    public static void main(String[] args){
-    	new DnsReconfigurator(null);
+    public static void main(String[] args) throws UnknownHostException{
+    	if (args.length == 0) {
+    		new DnsReconfigurator(null);
+    		return;
+    	}
+    	final Set<InetSocketAddress> actives = new HashSet<InetSocketAddress>();
+    	for (String arg : args)
+    		actives.add(new InetSocketAddress(InetAddress.getByName(arg), 0));
+    	new DnsReconfigurator(new ReconfiguratorFunctions() {
+    		@Override
+    		public RequestCallbackFuture<ReconfiguratorRequest> sendRequest(
+    				ReconfiguratorRequest request,
+    				Callback<Request, ReconfiguratorRequest> callback) {
+    			ReconfiguratorRequest response = this.sendRequest(request);
+    			if (callback != null)
+    				callback.processResponse(response);
+    			return null;
+    		}
+
+    		@Override
+    		public ReconfiguratorRequest sendRequest(ReconfiguratorRequest request) {
+    			return request instanceof RequestActiveReplicas ? (ReconfiguratorRequest) ((RequestActiveReplicas) request)
+    					.setActives(new HashSet<InetSocketAddress>(actives)) : request;
+    		}
+    	});
     }
 }
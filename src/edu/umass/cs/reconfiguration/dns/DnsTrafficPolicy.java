@@ -18,5 +18,13 @@ public interface DnsTrafficPolicy {
 	 * @return a new set of addresses generated from original set of available addresses
 	 */
 	public Set<InetAddress> getAddresses(Set<InetAddress> addresses, InetAddress source);
+
+	/**
+	 * @param defaultTTL
+	 * @return TTL in seconds of the answers returned by this policy.
+	 */
+	public default int getTTL(int defaultTTL) {
+		return defaultTTL;
+	}
 	
 }
@@ -0,0 +1,222 @@
+package edu.umass.cs.reconfiguration.dns;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.umass.cs.gigapaxos.paxosutil.E2ELatencyAwareRedirector;
+import edu.umass.cs.nio.nioutils.RTTEstimator;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
+import edu.umass.cs.utils.Config;
+
+/**
+ * A traffic policy that answers each client with the active replicas that
+ * are nearest to it and not overloaded.
+ * <p>
+ * Proximity is taken from the closest servers reported by clients in the
+ * client's /24 prefix and recorded in {@link RTTEstimator}, if any, else from
+ * the IP prefix match length between the client and each replica. Load is a
+ * decaying count of the requests in the demand reports received from each
+ * replica, fed by reconfigurators via
+ * {@link #recordLoad(InetAddress, double, long)}. A replica's cost is
+ * its proximity cost plus {@link RC#DNS_LOAD_WEIGHT} times the fraction by
+ * which its load exceeds the mean load of the candidate replicas, and the
+ * {@link RC#DNS_NUM_ANSWERS} cheapest replicas are returned.
+ * <p>
+ * Answers are cached per client /24 prefix and replica set for
+ * {@link RC#DNS_POLICY_CACHE_TTL}, which also caps the DNS TTL.
+ */
+public class GeoLoadDnsTrafficPolicy implements DnsTrafficPolicy {
+
+	static {
+		ReconfigurationConfig.load();
+	}
+
+	private static final int MAX_CACHE_ENTRIES = 64 * 1024;
+
+	/* Proximity cost of a replica not in the client's closest list. Replicas
+	 * in the closest list cost their index in that list, so any such replica
+	 * is preferred over one known only by prefix match. */
+	private static final double UNKNOWN_PROXIMITY_COST = Config
+			.getGlobalInt(RC.CLOSEST_K);
+
+	// replica->decaying load; static as reconfigurators feed it
+	private static final ConcurrentHashMap<InetAddress, DecayingCount> loads = new ConcurrentHashMap<InetAddress, DecayingCount>();
+	private static final double LOAD_HALF_LIFE = Math.max(1,
+			Config.getGlobalLong(RC.DNS_LOAD_HALF_LIFE));
+
+	private static class DecayingCount {
+		private double count = 0;
+		private long lastUpdated = System.currentTimeMillis();
+
+		synchronized double get(long now) {
+			if (now > this.lastUpdated) {
+				this.count *= Math.pow(0.5, (now - this.lastUpdated)
+						/ LOAD_HALF_LIFE);
+				this.lastUpdated = now;
+			}
+			return this.count;
+		}
+
+		synchronized void add(long now, double value) {
+			this.count = this.get(now) + value;
+		}
+	}
+
+	private static class CacheKey {
+		final int prefix;
+		final Set<InetAddress> addresses;
+
+		CacheKey(int prefix, Set<InetAddress> addresses) {
+			this.prefix = prefix;
+			this.addresses = addresses;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.prefix + this.addresses.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof CacheKey && ((CacheKey) o).prefix == this.prefix
+					&& ((CacheKey) o).addresses.equals(this.addresses);
+		}
+	}
+
+	private static class CachedAnswer {
+		final Set<InetAddress> answer;
+		final long expiry;
+
+		CachedAnswer(Set<InetAddress> answer, long expiry) {
+			this.answer = answer;
+			this.expiry = expiry;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private final LinkedHashMap<CacheKey, CachedAnswer> cache = new LinkedHashMap<CacheKey, CachedAnswer>() {
+		protected boolean removeEldestEntry(
+				Map.Entry<CacheKey, CachedAnswer> eldest) {
+			return size() > MAX_CACHE_ENTRIES;
+		}
+	};
+
+	private final int numAnswers;
+	private final long cacheTTL;
+	private final double loadWeight;
+
+	/**
+	 * Needed for instantiation by reflection in {@link DnsReconfigurator}.
+	 */
+	public GeoLoadDnsTrafficPolicy() {
+		this(Config.getGlobalInt(RC.DNS_NUM_ANSWERS), Config
+				.getGlobalLong(RC.DNS_POLICY_CACHE_TTL), Config
+				.getGlobalDouble(RC.DNS_LOAD_WEIGHT));
+	}
+
+	GeoLoadDnsTrafficPolicy(int numAnswers, long cacheTTL, double loadWeight) {
+		this.numAnswers = Math.max(1, numAnswers);
+		this.cacheTTL = cacheTTL;
+		this.loadWeight = loadWeight;
+	}
+
+	/**
+	 * Records {@code load}, i.e., the number of requests in a demand report,
+	 * from {@code replica} at time {@code now}.
+	 * 
+	 * @param replica
+	 * @param load
+	 * @param now
+	 */
+	public static void recordLoad(InetAddress replica, double load, long now) {
+		DecayingCount count = loads.get(replica);
+		if (count == null) {
+			loads.putIfAbsent(replica, new DecayingCount());
+			count = loads.get(replica);
+		}
+		count.add(now, load);
+	}
+
+	static void clearLoads() {
+		loads.clear();
+	}
+
+	@Override
+	public Set<InetAddress> getAddresses(Set<InetAddress> addresses,
+			InetAddress source) {
+		if (addresses == null || addresses.size() <= 1 || source == null
+				|| source.getAddress().length != 4)
+			return addresses;
+		long now = System.currentTimeMillis();
+		CacheKey key = new CacheKey(RTTEstimator.addrToPrefixInt(source),
+				addresses);
+		synchronized (this.cache) {
+			CachedAnswer cached = this.cache.get(key);
+			if (cached != null && cached.expiry > now)
+				return cached.answer;
+		}
+		Set<InetAddress> answer = this.rank(addresses, source, now);
+		synchronized (this.cache) {
+			this.cache.put(key, new CachedAnswer(answer, now + this.cacheTTL));
+		}
+		return answer;
+	}
+
+	@Override
+	public int getTTL(int defaultTTL) {
+		return (int) Math.max(1,
+				Math.min(defaultTTL, this.cacheTTL / 1000));
+	}
+
+	private Set<InetAddress> rank(Set<InetAddress> addresses,
+			InetAddress source, long now) {
+		List<InetAddress> closest = new ArrayList<InetAddress>();
+		Set<InetAddress> closestSet = RTTEstimator.getClosest(source);
+		if (closestSet != null)
+			closest.addAll(closestSet);
+
+		double totalLoad = 0;
+		Map<InetAddress, Double> load = new HashMap<InetAddress, Double>();
+		for (InetAddress address : addresses) {
+			DecayingCount count = loads.get(address);
+			double l = count != null ? count.get(now) : 0;
+			load.put(address, l);
+			totalLoad += l;
+		}
+		double meanLoad = totalLoad / addresses.size();
+
+		final Map<InetAddress, Double> cost = new HashMap<InetAddress, Double>();
+		for (InetAddress address : addresses) {
+			int index = closest.indexOf(address);
+			double proximity = index >= 0 ? index
+					: address.getAddress().length != 4 ? UNKNOWN_PROXIMITY_COST + 1
+							: UNKNOWN_PROXIMITY_COST
+									+ (32 - E2ELatencyAwareRedirector
+											.prefixMatch(source, address)) / 32.0;
+			double overload = meanLoad > 0 ? Math.max(0, load.get(address)
+					/ meanLoad - 1) : 0;
+			cost.put(address, proximity + this.loadWeight * overload);
+		}
+		List<InetAddress> ranked = new ArrayList<InetAddress>(addresses);
+		// shuffle so that ties are broken randomly
+		Collections.shuffle(ranked);
+		Collections.sort(ranked, new Comparator<InetAddress>() {
+			@Override
+			public int compare(InetAddress a1, InetAddress a2) {
+				return Double.compare(cost.get(a1), cost.get(a2));
+			}
+		});
+		return new LinkedHashSet<InetAddress>(ranked.subList(0,
+				Math.min(this.numAnswers, ranked.size())));
+	}
+}
@@ -0,0 +1,142 @@
+package edu.umass.cs.reconfiguration.dns;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.nio.nioutils.RTTEstimator;
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * GeoLoadDnsTrafficPolicy test class.
+ */
+public class GeoLoadDnsTrafficPolicyTest extends DefaultTest {
+
+	private static InetAddress ip(String ip) throws UnknownHostException {
+		return InetAddress.getByName(ip);
+	}
+
+	private static Set<InetAddress> ips(String... ips)
+			throws UnknownHostException {
+		Set<InetAddress> set = new HashSet<InetAddress>();
+		for (String ip : ips)
+			set.add(ip(ip));
+		return set;
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void clear() {
+		GeoLoadDnsTrafficPolicy.clearLoads();
+	}
+
+	/**
+	 * Without other information, the replica with the longest prefix match
+	 * with the client is chosen.
+	 *
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void test_PrefixProximity() throws UnknownHostException {
+		GeoLoadDnsTrafficPolicy policy = new GeoLoadDnsTrafficPolicy(1, 0, 1);
+		Set<InetAddress> actives = ips("10.1.2.3", "128.119.40.7", "54.2.3.4");
+		Assert.assertEquals(ips("128.119.40.7"),
+				policy.getAddresses(actives, ip("128.119.245.38")));
+		Assert.assertEquals(ips("10.1.2.3"),
+				policy.getAddresses(actives, ip("10.1.9.9")));
+		Assert.assertEquals(2,
+				new GeoLoadDnsTrafficPolicy(2, 0, 1).getAddresses(actives,
+						ip("10.1.9.9")).size());
+	}
+
+	/**
+	 * Closest servers reported by clients in the same /24 take precedence
+	 * over prefix matches.
+	 *
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void test_ClosestReported() throws UnknownHostException {
+		GeoLoadDnsTrafficPolicy policy = new GeoLoadDnsTrafficPolicy(1, 0, 1);
+		Set<InetAddress> actives = ips("10.1.2.3", "128.119.40.7", "54.2.3.4");
+		Map<InetAddress, Long> closest = new LinkedHashMap<InetAddress, Long>();
+		closest.put(ip("54.2.3.4"), 10L);
+		closest.put(ip("128.119.40.7"), 20L);
+		RTTEstimator.closest(new InetSocketAddress("128.119.77.1", 1000),
+				closest);
+		Assert.assertEquals(ips("54.2.3.4"),
+				policy.getAddresses(actives, ip("128.119.77.200")));
+	}
+
+	/**
+	 * A nearby replica loaded far above the mean loses to a farther one, but
+	 * not if load is ignored.
+	 *
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void test_LoadSteering() throws UnknownHostException {
+		Set<InetAddress> actives = ips("10.1.2.3", "128.119.40.7");
+		long now = System.currentTimeMillis();
+		GeoLoadDnsTrafficPolicy.recordLoad(ip("128.119.40.7"), 100, now);
+		GeoLoadDnsTrafficPolicy.recordLoad(ip("10.1.2.3"), 1, now);
+		Assert.assertEquals(ips("10.1.2.3"), new GeoLoadDnsTrafficPolicy(1,
+				0, 1).getAddresses(actives, ip("128.119.245.38")));
+		Assert.assertEquals(ips("128.119.40.7"), new GeoLoadDnsTrafficPolicy(
+				1, 0, 0).getAddresses(actives, ip("128.119.245.38")));
+	}
+
+	/**
+	 * Answers are cached per client /24 until the cache TTL expires, which
+	 * also caps the DNS TTL.
+	 *
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void test_CachePerPrefix() throws UnknownHostException {
+		GeoLoadDnsTrafficPolicy policy = new GeoLoadDnsTrafficPolicy(1, 60000,
+				1);
+		Set<InetAddress> actives = ips("10.1.2.3", "128.119.40.7");
+		Set<InetAddress> answer = policy.getAddresses(actives,
+				ip("128.119.245.38"));
+		Assert.assertEquals(ips("128.119.40.7"), answer);
+		// load shifts, but the cached answer for the same /24 stays
+		GeoLoadDnsTrafficPolicy.recordLoad(ip("128.119.40.7"), 100,
+				System.currentTimeMillis());
+		Assert.assertSame(answer,
+				policy.getAddresses(new HashSet<InetAddress>(actives),
+						ip("128.119.245.99")));
+		// a different /24 is answered afresh
+		Assert.assertEquals(ips("10.1.2.3"),
+				policy.getAddresses(actives, ip("128.119.246.38")));
+		Assert.assertEquals(30, policy.getTTL(30));
+		Assert.assertEquals(5, new GeoLoadDnsTrafficPolicy(1, 5000, 1)
+				.getTTL(30));
+	}
+
+	/**
+	 * Queries built by the load generator have the expected wire format.
+	 */
+	@Test
+	public void test_QueryFormat() {
+		byte[] query = DnsQueryLoadGenerator.makeQuery(0x1234, "a.xdn.io");
+		Assert.assertArrayEquals(new byte[] { 0x12, 0x34, 1, 0, 0, 1, 0, 0,
+				0, 0, 0, 0, 1, 'a', 3, 'x', 'd', 'n', 2, 'i', 'o', 0, 0, 1, 0,
+				1 }, query);
+		Assert.assertEquals(0, DnsQueryLoadGenerator.getAnswerCount(query,
+				query.length));
+		Assert.assertEquals(0, DnsQueryLoadGenerator.getAnswerCount(
+				Arrays.copyOf(query, 4), 4));
+	}
+}
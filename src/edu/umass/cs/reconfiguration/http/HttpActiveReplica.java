@@ -2,9 +2,14 @@ package edu.umass.cs.reconfiguration.http;
 
 import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.security.cert.CertificateException;
@@ -17,10 +22,14 @@ import java.util.logging.Logger;
 
 import javax.net.ssl.SSLException;
 
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
 import edu.umass.cs.primarybackup.packets.ChangePrimaryPacket;
 import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
+import edu.umass.cs.xdn.request.XDNHttpBody;
 import edu.umass.cs.xdn.request.XDNHttpRequest;
 import edu.umass.cs.xdn.request.XDNRequest;
+import edu.umass.cs.xdn.service.ServiceResponseCache;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.*;
 import org.json.JSONException;
@@ -31,6 +40,7 @@ import edu.umass.cs.gigapaxos.interfaces.Request;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.reconfiguration.interfaces.ActiveReplicaFunctions;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReplicableClientRequest;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ServiceAdmissionController;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -48,6 +58,7 @@ import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
 import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
 
 /**
  * An HTTP front-end for an active replica that supports interaction
@@ -94,6 +105,12 @@ public class HttpActiveReplica {
 
     public final static String XDN_HOST_DOMAIN = "xdnapp.com";
 
+    // limit for requests other than XDN requests, whose bodies are not aggregated
+    private final static int MAX_AGGREGATED_CONTENT_LENGTH = 1048576;
+
+    // path of the request traces, e.g., GET /traces?n=20 for the 20 most recent traces
+    public final static String TRACES_PATH = "/traces";
+
     private final EventLoopGroup bossGroup;
     private final EventLoopGroup workerGroup;
 
@@ -213,19 +230,74 @@ public class HttpActiveReplica {
 
             p.addLast(new HttpRequestDecoder());
 
-            // Uncomment if you don't want to handle HttpChunks.
-            p.addLast(new HttpObjectAggregator(1048576));
-
             p.addLast(new HttpResponseEncoder());
 
             p.addLast(new CorsHandler(corsConfig));
 
+            // XDN requests are streamed, so they are handled before aggregation
+            p.addLast(new XDNHttpRequestHandler(arFunctions));
+
+            // Uncomment if you don't want to handle HttpChunks.
+            p.addLast(new HttpObjectAggregator(MAX_AGGREGATED_CONTENT_LENGTH));
+
+            p.addLast(new RequestTraceHandler());
+
             p.addLast(new HttpActiveReplicaHandler(arFunctions, channel.remoteAddress()));
 
         }
 
     }
 
+    /**
+     * Answers GET {@link #TRACES_PATH} with the per-stage latency histograms and
+     * the most recent traces of {@link RequestTracer} at this node, in JSON, and
+     * passes all other requests on.
+     */
+    private static class RequestTraceHandler extends ChannelInboundHandlerAdapter {
+
+        private static final int DEFAULT_NUM_TRACES = 10;
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (!(msg instanceof FullHttpRequest request) ||
+                    !request.method().equals(HttpMethod.GET)) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            QueryStringDecoder decoder = new QueryStringDecoder(request.uri());
+            if (!decoder.path().equals(TRACES_PATH)) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            try {
+                int numTraces = DEFAULT_NUM_TRACES;
+                List<String> n = decoder.parameters().get("n");
+                if (n != null && !n.isEmpty()) {
+                    try {
+                        numTraces = Integer.parseInt(n.get(0));
+                    } catch (NumberFormatException e) {
+                        XDNHttpRequestHandler.sendBadRequestResponse(
+                                "Invalid number of traces: " + n.get(0) + "\n", ctx,
+                                HttpUtil.isKeepAlive(request));
+                        return;
+                    }
+                }
+                FullHttpResponse response = new DefaultFullHttpResponse(
+                        HTTP_1_1, OK,
+                        Unpooled.copiedBuffer(RequestTracer.toJSONObject(numTraces).toString(),
+                                CharsetUtil.UTF_8));
+                response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json");
+                response.headers().setInt(
+                        HttpHeaderNames.CONTENT_LENGTH,
+                        response.content().readableBytes());
+                XDNHttpRequestHandler.writeHttpResponse(response, ctx,
+                        HttpUtil.isKeepAlive(request));
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+    }
+
     private static JSONObject getJSONObjectFromHttpContent(HttpContent httpContent) {
         ByteBuf content = httpContent.content();
         byte[] bytes;
@@ -323,7 +395,6 @@ public class HttpActiveReplica {
         final InetSocketAddress senderAddr;
 
         private HttpRequest request;
-        private HttpContent requestContent;
         /**
          * Buffer that stores the response content
          */
@@ -342,39 +413,6 @@ public class HttpActiveReplica {
         @Override
         protected void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
 
-            // redirect handling to xdn, if either of these two conditions are met:
-            // (1) the HttpRequest contains non-empty XDN header, or
-            // (2) the HttpRequest contains Host header ending in "xdnapp.com".
-            // Note that "Host" header is required since HTTP 1.1
-            if (msg instanceof HttpRequest) {
-                boolean isXDNRequest = false;
-
-                System.out.println("receiving an HTTP request ...");
-
-                // handle the first condition: contains XDN header
-                HttpRequest httpRequest = (HttpRequest) msg;
-                String xdnHeader = httpRequest.headers().get("XDN");
-                if (xdnHeader != null && xdnHeader.length() > 0) {
-                    isXDNRequest = true;
-                }
-
-                // handle the second condition: Host ending with "xdnapp.com"
-                String requestHost = httpRequest.headers().get(HttpHeaderNames.HOST);
-                if (requestHost != null) {
-                    String[] hostPort = requestHost.split(":");
-                    String host = hostPort[0];
-                    if (host.endsWith(XDN_HOST_DOMAIN)) {
-                        isXDNRequest = true;
-                    }
-                }
-
-                if (isXDNRequest) {
-                    handleReceivedXDNRequest(ctx, msg);
-                    return;
-                }
-            }
-
-
             /**
              * Request for GigaPaxos to coordinate
              */
@@ -502,26 +540,181 @@ public class HttpActiveReplica {
 
         }
 
+        private boolean writeResponse(HttpObject currentObj, ChannelHandlerContext ctx) {
+            // Decide whether to close the connection or not.
+            boolean keepAlive = HttpUtil.isKeepAlive(request);
+            // Build the response object.
+            FullHttpResponse response = new DefaultFullHttpResponse(
+                    HTTP_1_1, currentObj.decoderResult().isSuccess() ? OK : BAD_REQUEST,
+                    Unpooled.copiedBuffer(buf.toString(), CharsetUtil.UTF_8));
+
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+
+            if (keepAlive) {
+                // Add 'Content-Length' header only for a keep-alive connection.
+                response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+                // Add keep alive header as per:
+                // - http://www.w3.org/Protocols/HTTP/1.1/draft-ietf-http-v11-spec-01.html#Connection
+                response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            }
+
+            // Encode the cookie.
+            String cookieString = request.headers().get(HttpHeaderNames.COOKIE);
+            if (cookieString != null) {
+                Set<Cookie> cookies = ServerCookieDecoder.STRICT.decode(cookieString);
+                if (!cookies.isEmpty()) {
+                    // Reset the cookies if necessary.
+                    for (Cookie cookie : cookies) {
+                        response.headers().add(HttpHeaderNames.SET_COOKIE, ServerCookieEncoder.STRICT.encode(cookie));
+                    }
+                }
+            } else {
+                // Browser sent no cookie.  Add some.
+                response.headers().add(HttpHeaderNames.SET_COOKIE, ServerCookieEncoder.STRICT.encode("key1", "value1"));
+                response.headers().add(HttpHeaderNames.SET_COOKIE, ServerCookieEncoder.STRICT.encode("key2", "value2"));
+            }
+
+            // Write the response.
+            ctx.write(response);
+
+            return keepAlive;
+        }
+
+        private static void send100Continue(ChannelHandlerContext ctx) {
+            FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, CONTINUE, Unpooled.EMPTY_BUFFER);
+            ctx.write(response);
+        }
+    }
+
+    /**
+     * Handles requests to XDN services and passes all other messages on to be
+     * aggregated for {@link HttpActiveReplicaHandler}. Bodies of XDN requests are
+     * spooled as they arrive by {@link XDNHttpBody.Spooler} instead of being
+     * aggregated in memory, so their size is limited only by the maximum request
+     * size of the service, see {@link XDNHttpRequest#getMaxRequestSize(String)}.
+     * Requests of a service over its admission limits are rejected with 429 or
+     * 503 as soon as their headers arrive, see {@link ServiceAdmissionController}.
+     */
+    private static class XDNHttpRequestHandler extends ChannelInboundHandlerAdapter {
+
+        private final ActiveReplicaFunctions arFunctions;
+
+        // the XDN request whose content is being received, if any
+        private HttpRequest request;
+        private String serviceName;
+        private long maxRequestSize;
+        // null once the request is rejected
+        private XDNHttpBody.Spooler spooler;
+        // admission of the request, released once it is responded to
+        private ServiceAdmissionController.Permit permit;
+        // when the headers of the request were received, for RequestTracer
+        private long receivedTime;
+
+        XDNHttpRequestHandler(ActiveReplicaFunctions arFunctions) {
+            this.arFunctions = arFunctions;
+        }
+
+        // An HttpRequest is handled by XDN if either of these two conditions are met:
+        // (1) the HttpRequest contains non-empty XDN header, or
+        // (2) the HttpRequest contains Host header ending in "xdnapp.com".
+        // Note that "Host" header is required since HTTP 1.1
+        private static boolean isXDNRequest(HttpRequest httpRequest) {
+            // handle the first condition: contains XDN header
+            String xdnHeader = httpRequest.headers().get("XDN");
+            if (xdnHeader != null && xdnHeader.length() > 0) {
+                return true;
+            }
+
+            // handle the second condition: Host ending with "xdnapp.com"
+            String requestHost = httpRequest.headers().get(HttpHeaderNames.HOST);
+            if (requestHost != null) {
+                String[] hostPort = requestHost.split(":");
+                String host = hostPort[0];
+                return host.endsWith(XDN_HOST_DOMAIN);
+            }
+            return false;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof HttpRequest httpRequest) {
+                releaseRequest();
+                this.request = isXDNRequest(httpRequest) ? httpRequest : null;
+            }
+            if (this.request == null) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            try {
+                handleReceivedXDNRequest(ctx, msg);
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            releaseRequest();
+            super.channelInactive(ctx);
+        }
+
+        // closes the spooler and releases the permit of the current request, if any
+        private void releaseRequest() throws IOException {
+            if (this.permit != null) {
+                this.permit.release();
+                this.permit = null;
+            }
+            if (this.spooler != null) {
+                this.spooler.close();
+                this.spooler = null;
+            }
+        }
+
         private void handleReceivedXDNRequest(ChannelHandlerContext ctx, Object msg) throws Exception {
 
             if (msg instanceof HttpRequest) {
-                this.request = (HttpRequest) msg;
-                if (HttpUtil.is100ContinueExpected((HttpRequest) msg)) {
-                    send100Continue(ctx);
+                this.receivedTime = System.nanoTime();
+                this.serviceName = XDNHttpRequest.inferServiceName(this.request);
+                this.maxRequestSize = this.serviceName != null ?
+                        XDNHttpRequest.getMaxRequestSize(this.serviceName) :
+                        XDNHttpRequest.getDefaultMaxRequestSize();
+                if (HttpUtil.getContentLength(this.request, -1L) > this.maxRequestSize) {
+                    sendRequestTooLargeResponse(this.maxRequestSize, ctx);
+                    return;
                 }
+                // reject early, before receiving the content, if the service is over its limits
+                ServiceAdmissionController.Permit permit =
+                        ServiceAdmissionController.tryAdmit(this.serviceName);
+                if (!permit.isAdmitted()) {
+                    sendOverloadedResponse(permit.getDecision(), ctx,
+                            HttpUtil.isKeepAlive(this.request));
+                    return;
+                }
+                this.permit = permit;
+                if (HttpUtil.is100ContinueExpected(this.request)) {
+                    HttpActiveReplicaHandler.send100Continue(ctx);
+                }
+                this.spooler = new XDNHttpBody.Spooler();
             }
 
-            if (msg instanceof HttpContent) {
-                this.requestContent = (HttpContent) msg;
+            // ignore the rest of a rejected request
+            if (!(msg instanceof HttpContent content) || this.spooler == null) {
+                return;
+            }
+
+            this.spooler.write(content.content().nioBuffers());
+            if (this.spooler.length() > this.maxRequestSize) {
+                releaseRequest();
+                sendRequestTooLargeResponse(this.maxRequestSize, ctx);
+                return;
             }
 
             if (msg instanceof LastHttpContent) {
-                assert this.request != null;
                 boolean isKeepAlive = HttpUtil.isKeepAlive(this.request);
-                String serviceName = XDNHttpRequest.inferServiceName(this.request);
 
                 // return http bad request if service name is not available
                 if (serviceName == null || serviceName.equals("")) {
+                    releaseRequest();
                     sendBadRequestResponse(
                             "Unspecified service name." +
                                     "This can be cause because of a wrong Host or empty XDN header",
@@ -533,19 +726,39 @@ public class HttpActiveReplica {
                 // FIXME: need to cleanly handle coordinator request
                 if (this.request.headers().get("coordinator-request") != null &&
                         this.request.headers().get("node-id") != null) {
+                    releaseRequest();
                     String nodeID = this.request.headers().get("node-id");
                     ChangePrimaryPacket p = new ChangePrimaryPacket(serviceName, nodeID);
                     handleCoordinatorRequest(p, ctx);
                     return;
                 }
 
-                XDNHttpRequest httpRequest = new XDNHttpRequest(
-                        serviceName,
-                        this.request,
-                        this.requestContent);
+                // answer from the response cache of the service, if enabled
+                long startTime = System.nanoTime();
+                ServiceResponseCache cache = ServiceResponseCache.get(serviceName);
+                HttpRequest request = this.request;
+                ServiceResponseCache.CachedResponse cached = cache == null ? null :
+                        cache.get(request.method().name(), request.uri(), request.headers()::get);
+                if (cached != null) {
+                    releaseRequest();
+                    writeHttpResponse(createCachedHttpResponse(cached, request), ctx, isKeepAlive);
+                    DelayProfiler.updateDelayNano("xdn_cache_hit", startTime);
+                    return;
+                }
 
-                // prepare the callback for this http request
-                XDNHttpExecutedCallback callback = new XDNHttpExecutedCallback(httpRequest, ctx);
+                XDNHttpRequest httpRequest = this.spooler.isSpooled() ?
+                        new XDNHttpRequest(serviceName, this.request, this.spooler.getBody()) :
+                        new XDNHttpRequest(serviceName, this.request, new DefaultHttpContent(
+                                Unpooled.wrappedBuffer(this.spooler.getContent())));
+                RequestTracer.record(httpRequest.getRequestID(),
+                        RequestTracer.Stage.HTTP_RECEIVED, this.receivedTime);
+
+                // prepare the callback for this http request, which releases the permit
+                XDNHttpExecutedCallback callback = new XDNHttpExecutedCallback(httpRequest, ctx,
+                        this.permit,
+                        cache != null && request.method().equals(HttpMethod.GET) ? startTime : 0);
+                this.permit = null;
+                releaseRequest();
 
                 // create Gigapaxos' request, it is important to explicitly set the clientAddress,
                 // otherwise, down the pipeline, the RequestPacket's equals method will return false
@@ -559,7 +772,9 @@ public class HttpActiveReplica {
 
                 // forward http request to XDN App, which eventually will forward it to the service.
                 // Note that response later will be written inside the callback, via ctx.
-                arFunctions.handRequestToAppForHttp(gpRequest, callback);
+                if (!arFunctions.handRequestToAppForHttp(gpRequest, callback)) {
+                    callback.permit().release();
+                }
             }
         }
 
@@ -649,52 +864,68 @@ public class HttpActiveReplica {
             });
         }
 
-        private boolean writeResponse(HttpObject currentObj, ChannelHandlerContext ctx) {
-            // Decide whether to close the connection or not.
-            boolean keepAlive = HttpUtil.isKeepAlive(request);
-            // Build the response object.
+        // the connection is closed as the rest of the body would have to be read
+        private static void sendRequestTooLargeResponse(long maxRequestSize, ChannelHandlerContext ctx) {
             FullHttpResponse response = new DefaultFullHttpResponse(
-                    HTTP_1_1, currentObj.decoderResult().isSuccess() ? OK : BAD_REQUEST,
-                    Unpooled.copiedBuffer(buf.toString(), CharsetUtil.UTF_8));
+                    HTTP_1_1, REQUEST_ENTITY_TOO_LARGE,
+                    Unpooled.copiedBuffer("Request body exceeds the limit of " +
+                            maxRequestSize + " bytes for this service\n", CharsetUtil.UTF_8));
+            response.headers().setInt(
+                    HttpHeaderNames.CONTENT_LENGTH,
+                    response.content().readableBytes());
+            response.headers().set(
+                    HttpHeaderNames.CONNECTION,
+                    HttpHeaderValues.CLOSE);
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
 
+        // the rest of the content, if any, is ignored so the connection can be kept alive
+        private static void sendOverloadedResponse(ServiceAdmissionController.Decision decision,
+                                                   ChannelHandlerContext ctx, boolean isKeepAlive) {
+            boolean isRateLimited = decision == ServiceAdmissionController.Decision.RATE_LIMITED;
+            FullHttpResponse response = new DefaultFullHttpResponse(
+                    HTTP_1_1, isRateLimited ? TOO_MANY_REQUESTS : SERVICE_UNAVAILABLE,
+                    Unpooled.copiedBuffer((isRateLimited ?
+                            "Request rate exceeds the limit of this service\n" :
+                            "Too many outstanding requests for this service\n"),
+                            CharsetUtil.UTF_8));
             response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+            response.headers().setInt(
+                    HttpHeaderNames.CONTENT_LENGTH,
+                    response.content().readableBytes());
+            response.headers().setInt(HttpHeaderNames.RETRY_AFTER, 1);
+            writeHttpResponse(response, ctx, isKeepAlive);
+        }
 
-            if (keepAlive) {
-                // Add 'Content-Length' header only for a keep-alive connection.
-                response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
-                // Add keep alive header as per:
-                // - http://www.w3.org/Protocols/HTTP/1.1/draft-ietf-http-v11-spec-01.html#Connection
-                response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        private static HttpResponse createCachedHttpResponse(
+                ServiceResponseCache.CachedResponse cached, HttpRequest request) {
+            if (cached.isNotModified(request.headers().get(HttpHeaderNames.IF_NONE_MATCH))) {
+                HttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, NOT_MODIFIED);
+                response.headers().set(HttpHeaderNames.ETAG, cached.etag);
+                return response;
             }
-
-            // Encode the cookie.
-            String cookieString = request.headers().get(HttpHeaderNames.COOKIE);
-            if (cookieString != null) {
-                Set<Cookie> cookies = ServerCookieDecoder.STRICT.decode(cookieString);
-                if (!cookies.isEmpty()) {
-                    // Reset the cookies if necessary.
-                    for (Cookie cookie : cookies) {
-                        response.headers().add(HttpHeaderNames.SET_COOKIE, ServerCookieEncoder.STRICT.encode(cookie));
-                    }
+            HttpHeaders headers = new DefaultHttpHeaders();
+            for (Map.Entry<String, String> header : cached.headers) {
+                // hop-by-hop headers of the container response are not repeated
+                if (header.getKey().equalsIgnoreCase(HttpHeaderNames.CONNECTION.toString()) ||
+                        header.getKey().equalsIgnoreCase(HttpHeaderNames.TRANSFER_ENCODING.toString())) {
+                    continue;
                 }
-            } else {
-                // Browser sent no cookie.  Add some.
-                response.headers().add(HttpHeaderNames.SET_COOKIE, ServerCookieEncoder.STRICT.encode("key1", "value1"));
-                response.headers().add(HttpHeaderNames.SET_COOKIE, ServerCookieEncoder.STRICT.encode("key2", "value2"));
+                headers.add(header.getKey(), header.getValue());
             }
-
-            // Write the response.
-            ctx.write(response);
-
-            return keepAlive;
-        }
-
-        private static void send100Continue(ChannelHandlerContext ctx) {
-            FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, CONTINUE, Unpooled.EMPTY_BUFFER);
-            ctx.write(response);
+            headers.setInt(HttpHeaderNames.CONTENT_LENGTH, cached.body.length);
+            return new DefaultFullHttpResponse(
+                    HTTP_1_1,
+                    HttpResponseStatus.valueOf(cached.status),
+                    Unpooled.wrappedBuffer(cached.body),
+                    headers,
+                    new DefaultHttpHeaders());
         }
 
-        private record XDNHttpExecutedCallback(XDNHttpRequest request, ChannelHandlerContext ctx)
+        // startTime is 0 unless the request missed the response cache
+        private record XDNHttpExecutedCallback(XDNHttpRequest request, ChannelHandlerContext ctx,
+                                               ServiceAdmissionController.Permit permit,
+                                               long startTime)
                 implements ExecutedCallback {
             @Override
             public void executed(Request executedRequest, boolean handled) {
@@ -704,6 +935,7 @@ public class HttpActiveReplica {
                             "), it must be an XDNHttpRequest.";
                     throw new RuntimeException(exceptionMessage);
                 }
+                permit.release();
 
                 HttpResponse httpResponse = xdnRequest.getHttpResponse();
                 boolean isKeepAlive = HttpUtil.isKeepAlive(request.getHttpRequest());
@@ -711,6 +943,10 @@ public class HttpActiveReplica {
                     isKeepAlive = isKeepAlive && HttpUtil.isKeepAlive(httpResponse);
                 }
                 writeHttpResponse(httpResponse, ctx, isKeepAlive);
+                RequestTracer.record(request.getRequestID(), RequestTracer.Stage.RESPONSE_WRITTEN);
+                if (startTime != 0) {
+                    DelayProfiler.updateDelayNano("xdn_cache_miss", startTime);
+                }
             }
         }
     }
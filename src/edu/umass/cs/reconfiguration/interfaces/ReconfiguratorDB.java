@@ -18,6 +18,7 @@
 package edu.umass.cs.reconfiguration.interfaces;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -79,6 +80,15 @@ public interface ReconfiguratorDB<NodeIDType> {
 	 */
 	public boolean updateDemandStats(DemandReport<NodeIDType> report);
 
+	/**
+	 * Update demand statistics for many names, preferably in a single
+	 * transaction.
+	 * 
+	 * @param reports
+	 * @return True if updated successfully.
+	 */
+	public boolean updateDemandStats(List<DemandReport<NodeIDType>> reports);
+
 	/**
 	 * @param name
 	 * @return Demand statistics as JSON string.
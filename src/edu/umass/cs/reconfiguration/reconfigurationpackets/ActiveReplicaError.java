@@ -22,7 +22,7 @@ import edu.umass.cs.nio.interfaces.Stringifiable;
  *         .
  *
  */
-public class ActiveReplicaError extends ClientReconfigurationPacket {
+public final class ActiveReplicaError extends ClientReconfigurationPacket {
 
 	private static enum Keys {
 		REQUEST_ID, ERROR_CODE
@@ -46,6 +46,21 @@ public class ActiveReplicaError extends ClientReconfigurationPacket {
 		this.code = ResponseCodes.ACTIVE_REPLICA_EXCEPTION;
 	}
 
+	/**
+	 * @param initiator
+	 * @param name
+	 * @param requestID
+	 * @param code
+	 */
+	public ActiveReplicaError(InetSocketAddress initiator, String name,
+			long requestID, ResponseCodes code) {
+		super(initiator, ReconfigurationPacket.PacketType.ACTIVE_REPLICA_ERROR,
+				name, 0);
+		this.requestID = requestID;
+		this.makeResponse();
+		this.code = code;
+	}
+
 	/**
 	 * @param name
 	 * @param requestID
@@ -100,6 +115,13 @@ public class ActiveReplicaError extends ClientReconfigurationPacket {
 		return this.requestID;
 	}
 
+	/**
+	 * @return Error code.
+	 */
+	public ResponseCodes getErrorCode() {
+		return this.code;
+	}
+
 	@Override
 	public String getSummary() {
 		return this.code + ":" + super.getSummary() + ":" + ActiveReplicaError.this.requestID;
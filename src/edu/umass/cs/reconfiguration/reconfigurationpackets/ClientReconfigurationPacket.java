@@ -84,6 +84,14 @@ public abstract class ClientReconfigurationPacket extends
 		 * requests will be silently dropped.
 		 */
 		MALFORMED_REQUEST,
+
+		/**
+		 * If an active replica rejects a request because the service is over
+		 * its admission limits at that replica, see
+		 * {@link edu.umass.cs.reconfiguration.reconfigurationutils.ServiceAdmissionController}.
+		 * Clients should back off instead of retrying elsewhere right away.
+		 */
+		SERVICE_OVERLOADED,
 		
 		// Client-side exceptions below.
 		
@@ -0,0 +1,106 @@
+package edu.umass.cs.reconfiguration.reconfigurationpackets;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.nio.interfaces.Stringifiable;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
+import edu.umass.cs.reconfiguration.interfaces.ReplicableRequest;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Demand reports for many names from the same initiator coalesced into a
+ * single packet. Only the name, epoch, and stats of each report are sent as
+ * the initiator is common to all of them.
+ *
+ * @param <NodeIDType>
+ */
+public final class DemandReportBatch<NodeIDType> extends
+		BasicReconfigurationPacket<NodeIDType> implements ReplicableRequest {
+
+	private static enum Keys {
+		REPORTS, STATS
+	};
+
+	private final List<DemandReport<NodeIDType>> reports;
+
+	/**
+	 * @param initiator
+	 * @param reports
+	 */
+	public DemandReportBatch(NodeIDType initiator,
+			Collection<DemandReport<NodeIDType>> reports) {
+		super(initiator, ReconfigurationPacket.PacketType.DEMAND_REPORT_BATCH,
+				Config.getGlobalString(RC.BROADCAST_NAME), 0);
+		this.reports = new ArrayList<DemandReport<NodeIDType>>(reports);
+	}
+
+	/**
+	 * @param json
+	 * @param unstringer
+	 * @throws JSONException
+	 */
+	public DemandReportBatch(JSONObject json,
+			Stringifiable<NodeIDType> unstringer) throws JSONException {
+		super(json, unstringer);
+		JSONArray jsonArray = json.getJSONArray(Keys.REPORTS.toString());
+		this.reports = new ArrayList<DemandReport<NodeIDType>>();
+		for (int i = 0; i < jsonArray.length(); i++) {
+			JSONObject report = jsonArray.getJSONObject(i);
+			this.reports.add(new DemandReport<NodeIDType>(this.getInitiator(),
+					report.getString(BasicReconfigurationPacket.Keys.NAME
+							.toString()), report
+							.getInt(BasicReconfigurationPacket.Keys.EPOCH
+									.toString()), report.getJSONObject(Keys.STATS
+							.toString())));
+		}
+	}
+
+	@Override
+	public JSONObject toJSONObjectImpl() throws JSONException {
+		JSONObject json = super.toJSONObjectImpl();
+		JSONArray jsonArray = new JSONArray();
+		for (DemandReport<NodeIDType> report : this.reports)
+			jsonArray.put(new JSONObject()
+					.put(BasicReconfigurationPacket.Keys.NAME.toString(),
+							report.getServiceName())
+					.put(BasicReconfigurationPacket.Keys.EPOCH.toString(),
+							report.getEpochNumber())
+					.put(Keys.STATS.toString(), report.getStats()));
+		json.put(Keys.REPORTS.toString(), jsonArray);
+		return json;
+	}
+
+	/**
+	 * @return The coalesced demand reports.
+	 */
+	public List<DemandReport<NodeIDType>> getReports() {
+		return this.reports;
+	}
+
+	@Override
+	public String getSummary() {
+		return super.getSummary() + "[" + this.reports.size() + "]";
+	}
+
+	@Override
+	public IntegerPacketType getRequestType() {
+		return ReconfigurationPacket.PacketType.DEMAND_REPORT_BATCH;
+	}
+
+	@Override
+	public boolean needsCoordination() {
+		return false;
+	}
+
+	@Override
+	public long getRequestID() {
+		return 0;
+	}
+}
@@ -139,6 +139,9 @@ public abstract class ReconfigurationPacket<NodeIDType> extends
 		
 		// active -> active, or active -> reconfigurator: initialize a connection behind NAT
 		HELLO_REQUEST(243),
+
+		// active_replica -> reconfigurator: coalesced DEMAND_REPORTs
+		DEMAND_REPORT_BATCH(244),
 		
 		NO_TYPE (999),
 		
@@ -190,6 +193,8 @@ public abstract class ReconfigurationPacket<NodeIDType> extends
 
 		typeMap.put(ReconfigurationPacket.PacketType.DEMAND_REPORT,
 				DemandReport.class);
+		typeMap.put(ReconfigurationPacket.PacketType.DEMAND_REPORT_BATCH,
+				DemandReportBatch.class);
 		typeMap.put(ReconfigurationPacket.PacketType.ACK_STOP_EPOCH,
 				AckStopEpoch.class);
 		typeMap.put(ReconfigurationPacket.PacketType.ACK_START_EPOCH,
@@ -57,6 +57,12 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 		 * 
 		 */
 		QID,
+
+		/**
+		 * Time in milliseconds for which the active replica set may be
+		 * cached.
+		 */
+		TTL,
 		
 	};
 
@@ -71,6 +77,9 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 	// need this if we need to coordinate this request
 	private final long requestID;
 
+	// 0 means unspecified
+	private long ttl = 0;
+
 	/**
 	 * @param name
 	 */
@@ -112,6 +121,7 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 						.valueOf(jsonArray.get(i).toString()));
 		}
 		this.requestID = json.getLong(Keys.QID.toString());
+		this.ttl = json.optLong(Keys.TTL.toString(), 0);
 	}
 
 	/**
@@ -128,6 +138,8 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 			json.put(Keys.ACTIVE_REPLICAS.toString(), new JSONArray(
 					this.actives));
 		json.put(Keys.QID.toString(), this.requestID);
+		if (this.ttl > 0)
+			json.put(Keys.TTL.toString(), this.ttl);
 		return json;
 	}
 
@@ -147,6 +159,24 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 		return this.actives;
 	}
 
+	/**
+	 * @param ttl
+	 *            Time in milliseconds for which the actives may be cached.
+	 * @return {@code this}
+	 */
+	public RequestActiveReplicas setTTL(long ttl) {
+		this.ttl = ttl;
+		return this;
+	}
+
+	/**
+	 * @return Time in milliseconds for which the actives may be cached or 0
+	 *         if unspecified.
+	 */
+	public long getTTL() {
+		return this.ttl;
+	}
+
 	public static void main(String[] args) {
 		Util.assertAssertionsEnabled();
 		String[] addrs = { "128.119.240.21" };
@@ -41,6 +41,7 @@ public class ReconfiguratorProtocolTask<NodeIDType> implements
 	private static final ReconfigurationPacket.PacketType[] localTypes = {
 			// active -> reconfigurator
 			ReconfigurationPacket.PacketType.DEMAND_REPORT,
+			ReconfigurationPacket.PacketType.DEMAND_REPORT_BATCH,
 
 			// client -> reconfigurator
 			ReconfigurationPacket.PacketType.CREATE_SERVICE_NAME,
@@ -20,11 +20,14 @@ package edu.umass.cs.reconfiguration.reconfigurationutils;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.TreeMap;
 
 import edu.umass.cs.gigapaxos.PaxosConfig;
@@ -40,6 +43,19 @@ import edu.umass.cs.utils.Util;
  * A utility class with mostly static methods to help with consistent hashing
  * related functions.
  * 
+ * With a single virtual node per server (the default), each server has one
+ * point on the ring at the MD5-based hash of its name, which is how rings
+ * have always been computed, so existing deployments map names to the same
+ * servers as before. With more virtual nodes, each server has
+ * round(weight*virtualNodes) points computed using a fast 64-bit hash, and
+ * names map to the first k distinct servers encountered walking clockwise.
+ * In both cases, a server's own name maps to that server, which the
+ * reconfigurator group logic relies upon.
+ * 
+ * The ring is an immutable sorted primitive array that is swapped on refresh
+ * and carries its own LRU cache of name to replica-set lookups, so lookups
+ * need no locking and a refresh implicitly invalidates cached lookups.
+ * 
  * It is okay to suppress warnings about unchecked types of serversArray objects
  * as they have to be of type NodeIDType.
  */
@@ -49,25 +65,118 @@ public class ConsistentHashing<NodeIDType> {
 		PaxosConfig.load(ReconfigurationConfig.RC.class);
 	}
 	private static final int DEFAULT_NUM_REPLICAS = Config.getGlobalInt(RC.DEFAULT_NUM_REPLICAS);
-	
-	private static MessageDigest md;
-	static {
-		try {
-			md = MessageDigest.getInstance("MD5");
-		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
+
+	private static final ThreadLocal<MessageDigest> md = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				e.printStackTrace();
+			}
+			return null;
+		}
+	};
+
+	private static final int CACHE_STRIPES = 16;
+
+	/*
+	 * Name to replica list LRU cache. Striped to reduce contention as lookups
+	 * from different threads for different names are common.
+	 */
+	private static class LookupCache<NodeIDType> {
+		private final List<LinkedHashMap<String, ArrayList<NodeIDType>>> stripes;
+
+		LookupCache(int capacity) {
+			final int perStripe = Math.max(1, capacity / CACHE_STRIPES);
+			int numStripes = capacity > 0 ? CACHE_STRIPES : 0;
+			this.stripes = new ArrayList<LinkedHashMap<String, ArrayList<NodeIDType>>>(
+					numStripes);
+			for (int i = 0; i < numStripes; i++)
+				this.stripes.add(new LinkedHashMap<String, ArrayList<NodeIDType>>(
+						16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(
+							Map.Entry<String, ArrayList<NodeIDType>> eldest) {
+						return size() > perStripe;
+					}
+				});
+		}
+
+		private LinkedHashMap<String, ArrayList<NodeIDType>> stripe(String name) {
+			return this.stripes.get((name.hashCode() & 0x7fffffff)
+					% this.stripes.size());
+		}
+
+		ArrayList<NodeIDType> get(String name) {
+			if (this.stripes.isEmpty())
+				return null;
+			LinkedHashMap<String, ArrayList<NodeIDType>> stripe = this
+					.stripe(name);
+			synchronized (stripe) {
+				return stripe.get(name);
+			}
+		}
+
+		void put(String name, ArrayList<NodeIDType> replicas) {
+			if (this.stripes.isEmpty())
+				return;
+			LinkedHashMap<String, ArrayList<NodeIDType>> stripe = this
+					.stripe(name);
+			synchronized (stripe) {
+				stripe.put(name, replicas);
+			}
+		}
+	}
+
+	/*
+	 * Immutable snapshot of the ring. points is sorted and owners[i] is the
+	 * server owning points[i].
+	 */
+	private static class Ring<NodeIDType> {
+		final long[] points;
+		final Object[] owners;
+		final int numServers;
+		final int numReplicas;
+		final LookupCache<NodeIDType> cache;
+
+		Ring(TreeMap<Long, NodeIDType> ring, int numServers, int numReplicas,
+				int cacheSize) {
+			this.points = new long[ring.size()];
+			this.owners = new Object[ring.size()];
+			int i = 0;
+			for (Map.Entry<Long, NodeIDType> entry : ring.entrySet()) {
+				this.points[i] = entry.getKey();
+				this.owners[i++] = entry.getValue();
+			}
+			this.numServers = numServers;
+			this.numReplicas = numReplicas;
+			this.cache = new LookupCache<NodeIDType>(cacheSize);
+		}
+
+		// index of the first point at or after hash, wrapping around
+		int ceiling(long hash) {
+			int index = Arrays.binarySearch(this.points, hash);
+			if (index < 0)
+				index = -index - 1;
+			return index == this.points.length ? 0 : index;
 		}
 	}
-	
-	private boolean replicateAll = false;
-	private int numReplicas=DEFAULT_NUM_REPLICAS;
-	private SortedMap<Integer, NodeIDType> servers = new TreeMap<Integer, NodeIDType>();
+
+	private final boolean replicateAll;
+	private final int virtualNodes;
+	private final Map<String, Double> weights;
+	private final int cacheSize;
+	private int numReplicas = DEFAULT_NUM_REPLICAS;
+	private volatile Ring<NodeIDType> ring;
 
 	/**
 	 * @param servers
 	 */
 	public ConsistentHashing(NodeIDType[] servers) {
-		this.refresh(servers, DEFAULT_NUM_REPLICAS);
+		this(servers, DEFAULT_NUM_REPLICAS);
 	}
 
 	/**
@@ -75,6 +184,7 @@ public class ConsistentHashing<NodeIDType> {
 	 * @param numReplicas
 	 */
 	public ConsistentHashing(NodeIDType[] servers, int numReplicas) {
+		this(false);
 		this.refresh(servers, numReplicas);
 	}
 
@@ -82,26 +192,87 @@ public class ConsistentHashing<NodeIDType> {
 	 * @param servers
 	 */
 	public ConsistentHashing(Set<NodeIDType> servers) {
-		this.refresh(servers, DEFAULT_NUM_REPLICAS);
+		this(servers, false);
 	}
+
 	/**
 	 * @param servers
 	 * @param replicateAll
 	 */
 	public ConsistentHashing(Set<NodeIDType> servers, boolean replicateAll) {
-		this.replicateAll = replicateAll;
+		this(replicateAll);
+		this.refresh(servers, DEFAULT_NUM_REPLICAS);
+	}
+
+	/**
+	 * @param servers
+	 * @param replicateAll
+	 * @param virtualNodes
+	 *            Number of points per server of weight 1.
+	 * @param weights
+	 *            Per-server weights keyed by the server's string form; may be
+	 *            null or empty.
+	 * @param cacheSize
+	 *            Maximum number of cached lookups; 0 disables caching.
+	 */
+	public ConsistentHashing(Set<NodeIDType> servers, boolean replicateAll,
+			int virtualNodes, Map<String, Double> weights, int cacheSize) {
+		this(replicateAll, virtualNodes, weights, cacheSize);
 		this.refresh(servers, DEFAULT_NUM_REPLICAS);
 	}
 
+	private ConsistentHashing(boolean replicateAll) {
+		this(replicateAll, Config
+				.getGlobalInt(RC.CONSISTENT_HASHING_VIRTUAL_NODES),
+				parseWeights(Config
+						.getGlobalString(RC.CONSISTENT_HASHING_WEIGHTS)),
+				Config.getGlobalInt(RC.CONSISTENT_HASHING_CACHE_SIZE));
+	}
+
+	private ConsistentHashing(boolean replicateAll, int virtualNodes,
+			Map<String, Double> weights, int cacheSize) {
+		if (virtualNodes < 1)
+			throw new IllegalArgumentException(
+					"Number of virtual nodes must be positive: " + virtualNodes);
+		this.replicateAll = replicateAll;
+		this.virtualNodes = virtualNodes;
+		this.weights = weights != null ? new HashMap<String, Double>(weights)
+				: new HashMap<String, Double>();
+		this.cacheSize = Math.max(0, cacheSize);
+	}
+
+	/**
+	 * @param weights
+	 *            Comma-separated node:weight pairs.
+	 * @return Map from node to weight.
+	 */
+	public static Map<String, Double> parseWeights(String weights) {
+		Map<String, Double> map = new HashMap<String, Double>();
+		if (weights == null)
+			return map;
+		for (String pair : weights.split(",")) {
+			if (pair.trim().isEmpty())
+				continue;
+			int index = pair.lastIndexOf(':');
+			if (index <= 0)
+				throw new IllegalArgumentException(
+						"Malformed consistent hashing weight " + pair);
+			double weight = Double.parseDouble(pair.substring(index + 1)
+					.trim());
+			if (!(weight > 0))
+				throw new IllegalArgumentException(
+						"Consistent hashing weight must be positive: " + pair);
+			map.put(pair.substring(0, index).trim(), weight);
+		}
+		return map;
+	}
+
 	/**
 	 * @param servers
 	 * @param numReplicas
 	 */
 	public void refresh(NodeIDType[] servers, int numReplicas) {
-		this.servers = new TreeMap<Integer, NodeIDType>();
-		for (NodeIDType server : servers)
-			this.servers.put(hash(server.toString()), server);
-		this.numReplicas = (replicateAll ? this.servers.size() : numReplicas);
+		this.refresh(Arrays.asList(servers), numReplicas);
 	}
 	/**
 	 * @param servers
@@ -115,14 +286,40 @@ public class ConsistentHashing<NodeIDType> {
 	 * @param numReplicas
 	 */
 	public void refresh(Set<NodeIDType> servers, int numReplicas) {
-		this.servers = new TreeMap<Integer, NodeIDType>();
-		for (NodeIDType server : servers)
-			this.servers.put(hash(server.toString()), server);
-		this.numReplicas = (replicateAll ? this.servers.size() : numReplicas);
+		this.refresh((Collection<NodeIDType>) servers, numReplicas);
+	}
 
+	private synchronized void refresh(Collection<NodeIDType> servers,
+			int numReplicas) {
+		TreeMap<Long, NodeIDType> ring = new TreeMap<Long, NodeIDType>();
+		Set<NodeIDType> distinct = new HashSet<NodeIDType>();
+		for (NodeIDType server : servers) {
+			String str = server.toString();
+			int count = this.getNumPoints(str);
+			/* Point 0 is at the hash of the server's own name so that the
+			 * server's name maps to the server itself. Later servers win
+			 * collisions as they always have. */
+			for (int i = 0; i < count; i++)
+				ring.put(this.hash(i == 0 ? str : str + "#" + i), server);
+		}
+		distinct.addAll(ring.values());
+		this.numReplicas = (replicateAll ? (this.isLegacy() ? ring.size()
+				: distinct.size()) : numReplicas);
+		this.ring = new Ring<NodeIDType>(ring, distinct.size(),
+				this.numReplicas, this.cacheSize);
 	}
 
-	
+	private boolean isLegacy() {
+		return this.virtualNodes == 1 && this.weights.isEmpty();
+	}
+
+	private int getNumPoints(String server) {
+		if (this.isLegacy())
+			return 1;
+		Double weight = this.weights.get(server);
+		return (int) Math.max(1,
+				Math.round((weight != null ? weight : 1.0) * this.virtualNodes));
+	}
 
 	/**
 	 * @param name
@@ -130,16 +327,17 @@ public class ConsistentHashing<NodeIDType> {
 	 * this name hashes.
 	 */
 	public Set<NodeIDType> getReplicatedServers(String name) {
-		return this.getReplicatedServers(name, this.replicateAll ? this.servers.size() : this.numReplicas);
+		return new HashSet<NodeIDType>(this.getCachedReplicas(this.ring, name));
 	}
-	
+
 	/**
 	 * @param name
 	 * @return Consecutive servers on the consistent hash ring to which
 	 * this name hashes returned as an array.
 	 */
 	public ArrayList<NodeIDType> getReplicatedServersArray(String name) {
-		return this.getReplicatedServersArray(name, this.replicateAll ? this.servers.size() : this.numReplicas);
+		return new ArrayList<NodeIDType>(this.getCachedReplicas(this.ring,
+				name));
 	}
 
 	/**
@@ -149,43 +347,66 @@ public class ConsistentHashing<NodeIDType> {
 	 * this name hashes returned as an array.
 	 */
 	public ArrayList<NodeIDType> getReplicatedServersArray(String name, int k) {
-		int hash = hash(name);
-		SortedMap<Integer, NodeIDType> tailMap = this.servers.tailMap(hash);
-		Iterator<Integer> iterator = tailMap.keySet().iterator();
-		ArrayList<NodeIDType> replicas = new ArrayList<NodeIDType>();
-		for (int i = 0; i < k; i++) {
-			if (!iterator.hasNext())
-				iterator = this.servers.keySet().iterator();
-			replicas.add(this.servers.get(iterator.next()));
-		}
-
-		return replicas;
+		Ring<NodeIDType> ring = this.ring;
+		if (k == ring.numReplicas)
+			return new ArrayList<NodeIDType>(this.getCachedReplicas(ring, name));
+		return this.getReplicas(ring, name, k);
 	}
 
 	protected NodeIDType getNode(String name) {
-		int hash = hash(name);
-		if (!this.servers.containsKey(hash)) {
-			SortedMap<Integer, NodeIDType> tailMap = this.servers.tailMap(hash);
-			hash = tailMap.isEmpty() ? this.servers.firstKey() : tailMap
-					.firstKey();
-		}
-		return this.servers.get(hash);
+		Ring<NodeIDType> ring = this.ring;
+		if (ring.numReplicas > 0 && ring.points.length > 0)
+			return this.getCachedReplicas(ring, name).get(0);
+		ArrayList<NodeIDType> replicas = this.getReplicas(ring, name, 1);
+		return replicas.isEmpty() ? null : replicas.get(0);
 	}
-	
-	private Set<NodeIDType> getReplicatedServers(String name, int k) {
-		return new HashSet<NodeIDType>(this.getReplicatedServersArray(name, k));
+
+	// cached lists are shared, so they must never be handed out directly
+	private ArrayList<NodeIDType> getCachedReplicas(Ring<NodeIDType> ring,
+			String name) {
+		ArrayList<NodeIDType> replicas = ring.cache.get(name);
+		if (replicas == null)
+			ring.cache.put(name,
+					replicas = this.getReplicas(ring, name, ring.numReplicas));
+		return replicas;
 	}
 
+	@SuppressWarnings("unchecked")
+	private ArrayList<NodeIDType> getReplicas(Ring<NodeIDType> ring,
+			String name, int k) {
+		ArrayList<NodeIDType> replicas = new ArrayList<NodeIDType>();
+		if (ring.points.length == 0)
+			return replicas;
+		int index = ring.ceiling(this.hash(name));
+		if (this.isLegacy()) {
+			for (int i = 0; i < k; i++) {
+				if (index == ring.points.length)
+					index = 0;
+				replicas.add((NodeIDType) ring.owners[index++]);
+			}
+			return replicas;
+		}
+		// walk clockwise collecting distinct servers
+		k = Math.min(k, ring.numServers);
+		for (int i = 0; i < ring.points.length && replicas.size() < k; i++) {
+			NodeIDType server = (NodeIDType) ring.owners[(index + i)
+					% ring.points.length];
+			if (!replicas.contains(server))
+				replicas.add(server);
+		}
+		return replicas;
+	}
 
-	private synchronized int hash(String name) {
-		return hashStatic(name) ;//% (this.servers.size()>0 ? this.servers.size() : Integer.MAX_VALUE);
+	private long hash(String name) {
+		return this.isLegacy() ? hashStatic(name) : hash64(name);
 	}
-	
+
 	/*
 	 * Bad idea to use hashCode here because we need this hash to be consistent
-	 * across platforms. Needs to be synchronized as md is not thread safe.
+	 * across platforms. The digest is per-thread as md is not thread safe.
 	 */
-	private synchronized static int hashStatic(String name) {
+	private static int hashStatic(String name) {
+		MessageDigest md = ConsistentHashing.md.get();
 		byte[] digest = md.digest(name.getBytes());
 		int hash = 0;
 		for (int i = 0; i < digest.length; i++)
@@ -193,9 +414,34 @@ public class ConsistentHashing<NodeIDType> {
 		md.reset();
 		return Math.abs(hash);
 	}
+
+	/*
+	 * FNV-1a over the UTF-16 code units of name followed by the murmur3
+	 * finalizer to spread nearby inputs across the ring. Platform-independent
+	 * and allocation-free.
+	 */
+	static long hash64(String name) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+			hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
 	// only for testing
-	private Collection<NodeIDType> getServers() {
-		return this.servers.values();
+	@SuppressWarnings("unchecked")
+	Collection<NodeIDType> getServers() {
+		ArrayList<NodeIDType> servers = new ArrayList<NodeIDType>();
+		for (Object owner : this.ring.owners)
+			servers.add((NodeIDType) owner);
+		return servers;
 	}
 
 	 /**
@@ -0,0 +1,262 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import edu.umass.cs.utils.DefaultTest;
+import edu.umass.cs.utils.Util;
+
+/**
+ * ConsistentHashing test class including distribution-skew and
+ * lookup-throughput benchmarks.
+ */
+public class ConsistentHashingTest extends DefaultTest {
+
+	private static final int NUM_NAMES = 100000;
+
+	private static Set<String> servers(int n) {
+		Set<String> servers = new TreeSet<String>();
+		for (int i = 0; i < n; i++)
+			servers.add("RC" + i);
+		return servers;
+	}
+
+	// the original single-point MD5 ring
+	private static ArrayList<String> legacyLookup(Set<String> servers,
+			String name, int k) throws NoSuchAlgorithmException {
+		MessageDigest md = MessageDigest.getInstance("MD5");
+		TreeMap<Integer, String> ring = new TreeMap<Integer, String>();
+		for (String server : servers)
+			ring.put(legacyHash(md, server), server);
+		SortedMap<Integer, String> tailMap = ring.tailMap(legacyHash(md, name));
+		Iterator<Integer> iterator = tailMap.keySet().iterator();
+		ArrayList<String> replicas = new ArrayList<String>();
+		for (int i = 0; i < k; i++) {
+			if (!iterator.hasNext())
+				iterator = ring.keySet().iterator();
+			replicas.add(ring.get(iterator.next()));
+		}
+		return replicas;
+	}
+
+	private static int legacyHash(MessageDigest md, String name) {
+		byte[] digest = md.digest(name.getBytes());
+		int hash = 0;
+		for (int i = 0; i < digest.length; i++)
+			hash = (hash ^ (digest[i] << (i % 4)));
+		md.reset();
+		return Math.abs(hash);
+	}
+
+	/**
+	 * A single virtual node maps names exactly as the original ring did.
+	 *
+	 * @throws NoSuchAlgorithmException
+	 */
+	@Test
+	public void test_LegacyCompatible() throws NoSuchAlgorithmException {
+		Set<String> servers = servers(7);
+		ConsistentHashing<String> ch = new ConsistentHashing<String>(servers,
+				false, 1, null, 1024);
+		for (int i = 0; i < 2000; i++) {
+			String name = "name" + i;
+			Assert.assertEquals(legacyLookup(servers, name, 3),
+					ch.getReplicatedServersArray(name));
+			Assert.assertEquals(legacyLookup(servers, name, 5),
+					ch.getReplicatedServersArray(name, 5));
+			Assert.assertEquals(legacyLookup(servers, name, 1).get(0),
+					ch.getNode(name));
+		}
+	}
+
+	/**
+	 * A server's own name maps to itself, which reconfigurator groups rely
+	 * upon, and replicas are distinct.
+	 */
+	@Test
+	public void test_VirtualNodes() {
+		Set<String> servers = servers(5);
+		ConsistentHashing<String> ch = new ConsistentHashing<String>(servers,
+				false, 64, null, 1024);
+		for (String server : servers) {
+			Assert.assertEquals(server, ch.getNode(server));
+			Assert.assertEquals(server, ch.getReplicatedServersArray(server)
+					.get(0));
+		}
+		for (int i = 0; i < 1000; i++) {
+			ArrayList<String> replicas = ch.getReplicatedServersArray("name"
+					+ i);
+			Assert.assertEquals(3, replicas.size());
+			Assert.assertEquals(3, new TreeSet<String>(replicas).size());
+			Assert.assertEquals(5, ch.getReplicatedServersArray("name" + i, 9)
+					.size());
+		}
+		ConsistentHashing<String> all = new ConsistentHashing<String>(servers,
+				true, 64, null, 1024);
+		Assert.assertEquals(servers, all.getReplicatedServers("name"));
+	}
+
+	/**
+	 * Refreshing the ring invalidates cached lookups and cached results can
+	 * not be modified by callers.
+	 */
+	@Test
+	public void test_RefreshInvalidatesCache() {
+		Set<String> servers = servers(5);
+		for (int v : new int[] { 1, 64 }) {
+			ConsistentHashing<String> ch = new ConsistentHashing<String>(
+					servers, false, v, null, 1024);
+			for (int i = 0; i < 100; i++)
+				ch.getReplicatedServersArray("name" + i).clear();
+			Set<String> fewer = servers(5);
+			fewer.remove("RC3");
+			ch.refresh(fewer);
+			for (int i = 0; i < 100; i++) {
+				ArrayList<String> replicas = ch
+						.getReplicatedServersArray("name" + i);
+				Assert.assertEquals(3, replicas.size());
+				Assert.assertFalse(replicas.contains("RC3"));
+			}
+		}
+	}
+
+	/**
+	 * Servers with a larger weight own proportionally more names.
+	 */
+	@Test
+	public void test_Weights() {
+		Map<String, Double> weights = ConsistentHashing
+				.parseWeights("RC0:3, RC1:0.5");
+		Assert.assertEquals(3.0, weights.get("RC0"), 0);
+		ConsistentHashing<String> ch = new ConsistentHashing<String>(
+				servers(4), false, 128, weights, 0);
+		Map<String, Integer> counts = primaryCounts(ch, NUM_NAMES);
+		// RC0 should own about 3/5.5 and RC1 about 0.5/5.5 of names
+		Assert.assertTrue(counts.toString(),
+				counts.get("RC0") > 0.45 * NUM_NAMES);
+		Assert.assertTrue(counts.toString(),
+				counts.get("RC1") < 0.15 * NUM_NAMES);
+	}
+
+	private static Map<String, Integer> primaryCounts(
+			ConsistentHashing<String> ch, int numNames) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < numNames; i++) {
+			String node = ch.getNode("name" + i);
+			counts.put(node, counts.getOrDefault(node, 0) + 1);
+		}
+		return counts;
+	}
+
+	// max load as a multiple of the mean load
+	private static double skew(ConsistentHashing<String> ch, int numServers) {
+		Map<String, Integer> counts = primaryCounts(ch, NUM_NAMES);
+		int max = 0;
+		for (int count : counts.values())
+			max = Math.max(max, count);
+		return max * numServers / (double) NUM_NAMES;
+	}
+
+	/**
+	 * Distribution-skew benchmark: max to mean number of names per server for
+	 * small clusters with and without virtual nodes.
+	 */
+	@Test
+	public void test_DistributionSkew() {
+		for (int n : new int[] { 3, 5, 10 }) {
+			String line = "";
+			double vnodeSkew = 0;
+			for (int v : new int[] { 1, 16, 128 }) {
+				double skew = skew(new ConsistentHashing<String>(servers(n),
+						false, v, null, 0), n);
+				line += " v=" + v + ":" + Util.df(skew);
+				vnodeSkew = skew;
+			}
+			System.out.print("[n=" + n + line + "] ");
+			Assert.assertTrue(vnodeSkew < 1.3);
+		}
+	}
+
+	/**
+	 * Lookup-throughput benchmark for
+	 * {@link ConsistentReconfigurableNodeConfig} as well as for the bare ring
+	 * with and without virtual nodes and caching.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void test_LookupThroughput() throws InterruptedException {
+		final int numThreads = 8, numLookups = 200000, numDistinct = 10000;
+		ReconfigurableSampleNodeConfig snc = new ReconfigurableSampleNodeConfig();
+		snc.localSetup(5);
+		final ConsistentReconfigurableNodeConfig<Integer> nc = new ConsistentReconfigurableNodeConfig<Integer>(
+				snc);
+		String line = "RC:"
+				+ Util.df(throughput(numThreads, numLookups, numDistinct,
+						name -> nc.getReplicatedReconfigurators(name)))
+				+ " AR:"
+				+ Util.df(throughput(numThreads, numLookups, numDistinct,
+						name -> nc.getReplicatedActives(name)));
+		for (int v : new int[] { 1, 128 })
+			for (int cacheSize : new int[] { 0, numDistinct * 2 }) {
+				final ConsistentHashing<String> ch = new ConsistentHashing<String>(
+						servers(5), false, v, null, cacheSize);
+				line += " v=" + v + (cacheSize > 0 ? "+cache" : "") + ":"
+						+ Util.df(throughput(numThreads, numLookups,
+								numDistinct,
+								name -> ch.getReplicatedServers(name)));
+			}
+		System.out.print("[lookups/ms " + line + "] ");
+	}
+
+	private interface Lookup {
+		Object lookup(String name);
+	}
+
+	private static double throughput(int numThreads, final int numLookups,
+			final int numDistinct, final Lookup lookup)
+			throws InterruptedException {
+		final AtomicLong sink = new AtomicLong();
+		Thread[] threads = new Thread[numThreads];
+		long t = System.nanoTime();
+		for (int i = 0; i < numThreads; i++) {
+			final int offset = i;
+			(threads[i] = new Thread(() -> {
+				long sum = 0;
+				for (int j = 0; j < numLookups; j++)
+					sum += lookup.lookup("name" + ((j + offset) % numDistinct))
+							.hashCode();
+				sink.addAndGet(sum);
+			})).start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		return numThreads * (double) numLookups
+				/ ((System.nanoTime() - t) / 1000000.0);
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Util.assertAssertionsEnabled();
+		Result result = JUnitCore.runClasses(ConsistentHashingTest.class);
+		for (Failure failure : result.getFailures())
+			System.out.println(failure.toString());
+	}
+}
@@ -171,6 +171,17 @@ public class DemandProfile extends AbstractDemandProfile {
 		return this.numTotalRequests;
 	}
 
+	/**
+	 * @param stats
+	 *            Demand stats as returned by {@link #getDemandStats()}.
+	 * @return Number of requests since the previous demand report according
+	 *         to {@code stats}, or 1 if {@code stats} are from a profile that
+	 *         does not count requests.
+	 */
+	public static double getNumRequests(JSONObject stats) {
+		return stats != null ? stats.optDouble(Keys.NREQS.toString(), 1) : 1;
+	}
+
 	private static final boolean DISABLE_RECONFIGURATION = Config
 			.getGlobalBoolean(RC.DISABLE_RECONFIGURATION);
 
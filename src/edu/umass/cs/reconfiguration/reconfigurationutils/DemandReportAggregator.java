@@ -0,0 +1,145 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReportBatch;
+import edu.umass.cs.utils.Util;
+
+/**
+ * Coalesces demand reports at an active replica into one
+ * {@link DemandReportBatch} per destination reconfigurator. A report for a
+ * name already pending is combined into the pending profile, so a hot name
+ * contributes a single report per batch no matter how often it becomes due.
+ * Any of a name's reconfigurators can handle its reports, so a name is sent to
+ * a reconfigurator that already has a pending batch if possible.
+ *
+ * The caller is responsible for sending batches returned by
+ * {@link #add(Set, AbstractDemandProfile, int)} right away and for invoking
+ * {@link #flush()} once per window after {@link #shouldScheduleFlush()}
+ * returns true.
+ *
+ * @param <NodeIDType>
+ */
+public class DemandReportAggregator<NodeIDType> {
+
+	private static class Pending {
+		final AbstractDemandProfile demand;
+		final int epoch;
+
+		Pending(AbstractDemandProfile demand, int epoch) {
+			this.demand = demand;
+			this.epoch = epoch;
+		}
+	}
+
+	private final NodeIDType myID;
+	private final int maxBatchSize;
+	private final Map<NodeIDType, LinkedHashMap<String, Pending>> pending = new HashMap<NodeIDType, LinkedHashMap<String, Pending>>();
+	private boolean flushScheduled = false;
+
+	private long numReports = 0;
+	private long numBatches = 0;
+
+	/**
+	 * @param myID
+	 * @param maxBatchSize
+	 */
+	public DemandReportAggregator(NodeIDType myID, int maxBatchSize) {
+		this.myID = myID;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @param reconfigurators
+	 *            The reconfigurators responsible for {@code demand}'s name.
+	 * @param demand
+	 * @param epoch
+	 * @return A full batch keyed by its destination reconfigurator that should
+	 *         be sent right away, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized Map<NodeIDType, DemandReportBatch<NodeIDType>> add(
+			Set<NodeIDType> reconfigurators, AbstractDemandProfile demand,
+			int epoch) {
+		this.numReports++;
+		NodeIDType destination = null;
+		for (NodeIDType reconfigurator : reconfigurators) {
+			LinkedHashMap<String, Pending> batch = this.pending
+					.get(reconfigurator);
+			if (batch == null)
+				continue;
+			Pending prev = batch.get(demand.getName());
+			if (prev != null) {
+				prev.demand.combine(demand);
+				return null;
+			}
+			destination = reconfigurator;
+		}
+		if (destination == null)
+			destination = (NodeIDType) Util.selectRandom(reconfigurators);
+		LinkedHashMap<String, Pending> batch = this.pending.get(destination);
+		if (batch == null)
+			this.pending.put(destination,
+					batch = new LinkedHashMap<String, Pending>());
+		batch.put(demand.getName(), new Pending(demand, epoch));
+		if (batch.size() < this.maxBatchSize)
+			return null;
+		this.pending.remove(destination);
+		return Collections.singletonMap(destination, this.toBatch(batch));
+	}
+
+	/**
+	 * @return True if there are pending reports and a flush has not already
+	 *         been scheduled, in which case the caller must schedule one.
+	 */
+	public synchronized boolean shouldScheduleFlush() {
+		if (this.pending.isEmpty() || this.flushScheduled)
+			return false;
+		return this.flushScheduled = true;
+	}
+
+	/**
+	 * @return All pending reports as batches keyed by destination
+	 *         reconfigurator.
+	 */
+	public synchronized Map<NodeIDType, DemandReportBatch<NodeIDType>> flush() {
+		Map<NodeIDType, DemandReportBatch<NodeIDType>> batches = new HashMap<NodeIDType, DemandReportBatch<NodeIDType>>();
+		for (NodeIDType destination : this.pending.keySet())
+			batches.put(destination,
+					this.toBatch(this.pending.get(destination)));
+		this.pending.clear();
+		this.flushScheduled = false;
+		return batches;
+	}
+
+	private DemandReportBatch<NodeIDType> toBatch(
+			LinkedHashMap<String, Pending> batch) {
+		List<DemandReport<NodeIDType>> reports = new ArrayList<DemandReport<NodeIDType>>();
+		for (Pending p : batch.values())
+			reports.add(new DemandReport<NodeIDType>(this.myID, p.demand
+					.getName(), p.epoch, p.demand));
+		this.numBatches++;
+		return new DemandReportBatch<NodeIDType>(this.myID, reports);
+	}
+
+	/**
+	 * @return Number of demand reports added.
+	 */
+	public synchronized long getNumReports() {
+		return this.numReports;
+	}
+
+	/**
+	 * @return Number of batches returned for sending.
+	 */
+	public synchronized long getNumBatches() {
+		return this.numBatches;
+	}
+}
@@ -0,0 +1,199 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.nio.nioutils.StringifiableDefault;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReportBatch;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * DemandReportAggregator test class.
+ */
+public class DemandReportAggregatorTest extends DefaultTest {
+
+	private static final int NUM_NAMES = 10000;
+	private static final int NUM_REQUESTS = 200000;
+	// requests per batching window, e.g., 10K requests/s with a 100ms window
+	private static final int REQUESTS_PER_WINDOW = 1000;
+	private static final Set<Integer> RECONFIGURATORS = new HashSet<Integer>(
+			Arrays.asList(100, 101, 102));
+
+	private static Request request(final String name) {
+		return new Request() {
+			@Override
+			public IntegerPacketType getRequestType() {
+				return new IntegerPacketType() {
+					@Override
+					public int getInt() {
+						return 0;
+					}
+				};
+			}
+
+			@Override
+			public String getServiceName() {
+				return name;
+			}
+		};
+	}
+
+	// Zipfian with exponent 1 over NUM_NAMES names
+	private static String[] zipfianNames(int numRequests, long seed) {
+		double[] cdf = new double[NUM_NAMES];
+		double sum = 0;
+		for (int i = 0; i < NUM_NAMES; i++)
+			cdf[i] = (sum += 1.0 / (i + 1));
+		Random random = new Random(seed);
+		String[] names = new String[numRequests];
+		for (int i = 0; i < numRequests; i++) {
+			int index = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+			names[i] = "name" + (index < 0 ? -index - 1 : index);
+		}
+		return names;
+	}
+
+	/* Drives an active replica's demand profiler with the workload and
+	 * returns the stringified messages it would send to reconfigurators. */
+	private static List<String> activeReplica(String[] workload,
+			boolean batched) throws JSONException {
+		AggregateDemandProfiler profiler = new AggregateDemandProfiler();
+		DemandReportAggregator<Integer> aggregator = new DemandReportAggregator<Integer>(
+				0, 256);
+		List<String> messages = new ArrayList<String>();
+		for (int i = 0; i < workload.length; i++) {
+			String name = workload[i];
+			if (profiler.shouldSendDemandReport(request(name), null)) {
+				AbstractDemandProfile demand = profiler.pluckDemandProfile(name);
+				if (!batched)
+					messages.add(new DemandReport<Integer>(0, name, 0, demand)
+							.toString());
+				else {
+					Map<Integer, DemandReportBatch<Integer>> full = aggregator
+							.add(RECONFIGURATORS, demand, 0);
+					if (full != null)
+						for (DemandReportBatch<Integer> batch : full.values())
+							messages.add(batch.toString());
+					aggregator.shouldScheduleFlush();
+				}
+			}
+			if (batched && (i + 1) % REQUESTS_PER_WINDOW == 0)
+				for (DemandReportBatch<Integer> batch : aggregator.flush()
+						.values())
+					messages.add(batch.toString());
+		}
+		for (DemandReportBatch<Integer> batch : aggregator.flush().values())
+			messages.add(batch.toString());
+		if (batched)
+			Assert.assertEquals(messages.size(), aggregator.getNumBatches());
+		return messages;
+	}
+
+	/* Deserializes and combines the messages as a reconfigurator would and
+	 * returns the aggregate number of requests. */
+	@SuppressWarnings("unchecked")
+	private static long reconfigurator(List<String> messages,
+			AggregateDemandProfiler profiler) throws JSONException {
+		StringifiableDefault<Integer> unstringer = new StringifiableDefault<Integer>(
+				0);
+		for (String message : messages) {
+			BasicReconfigurationPacket<Integer> packet = (BasicReconfigurationPacket<Integer>) ReconfigurationPacket
+					.getReconfigurationPacket(new JSONObject(message), unstringer);
+			List<DemandReport<Integer>> reports = packet instanceof DemandReportBatch ? ((DemandReportBatch<Integer>) packet)
+					.getReports() : Arrays.asList((DemandReport<Integer>) packet);
+			for (DemandReport<Integer> report : reports)
+				profiler.combine(AbstractDemandProfile
+						.createDemandProfile(report.getStats()));
+		}
+		long total = 0;
+		for (int i = 0; i < NUM_NAMES; i++)
+			if (profiler.contains("name" + i))
+				total += (long) ((DemandProfile) profiler
+						.pluckDemandProfile("name" + i)).getNumRequests();
+		return total;
+	}
+
+	/**
+	 * Under a Zipfian workload, batching cuts the number of demand report
+	 * messages and the CPU spent by reconfigurators to process them, without
+	 * losing any demand.
+	 *
+	 * @throws JSONException
+	 */
+	@Test
+	public void test_ZipfianMessagesAndCPU() throws JSONException {
+		String[] workload = zipfianNames(NUM_REQUESTS, 0);
+		ThreadMXBean threadMX = ManagementFactory.getThreadMXBean();
+		// warm up
+		reconfigurator(activeReplica(workload, false),
+				new AggregateDemandProfiler());
+		reconfigurator(activeReplica(workload, true),
+				new AggregateDemandProfiler());
+
+		List<String> unbatched = activeReplica(workload, false);
+		long t = threadMX.getCurrentThreadCpuTime();
+		long unbatchedTotal = reconfigurator(unbatched,
+				new AggregateDemandProfiler());
+		long unbatchedCPU = threadMX.getCurrentThreadCpuTime() - t;
+
+		List<String> batched = activeReplica(workload, true);
+		t = threadMX.getCurrentThreadCpuTime();
+		long batchedTotal = reconfigurator(batched,
+				new AggregateDemandProfiler());
+		long batchedCPU = threadMX.getCurrentThreadCpuTime() - t;
+
+		Assert.assertEquals(NUM_REQUESTS, unbatchedTotal);
+		Assert.assertEquals(NUM_REQUESTS, batchedTotal);
+		Assert.assertTrue(batched.size() * 10 < unbatched.size());
+		System.out.print("[messages " + unbatched.size() + " -> "
+				+ batched.size() + "; RC CPU " + unbatchedCPU / 1000000
+				+ "ms -> " + batchedCPU / 1000000 + "ms] ");
+	}
+
+	/**
+	 * Reports for a pending name are combined, and full batches are returned
+	 * right away.
+	 *
+	 * @throws JSONException
+	 */
+	@Test
+	public void test_CoalesceAndFill() throws JSONException {
+		DemandReportAggregator<Integer> aggregator = new DemandReportAggregator<Integer>(
+				0, 2);
+		DemandProfile a = new DemandProfile("a");
+		a.shouldReportDemandStats(request("a"), null, null);
+		Assert.assertNull(aggregator.add(RECONFIGURATORS, a, 0));
+		Assert.assertTrue(aggregator.shouldScheduleFlush());
+		Assert.assertFalse(aggregator.shouldScheduleFlush());
+		DemandProfile a2 = new DemandProfile("a");
+		a2.shouldReportDemandStats(request("a"), null, null);
+		Assert.assertNull(aggregator.add(RECONFIGURATORS, a2, 0));
+		Map<Integer, DemandReportBatch<Integer>> full = aggregator.add(
+				RECONFIGURATORS, new DemandProfile("b"), 0);
+		Assert.assertEquals(1, full.size());
+		List<DemandReport<Integer>> reports = full.values().iterator().next()
+				.getReports();
+		Assert.assertEquals(2, reports.size());
+		Assert.assertEquals(2, new DemandProfile(reports.get(0).getStats())
+				.getNumRequests(), 0);
+		Assert.assertTrue(aggregator.flush().isEmpty());
+		Assert.assertEquals(3, aggregator.getNumReports());
+	}
+}
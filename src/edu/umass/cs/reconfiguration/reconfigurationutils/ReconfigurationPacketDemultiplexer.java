@@ -55,6 +55,7 @@ public class ReconfigurationPacketDemultiplexer extends
 		super(Config.getGlobalInt(PC.PACKET_DEMULTIPLEXER_THREADS));
 		this.unstringer = unstringer;
 		this.appRequestparser = arp;
+		this.setKeyAffine(Config.getGlobalBoolean(PC.KEY_AFFINE_DEMULTIPLEXER));
 	}
 
 	/**
@@ -92,6 +93,15 @@ public class ReconfigurationPacketDemultiplexer extends
 		return message instanceof Request;
 	}
 
+	/**
+	 * The service name, so that all requests for a service are handled in
+	 * order by the same thread if key-affine dispatch is enabled.
+	 */
+	@Override
+	protected Object getAffinityKey(Request message) {
+		return message.getServiceName();
+	}
+
 	@Override
 	protected Request processHeader(byte[] message, NIOHeader header) {
 		assert (message != null);
@@ -0,0 +1,211 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.umass.cs.gigapaxos.paxosutil.RateLimiter;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
+
+/**
+ * Per-service admission control of client requests at an active replica.
+ * Unlike {@link edu.umass.cs.gigapaxos.PaxosConfig.PC#MAX_OUTSTANDING_REQUESTS}
+ * that throttles all requests once the node as a whole is congested, each
+ * service here has its own token bucket limiting the rate at which its
+ * requests are admitted and its own cap on the number of admitted requests not
+ * yet responded to, so that a hot service is rejected early instead of filling
+ * the queues shared with every other service.
+ * <p>
+ * The limits of a service are {@link RC#SERVICE_RATE_LIMIT} and
+ * {@link RC#SERVICE_MAX_OUTSTANDING_REQUESTS} unless set with
+ * {@link #setLimits(String, Double, Integer)}. Each admitted request holds a
+ * {@link Permit} that must be released once the request is responded to.
+ * Rejections are counted in {@link DelayProfiler} as
+ * {@code admission_rate_limited} and {@code admission_overloaded}.
+ */
+public class ServiceAdmissionController {
+
+	/**
+	 * Outcome of {@link ServiceAdmissionController#tryAdmit(String)}.
+	 */
+	public static enum Decision {
+		/**
+		 * The request is admitted.
+		 */
+		ADMITTED,
+
+		/**
+		 * The service is above its rate limit.
+		 */
+		RATE_LIMITED,
+
+		/**
+		 * The service has its maximum number of outstanding requests.
+		 */
+		OVERLOADED,
+	}
+
+	/**
+	 * Permit of an admitted request, or the reason a request was rejected.
+	 */
+	public static class Permit {
+		private final Limits limits;
+		private final Decision decision;
+		private final long admitTime = System.currentTimeMillis();
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		private Permit(Limits limits, Decision decision) {
+			this.limits = limits;
+			this.decision = decision;
+		}
+
+		/**
+		 * @return Whether the request is admitted.
+		 */
+		public boolean isAdmitted() {
+			return this.decision == Decision.ADMITTED;
+		}
+
+		/**
+		 * @return The admission decision.
+		 */
+		public Decision getDecision() {
+			return this.decision;
+		}
+
+		/**
+		 * Releases the permit once the request is responded to. Releasing a
+		 * permit more than once or releasing a rejected permit has no effect.
+		 */
+		public void release() {
+			if (this.limits != null && this.released.compareAndSet(false, true)) {
+				this.limits.outstanding.remove(this);
+				this.limits.numOutstanding.decrementAndGet();
+			}
+		}
+	}
+
+	// permit of services without limits, never tracked
+	private static final Permit UNLIMITED = new Permit(null, Decision.ADMITTED);
+
+	private static class Limits {
+		final RateLimiter rateLimiter;
+		final int maxOutstanding;
+		final AtomicInteger numOutstanding = new AtomicInteger(0);
+		final Set<Permit> outstanding = ConcurrentHashMap.newKeySet();
+
+		Limits(double rate, int maxOutstanding) {
+			this.rateLimiter = rate > 0 ? new RateLimiter(rate) : null;
+			this.maxOutstanding = maxOutstanding;
+		}
+
+		private boolean tryAcquire() {
+			for (int n; (n = this.numOutstanding.get()) < this.maxOutstanding;)
+				if (this.numOutstanding.compareAndSet(n, n + 1))
+					return true;
+			return false;
+		}
+
+		// releases permits of requests that are unlikely to ever be responded to
+		private boolean reclaimExpired() {
+			long expired = System.currentTimeMillis() - ADMISSION_TIMEOUT;
+			boolean reclaimed = false;
+			for (Permit permit : this.outstanding)
+				if (permit.admitTime < expired) {
+					permit.release();
+					reclaimed = true;
+				}
+			return reclaimed;
+		}
+
+		Permit tryAdmit() {
+			// without a cap, outstanding requests are not tracked at all
+			if (this.maxOutstanding <= 0)
+				return this.rateLimiter == null || this.rateLimiter.tryRecord()
+						? UNLIMITED : new Permit(null, Decision.RATE_LIMITED);
+			if (!this.tryAcquire()
+					&& !(this.reclaimExpired() && this.tryAcquire()))
+				return new Permit(null, Decision.OVERLOADED);
+			// the outstanding slot is given back if rate limited
+			if (this.rateLimiter != null && !this.rateLimiter.tryRecord()) {
+				this.numOutstanding.decrementAndGet();
+				return new Permit(null, Decision.RATE_LIMITED);
+			}
+			Permit permit = new Permit(this, Decision.ADMITTED);
+			this.outstanding.add(permit);
+			return permit;
+		}
+	}
+
+	private static final long ADMISSION_TIMEOUT = Config
+			.getGlobalLong(RC.SERVICE_ADMISSION_TIMEOUT);
+
+	private static final ConcurrentHashMap<String, Limits> limits = new ConcurrentHashMap<String, Limits>();
+
+	/**
+	 * Sets the limits of a service, replacing its current limits, if any, and
+	 * forgetting the requests admitted under those.
+	 *
+	 * @param serviceName
+	 * @param rate
+	 *            Maximum requests per second, or null for
+	 *            {@link RC#SERVICE_RATE_LIMIT}.
+	 * @param maxOutstanding
+	 *            Maximum outstanding requests, or null for
+	 *            {@link RC#SERVICE_MAX_OUTSTANDING_REQUESTS}.
+	 */
+	public static void setLimits(String serviceName, Double rate,
+			Integer maxOutstanding) {
+		limits.put(serviceName, new Limits(rate != null ? rate : Config
+				.getGlobalDouble(RC.SERVICE_RATE_LIMIT),
+				maxOutstanding != null ? maxOutstanding : Config
+						.getGlobalInt(RC.SERVICE_MAX_OUTSTANDING_REQUESTS)));
+	}
+
+	/**
+	 * Removes the limits of a deleted service.
+	 *
+	 * @param serviceName
+	 */
+	public static void removeLimits(String serviceName) {
+		limits.remove(serviceName);
+	}
+
+	/**
+	 * @param serviceName
+	 * @return The permit of the request if admitted, or a rejected permit with
+	 *         the reason otherwise.
+	 */
+	public static Permit tryAdmit(String serviceName) {
+		Limits serviceLimits = serviceName != null ? limits.get(serviceName)
+				: null;
+		if (serviceLimits == null) {
+			double rate = Config.getGlobalDouble(RC.SERVICE_RATE_LIMIT);
+			int maxOutstanding = Config
+					.getGlobalInt(RC.SERVICE_MAX_OUTSTANDING_REQUESTS);
+			if (serviceName == null || (rate <= 0 && maxOutstanding <= 0))
+				return UNLIMITED;
+			serviceLimits = limits.computeIfAbsent(serviceName,
+					k -> new Limits(rate, maxOutstanding));
+		}
+		Permit permit = serviceLimits.tryAdmit();
+		if (permit.decision == Decision.RATE_LIMITED)
+			DelayProfiler.updateCount("admission_rate_limited", 1);
+		else if (permit.decision == Decision.OVERLOADED)
+			DelayProfiler.updateCount("admission_overloaded", 1);
+		return permit;
+	}
+
+	/**
+	 * @param serviceName
+	 * @return The number of admitted requests of the service not yet
+	 *         responded to, or 0 if the service has no cap on them.
+	 */
+	public static int getNumOutstanding(String serviceName) {
+		Limits serviceLimits = limits.get(serviceName);
+		return serviceLimits != null ? serviceLimits.numOutstanding.get() : 0;
+	}
+}
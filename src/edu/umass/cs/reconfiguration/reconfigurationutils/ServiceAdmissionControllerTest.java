@@ -0,0 +1,180 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.gigapaxos.paxosutil.RateLimiter;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ServiceAdmissionController.Decision;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ServiceAdmissionController.Permit;
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * ServiceAdmissionController test class including a multi-tenant latency
+ * isolation benchmark.
+ */
+public class ServiceAdmissionControllerTest extends DefaultTest {
+
+	private static final String HOT = "hot-service";
+	private static final String COLD = "cold-service";
+
+	/**
+	 *
+	 */
+	@After
+	public void removeLimits() {
+		ServiceAdmissionController.removeLimits(HOT);
+		ServiceAdmissionController.removeLimits(COLD);
+	}
+
+	/**
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testTryRecord() throws InterruptedException {
+		RateLimiter limiter = new RateLimiter(1000, 2);
+		Assert.assertTrue(limiter.tryRecord());
+		Assert.assertTrue(limiter.tryRecord());
+		Assert.assertFalse(limiter.tryRecord());
+		Thread.sleep(5);
+		Assert.assertTrue(limiter.tryRecord());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRateLimit() {
+		ServiceAdmissionController.setLimits(HOT, 100.0, 0);
+		int admitted = 0;
+		for (int i = 0; i < 150; i++) {
+			Permit permit = ServiceAdmissionController.tryAdmit(HOT);
+			if (permit.isAdmitted())
+				admitted++;
+			else
+				Assert.assertEquals(Decision.RATE_LIMITED, permit.getDecision());
+		}
+		// without a cap, the unreleased permits are not tracked
+		Assert.assertEquals(0, ServiceAdmissionController.getNumOutstanding(HOT));
+		// the burst is one second worth of requests
+		Assert.assertTrue(admitted >= 100 && admitted < 110);
+		Assert.assertTrue(ServiceAdmissionController.tryAdmit(COLD).isAdmitted());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMaxOutstanding() {
+		ServiceAdmissionController.setLimits(HOT, null, 2);
+		Permit first = ServiceAdmissionController.tryAdmit(HOT);
+		Permit second = ServiceAdmissionController.tryAdmit(HOT);
+		Assert.assertTrue(first.isAdmitted() && second.isAdmitted());
+		Permit third = ServiceAdmissionController.tryAdmit(HOT);
+		Assert.assertEquals(Decision.OVERLOADED, third.getDecision());
+		Assert.assertEquals(2, ServiceAdmissionController.getNumOutstanding(HOT));
+
+		// releasing twice or releasing a rejected permit has no effect
+		first.release();
+		first.release();
+		third.release();
+		Assert.assertEquals(1, ServiceAdmissionController.getNumOutstanding(HOT));
+		Assert.assertTrue(ServiceAdmissionController.tryAdmit(HOT).isAdmitted());
+		Assert.assertFalse(ServiceAdmissionController.tryAdmit(HOT).isAdmitted());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testNoLimitsByDefault() {
+		for (int i = 0; i < 10000; i++)
+			Assert.assertTrue(ServiceAdmissionController.tryAdmit(COLD)
+					.isAdmitted());
+		Assert.assertEquals(0, ServiceAdmissionController.getNumOutstanding(COLD));
+	}
+
+	private static final int NUM_WORKERS = 4;
+	private static final int NUM_HOT_CLIENTS = 32;
+	private static final long SERVICE_TIME_MS = 1;
+	private static final long DURATION_MS = 2000;
+
+	/* Runs a closed-loop hot service with many clients and a cold service
+	 * with one client against a fixed pool of workers shared by both services,
+	 * like the request queues of an active replica, and returns the latencies
+	 * of the cold service. Rejected clients back off for the service time. */
+	private static List<Long> runMultiTenant(boolean limited)
+			throws Exception {
+		if (limited)
+			ServiceAdmissionController.setLimits(HOT, null, NUM_WORKERS);
+		ExecutorService workers = Executors.newFixedThreadPool(NUM_WORKERS);
+		ExecutorService clients = Executors
+				.newFixedThreadPool(NUM_HOT_CLIENTS + 1);
+		long endTime = System.currentTimeMillis() + DURATION_MS;
+		Runnable work = () -> {
+			try {
+				Thread.sleep(SERVICE_TIME_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+		List<Long> coldLatencies = Collections.synchronizedList(new ArrayList<Long>());
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i <= NUM_HOT_CLIENTS; i++) {
+			String service = i < NUM_HOT_CLIENTS ? HOT : COLD;
+			futures.add(clients.submit(() -> {
+				while (System.currentTimeMillis() < endTime) {
+					long t = System.nanoTime();
+					Permit permit = ServiceAdmissionController.tryAdmit(service);
+					if (!permit.isAdmitted()) {
+						Thread.sleep(SERVICE_TIME_MS);
+						continue;
+					}
+					workers.submit(work).get();
+					permit.release();
+					if (service.equals(COLD)) {
+						coldLatencies.add(System.nanoTime() - t);
+						Thread.sleep(5 * SERVICE_TIME_MS);
+					}
+				}
+				return null;
+			}));
+		}
+		for (Future<?> future : futures)
+			future.get();
+		clients.shutdown();
+		workers.shutdown();
+		ServiceAdmissionController.removeLimits(HOT);
+		Collections.sort(coldLatencies);
+		return coldLatencies;
+	}
+
+	private static double percentile(List<Long> sorted, double p) {
+		return sorted.get((int) Math.min(sorted.size() - 1, p * sorted.size())) / 1000000.0;
+	}
+
+	/**
+	 * Compares the latency of a cold service sharing an active replica with a
+	 * hot service, with and without a cap on the outstanding requests of the
+	 * hot service.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMultiTenantIsolation() throws Exception {
+		List<Long> unlimited = runMultiTenant(false);
+		List<Long> limited = runMultiTenant(true);
+		System.out.print(String.format(
+				"[cold service latency p50/p99 unlimited %.1f/%.1fms, limited %.1f/%.1fms]",
+				percentile(unlimited, 0.5), percentile(unlimited, 0.99),
+				percentile(limited, 0.5), percentile(limited, 0.99)));
+		Assert.assertTrue(percentile(limited, 0.5) < percentile(unlimited, 0.5));
+	}
+}
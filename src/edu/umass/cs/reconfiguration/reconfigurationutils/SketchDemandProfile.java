@@ -0,0 +1,266 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.reconfiguration.interfaces.ReconfigurableAppInfo;
+import edu.umass.cs.utils.CountMinSketch;
+import edu.umass.cs.utils.HyperLogLog;
+
+/**
+ * A {@link DemandProfile} that additionally summarizes the clients of a name
+ * using mergeable sketches of a fixed size irrespective of the number of
+ * clients:
+ * <p>
+ * (1) a count-min sketch of requests per client prefix (/24 for IPv4, /48 for
+ * IPv6) together with a few candidate hot prefixes;
+ * <p>
+ * (2) a HyperLogLog estimate of the number of distinct clients;
+ * <p>
+ * (3) an exponentially decayed request count for a recent request rate.
+ * <p>
+ * The sketches are serialized into a compact binary form embedded in the
+ * demand stats JSON as a base64 string, so a demand report is at most a couple
+ * of KB no matter how many clients a name has. Combining reports at
+ * reconfigurators just adds or maxes sketch counters.
+ */
+public class SketchDemandProfile extends DemandProfile {
+
+	private static enum SKeys {
+		SKETCH
+	};
+
+	private static final int CM_DEPTH = 4;
+	private static final int CM_WIDTH = 64;
+	private static final int HLL_PRECISION = 9;
+	private static final int NUM_HOT_PREFIXES = 8;
+	private static final long RATE_HALF_LIFE = 60000; // ms
+	/* Prefix counts are halved beyond this total so that the hot prefixes
+	 * reflect relatively recent demand at reconfigurators. */
+	private static final long REFRESH_INTERVAL = 1024 * 1024;
+
+	private static final byte VERSION = 1;
+	private static final long IPV6_PREFIX = 1L << 48;
+
+	private CountMinSketch prefixes = new CountMinSketch(CM_DEPTH, CM_WIDTH);
+	private HyperLogLog clients = new HyperLogLog(HLL_PRECISION);
+	private ArrayList<Long> hotPrefixes = new ArrayList<Long>();
+	private double decayedCount = 0;
+	private long decayedTime = 0;
+
+	/**
+	 * Required String constructor.
+	 *
+	 * @param name
+	 */
+	public SketchDemandProfile(String name) {
+		super(name);
+	}
+
+	/**
+	 * Required JSONObject constructor.
+	 *
+	 * @param json
+	 * @throws JSONException
+	 */
+	public SketchDemandProfile(JSONObject json) throws JSONException {
+		super(json);
+		try {
+			this.fromBytes(Base64.getDecoder().decode(
+					json.getString(SKeys.SKETCH.toString())));
+		} catch (IOException | IllegalArgumentException e) {
+			throw new JSONException("Unable to decode demand sketch: " + e);
+		}
+	}
+
+	@Override
+	public boolean shouldReportDemandStats(Request request, InetAddress sender,
+			ReconfigurableAppInfo nodeConfig) {
+		if (!request.getServiceName().equals(this.name))
+			return false;
+		if (sender != null) {
+			this.clients.add(getClientKey(sender));
+			long prefix = getPrefix(sender);
+			this.updateHotPrefixes(prefix, this.prefixes.add(prefix, 1));
+		}
+		this.decay(System.currentTimeMillis());
+		this.decayedCount++;
+		return super.shouldReportDemandStats(request, sender, nodeConfig);
+	}
+
+	private static long getClientKey(InetAddress address) {
+		byte[] bytes = address.getAddress();
+		long key = bytes.length;
+		for (byte b : bytes)
+			key = key * 31 + (b & 0xff);
+		return key;
+	}
+
+	private static long getPrefix(InetAddress address) {
+		byte[] bytes = address.getAddress();
+		long prefix = 0;
+		// /24 for IPv4 and /48 for IPv6
+		for (int i = 0; i < (bytes.length == 4 ? 3 : 6); i++)
+			prefix = (prefix << 8) | (bytes[i] & 0xff);
+		return bytes.length == 4 ? prefix : prefix | IPV6_PREFIX;
+	}
+
+	private static String prefixToString(long prefix) {
+		if ((prefix & IPV6_PREFIX) == 0)
+			return (prefix >>> 16) + "." + ((prefix >>> 8) & 0xff) + "."
+					+ (prefix & 0xff) + ".0/24";
+		String s = "";
+		for (int shift = 32; shift >= 0; shift -= 16)
+			s += Long.toHexString((prefix >>> shift) & 0xffff) + ":";
+		return s + ":/48";
+	}
+
+	// keeps the NUM_HOT_PREFIXES prefixes with the highest estimates
+	private void updateHotPrefixes(long prefix, long estimate) {
+		if (this.hotPrefixes.contains(prefix))
+			return;
+		if (this.hotPrefixes.size() < NUM_HOT_PREFIXES) {
+			this.hotPrefixes.add(prefix);
+			return;
+		}
+		int coldest = 0;
+		for (int i = 1; i < this.hotPrefixes.size(); i++)
+			if (this.prefixes.estimate(this.hotPrefixes.get(i)) < this.prefixes
+					.estimate(this.hotPrefixes.get(coldest)))
+				coldest = i;
+		if (estimate > this.prefixes.estimate(this.hotPrefixes.get(coldest)))
+			this.hotPrefixes.set(coldest, prefix);
+	}
+
+	private void decay(long now) {
+		if (now > this.decayedTime) {
+			this.decayedCount *= Math.pow(0.5, (now - this.decayedTime)
+					/ (double) RATE_HALF_LIFE);
+			this.decayedTime = now;
+		}
+	}
+
+	/**
+	 * @return Estimated number of distinct clients.
+	 */
+	public long getNumDistinctClients() {
+		return this.clients.cardinality();
+	}
+
+	/**
+	 * @return Estimated requests/sec over roughly the last RATE_HALF_LIFE.
+	 */
+	public double getRecentRequestRate() {
+		double count = this.decayedCount
+				* Math.pow(0.5, Math.max(0, System.currentTimeMillis()
+						- this.decayedTime)
+						/ (double) RATE_HALF_LIFE);
+		// a decayed count of n events corresponds to a rate of n*ln2/halflife
+		return count * Math.log(2) / RATE_HALF_LIFE * 1000;
+	}
+
+	/**
+	 * @return Hot client prefixes and their estimated request counts in
+	 *         decreasing order of count.
+	 */
+	public Map<String, Long> getHotPrefixes() {
+		ArrayList<Long> sorted = new ArrayList<Long>(this.hotPrefixes);
+		sorted.sort((a, b) -> Long.compare(this.prefixes.estimate(b),
+				this.prefixes.estimate(a)));
+		Map<String, Long> hot = new LinkedHashMap<String, Long>();
+		for (long prefix : sorted)
+			hot.put(prefixToString(prefix), this.prefixes.estimate(prefix));
+		return hot;
+	}
+
+	/**
+	 * @param address
+	 * @return Estimated number of requests from the prefix of {@code address}.
+	 */
+	public long getPrefixDemand(InetAddress address) {
+		return this.prefixes.estimate(getPrefix(address));
+	}
+
+	/**
+	 * @return The compact binary form of the sketches.
+	 */
+	byte[] toBytes() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			out.writeDouble(this.decayedCount);
+			out.writeLong(this.decayedTime);
+			this.prefixes.writeTo(out);
+			this.clients.writeTo(out);
+			out.writeByte(this.hotPrefixes.size());
+			for (long prefix : this.hotPrefixes)
+				out.writeLong(prefix);
+		} catch (IOException e) {
+			// can not happen with a byte array stream
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private void fromBytes(byte[] bytes) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(bytes));
+		if (in.readByte() != VERSION)
+			throw new IOException("Unknown demand sketch version");
+		this.decayedCount = in.readDouble();
+		this.decayedTime = in.readLong();
+		this.prefixes = CountMinSketch.readFrom(in);
+		this.clients = HyperLogLog.readFrom(in);
+		for (int n = in.readUnsignedByte(); n > 0; n--)
+			this.hotPrefixes.add(in.readLong());
+	}
+
+	@Override
+	public JSONObject getDemandStats() {
+		JSONObject json = super.getDemandStats();
+		try {
+			json.put(SKeys.SKETCH.toString(), Base64.getEncoder()
+					.encodeToString(this.toBytes()));
+		} catch (JSONException je) {
+			je.printStackTrace();
+		}
+		return json;
+	}
+
+	@Override
+	public void combine(AbstractDemandProfile dp) {
+		super.combine(dp);
+		SketchDemandProfile update = (SketchDemandProfile) dp;
+		this.prefixes.merge(update.prefixes);
+		this.clients.merge(update.clients);
+		for (long prefix : update.hotPrefixes)
+			this.updateHotPrefixes(prefix, this.prefixes.estimate(prefix));
+		if (this.prefixes.getTotal() > REFRESH_INTERVAL)
+			this.prefixes.halve();
+		// align both decayed counts to the later time before adding
+		long now = Math.max(this.decayedTime, update.decayedTime);
+		this.decay(now);
+		update.decay(now);
+		this.decayedCount += update.decayedCount;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		ReconfigurationPolicyTest
+				.testPolicyImplementation(SketchDemandProfile.class);
+	}
+}
@@ -0,0 +1,158 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * SketchDemandProfile test class.
+ */
+public class SketchDemandProfileTest extends DefaultTest {
+
+	private static final String NAME = "name";
+
+	private static final Request REQUEST = new Request() {
+		@Override
+		public IntegerPacketType getRequestType() {
+			return new IntegerPacketType() {
+				@Override
+				public int getInt() {
+					return 0;
+				}
+			};
+		}
+
+		@Override
+		public String getServiceName() {
+			return NAME;
+		}
+	};
+
+	private static InetAddress ip(int i) throws UnknownHostException {
+		return InetAddress.getByAddress(new byte[] { (byte) (i >>> 24),
+				(byte) (i >>> 16), (byte) (i >>> 8), (byte) i });
+	}
+
+	/* Requests from numClients distinct clients, with one in every hotEvery
+	 * requests from the /24 prefix hot. */
+	private static SketchDemandProfile profile(int numClients, int offset,
+			int hot, int hotEvery) throws UnknownHostException {
+		SketchDemandProfile profile = new SketchDemandProfile(NAME);
+		Random random = new Random(offset);
+		for (int i = 0; i < numClients; i++) {
+			profile.shouldReportDemandStats(REQUEST,
+					ip(offset + random.nextInt(1 << 24) * 256 + (i & 0xff)),
+					null);
+			if (i % hotEvery == 0)
+				profile.shouldReportDemandStats(REQUEST, ip(hot + (i & 0xff)),
+						null);
+		}
+		return profile;
+	}
+
+	/**
+	 * Distinct clients and hot prefixes are estimated accurately.
+	 *
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void test_Estimates() throws UnknownHostException {
+		int numClients = 100000, hot = 0x0a010200;
+		SketchDemandProfile profile = profile(numClients, 0, hot, 4);
+		long distinct = profile.getNumDistinctClients();
+		Assert.assertTrue(distinct + "", Math.abs(distinct - numClients
+				- 256) < 0.1 * numClients);
+		Map<String, Long> hotPrefixes = profile.getHotPrefixes();
+		Assert.assertEquals("10.1.2.0/24", hotPrefixes.keySet().iterator()
+				.next());
+		// count-min never undercounts
+		Assert.assertTrue(profile.getPrefixDemand(ip(hot)) >= numClients / 4);
+		Assert.assertTrue(profile.getRecentRequestRate() > 0);
+		// small cardinalities are nearly exact
+		Assert.assertEquals(10, profile(10, 0, hot, 1000)
+				.getNumDistinctClients() - 1);
+	}
+
+	/**
+	 * Demand stats round-trip through JSON and stay compact regardless of the
+	 * number of clients.
+	 *
+	 * @throws UnknownHostException
+	 * @throws JSONException
+	 */
+	@Test
+	public void test_CompactSerialization() throws UnknownHostException,
+			JSONException {
+		for (int numClients : new int[] { 1, 100, 100000 }) {
+			SketchDemandProfile profile = profile(numClients, 0, 0x0a010200,
+					4);
+			JSONObject stats = profile.getDemandStats();
+			SketchDemandProfile copy = (SketchDemandProfile) AbstractDemandProfile
+					.createDemandProfile(SketchDemandProfile.class, stats);
+			Assert.assertEquals(stats.toString(), copy.getDemandStats()
+					.toString());
+			Assert.assertEquals(profile.getNumDistinctClients(),
+					copy.getNumDistinctClients());
+			Assert.assertEquals(profile.getHotPrefixes(),
+					copy.getHotPrefixes());
+			Assert.assertTrue(stats.toString().length() < Config
+					.getGlobalInt(RC.MAX_DEMAND_PROFILE_SIZE));
+			System.out.print("[" + numClients + " clients: "
+					+ stats.toString().length() + "B] ");
+		}
+	}
+
+	/**
+	 * The request count that reconfigurators weigh a demand report by is read
+	 * back from the reported stats, and a report without one counts once.
+	 *
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void test_NumRequestsInStats() throws UnknownHostException {
+		SketchDemandProfile profile = profile(100, 0, 0x0a010200, 4);
+		Assert.assertEquals(125, profile.getNumRequests(), 0);
+		Assert.assertEquals(profile.getNumRequests(),
+				DemandProfile.getNumRequests(profile.getDemandStats()), 0);
+		Assert.assertEquals(1, DemandProfile.getNumRequests(new JSONObject()),
+				0);
+	}
+
+	/**
+	 * Combining reports from different active replicas estimates the union of
+	 * their clients and the sum of their demand.
+	 *
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void test_Combine() throws UnknownHostException {
+		int numClients = 50000;
+		// each replica sees its own hot prefix, one much hotter than the other
+		SketchDemandProfile profile1 = profile(numClients, 1, 0x0a010200, 2);
+		SketchDemandProfile profile2 = profile(numClients, 2, 0x0b010200, 10);
+		AggregateDemandProfiler aggregate = new AggregateDemandProfiler();
+		aggregate.combine(profile1);
+		SketchDemandProfile combined = (SketchDemandProfile) aggregate
+				.combine(profile2);
+		long distinct = combined.getNumDistinctClients();
+		Assert.assertTrue(distinct + "",
+				Math.abs(distinct - 2 * numClients) < 0.1 * 2 * numClients);
+		Assert.assertEquals(2 * numClients + numClients / 2 + numClients
+				/ 10, combined.getNumRequests(), 0);
+		Assert.assertEquals("10.1.2.0/24", combined.getHotPrefixes().keySet()
+				.iterator().next());
+		Assert.assertTrue(combined.getHotPrefixes().containsKey("11.1.2.0/24"));
+	}
+}
@@ -1,36 +1,75 @@
 package edu.umass.cs.txn;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import edu.umass.cs.gigapaxos.interfaces.ExecutedCallback;
 import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.nio.JSONPacket;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.reconfiguration.AbstractReplicaCoordinator;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
 import edu.umass.cs.reconfiguration.interfaces.ReconfigurableRequest;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.ReplicableClientRequest;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
+import edu.umass.cs.txn.exceptions.ResponseCode;
 import edu.umass.cs.txn.interfaces.TXInterface;
+import edu.umass.cs.txn.txpackets.AbortRequest;
+import edu.umass.cs.txn.txpackets.CommitRequest;
+import edu.umass.cs.txn.txpackets.LockRequest;
 import edu.umass.cs.txn.txpackets.TXPacket;
 import edu.umass.cs.txn.txpackets.TxOpRequest;
+import edu.umass.cs.txn.txpackets.TxStateRequest;
+import edu.umass.cs.txn.txpackets.UnlockRequest;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.GCConcurrentHashMap;
 
 /**
  * @author arun
  *
+ *         Wraps the app's default coordinator so as to execute, at every
+ *         replica, transaction packets agreed upon in participant groups and
+ *         in the transaction group. Because the coordinator underneath calls
+ *         back itself, not this wrapper, upon executing a request, this
+ *         wrapper is registered with the coordinator via
+ *         {@link AbstractReplicaCoordinator#setWrapper(AbstractReplicaCoordinator)}
+ *         to intercept execution as well as the parsing of transaction
+ *         packets.
+ * 
+ *         <p>
+ * 
+ *         The lock table, pre-transaction checkpoints, and decisions are
+ *         changed only while executing transaction packets in paxos order, so
+ *         all replicas of a group agree on them. They are however maintained
+ *         in memory, so a replica that recovers from a crash relies on the
+ *         initiator to abort (or unlock) the affected transactions again.
+ *
  * @param <NodeIDType>
  */
 public abstract class AbstractTransactor<NodeIDType> extends
 		AbstractReplicaCoordinator<NodeIDType> {
 	private final AbstractReplicaCoordinator<NodeIDType> coordinator;
 
+	/**
+	 * The caller must register the transactor with {@code coordinator} via
+	 * {@link AbstractReplicaCoordinator#setWrapper(AbstractReplicaCoordinator)},
+	 * as {@link edu.umass.cs.reconfiguration.ActiveReplica} does for the
+	 * configured coordinator wrapper.
+	 * 
+	 * @param coordinator
+	 */
 	protected AbstractTransactor(
 			AbstractReplicaCoordinator<NodeIDType> coordinator) {
 		super(coordinator);
@@ -42,7 +81,8 @@ public abstract class AbstractTransactor<NodeIDType> extends
 			TXPacket.PacketType.COMMIT_REQUEST,
 			TXPacket.PacketType.LOCK_REQUEST,
 			TXPacket.PacketType.TX_STATE_REQUEST,
-			TXPacket.PacketType.UNLOCK_REQUEST };
+			TXPacket.PacketType.UNLOCK_REQUEST,
+			TXPacket.PacketType.TX_OP_REQUEST };
 
 	private static final boolean ENABLE_TRANSACTIONS = Config
 			.getGlobalBoolean(RC.ENABLE_TRANSACTIONS);
@@ -53,8 +93,55 @@ public abstract class AbstractTransactor<NodeIDType> extends
 	 * operations to take arbitrarily long. So should we. */
 	private static final long DEFAULT_TX_TIMEOUT = Long.MAX_VALUE;
 	private static final long MAX_QUEUED_REQUESTS = 8000;
-	private GCConcurrentHashMap<Request, ExecutedCallback> callbacks = new GCConcurrentHashMap<Request, ExecutedCallback>(
-			DEFAULT_TX_TIMEOUT);
+	// how long finished transactions are remembered
+	private static final long TX_STATE_GC_TIMEOUT = 3600 * 1000;
+
+	/* Participant group state. The lock table maps each locked participant
+	 * group to the transaction holding it. */
+	private final TXLockerMap groupLocks = new TXLockerMap();
+	private final ConcurrentHashMap<String, LockedGroup> lockedGroups = new ConcurrentHashMap<String, LockedGroup>();
+	/* Transactions aborted at a participant group without holding its lock,
+	 * so that their retransmitted or late lock requests are denied. */
+	private final GCConcurrentHashMap<String, Boolean> abortedTXs = new GCConcurrentHashMap<String, Boolean>(
+			TX_STATE_GC_TIMEOUT);
+	/* Outcomes of single-group transactions, so that retransmitted commits
+	 * are not executed twice. */
+	private final GCConcurrentHashMap<String, Boolean> oneRoundTXs = new GCConcurrentHashMap<String, Boolean>(
+			TX_STATE_GC_TIMEOUT);
+
+	/* Transaction group state: the decision recorded for each transaction. The
+	 * first of commit and abort to be executed wins. */
+	private final GCConcurrentHashMap<String, TxStateRequest.State> decisions = new GCConcurrentHashMap<String, TxStateRequest.State>(
+			TX_STATE_GC_TIMEOUT);
+
+	private static class LockedGroup {
+		final String txID;
+		// state to roll back to if the transaction aborts
+		final String checkpoint;
+		// IDs of already executed TxOpRequests
+		final Set<Long> executed = new HashSet<Long>();
+		// requests from outside the transaction, executed upon release
+		final ArrayList<QueuedRequest> queued = new ArrayList<QueuedRequest>();
+
+		LockedGroup(String txID, String checkpoint) {
+			this.txID = txID;
+			this.checkpoint = checkpoint;
+		}
+	}
+
+	private static class QueuedRequest {
+		final Request request;
+		final boolean noReplyToClient;
+		final ExecutedCallback callback;
+
+		QueuedRequest(Request request, boolean noReplyToClient,
+				ExecutedCallback callback) {
+			this.request = request;
+			this.noReplyToClient = noReplyToClient;
+			this.callback = callback;
+		}
+	}
+
 	/* ********* Start of coordinator-related methods *************** */
 	private Set<IntegerPacketType> cachedRequestTypes = null;
 
@@ -71,54 +158,210 @@ public abstract class AbstractTransactor<NodeIDType> extends
 		return cachedRequestTypes = types;
 	}
 
-	// simply enqueue if room and call parent
 	@Override
 	public boolean coordinateRequest(Request request, ExecutedCallback callback)
 			throws IOException, RequestParseException {
-		if (!ENABLE_TRANSACTIONS || this.callbacks.size() < MAX_QUEUED_REQUESTS
-				&& this.callbacks.putIfAbsent(request, callback) == null)
-			return this.coordinator.coordinateRequest(request, callback);
-		// else
-		ReconfigurationConfig.getLogger().log(Level.WARNING,
-				"{0} dropping request {1} because queue size limit reached",
-				new Object[] { this, request.getSummary() });
-		return false;
+		return this.coordinator.coordinateRequest(request, callback);
 	}
 
 	@Override
-	public boolean execute(Request request, boolean noReplyToClient) {
-		if (!ENABLE_TRANSACTIONS || !isLocked(request.getServiceName()) || 
-				(request instanceof TxOpRequest && this.isOngoing(((TxOpRequest)request).getTxID())))
-			return this.coordinator.execute(request, noReplyToClient,
-					this.callbacks.remove(request.getServiceName()));
-		enqueue(request, noReplyToClient);
-		/* Need to return true here no matter what, otherwise paxos will be
-		 * stuck. */
-		return true;
+	protected Request getWrapperRequest(String stringified)
+			throws RequestParseException {
+		if (!ENABLE_TRANSACTIONS || !stringified.contains(JSONPacket.PACKET_TYPE))
+			return null;
+		try {
+			JSONObject json = new JSONObject(stringified);
+			Integer type = JSONPacket.getPacketType(json);
+			return type != null
+					&& TXPacket.PacketType.intToType.containsKey(type) ? TXPacket
+					.getTXPacket(json, this.app) : null;
+		} catch (JSONException e) {
+			// not a transaction packet
+			return null;
+		}
+	}
+
+	@Override
+	protected Request getWrapperRequest(byte[] bytes)
+			throws RequestParseException {
+		return ENABLE_TRANSACTIONS ? this.getWrapperRequest(new String(bytes,
+				StandardCharsets.ISO_8859_1)) : null;
 	}
+
 	/**
-	 * @param txID
-	 * @return True if txID is an ongoing transaction.
+	 * Invoked by the underlying coordinator for every request it executes.
+	 * Transaction packets are executed here, and requests for participant
+	 * groups locked by a transaction are queued until the lock is released.
 	 */
-	private boolean isOngoing(String txID) {
-		// TODO Auto-generated method stub
-		return false;
+	@Override
+	protected boolean preExecute(Request request, boolean noReplyToClient,
+			ExecutedCallback callback) {
+		if (!ENABLE_TRANSACTIONS)
+			return false;
+		Request unwrapped = request instanceof ReplicableClientRequest
+				&& ((ReplicableClientRequest) request).getRequest() != null ? ((ReplicableClientRequest) request)
+				.getRequest() : request;
+		if (unwrapped instanceof TXPacket) {
+			this.executeTX((TXPacket) unwrapped);
+			this.callCallback(request, true, callback);
+			return true;
+		}
+		if (!this.isLocked(unwrapped.getServiceName())
+				|| unwrapped instanceof ReconfigurableRequest
+				&& ((ReconfigurableRequest) unwrapped).isStop())
+			return false;
+		this.enqueue(request, noReplyToClient, callback);
+		return true;
 	}
 
-	private TXInterface getTransaction(String serviceName) {
-		// TODO Auto-generated method stub
-		return null;
+	@Override
+	public boolean execute(Request request, boolean noReplyToClient) {
+		return this.coordinator.execute(request, noReplyToClient);
 	}
 
-	protected abstract void enqueue(Request request, boolean noReplyToClient);
-
-	protected abstract boolean isLocked(String serviceName);
-
 	@Override
 	public boolean execute(Request request) {
 		return this.execute(request, false);
 	}
 
+	/**
+	 * @param name
+	 * @return True if the participant group {@code name} is locked by a
+	 *         transaction.
+	 */
+	protected boolean isLocked(String name) {
+		return this.groupLocks.isLocked(name);
+	}
+
+	private void enqueue(Request request, boolean noReplyToClient,
+			ExecutedCallback callback) {
+		LockedGroup locked = this.lockedGroups.get(request.getServiceName());
+		if (locked != null && locked.queued.size() < MAX_QUEUED_REQUESTS) {
+			locked.queued.add(new QueuedRequest(request, noReplyToClient,
+					callback));
+			return;
+		}
+		ReconfigurationConfig.getLogger().log(Level.WARNING,
+				"{0} dropping request {1} because queue size limit reached",
+				new Object[] { this, request.getSummary() });
+		this.callCallback(request, false, callback);
+	}
+
+	private void executeTX(TXPacket request) {
+		String name = request.getServiceName();
+		String txID = request.getTXID();
+		switch (request.getTXPacketType()) {
+		case LOCK_REQUEST:
+			for (String requester : ((LockRequest) request).getTXIDs())
+				if (!this.abortedTXs.containsKey(requester)
+						&& this.groupLocks.tryLock(name, requester)) {
+					this.lockedGroups.computeIfAbsent(name,
+							k -> new LockedGroup(requester, this.app
+									.checkpoint(name)));
+					((LockRequest) request).setGranted(requester);
+				}
+			if (!((LockRequest) request).isGranted(txID))
+				request.setResponseCode(ResponseCode.LOCK_FAILURE);
+			break;
+
+		case UNLOCK_REQUEST:
+			for (String holder : ((UnlockRequest) request).getTXIDs())
+				this.release(name, holder);
+			break;
+
+		case ABORT_REQUEST:
+			if (this.isTxGroup(name, txID)) {
+				if (this.decisions.putIfAbsent(txID,
+						TxStateRequest.State.ABORTED) == TxStateRequest.State.COMMITTED)
+					((AbortRequest) request).setCommitted();
+			} else if (txID.equals(this.groupLocks.getHolder(name))) {
+				LockedGroup locked = this.lockedGroups.get(name);
+				if (locked != null && locked.checkpoint != null)
+					this.app.restore(name, locked.checkpoint);
+				this.release(name, txID);
+			}
+			this.abortedTXs.put(txID, true);
+			break;
+
+		case COMMIT_REQUEST:
+			if (!((CommitRequest) request).isOneRound()) {
+				if (this.decisions.putIfAbsent(txID,
+						TxStateRequest.State.COMMITTED) == TxStateRequest.State.ABORTED)
+					request.setFailed(ResponseCode.COMMIT_FAILURE);
+			} else
+				this.commitOneRound((CommitRequest) request);
+			break;
+
+		case TX_STATE_REQUEST:
+			TxStateRequest.State state = this.decisions.get(txID);
+			((TxStateRequest) request)
+					.setState(state != null ? state
+							: TxStateRequest.State.EXECUTING);
+			break;
+
+		case TX_OP_REQUEST:
+			LockedGroup locked = this.lockedGroups.get(name);
+			if (locked == null || !locked.txID.equals(txID))
+				request.setFailed(ResponseCode.LOCK_FAILURE);
+			// retransmissions are not executed again
+			else if (locked.executed.add(request.getRequestID()))
+				for (Request op : ((TxOpRequest) request).getRequests())
+					if (!this.app.execute(op, true)) {
+						request.setFailed(ResponseCode.TXOP_FAILURE);
+						break;
+					}
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	/* A transaction on a single group needs neither locks nor a decision in
+	 * the transaction group as a single paxos operation executes all of its
+	 * operations atomically. */
+	private void commitOneRound(CommitRequest request) {
+		String name = request.getServiceName();
+		String txID = request.getTXID();
+		Boolean outcome = this.oneRoundTXs.get(txID);
+		if (outcome == null) {
+			String holder = this.groupLocks.getHolder(name);
+			if (holder != null && !holder.equals(txID)) {
+				request.setFailed(ResponseCode.LOCK_FAILURE);
+				return;
+			}
+			String checkpoint = this.app.checkpoint(name);
+			outcome = true;
+			for (Request op : request.getRequests())
+				if (!this.app.execute(op, true)) {
+					outcome = false;
+					break;
+				}
+			if (!outcome && checkpoint != null)
+				this.app.restore(name, checkpoint);
+			this.oneRoundTXs.put(txID, outcome);
+		}
+		if (!outcome)
+			request.setFailed(ResponseCode.TXOP_FAILURE);
+	}
+
+	/* Releases the lock on name if held by txID and executes the requests
+	 * queued behind it. */
+	private void release(String name, String txID) {
+		if (!this.groupLocks.unlock(name, txID))
+			return;
+		LockedGroup locked = this.lockedGroups.remove(name);
+		if (locked != null)
+			for (QueuedRequest queued : locked.queued)
+				this.coordinator.execute(queued.request,
+						queued.noReplyToClient, queued.callback);
+	}
+
+	private boolean isTxGroup(String name, String txID) {
+		return name.equals(Config.getGlobalString(RC.TX_GROUP_NAME))
+				|| name.equals(txID);
+	}
+
 	@Override
 	public boolean createReplicaGroup(String serviceName, int epoch,
 			String state, Set<NodeIDType> nodes) {
@@ -4,11 +4,18 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
 
 import edu.umass.cs.gigapaxos.interfaces.Application;
 import edu.umass.cs.gigapaxos.interfaces.Request;
 import edu.umass.cs.reconfiguration.AbstractReplicaCoordinator;
+import edu.umass.cs.reconfiguration.ReconfigurableAppClientAsync;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
 import edu.umass.cs.reconfiguration.interfaces.GigaPaxosClient;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ClientReconfigurationPacket;
@@ -21,7 +28,8 @@ import edu.umass.cs.txn.interfaces.TxOp;
 import edu.umass.cs.txn.txpackets.AbortRequest;
 import edu.umass.cs.txn.txpackets.CommitRequest;
 import edu.umass.cs.txn.txpackets.LockRequest;
-import edu.umass.cs.txn.txpackets.UnlockRequest;
+import edu.umass.cs.txn.txpackets.TXPacket;
+import edu.umass.cs.txn.txpackets.TxOpRequest;
 import edu.umass.cs.utils.Config;
 
 /**
@@ -33,7 +41,7 @@ import edu.umass.cs.utils.Config;
  *         purpose.
  * @param <NodeIDType>
  */
-public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> implements TXLocker {
+public final class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> implements TXLocker {
 
 	/**
 	 * A distributed transaction processor needs a client to submit transaction
@@ -43,6 +51,10 @@ public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> i
 	
 	private final TXLocker txLocker;
 
+	private final TXLockBatcher lockBatcher;
+	private final TXLockBatcher unlockBatcher;
+	private final long lockTimeout;
+
 	/**
 	 * @param coordinator
 	 * @throws IOException
@@ -50,15 +62,41 @@ public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> i
 	public DistTransactor(AbstractReplicaCoordinator<NodeIDType> coordinator)
 			throws IOException {
 		super(coordinator);
-		this.gpClient = TXUtils.getGPClient(coordinator);
+		this.gpClient = Config.getGlobalBoolean(RC.ENABLE_TRANSACTIONS) ? TXUtils
+				.getGPClient(this) : null;
 		this.txLocker = new TXLockerMap();
+		this.lockTimeout = Config.getGlobalLong(RC.TX_LOCK_TIMEOUT);
+		this.lockBatcher = this.gpClient != null ? new TXLockBatcher(
+				this.gpClient, false, MAX_LOCK_BATCH_SIZE, RTO) : null;
+		this.unlockBatcher = this.gpClient != null ? new TXLockBatcher(
+				this.gpClient, true, MAX_LOCK_BATCH_SIZE, RTO) : null;
 	}
-	
-	private Application getApp() {
-//		if(this.app instanceof TrivialRepliconfigurable ? ((TrivialRepliconfigurable)this.app).)
-		return null;
+
+	/**
+	 * Used when the client is created by the caller, e.g., to run
+	 * transactions over an in-process coordinator.
+	 * 
+	 * @param coordinator
+	 * @param gpClient
+	 */
+	public DistTransactor(AbstractReplicaCoordinator<NodeIDType> coordinator,
+			GigaPaxosClient<Request> gpClient) {
+		super(coordinator);
+		this.gpClient = gpClient;
+		this.txLocker = new TXLockerMap();
+		this.lockTimeout = Config.getGlobalLong(RC.TX_LOCK_TIMEOUT);
+		this.lockBatcher = new TXLockBatcher(gpClient, false,
+				MAX_LOCK_BATCH_SIZE, RTO);
+		this.unlockBatcher = new TXLockBatcher(gpClient, true,
+				MAX_LOCK_BATCH_SIZE, RTO);
 	}
 
+	private static final int MAX_LOCK_BATCH_SIZE = Config
+			.getGlobalInt(RC.TX_MAX_LOCK_BATCH_SIZE);
+	private static final long RTO = ReconfigurableAppClientAsync.DEFAULT_GC_TIMEOUT;
+	// upper bound on the randomized backoff between lock attempts
+	private static final long MAX_LOCK_BACKOFF = 32;
+
 	/**
 	 * A blocking call that returns upon successfully locking {@code lockID} or
 	 * throws a {@link TXException}. Locking a group involves synchronously 
@@ -72,13 +110,13 @@ public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> i
 	}
 
 	/**
-	 * Acquires the locks in the order specified by {@code lockIDs}.
+	 * Acquires the locks in lexicographic order.
 	 * 
 	 * @param lockIDs
 	 * @throws TXException
 	 */
 	public void lock(String[] lockIDs) throws TXException {
-		throw new RuntimeException("Unimplemented");
+		this.txLocker.lock(lockIDs);
 	}
 
 	/**
@@ -89,17 +127,18 @@ public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> i
 	 * @throws TXException
 	 */
 	public void unlock(String lockID) throws TXException {
-		throw new RuntimeException("Unimplemented");
+		this.txLocker.unlock(lockID);
 	}
 
 	/**
-	 * Releases the locks in the order specified by {@code lockIDs}.
+	 * Releases the locks in the reverse of the order in which they are
+	 * acquired.
 	 * 
 	 * @param lockIDs
 	 * @throws TXException
 	 */
 	public void unlock(String[] lockIDs) throws TXException {
-		throw new RuntimeException("Unimplemented");
+		this.txLocker.unlock(lockIDs);
 	}
 
 	/**
@@ -153,59 +192,120 @@ public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> i
 	 * total number of active replicas may be much higher than the size of
 	 * typical participant groups.
 	 * 
+	 * The implementation below further cuts latency as follows. A transaction
+	 * involving a single participant group skips all of the above and is
+	 * executed atomically by a single paxos operation in that group. Otherwise,
+	 * locks are acquired one group at a time in lock order, with the lock
+	 * requests of concurrent transactions on the same group batched into one
+	 * paxos operation; the operations of all groups are then executed, or
+	 * prepared, in parallel, one paxos operation per group; and the unlocks
+	 * are issued in parallel, also batched per group. An abort needs to be
+	 * decided in the transaction group only if a commit may have been.
 	 * 
 	 * @param tx
 	 * @throws TXException
 	 */
 	public void transact(Transaction tx) throws TXException {
-		boolean locked = false, executed = false, committed = false;
+		if (this.gpClient == null)
+			throw new TXException(ResponseCode.TXOP_FAILURE,
+					"Transactions are disabled");
+		LinkedHashMap<String, List<Request>> txOps = getTxOpsByGroup(tx);
+		if (txOps.size() == 1) {
+			this.commitOneRound(tx, txOps);
+			return;
+		}
+		// groups whose locks may have been acquired
+		ArrayList<String> locked = new ArrayList<String>();
+		boolean commitAttempted = false, committed = false;
 		try {
-			if (this.createTxGroup(tx) && (locked = getLocks(tx))
-					&& (executed = executeTxOps(tx))
-					&& (committed = commit(tx)) && releaseLocks(tx))
-				// all is good
-				return;
-
+			if (!this.createTxGroup(tx))
+				throw new TXException(ResponseCode.TXOP_FAILURE,
+						"Failed to create transaction group for " + tx);
+			this.getLocks(tx, locked);
+			this.prepare(tx, txOps);
+			commitAttempted = true;
+			committed = this.commit(tx);
 		} catch (IOException e) {
 			throw new TXException(ResponseCode.IOEXCEPTION, e);
 		} finally {
-			// abort
-			if (!committed)
-				abort(tx, locked, executed);
+			if (committed)
+				this.releaseLocks(tx, locked);
+			else
+				this.abort(tx, locked, commitAttempted);
 		}
 	}
 
-	private void abort(Transaction tx, boolean locked, boolean executed)
-			throws TXException {
-		assert (!executed || locked);
-		Request response = null;
-		if (locked && !executed) {
-			do {
-				try {
-					// try to get an abort committed in the transaction group
-					response = this.gpClient.sendRequest(new AbortRequest(tx
-							.getTxGroupName()));
-				} catch (IOException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			} while (((AbortRequest) response).isFailed()
-					&& !((AbortRequest) response).isCommitted());
-		}
+	/* Groups the operations by participant group preserving their order
+	 * within each group; the groups themselves are in lock order. */
+	private static LinkedHashMap<String, List<Request>> getTxOpsByGroup(
+			Transaction tx) {
+		LinkedHashMap<String, List<Request>> txOps = new LinkedHashMap<String, List<Request>>();
+		for (String group : tx.getLockList())
+			txOps.put(group, new ArrayList<Request>());
+		for (TxOp op : tx.getTxOps())
+			txOps.computeIfAbsent(op.getServiceName(),
+					k -> new ArrayList<Request>()).add(op);
+		return txOps;
+	}
 
-		if (((AbortRequest) response).isCommitted())
-			this.releaseLocks(tx);
+	/* A transaction on a single group is sent to the group along with its
+	 * operations and committed with a single paxos operation, retrying while
+	 * the group is locked by another transaction. */
+	private void commitOneRound(Transaction tx,
+			LinkedHashMap<String, List<Request>> txOps) throws TXException {
+		String group = txOps.keySet().iterator().next();
+		long deadline = System.currentTimeMillis() + this.lockTimeout;
+		for (int attempt = 0;; attempt++) {
+			Request response;
+			try {
+				response = this.gpClient.sendRequest(new CommitRequest(group,
+						tx.getTXID(), txOps.get(group)));
+			} catch (IOException e) {
+				throw new TXException(ResponseCode.IOEXCEPTION, e);
+			}
+			if (!(response instanceof CommitRequest))
+				throw new TXException(ResponseCode.COMMIT_FAILURE,
+						"No response committing " + tx);
+			if (!((CommitRequest) response).isFailed())
+				return;
+			if (((CommitRequest) response).getResponseCode() != ResponseCode.LOCK_FAILURE)
+				throw new TXException(ResponseCode.TXOP_FAILURE,
+						"Failed to execute transaction operations of " + tx);
+			backoff(attempt, deadline, group);
+		}
+	}
 
+	private void abort(Transaction tx, ArrayList<String> locked,
+			boolean commitAttempted) throws TXException {
+		if (commitAttempted) {
+			/* The commit may have been decided even if we did not hear back,
+			 * so an abort must be decided before rolling back. */
+			ArrayList<Request> abort = new ArrayList<Request>();
+			abort.add(new AbortRequest(TXUtils.getTxGroupName(tx), tx.getTXID()));
+			Request response = TXUtils.tryFinishAsyncTasks(this.gpClient,
+					abort)[0];
+			if (response == null) {
+				ReconfigurationConfig.getLogger().log(Level.WARNING,
+						"{0} unable to decide the outcome of {1}",
+						new Object[] { this, tx });
+				throw new TXException(ResponseCode.ABORT_FAILURE,
+						"Unable to decide the outcome of " + tx);
+			}
+			if (((AbortRequest) response).isCommitted()) {
+				this.releaseLocks(tx, locked);
+				return;
+			}
+		}
 		// else rollback participants
-		this.rollbackParticipantGroups(tx);
+		this.rollbackParticipantGroups(tx, locked);
 	}
 
-	private void rollbackParticipantGroups(Transaction tx) {
+	private void rollbackParticipantGroups(Transaction tx,
+			ArrayList<String> locked) {
 		ArrayList<Request> rollbacks = new ArrayList<Request>();
 		// abort participant groups until successful
-		for (String participantGroup : tx.getLockList())
-			rollbacks.add(new AbortRequest(participantGroup, tx
-					.getTxGroupName()));
+		for (String participantGroup : locked)
+			rollbacks.add(new AbortRequest(participantGroup, tx.getTXID()));
 		/* best effort here is okay because one or more participant groups may
 		 * be unavailable, so the onus is on them to complete the rollback when
 		 * they are available again. */
@@ -213,53 +313,110 @@ public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> i
 	}
 
 	private boolean commit(Transaction tx) throws TXException, IOException {
-		if (((CommitRequest) this.gpClient.sendRequest(new CommitRequest(tx)))
-				.isFailed())
+		Request response = this.gpClient.sendRequest(new CommitRequest(
+				TXUtils.getTxGroupName(tx), tx.getTXID()));
+		if (!(response instanceof CommitRequest)
+				|| ((CommitRequest) response).isFailed())
 			throw new TXException(ResponseCode.COMMIT_FAILURE,
-					"Failed to commie transaction " + tx);
-		;
+					"Failed to commit transaction " + tx);
 		return true;
 	}
 
-	private boolean getLocks(Transaction tx) throws TXException, IOException {
-		for (String lockID : tx.getLockList())
-			if (((LockRequest) gpClient.sendRequest(new LockRequest(lockID,
-			/* The client ID is used as the ID of the initiator. */
-			tx))).isFailed())
-				throw new TXException(ResponseCode.LOCK_FAILURE,
-						"Failed to acquire lock " + lockID);
-		;
-		return true;
+	/* Acquires the participant group locks one at a time in lock order, which
+	 * is what prevents deadlocks across concurrent transactions. A group
+	 * locked by another transaction is retried with a randomized backoff until
+	 * the lock timeout. Lock requests from concurrent transactions on the same
+	 * group are batched into a single paxos operation. */
+	private void getLocks(Transaction tx, ArrayList<String> locked)
+			throws TXException {
+		long deadline = System.currentTimeMillis() + this.lockTimeout;
+		for (String lockID : tx.getLockList()) {
+			locked.add(lockID);
+			for (int attempt = 0;; attempt++) {
+				TXPacket response = await(this.lockBatcher.submit(lockID,
+						tx.getTXID()));
+				if (response instanceof LockRequest
+						&& ((LockRequest) response).isGranted(tx.getTXID()))
+					break;
+				backoff(attempt, deadline, lockID);
+			}
+		}
 	}
 
-	private boolean executeTxOps(Transaction tx) throws TXException,
-			IOException {
-		Request response;
-		for (TxOp op : tx.getTxOps())
-			if (!op.handleResponse(response = gpClient.sendRequest(op)))
+	/* Executes the operations of all participant groups in parallel, one
+	 * paxos operation per group. Every group is locked by now, so nothing is
+	 * visible outside the transaction until the locks are released. */
+	private void prepare(Transaction tx,
+			LinkedHashMap<String, List<Request>> txOps) throws TXException {
+		ArrayList<Request> prepares = new ArrayList<Request>();
+		for (String group : txOps.keySet())
+			if (!txOps.get(group).isEmpty())
+				prepares.add(new TxOpRequest(tx.getTXID(), group, txOps
+						.get(group)));
+		Request[] responses = TXUtils.tryFinishAsyncTasks(this.gpClient,
+				prepares);
+		for (int i = 0; i < responses.length; i++)
+			if (!((TxOpRequest) prepares.get(i)).handleResponse(responses[i]))
 				throw new TXException(ResponseCode.TXOP_FAILURE,
-						"Failed to execute transaction operation "
-								+ op.getSummary() + " : "
-								+ response.getSummary());
+						"Failed to execute transaction operations "
+								+ prepares.get(i).getSummary()
+								+ " : "
+								+ (responses[i] != null ? responses[i]
+										.getSummary() : null));
+	}
 
-		return true;
+	private void releaseLocks(Transaction tx, ArrayList<String> locked) {
+		ArrayList<CompletableFuture<TXPacket>> unlocks = new ArrayList<CompletableFuture<TXPacket>>();
+		for (String lockID : locked)
+			unlocks.add(this.unlockBatcher.submit(lockID, tx.getTXID()));
+		for (CompletableFuture<TXPacket> unlock : unlocks)
+			if (await(unlock) == null)
+				/* The participant group will be unlocked when the initiator
+				 * or another replica retries. */
+				ReconfigurationConfig.getLogger().log(Level.INFO,
+						"{0} unable to confirm unlocks for {1}",
+						new Object[] { this, tx });
 	}
 
-	private boolean releaseLocks(Transaction tx) throws TXException {
-		ArrayList<Request> unlocks = new ArrayList<Request>();
-		for (String lockID : tx.getLockList())
-			unlocks.add(new UnlockRequest(lockID,
-			/* The client ID is used as the ID of the initiator. */
-			gpClient.toString()));
-		Request[] responses = TXUtils.tryFinishAsyncTasks(gpClient, unlocks);
-		for (Request response : responses)
-			if (((UnlockRequest) response).isFailed())
-				return false;
-		return true;
+	private static TXPacket await(CompletableFuture<TXPacket> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// treated as no response
+		}
+		return null;
+	}
+
+	private static void backoff(int attempt, long deadline, String lockID)
+			throws TXException {
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0)
+			throw new TXException(ResponseCode.LOCK_FAILURE,
+					"Failed to acquire lock " + lockID);
+		long delay = Math.min(remaining, 1 + (long) (Math.random() * Math.min(
+				MAX_LOCK_BACKOFF, 1L << Math.min(attempt, 5))));
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TXException(ResponseCode.LOCK_FAILURE, e);
+		}
+	}
+
+	/**
+	 * Releases the resources used to batch lock operations.
+	 */
+	public void close() {
+		if (this.lockBatcher != null)
+			this.lockBatcher.close();
+		if (this.unlockBatcher != null)
+			this.unlockBatcher.close();
 	}
 
 	private boolean fixedTXGroupCreated = false;
-	private static final boolean FIXED_TX_GROUP = true;
+	static final boolean FIXED_TX_GROUP = true;
 
 	/**
 	 * This is the first step in a transaction. There is no point proceeding
@@ -280,10 +437,8 @@ public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> i
 			return true;
 		// else
 		CreateServiceName response = (CreateServiceName) (this.gpClient
-				.sendRequest(new CreateServiceName(FIXED_TX_GROUP ? Config
-						.getGlobalString(RC.TX_GROUP_NAME) : tx
-						.getTxGroupName(), tx.getTxInitState(), getTxGroup(tx
-						.getTXID()))));
+				.sendRequest(new CreateServiceName(TXUtils.getTxGroupName(tx),
+						tx.getTxInitState(), getTxGroup(tx.getTXID()))));
 		return response != null
 				&& (!response.isFailed() || response.getResponseCode() == ClientReconfigurationPacket.ResponseCodes.DUPLICATE_ERROR)
 				&& (this.fixedTXGroupCreated = true);
@@ -301,9 +456,9 @@ public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> i
 		/* Picking start index randomly introduces some load balancing in the
 		 * transaction group when the total number of active replicas is much
 		 * higher than MAX_TX_GROUP_SIZE */
-		int startIndex = txid.hashCode() % addresses.length;
-		for (int i = startIndex; group.size() < MAX_TX_GROUP_SIZE; i = (i + 1)
-				% addresses.length)
+		int startIndex = Math.floorMod(txid.hashCode(), addresses.length);
+		for (int i = startIndex; group.size() < Math.min(MAX_TX_GROUP_SIZE,
+				addresses.length); i = (i + 1) % addresses.length)
 			group.add(addresses[i]);
 		return group;
 	}
@@ -322,12 +477,4 @@ public class DistTransactor<NodeIDType> extends AbstractTransactor<NodeIDType> i
 				.sendRequest(new RequestActiveReplicas(Config
 						.getGlobalString(RC.BROADCAST_NAME)))).getActives();
 	}
-
-	protected boolean isLocked(String name) {
-		throw new RuntimeException("Unimplemented");
-	}
-
-	protected void enqueue(Request request, boolean noReplyToClient) {
-		throw new RuntimeException("Unimplemented");
-	}
 }
@@ -0,0 +1,146 @@
+package edu.umass.cs.txn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.gigapaxos.interfaces.RequestCallback;
+import edu.umass.cs.reconfiguration.interfaces.GigaPaxosClient;
+import edu.umass.cs.txn.txpackets.LockRequest;
+import edu.umass.cs.txn.txpackets.TXPacket;
+import edu.umass.cs.txn.txpackets.UnlockRequest;
+
+/**
+ * @author arun
+ *
+ *         Coalesces the lock (or unlock) operations of concurrent transactions
+ *         on the same participant group into a single {@link LockRequest} (or
+ *         {@link UnlockRequest}), so that a hot group decides many of them with
+ *         a single paxos operation.
+ * 
+ *         <p>
+ * 
+ *         Batching is reactive: when no batch is in flight for a group, an
+ *         operation is sent right away, so a lightly loaded initiator adds no
+ *         delay. Otherwise, the operation waits until the in-flight batch is
+ *         responded to or times out, and is then sent along with everything
+ *         else that queued up behind it, up to a maximum batch size.
+ */
+class TXLockBatcher {
+
+	private final GigaPaxosClient<Request> gpClient;
+	private final boolean unlock;
+	private final int maxBatchSize;
+	private final long timeout;
+	private final ScheduledExecutorService timer;
+
+	// guarded by this
+	private final HashMap<String, PendingBatch> pending = new HashMap<String, PendingBatch>();
+
+	private static class PendingBatch {
+		final LinkedHashMap<String, CompletableFuture<TXPacket>> waiting = new LinkedHashMap<String, CompletableFuture<TXPacket>>();
+		Map<String, CompletableFuture<TXPacket>> inFlight = null;
+	}
+
+	TXLockBatcher(GigaPaxosClient<Request> gpClient, boolean unlock,
+			int maxBatchSize, long timeout) {
+		this.gpClient = gpClient;
+		this.unlock = unlock;
+		this.maxBatchSize = maxBatchSize;
+		this.timeout = timeout;
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, TXLockBatcher.class.getSimpleName());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @param group
+	 * @param txID
+	 * @return A future completed with the response to the batch that carried
+	 *         the operation, or with null if the batch could not be sent or was
+	 *         not responded to in time.
+	 */
+	CompletableFuture<TXPacket> submit(String group, String txID) {
+		Map<String, CompletableFuture<TXPacket>> batch = null;
+		CompletableFuture<TXPacket> future = null;
+		synchronized (this) {
+			PendingBatch batches = this.pending.computeIfAbsent(group,
+					k -> new PendingBatch());
+			future = batches.waiting.computeIfAbsent(txID,
+					k -> new CompletableFuture<TXPacket>());
+			if (batches.inFlight == null)
+				batch = this.drain(batches);
+		}
+		if (batch != null)
+			this.send(group, batch);
+		return future;
+	}
+
+	void close() {
+		this.timer.shutdownNow();
+	}
+
+	private void send(String group, Map<String, CompletableFuture<TXPacket>> batch) {
+		List<String> txIDs = new ArrayList<String>(batch.keySet());
+		Request request = this.unlock ? new UnlockRequest(group, txIDs)
+				: new LockRequest(group, txIDs);
+		this.timer.schedule(() -> this.onResponse(group, batch, null),
+				this.timeout, TimeUnit.MILLISECONDS);
+		try {
+			this.gpClient.sendRequest(request, new RequestCallback() {
+				@Override
+				public void handleResponse(Request response) {
+					onResponse(group, batch, response);
+				}
+			});
+		} catch (IOException e) {
+			this.onResponse(group, batch, null);
+		}
+	}
+
+	private void onResponse(String group,
+			Map<String, CompletableFuture<TXPacket>> batch, Request response) {
+		for (CompletableFuture<TXPacket> future : batch.values())
+			future.complete(response instanceof TXPacket ? (TXPacket) response
+					: null);
+		Map<String, CompletableFuture<TXPacket>> next = null;
+		synchronized (this) {
+			PendingBatch batches = this.pending.get(group);
+			// ignore late responses and timeouts of already finished batches
+			if (batches == null || batches.inFlight != batch)
+				return;
+			batches.inFlight = null;
+			if (!batches.waiting.isEmpty())
+				next = this.drain(batches);
+			else
+				this.pending.remove(group);
+		}
+		if (next != null)
+			this.send(group, next);
+	}
+
+	// must be invoked while holding the lock on this
+	private Map<String, CompletableFuture<TXPacket>> drain(PendingBatch batches) {
+		LinkedHashMap<String, CompletableFuture<TXPacket>> batch = new LinkedHashMap<String, CompletableFuture<TXPacket>>();
+		Iterator<Map.Entry<String, CompletableFuture<TXPacket>>> iterator = batches.waiting
+				.entrySet().iterator();
+		while (iterator.hasNext() && batch.size() < this.maxBatchSize) {
+			Map.Entry<String, CompletableFuture<TXPacket>> entry = iterator
+					.next();
+			batch.put(entry.getKey(), entry.getValue());
+			iterator.remove();
+		}
+		return batches.inFlight = batch;
+	}
+}
@@ -1,14 +1,179 @@
 package edu.umass.cs.txn;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
+import edu.umass.cs.txn.exceptions.ResponseCode;
 import edu.umass.cs.txn.exceptions.TXException;
 import edu.umass.cs.txn.interfaces.TXLocker;
+import edu.umass.cs.utils.Config;
 
 /**
  * @author arun
  *
+ *         An in-memory lock table mapping each lock ID to the ID of its holder,
+ *         which is a transaction ID for locks acquired on behalf of
+ *         transactions. Locks are reentrant for the same holder.
+ * 
+ *         <p>
+ * 
+ *         At participant groups, the table is only ever updated while executing
+ *         lock, unlock, and abort requests agreed upon by paxos, so all replicas
+ *         of a group go through the same sequence of lock states. That is also
+ *         why those updates use the non-blocking {@link #tryLock(String, String)}
+ *         as blocking while executing a paxos decision would stall the group.
+ *         The blocking {@link TXLocker} methods are meant for callers in the
+ *         same JVM and use the calling thread as the holder.
  */
 public class TXLockerMap implements TXLocker {
 
+	// guarded by this
+	private final HashMap<String, String> holders = new HashMap<String, String>();
+
+	private final long timeout;
+
+	/**
+	 * 
+	 */
+	public TXLockerMap() {
+		this(Config.getGlobalLong(RC.TX_LOCK_TIMEOUT));
+	}
+
+	/**
+	 * @param timeout
+	 *            Time in milliseconds for which the blocking lock methods wait
+	 *            for a held lock before giving up.
+	 */
+	public TXLockerMap(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param lockID
+	 * @param holder
+	 * @return True if {@code lockID} is now held by {@code holder}, including
+	 *         if it was already held by {@code holder}; false if it is held by
+	 *         someone else.
+	 */
+	public synchronized boolean tryLock(String lockID, String holder) {
+		String current = this.holders.putIfAbsent(lockID, holder);
+		return current == null || current.equals(holder);
+	}
+
+	/**
+	 * Acquires all or none of {@code lockIDs} in lexicographic order.
+	 * 
+	 * @param lockIDs
+	 * @param holder
+	 * @return True if all of {@code lockIDs} are now held by {@code holder};
+	 *         false otherwise, in which case none of the locks acquired by
+	 *         this call remain held.
+	 */
+	public synchronized boolean tryLock(String[] lockIDs, String holder) {
+		ArrayList<String> acquired = new ArrayList<String>();
+		for (String lockID : sorted(lockIDs)) {
+			String current = this.holders.putIfAbsent(lockID, holder);
+			if (current == null)
+				acquired.add(lockID);
+			else if (!current.equals(holder)) {
+				for (String held : acquired)
+					this.holders.remove(held);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Blocks until {@code lockID} is held by {@code holder} or the timeout
+	 * expires.
+	 * 
+	 * @param lockID
+	 * @param holder
+	 * @throws TXException
+	 */
+	public synchronized void lock(String lockID, String holder)
+			throws TXException {
+		long deadline = System.currentTimeMillis() + this.timeout;
+		long remaining;
+		while (!this.tryLock(lockID, holder))
+			try {
+				if ((remaining = deadline - System.currentTimeMillis()) <= 0)
+					throw new TXException(ResponseCode.LOCK_FAILURE,
+							"Timed out acquiring lock " + lockID + " held by "
+									+ this.holders.get(lockID));
+				this.wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new TXException(ResponseCode.LOCK_FAILURE, e);
+			}
+	}
+
+	/**
+	 * Blocks until all of {@code lockIDs}, acquired one at a time in
+	 * lexicographic order, are held by {@code holder}.
+	 * 
+	 * @param lockIDs
+	 * @param holder
+	 * @throws TXException
+	 *             If any lock could not be acquired, in which case none of the
+	 *             locks acquired by this call remain held.
+	 */
+	public synchronized void lock(String[] lockIDs, String holder)
+			throws TXException {
+		ArrayList<String> acquired = new ArrayList<String>();
+		try {
+			for (String lockID : sorted(lockIDs)) {
+				if (!holder.equals(this.holders.get(lockID))) {
+					this.lock(lockID, holder);
+					acquired.add(lockID);
+				}
+			}
+		} catch (TXException e) {
+			for (String held : acquired)
+				this.unlock(held, holder);
+			throw e;
+		}
+	}
+
+	/**
+	 * @param lockID
+	 * @param holder
+	 * @return True if {@code lockID} was held by {@code holder} and has been
+	 *         released; false otherwise.
+	 */
+	public synchronized boolean unlock(String lockID, String holder) {
+		if (!this.holders.remove(lockID, holder))
+			return false;
+		this.notifyAll();
+		return true;
+	}
+
+	/**
+	 * @param lockID
+	 * @return The holder of {@code lockID} or null if it is not locked.
+	 */
+	public synchronized String getHolder(String lockID) {
+		return this.holders.get(lockID);
+	}
+
+	/**
+	 * @param lockID
+	 * @return True if {@code lockID} is held by anyone.
+	 */
+	public synchronized boolean isLocked(String lockID) {
+		return this.holders.containsKey(lockID);
+	}
+
+	/**
+	 * @return Number of locks currently held.
+	 */
+	public synchronized int size() {
+		return this.holders.size();
+	}
+
 	/**
 	 * A blocking call that returns upon successfully locking {@code lockID} or
 	 * throws a {@link TXException}. Locking a group involves synchronously
@@ -19,17 +184,18 @@ public class TXLockerMap implements TXLocker {
 	 */
 	@Override
 	public void lock(String lockID) throws TXException {
-		throw new RuntimeException("Unimplemented");
+		this.lock(lockID, getThreadHolder());
 	}
 
 	/**
-	 * Acquires the locks in the order specified by {@code lockIDs}.
+	 * Acquires the locks in lexicographic order.
 	 * 
 	 * @param lockIDs
 	 * @throws TXException
 	 */
+	@Override
 	public void lock(String[] lockIDs) throws TXException {
-		throw new RuntimeException("Unimplemented");
+		this.lock(lockIDs, getThreadHolder());
 	}
 
 	/**
@@ -39,18 +205,45 @@ public class TXLockerMap implements TXLocker {
 	 * @param lockID
 	 * @throws TXException
 	 */
+	@Override
 	public void unlock(String lockID) throws TXException {
-		throw new RuntimeException("Unimplemented");
+		if (!this.unlock(lockID, getThreadHolder()))
+			throw new TXException(ResponseCode.UNLOCK_FAILURE, "Lock "
+					+ lockID + " not held by " + getThreadHolder());
 	}
 
 	/**
-	 * Releases the locks in the order specified by {@code lockIDs}.
+	 * Releases the locks in the reverse of the order in which
+	 * {@link #lock(String[])} acquires them.
 	 * 
 	 * @param lockIDs
 	 * @throws TXException
 	 */
+	@Override
 	public void unlock(String[] lockIDs) throws TXException {
-		throw new RuntimeException("Unimplemented");
+		String[] sorted = sorted(lockIDs);
+		TXException failure = null;
+		for (int i = sorted.length - 1; i >= 0; i--)
+			try {
+				this.unlock(sorted[i]);
+			} catch (TXException e) {
+				failure = e;
+			}
+		if (failure != null)
+			throw failure;
+	}
+
+	private static String[] sorted(String[] lockIDs) {
+		String[] sorted = Arrays.copyOf(lockIDs, lockIDs.length);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private static String getThreadHolder() {
+		return "thread:" + Thread.currentThread().threadId();
 	}
 
+	public synchronized String toString() {
+		return TXLockerMap.class.getSimpleName() + this.holders.keySet();
+	}
 }
@@ -0,0 +1,78 @@
+package edu.umass.cs.txn;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.txn.exceptions.ResponseCode;
+import edu.umass.cs.txn.exceptions.TXException;
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * Tests {@link TXLockerMap}.
+ */
+public class TXLockerMapTest extends DefaultTest {
+
+	/**
+	 * Locks are exclusive across holders and reentrant for the same holder.
+	 */
+	@Test
+	public void testTryLock() {
+		TXLockerMap locks = new TXLockerMap(100);
+		Assert.assertTrue(locks.tryLock("g1", "tx1"));
+		Assert.assertTrue(locks.tryLock("g1", "tx1"));
+		Assert.assertFalse(locks.tryLock("g1", "tx2"));
+		Assert.assertEquals("tx1", locks.getHolder("g1"));
+		Assert.assertFalse(locks.unlock("g1", "tx2"));
+		Assert.assertTrue(locks.unlock("g1", "tx1"));
+		Assert.assertFalse(locks.isLocked("g1"));
+		Assert.assertTrue(locks.tryLock("g1", "tx2"));
+	}
+
+	/**
+	 * Acquiring several locks is all or nothing.
+	 */
+	@Test
+	public void testTryLockAll() {
+		TXLockerMap locks = new TXLockerMap(100);
+		Assert.assertTrue(locks.tryLock("g2", "tx1"));
+		Assert.assertFalse(locks.tryLock(new String[] { "g3", "g1", "g2" },
+				"tx2"));
+		Assert.assertEquals(1, locks.size());
+		Assert.assertTrue(locks.tryLock(new String[] { "g3", "g1", "g2" },
+				"tx1"));
+		Assert.assertEquals(3, locks.size());
+	}
+
+	/**
+	 * A blocked lock is acquired once released and times out otherwise.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBlockingLock() throws Exception {
+		TXLockerMap locks = new TXLockerMap(100);
+		locks.lock("g1", "tx1");
+		try {
+			locks.lock(new String[] { "g0", "g1" }, "tx2");
+			Assert.fail("Acquired a lock held by another transaction");
+		} catch (TXException e) {
+			Assert.assertEquals(ResponseCode.LOCK_FAILURE, e.getCode());
+		}
+		// g0 acquired on the way must have been released
+		Assert.assertFalse(locks.isLocked("g0"));
+
+		Thread releaser = new Thread(() -> {
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			locks.unlock("g1", "tx1");
+		});
+		releaser.start();
+		locks.lock(new String[] { "g1", "g0" }, "tx2");
+		releaser.join();
+		Assert.assertEquals("tx2", locks.getHolder("g0"));
+		Assert.assertEquals("tx2", locks.getHolder("g1"));
+	}
+}
@@ -13,6 +13,7 @@ import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.nio.nioutils.NIOHeader;
 import edu.umass.cs.reconfiguration.ReconfigurableAppClientAsync;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
 import edu.umass.cs.reconfiguration.interfaces.GigaPaxosClient;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestActiveReplicas;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
@@ -20,6 +21,7 @@ import edu.umass.cs.txn.interfaces.TXRequest;
 import edu.umass.cs.txn.interfaces.Transactor;
 import edu.umass.cs.txn.txpackets.TXPacket;
 import edu.umass.cs.txn.txpackets.TxStateRequest;
+import edu.umass.cs.utils.Config;
 
 /**
  * @author arun
@@ -39,7 +41,7 @@ public class TXUtils implements Transactor {
 
 	/**
 	 * Blocks and retries in parallel until all of a set of transaction steps
-	 * have successfully completed. The steps have to be idempotent, i.e.,
+	 * have been responded to. The steps have to be idempotent, i.e.,
 	 * executing them multiple times should have the same effect as executing
 	 * them exactly once.
 	 * 
@@ -65,8 +67,9 @@ public class TXUtils implements Transactor {
 			callbacks[i] = new RequestCallback() {
 				@Override
 				public void handleResponse(Request response) {
+					/* A failed transaction packet is still a response;
+					 * retransmitting it would only fail again. */
 					if (response instanceof TXPacket
-							&& !((TXPacket) response).isFailed()
 							|| response instanceof RequestActiveReplicas
 							&& !((RequestActiveReplicas) response).isFailed())
 						synchronized (monitor) {
@@ -142,11 +145,21 @@ public class TXUtils implements Transactor {
 	protected TxStateRequest.State getTxState(
 			GigaPaxosClient<Request> gpClient, Transaction tx)
 			throws IOException {
-		Request response = gpClient.sendRequest(new TxStateRequest(tx
-				.getTxGroupName()));
+		Request response = gpClient.sendRequest(new TxStateRequest(
+				getTxGroupName(tx), tx.getTXID()));
 		return (((TxStateRequest) response).getState());
 	}
 
+	/**
+	 * @param tx
+	 * @return The name of the group in which the decision to commit or abort
+	 *         {@code tx} is recorded.
+	 */
+	protected static String getTxGroupName(Transaction tx) {
+		return DistTransactor.FIXED_TX_GROUP ? Config
+				.getGlobalString(RC.TX_GROUP_NAME) : tx.getTxGroupName();
+	}
+
 	/**
 	 * Creates an async gigapaxos client without checking connectivity (because
 	 * the reconfigurators may not yet have been initialized.
@@ -71,7 +71,7 @@ public class Transaction implements TXInterface {
 	 *         deletion requests are excluded from this list.
 	 */
 	public TreeSet<String> getLockList() {
-		throw new RuntimeException("Unimplemented");
+		return new TreeSet<String>(this.tx.getLockList());
 	}
 
 	/**
@@ -79,8 +79,10 @@ public class Transaction implements TXInterface {
 	 *         Modifying this sequence will violate safety.
 	 */
 	public ArrayList<TxOp> getTxOps() {
-		throw new RuntimeException("Unimplemented");
-		//return this.txops;
+		ArrayList<TxOp> txops = new ArrayList<TxOp>();
+		for (TxOp op : this.tx)
+			txops.add(op);
+		return txops;
 	}
 
 	/**
@@ -109,7 +111,8 @@ public class Transaction implements TXInterface {
 	}
 
 	protected String getTxInitState() {
-		throw new RuntimeException("Unimplemented");
+		// decisions are recorded in memory as transactions go
+		return "";
 	}
 
 	protected InetSocketAddress getEntryServer() {
@@ -140,7 +143,11 @@ public class Transaction implements TXInterface {
 
 	@Override
 	public Iterator<TxOp> iterator() {
-		// TODO Auto-generated method stub
-		return null;
+		return this.tx.iterator();
+	}
+
+	public String toString() {
+		return Transaction.class.getSimpleName() + ":" + this.getTXID()
+				+ this.tx.getLockList();
 	}
 }
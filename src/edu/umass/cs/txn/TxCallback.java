@@ -62,7 +62,8 @@ public class TxCallback implements ExecutedCallback {
 	public void txTryFinish(Transaction tx, String participant)
 			throws IOException {
 		TxStateRequest response = (TxStateRequest) this.gpClient
-				.sendRequest(new TxStateRequest(tx.getTxGroupName()));
+				.sendRequest(new TxStateRequest(TXUtils.getTxGroupName(tx), tx
+						.getTXID()));
 		assert (!response.isFailed());
 		if (response.getState() == TxStateRequest.State.ABORTED)
 			rollback(tx, participant);
@@ -75,9 +76,9 @@ public class TxCallback implements ExecutedCallback {
 			throws IOException {
 		AbortRequest response = (AbortRequest) this.gpClient
 				.sendRequest((new AbortRequest(participantGroup, tx
-						.getTxGroupName())));
+						.getTXID())));
 		if (!response.isFailed())
-			cleanup(tx.getTxGroupName(), participantGroup);
+			cleanup(tx.getTXID(), participantGroup);
 
 	}
 
@@ -85,9 +86,9 @@ public class TxCallback implements ExecutedCallback {
 			throws IOException {
 		UnlockRequest response = (UnlockRequest) this.gpClient
 				.sendRequest((new UnlockRequest(participantGroup, tx
-						.getTxGroupName())));
+						.getTXID())));
 		if (!response.isFailed()) // all done
-			cleanup(tx.getTxGroupName(), participantGroup);
+			cleanup(tx.getTXID(), participantGroup);
 	}
 
 	/* Cleans up transaction state for each participant group. */
@@ -112,8 +113,8 @@ public class TxCallback implements ExecutedCallback {
 			break;
 		case UNLOCK_REQUEST:
 			// all done, cleanup may be redundant
-			cleanup(getKey(((UnlockRequest) request).getTXID(),
-					request.getServiceName()), request.getServiceName());
+			cleanup(((UnlockRequest) request).getTXID(),
+					request.getServiceName());
 			break;
 		default:
 			// do nothing
@@ -17,4 +17,31 @@ public interface TXLocker {
 	 */
 	public void lock(String lockID) throws TXException;
 
+	/**
+	 * Acquires the locks in lexicographic order, which is what prevents
+	 * deadlocks across concurrent callers, releasing the locks already
+	 * acquired if any of them could not be acquired.
+	 * 
+	 * @param lockIDs
+	 * @throws TXException
+	 */
+	public void lock(String[] lockIDs) throws TXException;
+
+	/**
+	 * A blocking call that returns upon successfully releasing {@code lockID}
+	 * or throws a {@link TXException}.
+	 * 
+	 * @param lockID
+	 * @throws TXException
+	 */
+	public void unlock(String lockID) throws TXException;
+
+	/**
+	 * Releases the locks in the order specified by {@code lockIDs}.
+	 * 
+	 * @param lockIDs
+	 * @throws TXException
+	 */
+	public void unlock(String[] lockIDs) throws TXException;
+
 }
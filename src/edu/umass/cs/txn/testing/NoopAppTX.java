@@ -17,33 +17,64 @@ package edu.umass.cs.txn.testing;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import edu.umass.cs.gigapaxos.interfaces.AppRequestParserBytes;
+import edu.umass.cs.gigapaxos.interfaces.Callback;
 import edu.umass.cs.gigapaxos.interfaces.ClientMessenger;
+import edu.umass.cs.gigapaxos.interfaces.ClientRequest;
+import edu.umass.cs.gigapaxos.interfaces.ExecutedCallback;
+import edu.umass.cs.gigapaxos.interfaces.NearestServerSelector;
 import edu.umass.cs.gigapaxos.interfaces.Replicable;
 import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.gigapaxos.interfaces.RequestFuture;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.nio.interfaces.SSLMessenger;
 import edu.umass.cs.nio.nioutils.NIOHeader;
+import edu.umass.cs.reconfiguration.AbstractReplicaCoordinator;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
 import edu.umass.cs.reconfiguration.examples.AbstractReconfigurablePaxosApp;
 import edu.umass.cs.reconfiguration.examples.AppRequest;
 import edu.umass.cs.reconfiguration.examples.AppRequest.ResponseCodes;
+import edu.umass.cs.reconfiguration.interfaces.GigaPaxosClient;
 import edu.umass.cs.reconfiguration.interfaces.Reconfigurable;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.CreateServiceName;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestActiveReplicas;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
+import edu.umass.cs.txn.DistTransactor;
+import edu.umass.cs.txn.Transaction;
+import edu.umass.cs.txn.exceptions.ResponseCode;
+import edu.umass.cs.txn.exceptions.TXException;
+import edu.umass.cs.txn.interfaces.TXRequest;
+import edu.umass.cs.txn.interfaces.TxOp;
+import edu.umass.cs.txn.txpackets.LockRequest;
+import edu.umass.cs.utils.Config;
 
 /**
  * @author V. Arun
  * 
- *         A simple no-op application example.
+ *         A simple no-op application example, also used by {@link #main}
+ *         to benchmark transactions under contention.
  */
 public class NoopAppTX extends AbstractReconfigurablePaxosApp<String> implements
 		Replicable, Reconfigurable, ClientMessenger, AppRequestParserBytes {
@@ -278,8 +309,9 @@ public class NoopAppTX extends AbstractReconfigurablePaxosApp<String> implements
 		} 
 		// typical reconfiguration or epoch change
 		else if (data != null && state != null) {
-			System.out.println("App-" + myID + " updating " + name
-					+ " with state " + state);
+			if (verbose)
+				System.out.println("App-" + myID + " updating " + name
+						+ " with state " + state);
 			data.state = state;
 		} 
 		else
@@ -294,4 +326,272 @@ public class NoopAppTX extends AbstractReconfigurablePaxosApp<String> implements
 	public String toString() {
 		return NoopAppTX.class.getSimpleName();
 	}
+
+	/**
+	 * A write to a single name that can be part of a transaction.
+	 */
+	public static class TxAppRequest extends AppRequest implements TxOp {
+		/**
+		 * @param name
+		 * @param value
+		 */
+		public TxAppRequest(String name, String value) {
+			super(name, value, AppRequest.PacketType.DEFAULT_APP_REQUEST, false);
+		}
+
+		@Override
+		public boolean handleResponse(Request response) {
+			return true;
+		}
+	}
+
+	/* Stands in for the paxos coordinator of a replica: each group executes
+	 * its requests one at a time, each taking opLatency milliseconds, which
+	 * bounds the number of operations per second a group can decide. */
+	private static class LoopbackCoordinator extends
+			AbstractReplicaCoordinator<Integer> {
+		private final ConcurrentHashMap<String, Object> groups = new ConcurrentHashMap<String, Object>();
+		private final long opLatency;
+
+		LoopbackCoordinator(Replicable app, long opLatency) {
+			super(app);
+			this.opLatency = opLatency;
+		}
+
+		@Override
+		public boolean coordinateRequest(Request request,
+				ExecutedCallback callback) {
+			Object group = this.groups.get(request.getServiceName());
+			if (group == null)
+				return false;
+			synchronized (group) {
+				try {
+					Thread.sleep(this.opLatency);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				this.execute(request, false, callback);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean createReplicaGroup(String serviceName, int epoch,
+				String state, Set<Integer> nodes) {
+			this.groups.putIfAbsent(serviceName, new Object());
+			return this.app.restore(serviceName, state);
+		}
+
+		@Override
+		public boolean deleteReplicaGroup(String serviceName, int epoch) {
+			return this.groups.remove(serviceName) != null;
+		}
+
+		@Override
+		public Set<Integer> getReplicaGroup(String serviceName) {
+			return this.groups.containsKey(serviceName) ? Collections
+					.singleton(1) : null;
+		}
+
+		@Override
+		public Set<IntegerPacketType> getRequestTypes() {
+			return this.app.getRequestTypes();
+		}
+	}
+
+	/* Stands in for the client used by the transactor to talk to groups. */
+	private static class LoopbackClient implements GigaPaxosClient<Request> {
+		private AbstractReplicaCoordinator<Integer> coordinator;
+		private final ExecutorService executor = Executors
+				.newCachedThreadPool(r -> {
+					Thread thread = new Thread(r, LoopbackClient.class
+							.getSimpleName());
+					thread.setDaemon(true);
+					return thread;
+				});
+		private final AtomicLong lockRequests = new AtomicLong();
+		private final AtomicLong lockOps = new AtomicLong();
+
+		@Override
+		public Request sendRequest(Request request) throws IOException {
+			if (request instanceof CreateServiceName) {
+				this.coordinator.createReplicaGroup(request.getServiceName(),
+						0, ((CreateServiceName) request).getInitialState(),
+						null);
+				return request;
+			}
+			if (request instanceof RequestActiveReplicas) {
+				((RequestActiveReplicas) request).setActives(Collections
+						.singleton(new InetSocketAddress(InetAddress
+								.getLoopbackAddress(), 1)));
+				return request;
+			}
+			if (request instanceof LockRequest) {
+				this.lockRequests.incrementAndGet();
+				this.lockOps.addAndGet(((LockRequest) request).getTXIDs()
+						.size());
+			}
+			try {
+				this.coordinator.coordinateRequest(request, null);
+			} catch (RequestParseException e) {
+				throw new IOException(e);
+			}
+			return request instanceof ClientRequest ? ((ClientRequest) request)
+					.getResponse() : null;
+		}
+
+		@Override
+		public RequestFuture<Request> sendRequest(Request request,
+				Callback<Request, Request> callback) throws IOException {
+			this.executor.execute(() -> {
+				try {
+					callback.processResponse(this.sendRequest(request));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+			return null;
+		}
+
+		@Override
+		public RequestFuture<Request> sendRequest(ClientRequest request,
+				Callback<Request, Request> callback) throws IOException {
+			return this.sendRequest((Request) request, callback);
+		}
+
+		@Override
+		public RequestFuture<Request> sendRequest(ClientRequest request,
+				Callback<Request, Request> callback,
+				NearestServerSelector redirector) throws IOException {
+			return this.sendRequest((Request) request, callback);
+		}
+
+		@Override
+		public RequestFuture<Request> sendRequest(ClientRequest request,
+				InetSocketAddress server, Callback<Request, Request> callback)
+				throws IOException {
+			return this.sendRequest((Request) request, callback);
+		}
+	}
+
+	private static Transaction getTransaction(InetSocketAddress entryServer,
+			List<String> names, String value) {
+		ArrayList<TxOp> ops = new ArrayList<TxOp>();
+		for (String name : names)
+			ops.add(new TxAppRequest(name, value));
+		return new Transaction(entryServer, new TXRequest() {
+			@Override
+			public Iterator<TxOp> iterator() {
+				return ops.iterator();
+			}
+
+			@Override
+			public SortedSet<String> getLockList() {
+				return new TreeSet<String>(names);
+			}
+		});
+	}
+
+	/**
+	 * A throughput and abort-rate benchmark for transactions under
+	 * contention. Worker threads issue transactions, each writing to one
+	 * (with probability singleGroupFraction) or groupsPerTx randomly chosen
+	 * names out of numNames, through a {@link DistTransactor} wrapping an
+	 * in-process coordinator in which each group serially executes its
+	 * requests taking opLatencyMillis each. Fewer names means more
+	 * contention. A transaction aborts if it fails to acquire a lock within
+	 * {@link RC#TX_LOCK_TIMEOUT}.
+	 * 
+	 * <p>
+	 * 
+	 * Usage: NoopAppTX [numNames] [numThreads] [groupsPerTx]
+	 * [singleGroupFraction] [opLatencyMillis] [durationSeconds]
+	 * [NAME=VALUE config options]
+	 * 
+	 * @param args
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		Config.register(args);
+		Config.register(new String[] { RC.ENABLE_TRANSACTIONS + "=true" });
+		int numNames = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+		int groupsPerTx = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		double singleGroupFraction = args.length > 3 ? Double
+				.parseDouble(args[3]) : 0.5;
+		long opLatency = args.length > 4 ? Long.parseLong(args[4]) : 1;
+		long duration = (args.length > 5 ? Long.parseLong(args[5]) : 10) * 1000;
+		assert (groupsPerTx <= numNames);
+
+		LoopbackCoordinator coordinator = new LoopbackCoordinator(
+				new NoopAppTX(args), opLatency);
+		LoopbackClient client = new LoopbackClient();
+		DistTransactor<Integer> transactor = new DistTransactor<Integer>(
+				coordinator, client);
+		coordinator.setWrapper(transactor);
+		client.coordinator = transactor;
+		String[] names = new String[numNames];
+		for (int i = 0; i < numNames; i++)
+			coordinator.createReplicaGroup(names[i] = "name" + i, 0, "init",
+					null);
+		InetSocketAddress entryServer = new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), 2000);
+
+		AtomicLong[] committed = { new AtomicLong(), new AtomicLong() };
+		AtomicLong[] aborted = { new AtomicLong(), new AtomicLong() };
+		AtomicLong[] latency = { new AtomicLong(), new AtomicLong() };
+		AtomicLong failed = new AtomicLong();
+		long end = System.currentTimeMillis() + duration;
+		Thread[] workers = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			(workers[t] = new Thread(() -> {
+				Random random = new Random();
+				while (System.currentTimeMillis() < end) {
+					int kind = random.nextDouble() < singleGroupFraction ? 0
+							: 1;
+					List<String> chosen = new ArrayList<String>(Arrays
+							.asList(names));
+					Collections.shuffle(chosen, random);
+					chosen = chosen.subList(0, kind == 0 ? 1 : groupsPerTx);
+					Transaction tx = getTransaction(entryServer, chosen,
+							"v" + random.nextInt());
+					long start = System.nanoTime();
+					try {
+						transactor.transact(tx);
+						committed[kind].incrementAndGet();
+						latency[kind].addAndGet(System.nanoTime() - start);
+					} catch (TXException e) {
+						if (e.getCode() == ResponseCode.LOCK_FAILURE)
+							aborted[kind].incrementAndGet();
+						else
+							failed.incrementAndGet();
+					}
+				}
+			})).start();
+		}
+		for (Thread worker : workers)
+			worker.join();
+		transactor.close();
+
+		String[] kinds = { "single-group", groupsPerTx + "-group" };
+		System.out.println(NoopAppTX.class.getSimpleName() + ": " + numNames
+				+ " names, " + numThreads + " threads, " + opLatency
+				+ "ms per group operation, " + duration / 1000 + "s");
+		for (int kind = 0; kind < 2; kind++) {
+			long attempts = committed[kind].get() + aborted[kind].get();
+			System.out.println(String.format(
+					"  %-14s %8.1f tx/s committed, abort rate %5.1f%%, "
+							+ "mean latency %6.2fms", kinds[kind],
+					committed[kind].get() * 1000.0 / duration,
+					attempts > 0 ? aborted[kind].get() * 100.0 / attempts : 0,
+					committed[kind].get() > 0 ? latency[kind].get() / 1000000.0
+							/ committed[kind].get() : 0));
+		}
+		System.out.println(String.format(
+				"  %d other failures, %.2f lock operations per lock request",
+				failed.get(), client.lockRequests.get() > 0 ? client.lockOps
+						.get() / (double) client.lockRequests.get() : 0));
+	}
 }
@@ -14,25 +14,65 @@ import org.json.JSONObject;
  *
  */
 public class AbortRequest extends TXPacket {
-	public AbortRequest(String txGroupName) {
-		this(null, txGroupName, txGroupName);
-	}
 
-	public AbortRequest(String participantGroup, String txGroupName) {
-		this(null, participantGroup, txGroupName);
-	}
+	private static enum Keys {
+		NAME, COMMITTED
+	};
+
+	private final String serviceName;
+	private boolean committed = false;
 
-	public AbortRequest(String initiator, String participantGroup,
-			String txGroupName) {
-		super(TXPacket.PacketType.ABORT_REQUEST, initiator);
+	/**
+	 * @param serviceName
+	 *            The transaction group, in order to record the decision to
+	 *            abort, or a participant group, in order to roll it back.
+	 * @param txID
+	 */
+	public AbortRequest(String serviceName, String txID) {
+		super(TXPacket.PacketType.ABORT_REQUEST, txID);
+		this.serviceName = serviceName;
 	}
 
+	/**
+	 * @param json
+	 * @throws JSONException
+	 */
 	public AbortRequest(JSONObject json) throws JSONException {
 		super(json);
+		this.serviceName = json.getString(Keys.NAME.toString());
+		this.committed = json.optBoolean(Keys.COMMITTED.toString());
+	}
+
+	public JSONObject toJSONObjectImpl() throws JSONException {
+		JSONObject json = super.toJSONObjectImpl();
+		json.put(Keys.NAME.toString(), this.serviceName);
+		if (this.committed)
+			json.put(Keys.COMMITTED.toString(), this.committed);
+		return json;
+	}
+
+	public String getServiceName() {
+		return this.serviceName;
+	}
+
+	/**
+	 * Marks this abort as failed because the transaction group had already
+	 * decided to commit the transaction.
+	 * 
+	 * @return {@code this}
+	 */
+	public AbortRequest setCommitted() {
+		this.committed = true;
+		this.setFailed();
+		return this;
 	}
 
+	/**
+	 * @return True if the abort failed because the transaction was already
+	 *         committed.
+	 */
 	public boolean isCommitted() {
-		throw new RuntimeException("Unimplemented");
+		return this.committed;
 	}
 
 }
@@ -1,29 +1,100 @@
 package edu.umass.cs.txn.txpackets;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import edu.umass.cs.txn.Transaction;
+import edu.umass.cs.gigapaxos.interfaces.AppRequestParser;
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
 
 /**
  * @author arun
  *
- *         This request commits a transaction. At a transaction group member,
- *         the corresponding callback will trigger unlocks to participant
- *         groups.
+ *         This request commits a transaction. Sent to the transaction group,
+ *         it records the decision to commit, which fails if the transaction
+ *         has already been aborted. Sent to a participant group along with
+ *         the transaction's operations, it executes a transaction that
+ *         involves only that group in a single paxos operation: the
+ *         operations are executed atomically unless the group is locked by
+ *         another transaction, in which case the request fails with
+ *         {@link edu.umass.cs.txn.exceptions.ResponseCode#LOCK_FAILURE}.
  */
 public class CommitRequest extends TXPacket {
-	public CommitRequest(Transaction tx) {
-		this(null, tx);
+
+	private static enum Keys {
+		NAME, REQUESTS
+	};
+
+	private final String serviceName;
+	private final List<Request> requests;
+
+	/**
+	 * @param txGroupName
+	 * @param txID
+	 */
+	public CommitRequest(String txGroupName, String txID) {
+		this(txGroupName, txID, null);
 	}
 
-	public CommitRequest(String initiator, Transaction tx) {
-		super(TXPacket.PacketType.ABORT_REQUEST, initiator);
-		// TODO Auto-generated constructor stub
+	/**
+	 * @param serviceName
+	 * @param txID
+	 * @param requests
+	 *            Operations, all on {@code serviceName}, of a single-group
+	 *            transaction; null when recording the decision in the
+	 *            transaction group.
+	 */
+	public CommitRequest(String serviceName, String txID, List<Request> requests) {
+		super(TXPacket.PacketType.COMMIT_REQUEST, txID);
+		this.serviceName = serviceName;
+		this.requests = requests;
 	}
 
-	public CommitRequest(JSONObject json) throws JSONException {
+	/**
+	 * @param json
+	 * @param parser
+	 * @throws JSONException
+	 * @throws RequestParseException
+	 */
+	public CommitRequest(JSONObject json, AppRequestParser parser)
+			throws JSONException, RequestParseException {
 		super(json);
-		// TODO Auto-generated constructor stub
+		this.serviceName = json.getString(Keys.NAME.toString());
+		this.requests = json.has(Keys.REQUESTS.toString()) ? TxOpRequest
+				.toRequests(json.getJSONArray(Keys.REQUESTS.toString()),
+						parser) : null;
+	}
+
+	public JSONObject toJSONObjectImpl() throws JSONException {
+		JSONObject json = super.toJSONObjectImpl();
+		json.put(Keys.NAME.toString(), this.serviceName);
+		if (this.requests != null)
+			json.put(Keys.REQUESTS.toString(),
+					TxOpRequest.toJSONArray(this.requests));
+		return json;
+	}
+
+	public String getServiceName() {
+		return this.serviceName;
+	}
+
+	/**
+	 * @return True if this request carries the operations of a single-group
+	 *         transaction.
+	 */
+	public boolean isOneRound() {
+		return this.requests != null;
+	}
+
+	/**
+	 * @return The operations of a single-group transaction, or an empty list.
+	 */
+	public List<Request> getRequests() {
+		return this.requests != null ? Collections
+				.unmodifiableList(this.requests) : Collections
+				.<Request> emptyList();
 	}
 }
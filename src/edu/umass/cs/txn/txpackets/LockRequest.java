@@ -1,5 +1,13 @@
 package edu.umass.cs.txn.txpackets;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -8,22 +16,39 @@ import edu.umass.cs.txn.Transaction;
 /**
  * @author arun
  *
+ *         Requests the lock on a participant group on behalf of one or more
+ *         transactions. Lock requests from concurrent transactions for the
+ *         same group are batched into a single request, so a single paxos
+ *         operation decides all of them. The transactions are considered in
+ *         order and the lock is granted to the first one that can have it;
+ *         the response records the transactions, if any, that were granted.
  */
 public class LockRequest extends TXPacket {
 
 	private static enum Keys {
-		LOCKID, TXID
+		LOCKID, TXIDS, GRANTED
 	};
 
 	private final String lockID;
+	private final List<String> txIDs;
+	private final Set<String> granted = new HashSet<String>();
 
 	/**
 	 * @param lockID
 	 * @param tx
 	 */
 	public LockRequest(String lockID, Transaction tx) {
-		super(TXPacket.PacketType.LOCK_REQUEST, tx.getTXID());
+		this(lockID, Arrays.asList(tx.getTXID()));
+	}
+
+	/**
+	 * @param lockID
+	 * @param txIDs
+	 */
+	public LockRequest(String lockID, List<String> txIDs) {
+		super(TXPacket.PacketType.LOCK_REQUEST, txIDs.get(0));
 		this.lockID = lockID;
+		this.txIDs = txIDs;
 	}
 
 	/**
@@ -33,10 +58,19 @@ public class LockRequest extends TXPacket {
 	public LockRequest(JSONObject json) throws JSONException {
 		super(json);
 		this.lockID = json.getString(Keys.LOCKID.toString());
+		this.txIDs = toList(json.getJSONArray(Keys.TXIDS.toString()));
+		if (json.has(Keys.GRANTED.toString()))
+			this.granted.addAll(toList(json.getJSONArray(Keys.GRANTED
+					.toString())));
 	}
 
-	public JSONObject toJSONObjectImpl() {
-		throw new RuntimeException("Unimplemented");
+	public JSONObject toJSONObjectImpl() throws JSONException {
+		JSONObject json = super.toJSONObjectImpl();
+		json.put(Keys.LOCKID.toString(), this.lockID);
+		json.put(Keys.TXIDS.toString(), new JSONArray(this.txIDs));
+		if (!this.granted.isEmpty())
+			json.put(Keys.GRANTED.toString(), new JSONArray(this.granted));
+		return json;
 	}
 
 	/**
@@ -49,4 +83,35 @@ public class LockRequest extends TXPacket {
 	public String getServiceName() {
 		return this.getLockID();
 	}
+
+	/**
+	 * @return IDs of the transactions requesting the lock in this batch.
+	 */
+	public List<String> getTXIDs() {
+		return Collections.unmodifiableList(this.txIDs);
+	}
+
+	/**
+	 * @param txID
+	 * @return {@code this}
+	 */
+	public LockRequest setGranted(String txID) {
+		this.granted.add(txID);
+		return this;
+	}
+
+	/**
+	 * @param txID
+	 * @return True if the lock was granted to {@code txID}.
+	 */
+	public boolean isGranted(String txID) {
+		return this.granted.contains(txID);
+	}
+
+	static List<String> toList(JSONArray jsonArray) throws JSONException {
+		List<String> list = new ArrayList<String>(jsonArray.length());
+		for (int i = 0; i < jsonArray.length(); i++)
+			list.add(jsonArray.getString(i));
+		return list;
+	}
 }
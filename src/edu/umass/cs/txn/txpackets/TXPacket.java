@@ -3,10 +3,12 @@ package edu.umass.cs.txn.txpackets;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import edu.umass.cs.gigapaxos.interfaces.AppRequestParser;
 import edu.umass.cs.gigapaxos.interfaces.ClientRequest;
 import edu.umass.cs.nio.JSONPacket;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.reconfiguration.interfaces.ReplicableRequest;
+import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
 import edu.umass.cs.txn.exceptions.ResponseCode;
 import edu.umass.cs.utils.IntegerPacketTypeMap;
 
@@ -74,11 +76,12 @@ public abstract class TXPacket extends JSONPacket implements ReplicableRequest,
 	/* The tuple <txid, initiator> is used to detect conflicting txids chosen by
 	 * different initiating nodes. */
 	protected final String txid;
+	private final long requestID;
 	private boolean failed;
 	private ResponseCode code = null;
 
 	private static enum Keys {
-		TXID, LOCKID, INITIATOR
+		TXID, QID, FAILED, CODE
 	}
 
 	/**
@@ -88,6 +91,7 @@ public abstract class TXPacket extends JSONPacket implements ReplicableRequest,
 	public TXPacket(IntegerPacketType t, String txid) {
 		super(t);
 		this.txid = txid;
+		this.requestID = (long) (Math.random() * Long.MAX_VALUE);
 	}
 
 
@@ -97,51 +101,63 @@ public abstract class TXPacket extends JSONPacket implements ReplicableRequest,
 	 */
 	public TXPacket(JSONObject json) throws JSONException {
 		super(json);
-		this.txid = json.getString(Keys.TXID.toString());
+		this.txid = json.has(Keys.TXID.toString()) ? json.getString(Keys.TXID
+				.toString()) : null;
+		this.requestID = json.getLong(Keys.QID.toString());
+		this.failed = json.optBoolean(Keys.FAILED.toString());
+		this.code = json.has(Keys.CODE.toString()) ? ResponseCode.valueOf(json
+				.getString(Keys.CODE.toString())) : null;
 	}
 
 	@Override
 	public IntegerPacketType getRequestType() {
-		// TODO Auto-generated method stub
-		return null;
+		return this.getTXPacketType();
 	}
 
 	/**
 	 * @return {@link TXPacket.PacketType}
 	 */
 	public TXPacket.PacketType getTXPacketType() {
-		// TODO Auto-generated method stub
-		return null;
+		return PacketType.intToType.get(this.type);
 	}
 
+	/**
+	 * @return The name of the group, either a participant group or the
+	 *         transaction group, in which this packet is coordinated.
+	 */
 	@Override
-	public String getServiceName() {
-		// TODO Auto-generated method stub
-		return null;
-	}
+	public abstract String getServiceName();
 
 	@Override
 	public long getRequestID() {
-		// TODO Auto-generated method stub
-		return 0;
+		return this.requestID;
 	}
 
+	/**
+	 * A transaction packet is its own response with the outcome of its
+	 * execution recorded in it.
+	 */
 	@Override
 	public ClientRequest getResponse() {
-		// TODO Auto-generated method stub
-		return null;
+		return this;
 	}
 
 	@Override
 	public boolean needsCoordination() {
-		// TODO Auto-generated method stub
-		return false;
+		return true;
 	}
 
 	@Override
 	protected JSONObject toJSONObjectImpl() throws JSONException {
-		// TODO Auto-generated method stub
-		return null;
+		JSONObject json = new JSONObject();
+		if (this.txid != null)
+			json.put(Keys.TXID.toString(), this.txid);
+		json.put(Keys.QID.toString(), this.requestID);
+		if (this.failed)
+			json.put(Keys.FAILED.toString(), this.failed);
+		if (this.code != null)
+			json.put(Keys.CODE.toString(), this.code.toString());
+		return json;
 	}
 
 	/**
@@ -151,11 +167,23 @@ public abstract class TXPacket extends JSONPacket implements ReplicableRequest,
 		return this.failed;
 	}
 
-	protected TXPacket setFailed() {
+	/**
+	 * @return {@code this}
+	 */
+	public TXPacket setFailed() {
 		this.failed = true;
 		return this;
 	}
 
+	/**
+	 * @param code
+	 * @return {@code this}
+	 */
+	public TXPacket setFailed(ResponseCode code) {
+		this.code = code;
+		return this.setFailed();
+	}
+
 	/**
 	 * @return Response code.
 	 */
@@ -179,4 +207,45 @@ public abstract class TXPacket extends JSONPacket implements ReplicableRequest,
 	public String getTXID() {
 		return this.txid;
 	}
+
+	/**
+	 * @param json
+	 * @param parser
+	 *            Used to parse the operations carried by some packets.
+	 * @return The transaction packet in {@code json}, or null if {@code json}
+	 *         is not a transaction packet.
+	 * @throws JSONException
+	 * @throws RequestParseException
+	 */
+	public static TXPacket getTXPacket(JSONObject json, AppRequestParser parser)
+			throws JSONException, RequestParseException {
+		Integer type = JSONPacket.getPacketType(json);
+		if (type == null || !PacketType.intToType.containsKey(type))
+			return null;
+		switch (PacketType.intToType.get(type)) {
+		case LOCK_REQUEST:
+			return new LockRequest(json);
+		case UNLOCK_REQUEST:
+			return new UnlockRequest(json);
+		case ABORT_REQUEST:
+			return new AbortRequest(json);
+		case COMMIT_REQUEST:
+			return new CommitRequest(json, parser);
+		case TX_STATE_REQUEST:
+			return new TxStateRequest(json);
+		case TX_OP_REQUEST:
+			return new TxOpRequest(json, parser);
+		default:
+			return null;
+		}
+	}
+
+	public Object getSummary() {
+		return new Object() {
+			public String toString() {
+				return getRequestType() + ":" + getServiceName() + ":"
+						+ getTXID() + (isFailed() ? ":FAILED" : "");
+			}
+		};
+	}
 }
@@ -0,0 +1,86 @@
+package edu.umass.cs.txn.txpackets;
+
+import java.util.Arrays;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.gigapaxos.interfaces.AppRequestParser;
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.reconfiguration.examples.AppRequest;
+import edu.umass.cs.reconfiguration.examples.noopsimple.NoopApp;
+import edu.umass.cs.txn.exceptions.ResponseCode;
+import edu.umass.cs.utils.DefaultTest;
+
+/**
+ * Tests the JSON serialization of transaction packets.
+ */
+public class TXPacketTest extends DefaultTest {
+
+	private static TXPacket roundTrip(TXPacket packet) throws Exception {
+		TXPacket parsed = TXPacket.getTXPacket(
+				new JSONObject(packet.toString()), PARSER);
+		Assert.assertEquals(packet.getTXPacketType(), parsed.getTXPacketType());
+		Assert.assertEquals(packet.getServiceName(), parsed.getServiceName());
+		Assert.assertEquals(packet.getTXID(), parsed.getTXID());
+		Assert.assertEquals(packet.getRequestID(), parsed.getRequestID());
+		Assert.assertEquals(packet.isFailed(), parsed.isFailed());
+		Assert.assertEquals(packet.getResponseCode(), parsed.getResponseCode());
+		return parsed;
+	}
+
+	private static final AppRequestParser PARSER = new NoopApp(new String[0]);
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testLockRequest() throws Exception {
+		LockRequest lock = new LockRequest("g1", Arrays.asList("tx1", "tx2"));
+		lock.setGranted("tx2").setResponseCode(ResponseCode.LOCK_FAILURE);
+		LockRequest parsed = (LockRequest) roundTrip(lock);
+		Assert.assertEquals(Arrays.asList("tx1", "tx2"), parsed.getTXIDs());
+		Assert.assertFalse(parsed.isGranted("tx1"));
+		Assert.assertTrue(parsed.isGranted("tx2"));
+
+		UnlockRequest unlock = (UnlockRequest) roundTrip(new UnlockRequest(
+				"g1", Arrays.asList("tx2", "tx3")));
+		Assert.assertEquals(Arrays.asList("tx2", "tx3"), unlock.getTXIDs());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testDecisions() throws Exception {
+		AbortRequest abort = (AbortRequest) roundTrip(new AbortRequest(
+				"_TXGROUP_", "tx1").setCommitted());
+		Assert.assertTrue(abort.isCommitted());
+		CommitRequest commit = (CommitRequest) roundTrip(new CommitRequest(
+				"_TXGROUP_", "tx1").setFailed(ResponseCode.COMMIT_FAILURE));
+		Assert.assertFalse(commit.isOneRound());
+		TxStateRequest state = (TxStateRequest) roundTrip(new TxStateRequest(
+				"_TXGROUP_", "tx1").setState(TxStateRequest.State.ABORTED));
+		Assert.assertEquals(TxStateRequest.State.ABORTED, state.getState());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testOperations() throws Exception {
+		Request op = new AppRequest("g1", "value",
+				AppRequest.PacketType.DEFAULT_APP_REQUEST, false);
+		CommitRequest commit = (CommitRequest) roundTrip(new CommitRequest(
+				"g1", "tx1", Arrays.asList(op, op)));
+		Assert.assertTrue(commit.isOneRound());
+		Assert.assertEquals(2, commit.getRequests().size());
+		Assert.assertEquals(op.toString(), commit.getRequests().get(0)
+				.toString());
+		TxOpRequest prepare = (TxOpRequest) roundTrip(new TxOpRequest("tx1",
+				op));
+		Assert.assertEquals(op.toString(), prepare.getRequests().get(0)
+				.toString());
+	}
+}
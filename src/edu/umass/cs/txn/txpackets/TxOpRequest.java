@@ -1,5 +1,11 @@
 package edu.umass.cs.txn.txpackets;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -11,22 +17,37 @@ import edu.umass.cs.txn.interfaces.TxOp;
 /**
  * @author arun
  *
+ *         Carries, in order, the operations of a transaction on a single
+ *         participant group so that they are executed with a single paxos
+ *         operation. The operations are executed only if the transaction holds
+ *         the group's lock; this request fails otherwise.
  */
 public class TxOpRequest extends TXPacket implements TxOp {
 
 	private static enum Keys {
-		REQUEST,
+		NAME, REQUESTS,
 	}
 
-	private final Request request;
+	private final String serviceName;
+	private final List<Request> requests;
 
 	/**
 	 * @param txid
 	 * @param request
 	 */
 	public TxOpRequest(String txid, Request request) {
+		this(txid, request.getServiceName(), Arrays.asList(request));
+	}
+
+	/**
+	 * @param txid
+	 * @param serviceName
+	 * @param requests
+	 */
+	public TxOpRequest(String txid, String serviceName, List<Request> requests) {
 		super(TXPacket.PacketType.TX_OP_REQUEST, txid);
-		this.request = request;
+		this.serviceName = serviceName;
+		this.requests = requests;
 	}
 
 	/**
@@ -41,8 +62,16 @@ public class TxOpRequest extends TXPacket implements TxOp {
 	public TxOpRequest(JSONObject json, AppRequestParser parser)
 			throws JSONException, RequestParseException {
 		super(json);
-		this.request = parser
-				.getRequest(json.getString(Keys.REQUEST.toString()));
+		this.serviceName = json.getString(Keys.NAME.toString());
+		this.requests = toRequests(
+				json.getJSONArray(Keys.REQUESTS.toString()), parser);
+	}
+
+	public JSONObject toJSONObjectImpl() throws JSONException {
+		JSONObject json = super.toJSONObjectImpl();
+		json.put(Keys.NAME.toString(), this.serviceName);
+		json.put(Keys.REQUESTS.toString(), toJSONArray(this.requests));
+		return json;
 	}
 
 	//@Override
@@ -50,15 +79,36 @@ public class TxOpRequest extends TXPacket implements TxOp {
 		return this.txid;
 	}
 
+	public String getServiceName() {
+		return this.serviceName;
+	}
+
+	/**
+	 * @return The operations to be executed in order.
+	 */
+	public List<Request> getRequests() {
+		return Collections.unmodifiableList(this.requests);
+	}
+
 	@Override
 	public boolean handleResponse(Request response) {
-		// TODO Auto-generated method stub
-		return false;
+		return response instanceof TxOpRequest
+				&& !((TxOpRequest) response).isFailed();
 	}
 
-	@Override
-	public boolean isBlocking() {
-		// TODO Auto-generated method stub
-		return false;
+	static JSONArray toJSONArray(List<Request> requests) {
+		JSONArray jsonArray = new JSONArray();
+		for (Request request : requests)
+			jsonArray.put(request.toString());
+		return jsonArray;
+	}
+
+	static List<Request> toRequests(JSONArray jsonArray,
+			AppRequestParser parser) throws JSONException,
+			RequestParseException {
+		List<Request> requests = new ArrayList<Request>(jsonArray.length());
+		for (int i = 0; i < jsonArray.length(); i++)
+			requests.add(parser.getRequest(jsonArray.getString(i)));
+		return requests;
 	}
 }
@@ -3,28 +3,84 @@ package edu.umass.cs.txn.txpackets;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+/**
+ * @author arun
+ *
+ *         Reads the decision, if any, recorded for a transaction in the
+ *         transaction group.
+ */
 public class TxStateRequest extends TXPacket {
 
+	/**
+	 * States of a transaction as recorded in the transaction group.
+	 */
 	public static enum State {
+		/**
+		 * 
+		 */
 		COMMITTED, 
 		
+		/**
+		 * 
+		 */
 		ABORTED, 
 		
+		/**
+		 * Neither committed nor aborted yet.
+		 */
 		EXECUTING,
 	}
 
+	private static enum Keys {
+		NAME, STATE
+	};
+
+	private final String txGroupName;
 	private State state = State.EXECUTING;
 
-	public TxStateRequest(String txGroupName) {
-		super(TXPacket.PacketType.TX_STATE_REQUEST, null);
+	/**
+	 * @param txGroupName
+	 * @param txID
+	 */
+	public TxStateRequest(String txGroupName, String txID) {
+		super(TXPacket.PacketType.TX_STATE_REQUEST, txID);
+		this.txGroupName = txGroupName;
 	}
 
+	/**
+	 * @param json
+	 * @throws JSONException
+	 */
 	public TxStateRequest(JSONObject json) throws JSONException {
 		super(json);
-		// TODO Auto-generated constructor stub
+		this.txGroupName = json.getString(Keys.NAME.toString());
+		this.state = State.valueOf(json.getString(Keys.STATE.toString()));
+	}
+
+	public JSONObject toJSONObjectImpl() throws JSONException {
+		JSONObject json = super.toJSONObjectImpl();
+		json.put(Keys.NAME.toString(), this.txGroupName);
+		json.put(Keys.STATE.toString(), this.state.toString());
+		return json;
 	}
 
+	public String getServiceName() {
+		return this.txGroupName;
+	}
+
+	/**
+	 * @return State of the transaction.
+	 */
 	public State getState() {
 		return this.state;
 	}
+
+	/**
+	 * @param state
+	 * @return {@code this}
+	 */
+	public TxStateRequest setState(State state) {
+		this.state = state;
+		return this;
+	}
 }
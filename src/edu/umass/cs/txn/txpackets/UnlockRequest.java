@@ -1,38 +1,83 @@
 package edu.umass.cs.txn.txpackets;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
  * @author arun
  *
+ *         Releases the lock on a participant group held by a committed
+ *         transaction. Like {@link LockRequest}, unlock requests from
+ *         concurrent transactions for the same group are batched into a
+ *         single request. Unlocking a group on behalf of a transaction that
+ *         does not hold its lock is a no-op, so unlock requests can be safely
+ *         retransmitted.
  */
 public class UnlockRequest extends TXPacket {
 
 	private static enum Keys {
-		UNLOCKID, TXID
+		UNLOCKID, TXIDS
 	};
 
 	private final String lockID;
-	private final String txID;
+	private final List<String> txIDs;
 
+	/**
+	 * @param lockID
+	 * @param txID
+	 */
 	public UnlockRequest(String lockID, String txID) {
-		super(TXPacket.PacketType.UNLOCK_REQUEST, null);
+		this(lockID, Arrays.asList(txID));
+	}
+
+	/**
+	 * @param lockID
+	 * @param txIDs
+	 */
+	public UnlockRequest(String lockID, List<String> txIDs) {
+		super(TXPacket.PacketType.UNLOCK_REQUEST, txIDs.get(0));
 		this.lockID = lockID;
-		this.txID = txID;
+		this.txIDs = txIDs;
 	}
 
+	/**
+	 * @param json
+	 * @throws JSONException
+	 */
 	public UnlockRequest(JSONObject json) throws JSONException {
 		super(json);
 		this.lockID = json.getString(Keys.UNLOCKID.toString());
-		this.txID = json.getString(Keys.TXID.toString());
+		this.txIDs = LockRequest.toList(json.getJSONArray(Keys.TXIDS
+				.toString()));
+	}
+
+	public JSONObject toJSONObjectImpl() throws JSONException {
+		JSONObject json = super.toJSONObjectImpl();
+		json.put(Keys.UNLOCKID.toString(), this.lockID);
+		json.put(Keys.TXIDS.toString(), new JSONArray(this.txIDs));
+		return json;
+	}
+
+	/**
+	 * @return Service name that also acts as a lock ID.
+	 */
+	public String getLockID() {
+		return this.lockID;
 	}
 
-	public JSONObject toJSONObjectImpl() {
-		throw new RuntimeException("Unimplemented");
+	public String getServiceName() {
+		return this.getLockID();
 	}
-	
-	public String getTXID() {
-		return this.txID;
+
+	/**
+	 * @return IDs of the transactions releasing the lock in this batch.
+	 */
+	public List<String> getTXIDs() {
+		return Collections.unmodifiableList(this.txIDs);
 	}
 }
@@ -0,0 +1,194 @@
+package edu.umass.cs.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A count-min sketch of {@code long} items. Estimates never undercount and
+ * overcount by at most e/width of the total count with probability
+ * 1-e^(-depth). Sketches of the same dimensions can be merged by simply adding
+ * counters, so sketches maintained at different nodes or over different time
+ * intervals can be combined into one.
+ *
+ * This class is not thread-safe.
+ */
+public class CountMinSketch {
+	private final int depth;
+	private final int width;
+	private final long[] counters;
+	private long total = 0;
+
+	/**
+	 * @param depth
+	 *            Number of rows, i.e., independent hash functions.
+	 * @param width
+	 *            Number of counters per row.
+	 */
+	public CountMinSketch(int depth, int width) {
+		if (depth <= 0 || width <= 0)
+			throw new IllegalArgumentException("Invalid count-min dimensions "
+					+ depth + "x" + width);
+		this.depth = depth;
+		this.width = width;
+		this.counters = new long[depth * width];
+	}
+
+	// murmur3 64-bit finalizer
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private int index(int row, long item) {
+		long h = mix(item + (row + 1) * 0x9e3779b97f4a7c15L);
+		return row * this.width + (int) ((h >>> 1) % this.width);
+	}
+
+	/**
+	 * @param item
+	 * @param count
+	 * @return Estimated count of {@code item} after adding {@code count}.
+	 */
+	public long add(long item, long count) {
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < this.depth; row++) {
+			int i = this.index(row, item);
+			estimate = Math.min(estimate, this.counters[i] += count);
+		}
+		this.total += count;
+		return estimate;
+	}
+
+	/**
+	 * @param item
+	 * @return Estimated count of {@code item}.
+	 */
+	public long estimate(long item) {
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < this.depth; row++)
+			estimate = Math.min(estimate, this.counters[this.index(row, item)]);
+		return estimate;
+	}
+
+	/**
+	 * @return Sum of all counts added.
+	 */
+	public long getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * Adds the counts in {@code other} to {@code this}.
+	 *
+	 * @param other
+	 */
+	public void merge(CountMinSketch other) {
+		if (other.depth != this.depth || other.width != this.width)
+			throw new IllegalArgumentException(
+					"Can not merge count-min sketches of dimensions "
+							+ this.depth + "x" + this.width + " and "
+							+ other.depth + "x" + other.width);
+		for (int i = 0; i < this.counters.length; i++)
+			this.counters[i] += other.counters[i];
+		this.total += other.total;
+	}
+
+	/**
+	 * Halves all counts so that older counts carry less weight than newer
+	 * ones.
+	 */
+	public void halve() {
+		for (int i = 0; i < this.counters.length; i++)
+			this.counters[i] >>>= 1;
+		this.total >>>= 1;
+	}
+
+	/**
+	 * Writes the sketch using variable-length counters, listing only non-zero
+	 * counters if most are zero.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		int nonZero = 0;
+		for (long counter : this.counters)
+			if (counter != 0)
+				nonZero++;
+		boolean sparse = nonZero * 2 < this.counters.length;
+		out.writeByte(this.depth);
+		writeVarLong(out, this.width);
+		writeVarLong(out, this.total);
+		out.writeBoolean(sparse);
+		if (sparse) {
+			writeVarLong(out, nonZero);
+			for (int i = 0; i < this.counters.length; i++)
+				if (this.counters[i] != 0) {
+					writeVarLong(out, i);
+					writeVarLong(out, this.counters[i]);
+				}
+		} else
+			for (long counter : this.counters)
+				writeVarLong(out, counter);
+	}
+
+	/**
+	 * @param in
+	 * @return Sketch read from {@code in} as written by
+	 *         {@link #writeTo(DataOutput)}.
+	 * @throws IOException
+	 */
+	public static CountMinSketch readFrom(DataInput in) throws IOException {
+		CountMinSketch sketch = new CountMinSketch(in.readUnsignedByte(),
+				(int) readVarLong(in));
+		sketch.total = readVarLong(in);
+		if (in.readBoolean())
+			for (long n = readVarLong(in); n > 0; n--) {
+				int i = (int) readVarLong(in);
+				sketch.counters[i] = readVarLong(in);
+			}
+		else
+			for (int i = 0; i < sketch.counters.length; i++)
+				sketch.counters[i] = readVarLong(in);
+		return sketch;
+	}
+
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			out.writeByte((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable-length long");
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof CountMinSketch))
+			return false;
+		CountMinSketch other = (CountMinSketch) o;
+		return this.depth == other.depth && this.total == other.total
+				&& Arrays.equals(this.counters, other.counters);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(this.counters);
+	}
+}
@@ -0,0 +1,135 @@
+package edu.umass.cs.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog estimator of the number of distinct {@code long} items. With
+ * 2^p registers, the standard error is about 1.04/sqrt(2^p). Estimators with
+ * the same p can be merged by taking register-wise maxima, which estimates the
+ * number of distinct items in the union.
+ *
+ * This class is not thread-safe.
+ */
+public class HyperLogLog {
+	private final int p;
+	private final byte[] registers;
+
+	/**
+	 * @param p
+	 *            Log to the base 2 of the number of registers, between 4 and
+	 *            16.
+	 */
+	public HyperLogLog(int p) {
+		if (p < 4 || p > 16)
+			throw new IllegalArgumentException("Invalid HyperLogLog precision "
+					+ p);
+		this.p = p;
+		this.registers = new byte[1 << p];
+	}
+
+	/**
+	 * @param item
+	 * @return True if the estimate may have changed.
+	 */
+	public boolean add(long item) {
+		long h = CountMinSketch.mix(item);
+		int i = (int) (h >>> (64 - this.p));
+		// rank of the first 1 bit in the remaining 64-p bits
+		byte rank = (byte) (Long.numberOfLeadingZeros((h << this.p)
+				| (1L << (this.p - 1))) + 1);
+		if (rank <= this.registers[i])
+			return false;
+		this.registers[i] = rank;
+		return true;
+	}
+
+	/**
+	 * @return Estimated number of distinct items added.
+	 */
+	public long cardinality() {
+		int m = this.registers.length, zeros = 0;
+		double sum = 0;
+		for (byte register : this.registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0)
+				zeros++;
+		}
+		double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+		// linear counting is more accurate for small cardinalities
+		if (estimate <= 2.5 * m && zeros > 0)
+			estimate = m * Math.log((double) m / zeros);
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Merges {@code other} into {@code this}.
+	 *
+	 * @param other
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.p != this.p)
+			throw new IllegalArgumentException(
+					"Can not merge HyperLogLogs of precision " + this.p
+							+ " and " + other.p);
+		for (int i = 0; i < this.registers.length; i++)
+			this.registers[i] = (byte) Math.max(this.registers[i],
+					other.registers[i]);
+	}
+
+	/**
+	 * Writes the registers, listing only non-zero registers if most are zero.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		int nonZero = 0;
+		for (byte register : this.registers)
+			if (register != 0)
+				nonZero++;
+		boolean sparse = nonZero * 3 < this.registers.length;
+		out.writeByte(this.p);
+		out.writeBoolean(sparse);
+		if (sparse) {
+			out.writeShort(nonZero);
+			for (int i = 0; i < this.registers.length; i++)
+				if (this.registers[i] != 0) {
+					out.writeShort(i);
+					out.writeByte(this.registers[i]);
+				}
+		} else
+			out.write(this.registers);
+	}
+
+	/**
+	 * @param in
+	 * @return HyperLogLog read from {@code in} as written by
+	 *         {@link #writeTo(DataOutput)}.
+	 * @throws IOException
+	 */
+	public static HyperLogLog readFrom(DataInput in) throws IOException {
+		HyperLogLog hll = new HyperLogLog(in.readUnsignedByte());
+		if (in.readBoolean())
+			for (int n = in.readUnsignedShort(); n > 0; n--) {
+				int i = in.readUnsignedShort();
+				hll.registers[i] = in.readByte();
+			}
+		else
+			in.readFully(hll.registers);
+		return hll;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof HyperLogLog
+				&& Arrays.equals(this.registers, ((HyperLogLog) o).registers);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(this.registers);
+	}
+}
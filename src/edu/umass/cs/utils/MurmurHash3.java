@@ -0,0 +1,157 @@
+package edu.umass.cs.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 128-bit MurmurHash3 (x64 variant). It is not a cryptographic hash, but it
+ * is several times faster than MD5, needs no per-thread state, and its
+ * collision probability is negligible for detecting mismatched request bodies
+ * with the same request ID.
+ *
+ * Strings are hashed over their UTF-16 code units in little-endian order
+ * without copying them into a byte array, so the result is the standard
+ * MurmurHash3_x64_128 of the string's UTF-16LE encoding.
+ */
+public class MurmurHash3 {
+
+	/**
+	 * Number of bytes in a hash.
+	 */
+	public static final int LENGTH = 16;
+
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	/**
+	 * @param s
+	 * @return 128-bit hash of {@code s} with seed 0.
+	 */
+	public static byte[] hash128(String s) {
+		return hash128(s, 0);
+	}
+
+	/**
+	 * @param s
+	 * @param seed
+	 * @return 128-bit hash of {@code s}.
+	 */
+	public static byte[] hash128(String s, int seed) {
+		final int n = s.length();
+		long h1 = seed & 0xffffffffL, h2 = h1;
+
+		// 8 chars make a 16-byte block
+		int i = 0;
+		for (; i + 8 <= n; i += 8) {
+			long k1 = getLong(s, i), k2 = getLong(s, i + 4);
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27) + h2;
+			h1 = h1 * 5 + 0x52dce729;
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31) + h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		// tail
+		long k1 = 0, k2 = 0;
+		for (int j = i; j < n; j++)
+			if (j - i < 4)
+				k1 |= (long) s.charAt(j) << (16 * (j - i));
+			else
+				k2 |= (long) s.charAt(j) << (16 * (j - i - 4));
+		if (n - i > 4)
+			h2 ^= mixK2(k2);
+		if (n - i > 0)
+			h1 ^= mixK1(k1);
+
+		long length = 2L * n;
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+
+		byte[] hash = new byte[LENGTH];
+		for (int j = 0; j < 8; j++) {
+			hash[j] = (byte) (h1 >>> (8 * j));
+			hash[j + 8] = (byte) (h2 >>> (8 * j));
+		}
+		return hash;
+	}
+
+	/**
+	 * @param buf
+	 * @return Standard 128-bit MurmurHash3_x64_128 with seed 0 of the bytes
+	 *         remaining in {@code buf}. The position of {@code buf} is not
+	 *         changed.
+	 */
+	public static byte[] hash128(ByteBuffer buf) {
+		final ByteBuffer le = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+		final int n = le.remaining();
+		long h1 = 0, h2 = 0;
+
+		int i = 0;
+		for (; i + 16 <= n; i += 16) {
+			long k1 = le.getLong(i), k2 = le.getLong(i + 8);
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27) + h2;
+			h1 = h1 * 5 + 0x52dce729;
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31) + h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		// tail
+		long k1 = 0, k2 = 0;
+		for (int j = i; j < n; j++)
+			if (j - i < 8)
+				k1 |= (le.get(j) & 0xffL) << (8 * (j - i));
+			else
+				k2 |= (le.get(j) & 0xffL) << (8 * (j - i - 8));
+		if (n - i > 8)
+			h2 ^= mixK2(k2);
+		if (n - i > 0)
+			h1 ^= mixK1(k1);
+
+		h1 ^= n;
+		h2 ^= n;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+
+		byte[] hash = new byte[LENGTH];
+		for (int j = 0; j < 8; j++) {
+			hash[j] = (byte) (h1 >>> (8 * j));
+			hash[j + 8] = (byte) (h2 >>> (8 * j));
+		}
+		return hash;
+	}
+
+	private static long getLong(String s, int i) {
+		return s.charAt(i) | (long) s.charAt(i + 1) << 16
+				| (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48;
+	}
+
+	private static long mixK1(long k1) {
+		return Long.rotateLeft(k1 * C1, 31) * C2;
+	}
+
+	private static long mixK2(long k2) {
+		return Long.rotateLeft(k2 * C2, 33) * C1;
+	}
+
+	private static long fmix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,108 @@
+package edu.umass.cs.utils;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * MurmurHash3 test class.
+ */
+public class MurmurHash3Test extends DefaultTest {
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes)
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/**
+	 * Strings hash to the standard MurmurHash3_x64_128 of their UTF-16LE
+	 * bytes for all tail lengths.
+	 *
+	 * @throws UnsupportedEncodingException
+	 */
+	@Test
+	public void test_KnownValues() throws UnsupportedEncodingException {
+		Assert.assertEquals("00000000000000000000000000000000",
+				toHex(MurmurHash3.hash128("")));
+		Assert.assertEquals("bd984e0b5098a6967d6754c7bfc978b2",
+				toHex(MurmurHash3.hash128("a")));
+		Assert.assertEquals("484f581a58fc8c54df30be4bdc426f07",
+				toHex(MurmurHash3.hash128("abcd")));
+		Assert.assertEquals("ec30cb06c26484ef4bfa4d933e7c82cc",
+				toHex(MurmurHash3.hash128("abcde")));
+		Assert.assertEquals("b2ae6d69bca50328fad1d64075ebb1a2",
+				toHex(MurmurHash3.hash128("abcdefgh")));
+		Assert.assertEquals("2e076773feacc61a4a566fc382d6acce",
+				toHex(MurmurHash3.hash128("abcdefghi")));
+		Assert.assertEquals("4cae51b5316602c01c7c5642843e5fe7",
+				toHex(MurmurHash3.hash128("The quick brown fox jumps over the lazy dog")));
+	}
+
+	/**
+	 * Bytes hash the same as strings with the same UTF-16LE encoding, and the
+	 * buffer position is honored but not changed.
+	 *
+	 * @throws UnsupportedEncodingException
+	 */
+	@Test
+	public void test_ByteBuffer() throws UnsupportedEncodingException {
+		Random random = new Random(0);
+		for (int n = 0; n < 40; n++) {
+			char[] chars = new char[n];
+			for (int i = 0; i < n; i++)
+				chars[i] = (char) random.nextInt(0xd800);
+			String s = new String(chars);
+			byte[] bytes = s.getBytes("UTF-16LE");
+			ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length + 3);
+			buf.position(3);
+			buf.put(bytes).position(3);
+			Assert.assertArrayEquals(MurmurHash3.hash128(s),
+					MurmurHash3.hash128(buf));
+			Assert.assertEquals(3, buf.position());
+		}
+	}
+
+	/**
+	 * Digest time of 64KB-1MB request values compared to MD5 over the
+	 * ISO-8859-1 bytes as used for request digests before.
+	 *
+	 * @throws NoSuchAlgorithmException
+	 * @throws UnsupportedEncodingException
+	 */
+	@Test
+	public void test_DigestTime() throws NoSuchAlgorithmException,
+			UnsupportedEncodingException {
+		MessageDigest md5 = MessageDigest.getInstance("MD5");
+		Random random = new Random(0);
+		for (int size : new int[] { 64 * 1024, 256 * 1024, 1024 * 1024 }) {
+			char[] chars = new char[size];
+			for (int i = 0; i < size; i++)
+				chars[i] = (char) random.nextInt(256);
+			String value = new String(chars);
+			int n = (4 * 1024 * 1024) / size;
+			long md5Time = 0, murmurTime = 0;
+			// the first iteration warms up
+			for (int round = 0; round < 2; round++) {
+				long t = System.nanoTime();
+				for (int i = 0; i < n; i++)
+					md5.digest(value.getBytes("ISO-8859-1"));
+				md5Time = System.nanoTime() - t;
+				t = System.nanoTime();
+				for (int i = 0; i < n; i++)
+					MurmurHash3.hash128(value);
+				murmurTime = System.nanoTime() - t;
+			}
+			System.out.print(String.format("[%dKB md5 %.3fms murmur3 %.3fms] ",
+					size / 1024, md5Time / 1000000.0 / n, murmurTime
+							/ 1000000.0 / n));
+			Assert.assertTrue(murmurTime < md5Time);
+		}
+	}
+}
@@ -0,0 +1,447 @@
+package edu.umass.cs.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @param <K>
+ * @param <V>
+ *
+ *            An open-addressed hash map for objects implementing the
+ *            {@link Keyable} interface, meant as a drop-in replacement for
+ *            {@link MultiArrayMap} for maps with millions of values. The hash
+ *            table itself is held off-heap in a direct buffer with 8 bytes
+ *            per slot: a cached 32-bit hash of the key, whose low bits also
+ *            give the slot the key hashes to, and the index of the value in a
+ *            dense on-heap array. So the only per-value heap overhead is a
+ *            reference in that array, there is no overflow map whose entries
+ *            the garbage collector has to trace, and a lookup compares keys
+ *            only for slots whose hashes match, i.e., almost always only for
+ *            the key that is looked up.
+ *            <p>
+ *            This trades total memory for heap: with the table at most 3/4
+ *            full, a million values take 4MB of heap and 16MB off-heap,
+ *            whereas {@link MultiArrayMap} takes about 13MB, all of it on the
+ *            heap. A table replaced by growing is freed only once the garbage
+ *            collector collects its buffer, so growth can transiently hold up
+ *            to twice the off-heap memory of the current table.
+ *            <p>
+ *            Collisions are resolved by linear probing, and removals shift
+ *            later slots of the same probe sequence back instead of leaving
+ *            tombstones. A removal moves the last value of the dense array
+ *            into the hole, so the array never has gaps. The table grows by
+ *            doubling when it is 3/4 full, so {@link #capacity()} is a hint
+ *            used by callers to limit the size, not a hard limit.
+ *            <p>
+ *            Like {@link MultiArrayMap}, it supports a fail-fast iterator as
+ *            well as a non-fail-fast {@link #concurrentIterator()} for an
+ *            approximate sweep over the map concurrently with puts and
+ *            removes. Both iterate over the dense array from the end, so a
+ *            value removed through the iterator or concurrently moves an
+ *            already visited value into the hole and no value present
+ *            throughout the iteration is missed, though a value moved by a
+ *            concurrent removal may be returned twice.
+ */
+public class OffHeapHashMap<K, V extends Keyable<K>> extends AbstractMap<K, V>
+		implements ConcurrentMap<K, V>, Iterable<V> {
+
+	// hash, value index
+	private static final int SLOT_SIZE = 8;
+	private static final int MIN_SLOTS = 1024;
+	private static final int MAX_SLOTS = Integer.highestOneBit(Integer.MAX_VALUE
+			/ SLOT_SIZE);
+
+	private final int capacity;
+	private ByteBuffer slots;
+	private int mask;
+	private Object[] values;
+	private int size = 0;
+	private int modCount = 0;
+
+	/**
+	 * @param capacity
+	 *            The number of values the map is expected to hold at most. The
+	 *            table starts small and grows up to and beyond this size as
+	 *            needed.
+	 */
+	public OffHeapHashMap(int capacity) {
+		this.capacity = capacity;
+		this.allocate(MIN_SLOTS);
+		this.values = new Object[MIN_SLOTS / 2];
+	}
+
+	/**
+	 * @return The capacity hint that this map was created with.
+	 */
+	public int capacity() {
+		return this.capacity;
+	}
+
+	private void allocate(int numSlots) {
+		this.slots = ByteBuffer.allocateDirect(numSlots * SLOT_SIZE).order(
+				ByteOrder.nativeOrder());
+		this.mask = numSlots - 1;
+	}
+
+	/* FNV-1a over the characters of string keys, so that the hash has 64 bits
+	 * of entropy, followed by a finalizer that spreads the bits, folded into
+	 * 32 bits. Never 0 as 0 marks an empty slot. */
+	private static int hash(Object key) {
+		long h;
+		if (key instanceof String) {
+			String s = (String) key;
+			h = 0xcbf29ce484222325L;
+			for (int i = 0; i < s.length(); i++)
+				h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		} else
+			h = key.hashCode();
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		int folded = (int) (h ^ (h >>> 32));
+		return folded != 0 ? folded : 1;
+	}
+
+	private int getHash(int slot) {
+		return this.slots.getInt(slot * SLOT_SIZE);
+	}
+
+	private int getIndex(int slot) {
+		return this.slots.getInt(slot * SLOT_SIZE + 4);
+	}
+
+	private void setSlot(int slot, int hash, int index) {
+		this.slots.putInt(slot * SLOT_SIZE, hash);
+		this.slots.putInt(slot * SLOT_SIZE + 4, index);
+	}
+
+	@SuppressWarnings("unchecked")
+	private V value(int index) {
+		return (V) this.values[index];
+	}
+
+	// slot holding key, or -1 - the empty slot that ends its probe sequence
+	private int find(Object key, int hash) {
+		int slot = hash & this.mask;
+		int h;
+		while ((h = this.getHash(slot)) != 0) {
+			if (h == hash
+					&& key.equals(this.value(this.getIndex(slot)).getKey()))
+				return slot;
+			slot = (slot + 1) & this.mask;
+		}
+		return -1 - slot;
+	}
+
+	private void grow() {
+		if (this.mask + 1 >= MAX_SLOTS)
+			throw new IllegalStateException(this.getClass().getSimpleName()
+					+ " can not grow beyond " + MAX_SLOTS + " slots");
+		ByteBuffer old = this.slots;
+		int oldSlots = this.mask + 1;
+		this.allocate(oldSlots * 2);
+		for (int i = 0; i < oldSlots; i++) {
+			int hash = old.getInt(i * SLOT_SIZE);
+			if (hash == 0)
+				continue;
+			int slot = hash & this.mask;
+			while (this.getHash(slot) != 0)
+				slot = (slot + 1) & this.mask;
+			this.setSlot(slot, hash, old.getInt(i * SLOT_SIZE + 4));
+		}
+	}
+
+	/* Backward shift deletion: moves every later slot of the probe sequence
+	 * whose home slot is not cyclically in (hole, slot] back into the hole. */
+	private void deleteSlot(int slot) {
+		int hole = slot;
+		for (int cur = (slot + 1) & this.mask; this.getHash(cur) != 0; cur = (cur + 1)
+				& this.mask) {
+			int hash = this.getHash(cur);
+			int home = hash & this.mask;
+			if (hole <= cur ? (hole < home && home <= cur)
+					: (hole < home || home <= cur))
+				continue;
+			this.setSlot(hole, hash, this.getIndex(cur));
+			hole = cur;
+		}
+		this.setSlot(hole, 0, 0);
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return Previous value if any.
+	 */
+	@Override
+	public synchronized V put(K key, V value) {
+		assert (key.equals(value.getKey())) : key + " != " + value.getKey();
+		int hash = hash(key);
+		int slot = this.find(key, hash);
+		if (slot >= 0) {
+			int index = this.getIndex(slot);
+			V prev = this.value(index);
+			this.values[index] = value;
+			return prev;
+		}
+		if ((this.size + 1) * 4L > (this.mask + 1) * 3L) {
+			this.grow();
+			slot = this.find(key, hash);
+		}
+		if (this.size == this.values.length)
+			this.values = Arrays.copyOf(this.values, this.values.length * 2);
+		this.values[this.size] = value;
+		this.setSlot(-1 - slot, hash, this.size++);
+		this.modCount++;
+		return null;
+	}
+
+	/**
+	 * @param key
+	 * @return The value to which the key maps.
+	 */
+	@Override
+	public synchronized V get(Object key) {
+		if (key == null)
+			return null;
+		int slot = this.find(key, hash(key));
+		return slot >= 0 ? this.value(this.getIndex(slot)) : null;
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return this.get(key) != null;
+	}
+
+	@Override
+	public synchronized boolean containsValue(Object value) {
+		V found = null;
+		return value instanceof Keyable<?>
+				&& (found = this.get(((Keyable<?>) value).getKey())) != null
+				&& found.equals(value);
+	}
+
+	/**
+	 * @param key
+	 * @return Previous value if any.
+	 */
+	@Override
+	public synchronized V remove(Object key) {
+		if (key == null)
+			return null;
+		int slot = this.find(key, hash(key));
+		if (slot < 0)
+			return null;
+		int index = this.getIndex(slot);
+		V value = this.value(index);
+		this.deleteSlot(slot);
+
+		// move the last value into the hole in the dense array
+		int last = --this.size;
+		if (index != last) {
+			V moved = this.value(last);
+			this.values[index] = moved;
+			int hash = hash(moved.getKey());
+			int movedSlot = hash & this.mask;
+			while (this.getHash(movedSlot) != hash
+					|| this.getIndex(movedSlot) != last)
+				movedSlot = (movedSlot + 1) & this.mask;
+			this.setSlot(movedSlot, hash, index);
+		}
+		this.values[last] = null;
+		this.modCount++;
+		return value;
+	}
+
+	@Override
+	public synchronized int size() {
+		return this.size;
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Resets the map and frees the table.
+	 */
+	@Override
+	public synchronized void clear() {
+		this.allocate(MIN_SLOTS);
+		this.values = new Object[MIN_SLOTS / 2];
+		this.size = 0;
+		this.modCount++;
+	}
+
+	@Override
+	public synchronized V putIfAbsent(K key, V value) {
+		V prev = this.get(key);
+		if (prev == null)
+			this.put(key, value);
+		return prev;
+	}
+
+	@Override
+	public synchronized boolean remove(Object key, Object value) {
+		V prev = this.get(key);
+		if (prev != null && prev.equals(value))
+			return this.remove(key) != null;
+		return false;
+	}
+
+	@Override
+	public synchronized boolean replace(K key, V oldValue, V newValue) {
+		V prev = this.get(key);
+		if (prev != null && prev.equals(oldValue))
+			return this.put(key, newValue) != null;
+		return false;
+	}
+
+	@Override
+	public synchronized V replace(K key, V value) {
+		if (this.containsKey(key))
+			return this.put(key, value);
+		return null;
+	}
+
+	// read-only iterator allows concurrency
+	class ConcurrentIterator implements Iterator<V> {
+		int index;
+		V last = null;
+
+		ConcurrentIterator() {
+			synchronized (OffHeapHashMap.this) {
+				this.index = OffHeapHashMap.this.size - 1;
+			}
+		}
+
+		/**
+		 * Note: next() may return null immediately after hasNext() returns
+		 * true if values are concurrently removed, as with
+		 * {@link MultiArrayMap#concurrentIterator()}.
+		 */
+		@Override
+		public boolean hasNext() {
+			synchronized (OffHeapHashMap.this) {
+				return Math.min(this.index, OffHeapHashMap.this.size - 1) >= 0;
+			}
+		}
+
+		@Override
+		public V next() {
+			synchronized (OffHeapHashMap.this) {
+				this.index = Math.min(this.index,
+						OffHeapHashMap.this.size - 1);
+				return this.index >= 0 ? this.last = value(this.index--)
+						: null;
+			}
+		}
+
+		@Override
+		public void remove() {
+			if (this.last != null)
+				OffHeapHashMap.this.remove(this.last.getKey());
+		}
+	}
+
+	// traditional fail-fast under concurrency semantics
+	class FailFastIterator extends ConcurrentIterator {
+		int expectedModCount;
+
+		FailFastIterator() {
+			synchronized (OffHeapHashMap.this) {
+				this.expectedModCount = OffHeapHashMap.this.modCount;
+			}
+		}
+
+		private void check() {
+			if (modCount != this.expectedModCount)
+				throw new ConcurrentModificationException();
+		}
+
+		@Override
+		public boolean hasNext() {
+			synchronized (OffHeapHashMap.this) {
+				this.check();
+				return super.hasNext();
+			}
+		}
+
+		@Override
+		public V next() {
+			synchronized (OffHeapHashMap.this) {
+				this.check();
+				if (this.index < 0)
+					throw new NoSuchElementException();
+				return super.next();
+			}
+		}
+
+		@Override
+		public void remove() {
+			synchronized (OffHeapHashMap.this) {
+				this.check();
+				super.remove();
+				this.expectedModCount = modCount;
+			}
+		}
+	}
+
+	@Override
+	public Iterator<V> iterator() {
+		return new FailFastIterator();
+	}
+
+	/**
+	 * @return Non-fail-fast iterator that allows concurrent modification but
+	 *         with the caveat that next() may return null even though hasNext()
+	 *         returns true. Concurrently added values may be overlooked.
+	 */
+	public Iterator<V> concurrentIterator() {
+		return new ConcurrentIterator();
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<Entry<K, V>>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				final Iterator<V> iterV = OffHeapHashMap.this.iterator();
+				return new Iterator<Entry<K, V>>() {
+					@Override
+					public boolean hasNext() {
+						return iterV.hasNext();
+					}
+
+					@Override
+					public Entry<K, V> next() {
+						V value = iterV.next();
+						return new SimpleImmutableEntry<K, V>(value.getKey(),
+								value);
+					}
+
+					@Override
+					public void remove() {
+						iterV.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return OffHeapHashMap.this.size();
+			}
+		};
+	}
+}
@@ -0,0 +1,119 @@
+package edu.umass.cs.utils;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.umass.cs.utils.MultiArrayMap.StringValue;
+
+/**
+ * OffHeapHashMap test class including growth, removals that shift colliding
+ * slots, and iterating while removing.
+ */
+public class OffHeapHashMapTest extends DefaultTest {
+
+	private static StringValue<Integer> value(String key, int i) {
+		return new StringValue<Integer>(key, i);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPutGetRemove() {
+		OffHeapHashMap<String, StringValue<Integer>> map = new OffHeapHashMap<String, StringValue<Integer>>(
+				100);
+		Assert.assertNull(map.get("paxos0"));
+		Assert.assertNull(map.put("paxos0", value("paxos0", 1)));
+		Assert.assertEquals(1, map.get("paxos0").value.intValue());
+		Assert.assertEquals(1, map.put("paxos0", value("paxos0", 2)).value
+				.intValue());
+		Assert.assertEquals(1, map.size());
+		Assert.assertTrue(map.containsKey("paxos0"));
+		Assert.assertTrue(map.containsValue(map.get("paxos0")));
+		Assert.assertFalse(map.containsValue(value("paxos0", 2)));
+
+		Assert.assertNotNull(map.putIfAbsent("paxos0", value("paxos0", 3)));
+		Assert.assertEquals(2, map.get("paxos0").value.intValue());
+		Assert.assertNull(map.replace("paxos1", value("paxos1", 1)));
+		Assert.assertFalse(map.containsKey("paxos1"));
+
+		Assert.assertEquals(2, map.remove("paxos0").value.intValue());
+		Assert.assertNull(map.remove("paxos0"));
+		Assert.assertTrue(map.isEmpty());
+		Assert.assertEquals(100, map.capacity());
+	}
+
+	/**
+	 * Random puts and removes that grow the table several times, compared
+	 * against a HashMap.
+	 */
+	@Test
+	public void testRandomOperations() {
+		OffHeapHashMap<String, StringValue<Integer>> map = new OffHeapHashMap<String, StringValue<Integer>>(
+				100);
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		Random random = new Random(0);
+		for (int i = 0; i < 500000; i++) {
+			String key = "paxos" + random.nextInt(20000);
+			if (random.nextInt(3) > 0) {
+				map.put(key, value(key, i));
+				expected.put(key, i);
+			} else {
+				StringValue<Integer> removed = map.remove(key);
+				Integer prev = expected.remove(key);
+				Assert.assertEquals(prev, removed != null ? removed.value
+						: null);
+			}
+		}
+		Assert.assertEquals(expected.size(), map.size());
+		for (String key : expected.keySet())
+			Assert.assertEquals(expected.get(key), map.get(key).value);
+		Assert.assertEquals(expected.keySet(), map.keySet());
+
+		map.clear();
+		Assert.assertEquals(0, map.size());
+		Assert.assertNull(map.get("paxos0"));
+	}
+
+	/**
+	 * Removing every other value during a sweep with the concurrent iterator,
+	 * like the deactivation of idle paxos instances, visits every value.
+	 */
+	@Test
+	public void testConcurrentIterator() {
+		OffHeapHashMap<String, StringValue<Integer>> map = new OffHeapHashMap<String, StringValue<Integer>>(
+				100);
+		for (int i = 0; i < 10000; i++)
+			map.put("paxos" + i, value("paxos" + i, i));
+		Set<String> visited = new HashSet<String>();
+		for (Iterator<StringValue<Integer>> iter = map.concurrentIterator(); iter
+				.hasNext();) {
+			StringValue<Integer> value = iter.next();
+			Assert.assertTrue(visited.add(value.getKey()));
+			if (value.value % 2 == 0)
+				map.remove(value.getKey());
+		}
+		Assert.assertEquals(10000, visited.size());
+		Assert.assertEquals(5000, map.size());
+
+		Iterator<StringValue<Integer>> iter = map.iterator();
+		iter.next();
+		iter.remove();
+		Assert.assertEquals(4999, map.size());
+		map.remove("paxos1");
+		try {
+			iter.next();
+			Assert.fail();
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+}
@@ -3,6 +3,7 @@ package edu.umass.cs.xdn;
 import edu.umass.cs.gigapaxos.PaxosConfig;
 import edu.umass.cs.gigapaxos.interfaces.Replicable;
 import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.primarybackup.PrimaryBackupManager;
 import edu.umass.cs.primarybackup.PrimaryEpoch;
@@ -13,6 +14,7 @@ import edu.umass.cs.reconfiguration.interfaces.InitialStateValidator;
 import edu.umass.cs.reconfiguration.interfaces.Reconfigurable;
 import edu.umass.cs.reconfiguration.interfaces.ReconfigurableRequest;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ServiceAdmissionController;
 import edu.umass.cs.utils.ZipFiles;
 import edu.umass.cs.xdn.experiment.GetOSUserGroupID;
 import edu.umass.cs.xdn.recorder.*;
@@ -20,6 +22,7 @@ import edu.umass.cs.xdn.request.*;
 import edu.umass.cs.xdn.service.ServiceComponent;
 import edu.umass.cs.xdn.service.ServiceInstance;
 import edu.umass.cs.xdn.service.ServiceProperty;
+import edu.umass.cs.xdn.service.ServiceResponseCache;
 import edu.umass.cs.xdn.utils.Shell;
 import edu.umass.cs.xdn.utils.Utils;
 import io.netty.buffer.Unpooled;
@@ -173,7 +176,10 @@ public class XDNGigapaxosApp implements Replicable, Reconfigurable, BackupableAp
         }
 
         if (request instanceof XDNHttpRequest xdnRequest) {
-            return forwardHttpRequestToContainerizedService(xdnRequest);
+            RequestTracer.record(xdnRequest.getRequestID(), RequestTracer.Stage.EXECUTE);
+            boolean isExecuteSuccess = forwardHttpRequestToContainerizedService(xdnRequest);
+            RequestTracer.record(xdnRequest.getRequestID(), RequestTracer.Stage.EXECUTED);
+            return isExecuteSuccess;
         }
 
         if (request instanceof XDNStopRequest stopRequest) {
@@ -450,6 +456,14 @@ public class XDNGigapaxosApp implements Replicable, Reconfigurable, BackupableAp
             return ResponsePacket.createFromString(stringified);
         }
 
+        if (stringified.startsWith(BatchedForwardedRequestPacket.SERIALIZED_PREFIX)) {
+            return BatchedForwardedRequestPacket.createFromString(stringified);
+        }
+
+        if (stringified.startsWith(BatchedResponsePacket.SERIALIZED_PREFIX)) {
+            return BatchedResponsePacket.createFromString(stringified);
+        }
+
         Exception e = new RuntimeException(
                 "Invalid serialized format for primary-backup request");
         throw new RequestParseException(e);
@@ -654,6 +668,10 @@ public class XDNGigapaxosApp implements Replicable, Reconfigurable, BackupableAp
         // store all the service metadata
         services.put(serviceName, service);
         activeServicePorts.put(serviceName, allocatedPort);
+        XDNHttpRequest.setMaxRequestSize(serviceName, property.getMaxRequestSize());
+        ServiceResponseCache.setCapacity(serviceName, property.getResponseCacheSize());
+        ServiceAdmissionController.setLimits(serviceName, property.getRateLimit(),
+                property.getMaxConcurrentRequests());
 
         return true;
     }
@@ -670,6 +688,9 @@ public class XDNGigapaxosApp implements Replicable, Reconfigurable, BackupableAp
         if (instance == null) {
             return true;
         }
+        XDNHttpRequest.setMaxRequestSize(serviceName, null);
+        ServiceResponseCache.setCapacity(serviceName, 0);
+        ServiceAdmissionController.removeLimits(serviceName);
 
         for (String containerName : instance.containerNames) {;
             stopContainer(containerName);
@@ -968,9 +989,13 @@ public class XDNGigapaxosApp implements Replicable, Reconfigurable, BackupableAp
             return false;
         }
 
-        // apply the stateDiff
+        // apply the stateDiff, after which cached responses are stale
         String stateDiffContent = statediff.substring(XDN_STATE_DIFF_PREFIX.length());
         boolean isApplySuccess = stateDiffRecorder.applyStateDiff(serviceName, stateDiffContent);
+        ServiceResponseCache cache = ServiceResponseCache.get(serviceName);
+        if (cache != null) {
+            cache.invalidate();
+        }
         if (!isApplySuccess) {
             throw new RuntimeException("failed to apply stateDiff");
         }
@@ -1223,6 +1248,12 @@ public class XDNGigapaxosApp implements Replicable, Reconfigurable, BackupableAp
             isServiceActive.put(serviceName, true);
         }
 
+        // requests other than these may change the service state
+        String method = xdnRequest.getHttpRequest().method().name();
+        boolean isReadOnly = method.equals("GET") || method.equals("HEAD") ||
+                method.equals("OPTIONS");
+        ServiceResponseCache cache = ServiceResponseCache.get(serviceName);
+
         try {
             // create http request
             HttpRequest httpRequest = convertXDNRequestToHttpRequest(xdnRequest);
@@ -1234,6 +1265,17 @@ public class XDNGigapaxosApp implements Replicable, Reconfigurable, BackupableAp
             HttpResponse<byte[]> response = serviceClient.send(httpRequest,
                     HttpResponse.BodyHandlers.ofByteArray());
 
+            // cache the response if the request and the response allow it
+            if (cache != null && isReadOnly) {
+                io.netty.handler.codec.http.HttpHeaders requestHeaders =
+                        xdnRequest.getHttpRequest().headers();
+                List<Map.Entry<String, String>> responseHeaders = new ArrayList<>();
+                response.headers().map().forEach((name, values) -> values.forEach(
+                        value -> responseHeaders.add(Map.entry(name, value))));
+                cache.put(method, xdnRequest.getHttpRequest().uri(), requestHeaders::get,
+                        response.statusCode(), responseHeaders, response.body());
+            }
+
             // convert the response into netty's http response
             io.netty.handler.codec.http.HttpResponse nettyHttpResponse =
                     createNettyHttpResponse(response);
@@ -1246,6 +1288,11 @@ public class XDNGigapaxosApp implements Replicable, Reconfigurable, BackupableAp
             xdnRequest.setHttpResponse(createNettyHttpErrorResponse(e));
             e.printStackTrace();
             return false;
+        } finally {
+            // a write, even a failed one, may have changed the state of the service
+            if (cache != null && !isReadOnly) {
+                cache.invalidate();
+            }
         }
     }
 
@@ -1257,10 +1304,15 @@ public class XDNGigapaxosApp implements Replicable, Reconfigurable, BackupableAp
                     this.activeServicePorts.get(xdnRequest.getServiceName()),
                     xdnRequest.getHttpRequest().uri());
 
-            // preparing the HTTP request body, if any
+            // preparing the HTTP request body, if any, streaming a spooled body from its chunks
             // TODO: handle non text body, ie. file or binary data
             HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.noBody();
-            if (xdnRequest.getHttpRequestContent() != null &&
+            XDNHttpBody body = xdnRequest.getHttpRequestBody();
+            if (body != null) {
+                bodyPublisher = HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(body::newInputStream),
+                        body.length());
+            } else if (xdnRequest.getHttpRequestContent() != null &&
                     xdnRequest.getHttpRequestContent().content() != null) {
                 bodyPublisher = HttpRequest
                         .BodyPublishers
@@ -1,9 +1,11 @@
 package edu.umass.cs.xdn;
 
 import edu.umass.cs.gigapaxos.PaxosConfig;
+import edu.umass.cs.gigapaxos.interfaces.ClientRequest;
 import edu.umass.cs.gigapaxos.interfaces.ExecutedCallback;
 import edu.umass.cs.gigapaxos.interfaces.Replicable;
 import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.nio.interfaces.Messenger;
 import edu.umass.cs.nio.interfaces.Stringifiable;
@@ -112,6 +114,10 @@ public class XDNReplicaCoordinator<NodeIDType> extends AbstractReplicaCoordinato
         // System.out.printf(">> %s:XDNReplicaCoordinator - coordinateRequest request=%s payload=%s\n",
         //        myNodeID, request.getClass().getSimpleName(), request.toString());
 
+        if (request instanceof ClientRequest clientRequest) {
+            RequestTracer.record(clientRequest.getRequestID(), RequestTracer.Stage.COORDINATE);
+        }
+
         var serviceName = request.getServiceName();
         var coordinator = this.serviceCoordinator.get(serviceName);
         if (coordinator == null) {
@@ -0,0 +1,111 @@
+package edu.umass.cs.xdn.request;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+public class TestXDNHttpBody {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    // writes content to a spooler in pieces of the given size, as netty would
+    private static XDNHttpBody.Spooler spool(byte[] content, int pieceSize) throws IOException {
+        XDNHttpBody.Spooler spooler = new XDNHttpBody.Spooler();
+        for (int i = 0; i < content.length; i += pieceSize)
+            spooler.write(ByteBuffer.wrap(content, i, Math.min(pieceSize, content.length - i)));
+        return spooler;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toByteArray();
+    }
+
+    // a random body whose last full chunk repeats the first one
+    private static byte[] createTestContent(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        System.arraycopy(content, 0, content, 2 * CHUNK_SIZE, CHUNK_SIZE);
+        return content;
+    }
+
+    @Test
+    public void TestSmallContentIsNotSpooled() throws IOException {
+        byte[] content = "somestringcontent".getBytes(StandardCharsets.UTF_8);
+        try (XDNHttpBody.Spooler spooler = spool(content, 5)) {
+            assert !spooler.isSpooled() : "small content must stay inline";
+            assert Arrays.equals(spooler.getContent(), content) : "inline content is different";
+        }
+    }
+
+    @Test
+    public void TestSpooledBodySerializationDeserialization() throws IOException, JSONException {
+        byte[] content = createTestContent(3 * CHUNK_SIZE + CHUNK_SIZE / 2);
+        XDNHttpBody body;
+        try (XDNHttpBody.Spooler spooler = spool(content, 8192)) {
+            assert spooler.isSpooled() : "large content must be spooled";
+            body = spooler.getBody();
+        }
+        // the spool file is closed but its chunks stay mapped
+        assert body.length() == content.length;
+        assert body.getChunkIDs().size() == 4;
+        assert body.getChunkIDs().get(0).equals(body.getChunkIDs().get(2)) :
+                "chunks with the same content must have the same ID";
+        assert Arrays.equals(readAll(body.newInputStream()), content) : "spooled body is different";
+
+        JSONObject json = new JSONObject(body.toJSONObject().toString());
+        assert json.getJSONObject("data").length() == 3 : "repeated chunks must be serialized once";
+        XDNHttpBody deserialized = XDNHttpBody.createFromJSONObject(json);
+        assert Objects.equals(body, deserialized) : "deserialized body is different";
+        assert Arrays.equals(readAll(deserialized.newInputStream()), content) :
+                "deserialized body content is different";
+    }
+
+    @Test
+    public void TestCorruptedChunkIsRejected() {
+        try {
+            String id = "0".repeat(63) + "1";
+            XDNHttpBody.createFromJSONObject(new JSONObject(
+                    "{\"length\":3,\"chunks\":[\"" + id + "\"]," +
+                            "\"data\":{\"" + id + "\":\"YWJj\"}}"));
+            assert false : "a chunk that does not match its ID must be rejected";
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compares the serialized size of a binary body in chunks with the size of the same body
+     * serialized inline as ISO-8859-1 chars in JSON, as done for requests before.
+     */
+    @Test
+    public void TestSerializedSize() throws IOException, JSONException {
+        byte[] content = new byte[8 * CHUNK_SIZE];
+        new Random(0).nextBytes(content);
+        XDNHttpBody body;
+        try (XDNHttpBody.Spooler spooler = spool(content, 8192)) {
+            body = spooler.getBody();
+        }
+        long t = System.nanoTime();
+        int chunkedSize = body.toJSONObject().toString().length();
+        long chunkedTime = System.nanoTime() - t;
+        t = System.nanoTime();
+        int inlineSize = new JSONObject().put("content",
+                new String(content, StandardCharsets.ISO_8859_1)).toString().length();
+        long inlineTime = System.nanoTime() - t;
+        System.out.printf("[8MB body serialized inline %.1fMB in %dms, chunked %.1fMB in %dms] ",
+                inlineSize / 1048576.0, inlineTime / 1000000,
+                chunkedSize / 1048576.0, chunkedTime / 1000000);
+        assert chunkedSize < inlineSize;
+    }
+}
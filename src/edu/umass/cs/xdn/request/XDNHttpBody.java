@@ -0,0 +1,312 @@
+package edu.umass.cs.xdn.request;
+
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
+import edu.umass.cs.utils.Config;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Body of an {@link XDNHttpRequest} that is too large to be carried inline in
+ * the request. The body is split into chunks of
+ * {@link RC#XDN_BODY_CHUNK_SIZE} bytes kept off the Java heap, either
+ * memory-mapped from the spool file the body was received into or in direct
+ * buffers, and each chunk is addressed by its SHA-256. Chunks with the same
+ * content are stored once in this JVM for as long as some body refers to them,
+ * e.g., at the entry replica that spooled the body and later gets the same
+ * request back from paxos. As the store is shared by all the services in this
+ * JVM, chunk IDs must be collision resistant, so that a request can not make a
+ * body of another request resolve to its chunk.
+ * <p>
+ * The serialized form lists the chunk IDs in order and carries each distinct
+ * chunk once in base64, i.e., 4/3 of the body size, whereas the bytes of an
+ * inline body are encoded as ISO-8859-1 chars in JSON and many of them are
+ * escaped to six chars each.
+ */
+public class XDNHttpBody {
+
+    /**
+     * Bodies up to this size are kept inline in the request.
+     */
+    public static final int INLINE_SIZE = 64 * 1024;
+
+    private static final int CHUNK_SIZE = Config.getGlobalInt(RC.XDN_BODY_CHUNK_SIZE);
+
+    // allowance for the rest of the serialized request and the framing added by paxos
+    private static final int FRAMING_OVERHEAD = 64 * 1024;
+    // allowance for the ID of a chunk, which is serialized twice with its quotes
+    private static final int CHUNK_ID_OVERHEAD = 256;
+
+    private static final String LENGTH = "length";
+    private static final String CHUNKS = "chunks";
+    private static final String DATA = "data";
+
+    private static class ChunkReference extends WeakReference<ByteBuffer> {
+        final String id;
+
+        ChunkReference(String id, ByteBuffer chunk, ReferenceQueue<ByteBuffer> queue) {
+            super(chunk, queue);
+            this.id = id;
+        }
+    }
+
+    // chunks referred to by live bodies, so the store never outlives its bodies
+    private static final ConcurrentHashMap<String, ChunkReference> chunkStore =
+            new ConcurrentHashMap<>();
+    private static final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<>();
+
+    private final long length;
+    private final String[] chunkIDs;
+    private final ByteBuffer[] chunks;
+
+    private XDNHttpBody(long length, String[] chunkIDs, ByteBuffer[] chunks) {
+        this.length = length;
+        this.chunkIDs = chunkIDs;
+        this.chunks = chunks;
+    }
+
+    private static String getChunkID(ByteBuffer chunk) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(chunk.duplicate());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ByteBuffer lookup(String id) {
+        ChunkReference ref = chunkStore.get(id);
+        return ref != null ? ref.get() : null;
+    }
+
+    // returns the stored chunk with this ID, storing this chunk if there is none
+    private static ByteBuffer store(String id, ByteBuffer chunk) {
+        for (Reference<? extends ByteBuffer> ref; (ref = collected.poll()) != null; )
+            chunkStore.remove(((ChunkReference) ref).id, ref);
+        while (true) {
+            ChunkReference ref = chunkStore.get(id);
+            ByteBuffer stored = ref != null ? ref.get() : null;
+            if (stored != null)
+                return stored;
+            ChunkReference newRef = new ChunkReference(id, chunk, collected);
+            if (ref == null ? chunkStore.putIfAbsent(id, newRef) == null
+                    : chunkStore.replace(id, ref, newRef))
+                return chunk;
+        }
+    }
+
+    // maps the spooled body chunk by chunk
+    private static XDNHttpBody create(FileChannel spool, long length) throws IOException {
+        int numChunks = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        String[] chunkIDs = new String[numChunks];
+        ByteBuffer[] chunks = new ByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            long offset = (long) i * CHUNK_SIZE;
+            ByteBuffer chunk = spool.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(CHUNK_SIZE, length - offset));
+            chunkIDs[i] = getChunkID(chunk);
+            chunks[i] = store(chunkIDs[i], chunk);
+        }
+        return new XDNHttpBody(length, chunkIDs, chunks);
+    }
+
+    /**
+     * @param maxPayloadSize The maximum size in bytes of a message between replicas.
+     * @return The length of the largest body whose serialized request fits in a
+     * message of maxPayloadSize bytes, given that each chunk is carried in base64.
+     */
+    public static long getMaxReplicableLength(long maxPayloadSize) {
+        long usable = maxPayloadSize - FRAMING_OVERHEAD;
+        if (usable <= 0)
+            return 0;
+        long perChunk = 4 * ((CHUNK_SIZE + 2) / 3) + CHUNK_ID_OVERHEAD;
+        long lastChunk = (usable % perChunk - CHUNK_ID_OVERHEAD) / 4 * 3;
+        return usable / perChunk * CHUNK_SIZE + Math.max(0, Math.min(CHUNK_SIZE - 1, lastChunk));
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public List<String> getChunkIDs() {
+        return List.of(chunkIDs);
+    }
+
+    /**
+     * @return A stream of the body read directly from its chunks.
+     */
+    public InputStream newInputStream() {
+        return new InputStream() {
+            private int index = 0;
+            private ByteBuffer current = chunks.length > 0 ? chunks[0].duplicate() : null;
+
+            private boolean advance() {
+                while (current != null && !current.hasRemaining())
+                    current = ++index < chunks.length ? chunks[index].duplicate() : null;
+                return current != null;
+            }
+
+            @Override
+            public int read() {
+                return advance() ? current.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0)
+                    return 0;
+                if (!advance())
+                    return -1;
+                int n = Math.min(len, current.remaining());
+                current.get(b, off, n);
+                return n;
+            }
+        };
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put(LENGTH, length);
+        json.put(CHUNKS, new JSONArray(List.of(chunkIDs)));
+        JSONObject data = new JSONObject();
+        for (int i = 0; i < chunks.length; i++) {
+            if (data.has(chunkIDs[i]))
+                continue;
+            ByteBuffer encoded = Base64.getEncoder().encode(chunks[i].duplicate());
+            data.put(chunkIDs[i], StandardCharsets.ISO_8859_1.decode(encoded).toString());
+        }
+        json.put(DATA, data);
+        return json;
+    }
+
+    public static XDNHttpBody createFromJSONObject(JSONObject json) throws JSONException {
+        long length = json.getLong(LENGTH);
+        JSONArray ids = json.getJSONArray(CHUNKS);
+        JSONObject data = json.getJSONObject(DATA);
+        String[] chunkIDs = new String[ids.length()];
+        ByteBuffer[] chunks = new ByteBuffer[ids.length()];
+        long total = 0;
+        for (int i = 0; i < chunkIDs.length; i++) {
+            chunkIDs[i] = ids.getString(i);
+            chunks[i] = lookup(chunkIDs[i]);
+            if (chunks[i] == null) {
+                byte[] bytes = Base64.getDecoder().decode(data.getString(chunkIDs[i]));
+                ByteBuffer chunk = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+                if (!getChunkID(chunk).equals(chunkIDs[i]))
+                    throw new JSONException("chunk " + chunkIDs[i] + " does not match its ID");
+                chunks[i] = store(chunkIDs[i], chunk.asReadOnlyBuffer());
+            }
+            total += chunks[i].remaining();
+        }
+        if (total != length)
+            throw new JSONException("chunks have " + total + " bytes instead of " + length);
+        return new XDNHttpBody(length, chunkIDs, chunks);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        XDNHttpBody that = (XDNHttpBody) o;
+        return this.length == that.length && Arrays.equals(this.chunkIDs, that.chunkIDs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(chunkIDs);
+    }
+
+    /**
+     * Collects the content of an HTTP request as it is received. Content that
+     * fits in {@link #INLINE_SIZE} bytes is buffered to be carried inline in the
+     * request, and larger content is written to a spool file that is deleted once
+     * closed, by which time its chunks are memory-mapped.
+     */
+    public static class Spooler implements Closeable {
+        private byte[] buffered = new byte[0];
+        private FileChannel spool;
+        private long length = 0;
+
+        public long length() {
+            return length;
+        }
+
+        public void write(ByteBuffer... content) throws IOException {
+            for (ByteBuffer buf : content) {
+                buf = buf.duplicate();
+                int n = buf.remaining();
+                if (spool == null && length + n <= INLINE_SIZE) {
+                    if (buffered.length < length + n)
+                        buffered = Arrays.copyOf(buffered,
+                                (int) Math.min(INLINE_SIZE, Math.max(2 * buffered.length, length + n)));
+                    buf.get(buffered, (int) length, n);
+                    length += n;
+                    continue;
+                }
+                if (spool == null) {
+                    spool = FileChannel.open(Files.createTempFile("xdn-body", ".spool"),
+                            StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.DELETE_ON_CLOSE);
+                    writeFully(ByteBuffer.wrap(buffered, 0, (int) length));
+                    buffered = null;
+                }
+                writeFully(buf);
+                length += n;
+            }
+        }
+
+        private void writeFully(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining())
+                spool.write(buf);
+        }
+
+        public boolean isSpooled() {
+            return spool != null;
+        }
+
+        /**
+         * @return The content if it was not spooled.
+         */
+        public byte[] getContent() {
+            assert !isSpooled();
+            return Arrays.copyOf(buffered, (int) length);
+        }
+
+        /**
+         * @return The spooled body.
+         * @throws IOException
+         */
+        public XDNHttpBody getBody() throws IOException {
+            assert isSpooled();
+            return XDNHttpBody.create(spool, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffered = null;
+            if (spool != null)
+                spool.close();
+        }
+    }
+}
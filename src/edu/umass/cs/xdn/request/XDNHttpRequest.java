@@ -1,8 +1,11 @@
 package edu.umass.cs.xdn.request;
 
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
 import edu.umass.cs.gigapaxos.interfaces.ClientRequest;
 import edu.umass.cs.gigapaxos.interfaces.Request;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
+import edu.umass.cs.utils.Config;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.*;
 import org.json.JSONArray;
@@ -14,10 +17,14 @@ import org.junit.runner.RunWith;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 @RunWith(Enclosed.class)
 public class XDNHttpRequest extends XDNRequest implements ClientRequest {
@@ -30,17 +37,32 @@ public class XDNHttpRequest extends XDNRequest implements ClientRequest {
 
     private static final String XDN_HTTP_REQUEST_ID_HEADER = "XDN-Request-ID";
 
+    // request size limits of the services hosted in this JVM, set from their ServiceProperty
+    private static final ConcurrentHashMap<String, Long> maxRequestSizes = new ConcurrentHashMap<>();
+
     private final long requestID;
     private final String serviceName;
     private final HttpRequest httpRequest;
     private final HttpContent httpRequestContent;
+    private final XDNHttpBody httpRequestBody;
     private HttpResponse httpResponse;
 
     public XDNHttpRequest(String serviceName, HttpRequest httpRequest, HttpContent httpRequestContent) {
+        this(serviceName, httpRequest, httpRequestContent, null);
+    }
+
+    // the content of a request with a spooled body is empty
+    public XDNHttpRequest(String serviceName, HttpRequest httpRequest, XDNHttpBody httpRequestBody) {
+        this(serviceName, httpRequest, new DefaultHttpContent(Unpooled.EMPTY_BUFFER), httpRequestBody);
+    }
+
+    private XDNHttpRequest(String serviceName, HttpRequest httpRequest, HttpContent httpRequestContent,
+                           XDNHttpBody httpRequestBody) {
         assert serviceName != null && httpRequest != null && httpRequestContent != null;
         this.serviceName = serviceName;
         this.httpRequest = httpRequest;
         this.httpRequestContent = httpRequestContent;
+        this.httpRequestBody = httpRequestBody;
 
         Long inferredRequestID = XDNHttpRequest.inferRequestID(this.httpRequest);
         if (inferredRequestID != null) {
@@ -78,6 +100,38 @@ public class XDNHttpRequest extends XDNRequest implements ClientRequest {
         return null;
     }
 
+    // Sets the maximum body size of requests to this service, or resets it
+    // to the default RC.HTTP_MAX_REQUEST_SIZE if maxRequestSize is null.
+    // Either way, bodies too large to be replicated are rejected, see
+    // getMaxReplicableSize().
+    public static void setMaxRequestSize(String serviceName, Long maxRequestSize) {
+        if (maxRequestSize == null) {
+            maxRequestSizes.remove(serviceName);
+        } else {
+            maxRequestSizes.put(serviceName, maxRequestSize);
+        }
+    }
+
+    public static long getMaxRequestSize(String serviceName) {
+        Long maxRequestSize = maxRequestSizes.get(serviceName);
+        return maxRequestSize != null ? Math.min(maxRequestSize, getMaxReplicableSize())
+                : getDefaultMaxRequestSize();
+    }
+
+    // Returns RC.HTTP_MAX_REQUEST_SIZE, or the largest body that can be
+    // replicated if it is not set or larger.
+    public static long getDefaultMaxRequestSize() {
+        long maxRequestSize = Config.getGlobalLong(RC.HTTP_MAX_REQUEST_SIZE);
+        return maxRequestSize > 0 ? Math.min(maxRequestSize, getMaxReplicableSize())
+                : getMaxReplicableSize();
+    }
+
+    // The body of a request is replicated as part of a single message, so it
+    // can not exceed PC.NIO_MAX_PAYLOAD_SIZE once encoded.
+    private static long getMaxReplicableSize() {
+        return XDNHttpBody.getMaxReplicableLength(Config.getGlobalInt(PC.NIO_MAX_PAYLOAD_SIZE));
+    }
+
     // In general, we infer the HTTP request ID based on these headers:
     // (1) `ETag`, (2) `X-Request-ID`, or (3) `XDN-Request-ID`, in that order.
     // If the request does not contain those header, null will be returned.
@@ -134,12 +188,14 @@ public class XDNHttpRequest extends XDNRequest implements ClientRequest {
         XDNHttpRequest that = (XDNHttpRequest) o;
         return this.serviceName.equals(that.serviceName) &&
                 this.httpRequest.equals(that.httpRequest) &&
-                this.httpRequestContent.equals(that.httpRequestContent);
+                this.httpRequestContent.equals(that.httpRequestContent) &&
+                Objects.equals(this.httpRequestBody, that.httpRequestBody);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(this.serviceName, this.httpRequest, this.httpRequestContent);
+        return Objects.hash(this.serviceName, this.httpRequest, this.httpRequestContent,
+                this.httpRequestBody);
     }
 
     public HttpRequest getHttpRequest() {
@@ -150,6 +206,13 @@ public class XDNHttpRequest extends XDNRequest implements ClientRequest {
         return httpRequestContent;
     }
 
+    /**
+     * @return The spooled body, or null if the body is the inline content.
+     */
+    public XDNHttpBody getHttpRequestBody() {
+        return httpRequestBody;
+    }
+
     public HttpResponse getHttpResponse() {
         return httpResponse;
     }
@@ -173,6 +236,9 @@ public class XDNHttpRequest extends XDNRequest implements ClientRequest {
             }
             json.put("headers", headerJsonArray);
             json.put("content", httpRequestContent.content().toString(StandardCharsets.ISO_8859_1));
+            if (httpRequestBody != null) {
+                json.put("body", httpRequestBody.toJSONObject());
+            }
 
             if (httpResponse != null) {
                 json.put("response", serializedHttpResponse(httpResponse));
@@ -263,6 +329,8 @@ public class XDNHttpRequest extends XDNRequest implements ClientRequest {
             String httpContent = json.getString("content");
             String httpResponse = json.has("response") ?
                     json.getString("response") : null;
+            XDNHttpBody httpBody = json.has("body") ?
+                    XDNHttpBody.createFromJSONObject(json.getJSONObject("body")) : null;
 
             // handle array of header
             JSONArray headerJSONArr = json.getJSONArray("headers");
@@ -283,7 +351,7 @@ public class XDNHttpRequest extends XDNRequest implements ClientRequest {
             HttpContent reqContent = new DefaultHttpContent(
                     Unpooled.copiedBuffer(httpContent, StandardCharsets.ISO_8859_1));
             String serviceName = XDNHttpRequest.inferServiceName(req);
-            XDNHttpRequest xdnHttpRequest = new XDNHttpRequest(serviceName, req, reqContent);
+            XDNHttpRequest xdnHttpRequest = new XDNHttpRequest(serviceName, req, reqContent, httpBody);
 
             // handle response, if any
             if (httpResponse != null) {
@@ -318,6 +386,44 @@ public class XDNHttpRequest extends XDNRequest implements ClientRequest {
                     deserializedXDNRequest) : "deserialized XDNRequest is different";
         }
 
+        @Test
+        public void TestXdnHttpRequestSpooledBodySerializationDeserialization() throws Exception {
+            byte[] content = new byte[3 * XDNHttpBody.INLINE_SIZE];
+            new Random(0).nextBytes(content);
+            XDNHttpBody body;
+            try (XDNHttpBody.Spooler spooler = new XDNHttpBody.Spooler()) {
+                spooler.write(ByteBuffer.wrap(content));
+                body = spooler.getBody();
+            }
+            XDNHttpRequest request = new XDNHttpRequest("dummyServiceName",
+                    createDummyTestRequest().getHttpRequest(), body);
+
+            XDNHttpRequest deserializedXDNRequest = XDNHttpRequest.createFromString(
+                    request.toString());
+            assert deserializedXDNRequest != null : "deserialized XDNRequest is null";
+            assert Objects.equals(request, deserializedXDNRequest) :
+                    "deserialized XDNRequest is different";
+            assert Arrays.equals(content, deserializedXDNRequest.getHttpRequestBody()
+                    .newInputStream().readAllBytes()) : "deserialized body is different";
+        }
+
+        @Test
+        public void TestXdnHttpRequestMaxSizeBodyFitsInPayload() throws Exception {
+            int maxPayloadSize = Config.getGlobalInt(PC.NIO_MAX_PAYLOAD_SIZE);
+            byte[] content = new byte[(int) XDNHttpBody.getMaxReplicableLength(maxPayloadSize)];
+            new Random(0).nextBytes(content);
+            XDNHttpBody body;
+            try (XDNHttpBody.Spooler spooler = new XDNHttpBody.Spooler()) {
+                spooler.write(ByteBuffer.wrap(content));
+                body = spooler.getBody();
+            }
+            XDNHttpRequest request = new XDNHttpRequest("dummyServiceName",
+                    createDummyTestRequest().getHttpRequest(), body);
+            assert XDNHttpRequest.getDefaultMaxRequestSize() <= content.length;
+            assert request.toString().length() < maxPayloadSize :
+                    "a request with the largest accepted body must fit in a message";
+        }
+
         @Test
         public void TestXdnHttpRequestSetResponse() {
             XDNHttpRequest dummyXDNHttpRequest = createDummyTestRequest();
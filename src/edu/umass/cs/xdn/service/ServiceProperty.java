@@ -25,17 +25,39 @@ public class ServiceProperty {
     private final ConsistencyModel consistencyModel;
     private final List<ServiceComponent> components;
 
+    /**
+     * maximum size in bytes of an HTTP request body, null for the default
+     */
+    private final Long maxRequestSize;
+
+    /**
+     * capacity in bytes of the response cache, 0 if the cache is not enabled
+     */
+    private final long responseCacheSize;
+
+    /**
+     * admission limits at each active replica, null for the defaults
+     */
+    private final Double rateLimit;
+    private final Integer maxConcurrentRequests;
+
     private ServiceComponent entryComponent;
     private ServiceComponent statefulComponent;
 
     private ServiceProperty(String serviceName, boolean isDeterministic, String stateDirectory,
                             ConsistencyModel consistencyModel,
-                            List<ServiceComponent> components) {
+                            List<ServiceComponent> components, Long maxRequestSize,
+                            long responseCacheSize, Double rateLimit,
+                            Integer maxConcurrentRequests) {
         this.serviceName = serviceName;
         this.isDeterministic = isDeterministic;
         this.stateDirectory = stateDirectory;
         this.consistencyModel = consistencyModel;
         this.components = components;
+        this.maxRequestSize = maxRequestSize;
+        this.responseCacheSize = responseCacheSize;
+        this.rateLimit = rateLimit;
+        this.maxConcurrentRequests = maxConcurrentRequests;
     }
 
     public ServiceComponent getEntryComponent() {
@@ -99,6 +121,46 @@ public class ServiceProperty {
             consistencyModel = parseConsistencyModel(consistencyModelString);
         }
 
+        // parsing and validating the optional request size limit
+        Long maxRequestSize = null;
+        if (json.has("max_request_size")) {
+            maxRequestSize = json.getLong("max_request_size");
+            if (maxRequestSize <= 0) {
+                throw new RuntimeException("max_request_size must be positive");
+            }
+        }
+
+        // parsing and validating the optional response cache capacity
+        long responseCacheSize = 0;
+        if (json.has("response_cache_size")) {
+            responseCacheSize = json.getLong("response_cache_size");
+            if (responseCacheSize < 0) {
+                throw new RuntimeException("response_cache_size can not be negative");
+            }
+            // a cached response skips coordination, so it can be stale, which only the weak
+            // consistency models allow
+            if (responseCacheSize > 0 && isStronglyConsistent(consistencyModel)) {
+                throw new RuntimeException("response_cache_size is not allowed for " +
+                        consistencyModel.toString().toLowerCase() + " consistency");
+            }
+        }
+
+        // parsing and validating the optional admission limits, 0 means no limit
+        Double rateLimit = null;
+        if (json.has("rate_limit")) {
+            rateLimit = json.getDouble("rate_limit");
+            if (rateLimit < 0) {
+                throw new RuntimeException("rate_limit can not be negative");
+            }
+        }
+        Integer maxConcurrentRequests = null;
+        if (json.has("max_concurrent_requests")) {
+            maxConcurrentRequests = json.getInt("max_concurrent_requests");
+            if (maxConcurrentRequests < 0) {
+                throw new RuntimeException("max_concurrent_requests can not be negative");
+            }
+        }
+
         // parsing and validating service component(s)
         List<ServiceComponent> components = new ArrayList<>();
         if (json.has("image") && json.has("components")) {
@@ -151,7 +213,11 @@ public class ServiceProperty {
                 isDeterministic,
                 stateDirectory,
                 consistencyModel,
-                components
+                components,
+                maxRequestSize,
+                responseCacheSize,
+                rateLimit,
+                maxConcurrentRequests
         );
 
         // automatically infer is-stateful of component via the state directory
@@ -219,6 +285,12 @@ public class ServiceProperty {
         }
     }
 
+    private static boolean isStronglyConsistent(ConsistencyModel model) {
+        return model == ConsistencyModel.LINEARIZABILITY
+                || model == ConsistencyModel.LINEARIZABLE
+                || model == ConsistencyModel.SEQUENTIAL;
+    }
+
     private static ConsistencyModel parseConsistencyModel(String model) {
         if (model == null) {
             throw new RuntimeException("consistency model can not be null");
@@ -382,4 +454,38 @@ public class ServiceProperty {
         return components;
     }
 
+    /**
+     * @return the maximum size in bytes of an HTTP request body sent to this service, or
+     * null if the service uses the default {@link edu.umass.cs.reconfiguration.ReconfigurationConfig.RC#HTTP_MAX_REQUEST_SIZE}.
+     */
+    public Long getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    /**
+     * @return the capacity in bytes of the {@link ServiceResponseCache} of this service, or 0
+     * if responses are not cached.
+     */
+    public long getResponseCacheSize() {
+        return responseCacheSize;
+    }
+
+    /**
+     * @return the maximum rate in requests per second at which each active replica admits
+     * requests of this service, 0 for no limit, or null if the service uses the default
+     * {@link edu.umass.cs.reconfiguration.ReconfigurationConfig.RC#SERVICE_RATE_LIMIT}.
+     */
+    public Double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @return the maximum number of requests of this service that each active replica has
+     * admitted but not yet responded to, 0 for no limit, or null if the service uses the
+     * default {@link edu.umass.cs.reconfiguration.ReconfigurationConfig.RC#SERVICE_MAX_OUTSTANDING_REQUESTS}.
+     */
+    public Integer getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
 }
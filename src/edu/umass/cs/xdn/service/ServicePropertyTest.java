@@ -86,4 +86,82 @@ public class ServicePropertyTest {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Returns the properties of a single-component service with the given consistency model
+     * and, unless null, the given extra fields, e.g., "\"rate_limit\": 500.5".
+     */
+    private static String photoAlbumProperty(String consistency, String extraFields) {
+        return String.format("""
+                {
+                  "name": "alice-photo-album",
+                  "image": "photoalbum",
+                  "port": 8000,
+                  "state": "/data/",
+                  "consistency": "%s"%s
+                }
+                """, consistency, extraFields == null ? "" : ",\n  " + extraFields);
+    }
+
+    @Test
+    public void TEST_parseMaxRequestSize() {
+        try {
+            ServiceProperty sp = ServiceProperty.createFromJSONString(photoAlbumProperty(
+                    "linearizability", "\"max_request_size\": 268435456"));
+            assert Objects.equals(sp.getMaxRequestSize(), 268435456L);
+
+            sp = ServiceProperty.createFromJSONString(
+                    photoAlbumProperty("linearizability", null));
+            assert sp.getMaxRequestSize() == null;
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void TEST_parseResponseCacheSize() {
+        try {
+            ServiceProperty sp = ServiceProperty.createFromJSONString(photoAlbumProperty(
+                    "eventual", "\"response_cache_size\": 16777216"));
+            assert sp.getResponseCacheSize() == 16777216L;
+
+            sp = ServiceProperty.createFromJSONString(photoAlbumProperty("eventual", null));
+            assert sp.getResponseCacheSize() == 0 : "response cache must be disabled by default";
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void TEST_rejectResponseCacheForStrongConsistency() {
+        for (String consistency : new String[]{"linearizability", "sequential"}) {
+            try {
+                ServiceProperty.createFromJSONString(photoAlbumProperty(
+                        consistency, "\"response_cache_size\": 16777216"));
+                assert false : "a " + consistency + " service must not get a response cache";
+            } catch (RuntimeException e) {
+                // expected, the cache would serve stale responses
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Test
+    public void TEST_parseAdmissionLimits() {
+        try {
+            ServiceProperty sp = ServiceProperty.createFromJSONString(photoAlbumProperty(
+                    "linearizability",
+                    "\"rate_limit\": 500.5,\n  \"max_concurrent_requests\": 64"));
+            assert Objects.equals(sp.getRateLimit(), 500.5);
+            assert Objects.equals(sp.getMaxConcurrentRequests(), 64);
+
+            sp = ServiceProperty.createFromJSONString(
+                    photoAlbumProperty("linearizability", null));
+            assert sp.getRateLimit() == null : "rate limit must use the default";
+            assert sp.getMaxConcurrentRequests() == null : "concurrency cap must use the default";
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -0,0 +1,298 @@
+package edu.umass.cs.xdn.service;
+
+import edu.umass.cs.utils.DelayProfiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Size-bounded cache of the responses of a service to GET requests, enabled
+ * for services that set {@code response_cache_size} in their
+ * {@link ServiceProperty}. Responses are stored when a GET is executed and
+ * served by the HTTP front-end of the active replica without coordination,
+ * so a hit may miss writes that are not yet executed at this replica, like a
+ * local read.
+ * <p>
+ * Responses are keyed by method, URI and the values of the request headers
+ * named in their Vary header. Only 200 responses that do not set cookies and
+ * whose Cache-Control allows a shared cache to store them without
+ * revalidation are stored, until their max-age (or s-maxage) expires if they
+ * have one. Requests with Authorization or with Cache-Control no-cache,
+ * no-store or max-age=0 bypass the cache. All responses of a service are
+ * invalidated when a write is executed or a statediff is applied for the
+ * service.
+ * <p>
+ * Hits, misses and bytes served from the caches are counted in
+ * {@link DelayProfiler} as {@code xdn_cache_hits}, {@code xdn_cache_misses}
+ * and {@code xdn_cache_bytes_saved}.
+ */
+public class ServiceResponseCache {
+
+    private static final ConcurrentHashMap<String, ServiceResponseCache> caches =
+            new ConcurrentHashMap<>();
+
+    /**
+     * A cached response.
+     */
+    public static class CachedResponse {
+        public final int status;
+        public final List<Map.Entry<String, String>> headers;
+        public final byte[] body;
+        public final String etag;
+
+        // the names and request values of the headers in Vary
+        private final String[] varyNames;
+        private final String[] varyValues;
+        private final long expiresAt;
+        private final long size;
+
+        private CachedResponse(int status, List<Map.Entry<String, String>> headers, byte[] body,
+                               String etag, String[] varyNames, String[] varyValues,
+                               long expiresAt) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.etag = etag;
+            this.varyNames = varyNames;
+            this.varyValues = varyValues;
+            this.expiresAt = expiresAt;
+            long size = body.length;
+            for (Map.Entry<String, String> header : headers)
+                size += header.getKey().length() + header.getValue().length();
+            this.size = size;
+        }
+
+        private boolean matches(Function<String, String> requestHeaders) {
+            for (int i = 0; i < varyNames.length; i++)
+                if (!String.valueOf(requestHeaders.apply(varyNames[i])).equals(varyValues[i]))
+                    return false;
+            return true;
+        }
+
+        /**
+         * @param ifNoneMatch the If-None-Match header of a request, may be null
+         * @return true if the response can be answered with 304 Not Modified
+         */
+        public boolean isNotModified(String ifNoneMatch) {
+            if (ifNoneMatch == null || etag == null)
+                return false;
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)
+                        || ("W/" + tag).equals(etag))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private final String serviceName;
+    private final long capacity;
+
+    // variants of each method and URI in least recently used order
+    private final LinkedHashMap<String, List<CachedResponse>> responses =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long bytesSaved = 0;
+
+    private ServiceResponseCache(String serviceName, long capacity) {
+        this.serviceName = serviceName;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Enables the cache of a service with the given capacity in bytes, or
+     * disables it if the capacity is not positive.
+     */
+    public static void setCapacity(String serviceName, long capacity) {
+        if (capacity > 0)
+            caches.put(serviceName, new ServiceResponseCache(serviceName, capacity));
+        else
+            caches.remove(serviceName);
+    }
+
+    /**
+     * @return the cache of a service, or null if its cache is not enabled
+     */
+    public static ServiceResponseCache get(String serviceName) {
+        return caches.get(serviceName);
+    }
+
+    // Cache-Control directives in lower case, with their value if any
+    private static Map<String, String> parseCacheControl(String cacheControl) {
+        Map<String, String> directives = new HashMap<>();
+        if (cacheControl == null)
+            return directives;
+        for (String directive : cacheControl.split(",")) {
+            String[] nameValue = directive.trim().split("=", 2);
+            directives.put(nameValue[0].trim().toLowerCase(Locale.ROOT),
+                    nameValue.length > 1 ? nameValue[1].trim().replace("\"", "") : "");
+        }
+        return directives;
+    }
+
+    private static long parseSeconds(String seconds) {
+        try {
+            return Long.parseLong(seconds);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isCacheableRequest(String method, Function<String, String> requestHeaders) {
+        if (!method.equals("GET") || requestHeaders.apply("Authorization") != null)
+            return false;
+        Map<String, String> cacheControl = parseCacheControl(requestHeaders.apply("Cache-Control"));
+        String pragma = requestHeaders.apply("Pragma");
+        return !cacheControl.containsKey("no-cache") && !cacheControl.containsKey("no-store")
+                && !"0".equals(cacheControl.get("max-age"))
+                && (pragma == null || !pragma.toLowerCase(Locale.ROOT).contains("no-cache"));
+    }
+
+    private static String getHeader(List<Map.Entry<String, String>> headers, String name) {
+        for (Map.Entry<String, String> header : headers)
+            if (header.getKey().equalsIgnoreCase(name))
+                return header.getValue();
+        return null;
+    }
+
+    /**
+     * @return the fresh response cached for the request, or null on a miss
+     */
+    public synchronized CachedResponse get(String method, String uri,
+                                           Function<String, String> requestHeaders) {
+        if (!isCacheableRequest(method, requestHeaders))
+            return null;
+        List<CachedResponse> variants = responses.get(method + " " + uri);
+        if (variants != null) {
+            long now = System.currentTimeMillis();
+            for (Iterator<CachedResponse> it = variants.iterator(); it.hasNext(); ) {
+                CachedResponse response = it.next();
+                if (response.expiresAt <= now) {
+                    it.remove();
+                    size -= response.size;
+                } else if (response.matches(requestHeaders)) {
+                    hits++;
+                    bytesSaved += response.body.length;
+                    DelayProfiler.updateCount("xdn_cache_hits", 1);
+                    DelayProfiler.updateCount("xdn_cache_bytes_saved", response.body.length);
+                    return response;
+                }
+            }
+            if (variants.isEmpty())
+                responses.remove(method + " " + uri);
+        }
+        misses++;
+        DelayProfiler.updateCount("xdn_cache_misses", 1);
+        return null;
+    }
+
+    /**
+     * Stores the response to an executed request if both allow it.
+     *
+     * @return true if the response was stored
+     */
+    public synchronized boolean put(String method, String uri,
+                                    Function<String, String> requestHeaders, int status,
+                                    List<Map.Entry<String, String>> responseHeaders, byte[] body) {
+        if (status != 200 || !isCacheableRequest(method, requestHeaders)
+                || getHeader(responseHeaders, "Set-Cookie") != null)
+            return false;
+        Map<String, String> cacheControl =
+                parseCacheControl(getHeader(responseHeaders, "Cache-Control"));
+        if (cacheControl.containsKey("no-store") || cacheControl.containsKey("no-cache")
+                || cacheControl.containsKey("private"))
+            return false;
+        String maxAge = cacheControl.containsKey("s-maxage") ? cacheControl.get("s-maxage")
+                : cacheControl.get("max-age");
+        long expiresAt = maxAge == null ? Long.MAX_VALUE
+                : System.currentTimeMillis() + 1000 * parseSeconds(maxAge);
+        if (maxAge != null && parseSeconds(maxAge) <= 0)
+            return false;
+
+        String vary = getHeader(responseHeaders, "Vary");
+        List<String> varyNames = new ArrayList<>();
+        if (vary != null)
+            for (String name : vary.split(","))
+                if (!name.isBlank())
+                    varyNames.add(name.trim());
+        if (varyNames.contains("*"))
+            return false;
+        String[] varyValues = new String[varyNames.size()];
+        for (int i = 0; i < varyValues.length; i++)
+            varyValues[i] = String.valueOf(requestHeaders.apply(varyNames.get(i)));
+
+        CachedResponse response = new CachedResponse(status, List.copyOf(responseHeaders), body,
+                getHeader(responseHeaders, "ETag"), varyNames.toArray(new String[0]),
+                varyValues, expiresAt);
+        if (response.size > capacity)
+            return false;
+
+        // replace the variant for the same request header values, if any
+        List<CachedResponse> variants =
+                responses.computeIfAbsent(method + " " + uri, k -> new ArrayList<>());
+        for (Iterator<CachedResponse> it = variants.iterator(); it.hasNext(); ) {
+            CachedResponse cached = it.next();
+            if (cached.matches(requestHeaders)) {
+                it.remove();
+                size -= cached.size;
+            }
+        }
+        variants.add(response);
+        size += response.size;
+
+        // evict the least recently used URIs
+        for (Iterator<List<CachedResponse>> it = responses.values().iterator();
+             size > capacity && it.hasNext(); ) {
+            for (CachedResponse evicted : it.next())
+                size -= evicted.size;
+            it.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Removes all responses, as the state of the service has changed.
+     */
+    public synchronized void invalidate() {
+        responses.clear();
+        size = 0;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s[%s: %d/%d bytes, %d hits, %d misses, %d bytes saved]",
+                getClass().getSimpleName(), serviceName, size, capacity, hits, misses,
+                bytesSaved);
+    }
+}
@@ -0,0 +1,184 @@
+package edu.umass.cs.xdn.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+public class TestServiceResponseCache {
+
+    private static final String SERVICE_NAME = "test-cache-service";
+
+    private static final Function<String, String> NO_HEADERS = name -> null;
+
+    private static byte[] body(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ServiceResponseCache createCache(long capacity) {
+        ServiceResponseCache.setCapacity(SERVICE_NAME, capacity);
+        return ServiceResponseCache.get(SERVICE_NAME);
+    }
+
+    @After
+    public void disableCache() {
+        ServiceResponseCache.setCapacity(SERVICE_NAME, 0);
+    }
+
+    @Test
+    public void TestCacheIsOptIn() {
+        assert ServiceResponseCache.get(SERVICE_NAME) == null;
+        assert createCache(1024) != null;
+        ServiceResponseCache.setCapacity(SERVICE_NAME, 0);
+        assert ServiceResponseCache.get(SERVICE_NAME) == null;
+    }
+
+    @Test
+    public void TestGetIsCachedUntilInvalidated() {
+        ServiceResponseCache cache = createCache(1024);
+        assert cache.get("GET", "/photos", NO_HEADERS) == null;
+        assert cache.put("GET", "/photos", NO_HEADERS, 200,
+                List.of(Map.entry("Content-Type", "text/plain")), body("photos"));
+
+        ServiceResponseCache.CachedResponse cached = cache.get("GET", "/photos", NO_HEADERS);
+        assert cached != null && cached.status == 200;
+        assert new String(cached.body, StandardCharsets.UTF_8).equals("photos");
+        assert cache.get("GET", "/photos?page=2", NO_HEADERS) == null;
+        assert cache.getHits() == 1 && cache.getMisses() == 2;
+        assert cache.getBytesSaved() == 6;
+
+        cache.invalidate();
+        assert cache.get("GET", "/photos", NO_HEADERS) == null;
+        assert cache.size() == 0;
+    }
+
+    @Test
+    public void TestUncacheableRequestsAndResponses() {
+        ServiceResponseCache cache = createCache(1024);
+        assert !cache.put("POST", "/photos", NO_HEADERS, 200, List.of(), body("a"));
+        assert !cache.put("GET", "/photos", NO_HEADERS, 404, List.of(), body("a"));
+        assert !cache.put("GET", "/photos", name -> name.equals("Authorization") ? "Basic x" : null,
+                200, List.of(), body("a"));
+        assert !cache.put("GET", "/photos", NO_HEADERS, 200,
+                List.of(Map.entry("Set-Cookie", "id=1")), body("a"));
+        for (String cacheControl : List.of("no-store", "private, max-age=60", "no-cache", "max-age=0"))
+            assert !cache.put("GET", "/photos", NO_HEADERS, 200,
+                    List.of(Map.entry("Cache-Control", cacheControl)), body("a")) : cacheControl;
+        assert !cache.put("GET", "/photos", NO_HEADERS, 200,
+                List.of(Map.entry("Vary", "*")), body("a"));
+        assert cache.size() == 0;
+
+        // requests that ask for a fresh response bypass the cache
+        assert cache.put("GET", "/photos", NO_HEADERS, 200,
+                List.of(Map.entry("Cache-Control", "public, max-age=60")), body("a"));
+        assert cache.get("GET", "/photos", name -> name.equals("Cache-Control") ? "no-cache" : null) == null;
+        assert cache.get("GET", "/photos", name -> name.equals("Pragma") ? "no-cache" : null) == null;
+        assert cache.get("GET", "/photos", NO_HEADERS) != null;
+    }
+
+    @Test
+    public void TestVaryVariants() {
+        ServiceResponseCache cache = createCache(1024);
+        Function<String, String> english = name -> name.equals("Accept-Language") ? "en" : null;
+        Function<String, String> french = name -> name.equals("Accept-Language") ? "fr" : null;
+        List<Map.Entry<String, String>> headers = List.of(Map.entry("Vary", "Accept-Language"));
+        assert cache.put("GET", "/", english, 200, headers, body("hello"));
+        assert cache.put("GET", "/", french, 200, headers, body("bonjour"));
+
+        assert new String(cache.get("GET", "/", english).body, StandardCharsets.UTF_8).equals("hello");
+        assert new String(cache.get("GET", "/", french).body, StandardCharsets.UTF_8).equals("bonjour");
+        assert cache.get("GET", "/", NO_HEADERS) == null;
+
+        // a newer response replaces the variant for the same header values
+        assert cache.put("GET", "/", english, 200, headers, body("hi"));
+        assert new String(cache.get("GET", "/", english).body, StandardCharsets.UTF_8).equals("hi");
+    }
+
+    @Test
+    public void TestETag() {
+        ServiceResponseCache cache = createCache(1024);
+        assert cache.put("GET", "/photo/1", NO_HEADERS, 200,
+                List.of(Map.entry("ETag", "\"v1\"")), body("photo"));
+        ServiceResponseCache.CachedResponse cached = cache.get("GET", "/photo/1", NO_HEADERS);
+        assert cached.etag.equals("\"v1\"");
+        assert cached.isNotModified("\"v0\", \"v1\"");
+        assert cached.isNotModified("W/\"v1\"");
+        assert cached.isNotModified("*");
+        assert !cached.isNotModified("\"v0\"");
+        assert !cached.isNotModified(null);
+    }
+
+    @Test
+    public void TestExpiration() throws InterruptedException {
+        ServiceResponseCache cache = createCache(1024);
+        assert cache.put("GET", "/now", NO_HEADERS, 200,
+                List.of(Map.entry("Cache-Control", "max-age=1")), body("now"));
+        assert cache.get("GET", "/now", NO_HEADERS) != null;
+        Thread.sleep(1100);
+        assert cache.get("GET", "/now", NO_HEADERS) == null;
+        assert cache.size() == 0;
+    }
+
+    @Test
+    public void TestEvictionBySize() {
+        ServiceResponseCache cache = createCache(300);
+        byte[] content = new byte[100];
+        assert cache.put("GET", "/1", NO_HEADERS, 200, List.of(), content);
+        assert cache.put("GET", "/2", NO_HEADERS, 200, List.of(), content);
+        assert cache.get("GET", "/1", NO_HEADERS) != null;
+        assert cache.put("GET", "/3", NO_HEADERS, 200, List.of(), content);
+        assert cache.put("GET", "/4", NO_HEADERS, 200, List.of(), content);
+
+        // the least recently used response is evicted first
+        assert cache.size() <= 300;
+        assert cache.get("GET", "/2", NO_HEADERS) == null;
+        assert cache.get("GET", "/1", NO_HEADERS) != null;
+        assert cache.get("GET", "/4", NO_HEADERS) != null;
+        assert !cache.put("GET", "/5", NO_HEADERS, 200, List.of(), new byte[301]);
+    }
+
+    /**
+     * Read-heavy workload: 99% GETs over Zipf-distributed URIs and 1% writes,
+     * each of which invalidates the cache as when executed by the service.
+     */
+    @Test
+    public void TestReadHeavyWorkload() {
+        ServiceResponseCache cache = createCache(4 * 1024 * 1024);
+        int numURIs = 1000, numRequests = 200000;
+        double[] cdf = new double[numURIs];
+        double sum = 0;
+        for (int i = 0; i < numURIs; i++)
+            cdf[i] = sum += 1.0 / (i + 1);
+        Random random = new Random(0);
+        byte[] content = new byte[4096];
+        List<Map.Entry<String, String>> headers =
+                List.of(Map.entry("Content-Type", "application/json"));
+
+        long lookupTime = 0;
+        for (int n = 0; n < numRequests; n++) {
+            if (random.nextDouble() < 0.01) {
+                cache.invalidate();
+                continue;
+            }
+            double r = random.nextDouble() * sum;
+            int i = 0;
+            while (cdf[i] < r) i++;
+            String uri = "/item/" + i;
+            long t = System.nanoTime();
+            ServiceResponseCache.CachedResponse cached = cache.get("GET", uri, NO_HEADERS);
+            lookupTime += System.nanoTime() - t;
+            if (cached == null)
+                cache.put("GET", uri, NO_HEADERS, 200, headers, content);
+        }
+        long lookups = cache.getHits() + cache.getMisses();
+        double hitRate = (double) cache.getHits() / lookups;
+        System.out.printf("[%d lookups, hit rate %.1f%%, %.1fMB saved, %.0fns per lookup] ",
+                lookups, 100 * hitRate, cache.getBytesSaved() / 1048576.0,
+                (double) lookupTime / lookups);
+        assert hitRate > 0.4;
+    }
+}